@@ -28,30 +28,68 @@
  */
 package org.n52.io.format;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.n52.io.response.dataset.AbstractValue;
 
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 
+/**
+ * Values of a dataset grouped by their result time. Groups are kept in ascending result time order, so that
+ * the serialized output is sorted by result time without any further post processing.
+ *
+ * @param <T>
+ *        the value type
+ * @see ResultTimeClassifier
+ */
 public class ResultTimeClassifiedData<T extends AbstractValue< ? >> {
 
-    private Map<String, List<AbstractValue< ? >>> valuesByResultTime;
+    private final NavigableMap<Long, List<AbstractValue< ? >>> valuesByResultTime;
 
     public ResultTimeClassifiedData() {
-        valuesByResultTime = new HashMap<>();
+        valuesByResultTime = new TreeMap<>();
     }
 
+    /**
+     * @return a read-only view of the classified values in ascending result time order. Keys are rendered
+     *         as string lazily while iterating.
+     */
     @JsonAnyGetter
     public Map<String, List<AbstractValue< ? >>> getValuesByResultTime() {
-        return valuesByResultTime;
+        return new ResultTimeView();
     }
 
     public void setValuesByResultTime(Map<String, List<AbstractValue< ? >>> valuesByResultTime) {
-        this.valuesByResultTime = valuesByResultTime;
+        this.valuesByResultTime.clear();
+        if (valuesByResultTime != null) {
+            for (Map.Entry<String, List<AbstractValue< ? >>> entry : valuesByResultTime.entrySet()) {
+                long resultTime = Long.parseLong(entry.getKey());
+                this.valuesByResultTime.put(resultTime, new ArrayList<>(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * @return the classified values in ascending result time order.
+     */
+    public NavigableMap<Long, List<AbstractValue< ? >>> getSortedValues() {
+        return Collections.unmodifiableNavigableMap(valuesByResultTime);
+    }
+
+    /**
+     * @return the number of distinct result times.
+     */
+    public int size() {
+        return valuesByResultTime.size();
     }
 
     /**
@@ -61,15 +99,55 @@ public class ResultTimeClassifiedData<T extends AbstractValue< ? >> {
      *        the value to classify.
      */
     public void classifyValue(T value) {
-        Long resultTime = value.getTimestamp().getMillis();
+        Long resultTime = ResultTimeClassifier.getResultTime(value);
         if (resultTime != null) {
-            String rt = Long.toString(resultTime);
-            if (!valuesByResultTime.containsKey(rt)) {
-                valuesByResultTime.put(rt, new ArrayList<>());
-            }
-            valuesByResultTime.get(rt)
+            valuesByResultTime.computeIfAbsent(resultTime, k -> new ArrayList<>())
                               .add(value);
         }
     }
 
+    void addResultTimeGroup(long resultTime, List<AbstractValue< ? >> values) {
+        valuesByResultTime.put(resultTime, values);
+    }
+
+    private final class ResultTimeView extends AbstractMap<String, List<AbstractValue< ? >>> {
+
+        @Override
+        public Set<Entry<String, List<AbstractValue< ? >>>> entrySet() {
+            return new AbstractSet<Entry<String, List<AbstractValue< ? >>>>() {
+
+                @Override
+                public Iterator<Entry<String, List<AbstractValue< ? >>>> iterator() {
+                    Iterator<Entry<Long, List<AbstractValue< ? >>>> it = valuesByResultTime.entrySet()
+                                                                                        .iterator();
+                    return new Iterator<Entry<String, List<AbstractValue< ? >>>>() {
+
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, List<AbstractValue< ? >>> next() {
+                            Entry<Long, List<AbstractValue< ? >>> next = it.next();
+                            return new SimpleImmutableEntry<>(Long.toString(next.getKey()),
+                                                              Collections.unmodifiableList(next.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return valuesByResultTime.size();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return valuesByResultTime.size();
+        }
+
+    }
+
 }
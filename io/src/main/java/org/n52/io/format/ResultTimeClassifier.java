@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.format;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.Instant;
+import org.n52.io.request.IoParameters;
+import org.n52.io.response.TimeOutput;
+import org.n52.io.response.dataset.AbstractValue;
+import org.n52.io.response.dataset.Data;
+
+/**
+ * Groups the values of a dataset by result time. Result times are handled as primitive {@code long} keys:
+ * distinct keys are determined by sorting, groups are presized by counting first and then filled in a
+ * second pass. Values not matching the requested {@link IoParameters#getResultTimes() result times} are
+ * dropped while grouping.
+ */
+public class ResultTimeClassifier {
+
+    private static final long[] ALL_RESULT_TIMES = null;
+
+    private final long[] filter;
+
+    /**
+     * Creates a classifier which does not filter any result time.
+     */
+    public ResultTimeClassifier() {
+        this.filter = ALL_RESULT_TIMES;
+    }
+
+    /**
+     * Creates a classifier which keeps only values having one of the given result times.
+     *
+     * @param resultTimes
+     *        ISO8601 result times to keep. {@code null} or empty means all result times.
+     */
+    public ResultTimeClassifier(Collection<String> resultTimes) {
+        this.filter = resultTimes == null || resultTimes.isEmpty()
+                ? ALL_RESULT_TIMES
+                : resultTimes.stream()
+                             .mapToLong(rt -> Instant.parse(rt)
+                                                     .getMillis())
+                             .sorted()
+                             .distinct()
+                             .toArray();
+    }
+
+    /**
+     * Creates a classifier from the {@link org.n52.io.request.Parameters#RESULTTIMES} parameter.
+     *
+     * @param parameters
+     *        the request parameters
+     * @return a classifier filtering the requested result times, or all result times if
+     *         {@link IoParameters#isAllResultTimes()}.
+     */
+    public static ResultTimeClassifier createFor(IoParameters parameters) {
+        return parameters == null || parameters.isAllResultTimes()
+                ? new ResultTimeClassifier()
+                : new ResultTimeClassifier(parameters.getResultTimes());
+    }
+
+    public <T extends AbstractValue< ? >> ResultTimeClassifiedData<T> classify(Data< ? extends T> data) {
+        List< ? extends T> values = data.getValues();
+        int size = values.size();
+        long[] keys = new long[size];
+        boolean[] accepted = new boolean[size];
+        long[] distinct = new long[size];
+        int acceptedCount = 0;
+        for (int i = 0; i < size; i++) {
+            Long resultTime = getResultTime(values.get(i));
+            if (resultTime != null && matches(resultTime)) {
+                keys[i] = resultTime;
+                accepted[i] = true;
+                distinct[acceptedCount++] = resultTime;
+            }
+        }
+
+        Arrays.sort(distinct, 0, acceptedCount);
+        int groupCount = 0;
+        for (int i = 0; i < acceptedCount; i++) {
+            if (groupCount == 0 || distinct[groupCount - 1] != distinct[i]) {
+                distinct[groupCount++] = distinct[i];
+            }
+        }
+
+        int[] counts = new int[groupCount];
+        int[] groupIndices = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (accepted[i]) {
+                int group = Arrays.binarySearch(distinct, 0, groupCount, keys[i]);
+                groupIndices[i] = group;
+                counts[group]++;
+            }
+        }
+
+        List<List<AbstractValue< ? >>> groups = new ArrayList<>(groupCount);
+        for (int i = 0; i < groupCount; i++) {
+            groups.add(new ArrayList<>(counts[i]));
+        }
+        for (int i = 0; i < size; i++) {
+            if (accepted[i]) {
+                groups.get(groupIndices[i])
+                      .add(values.get(i));
+            }
+        }
+
+        ResultTimeClassifiedData<T> classified = new ResultTimeClassifiedData<>();
+        for (int i = 0; i < groupCount; i++) {
+            classified.addResultTimeGroup(distinct[i], groups.get(i));
+        }
+        return classified;
+    }
+
+    private boolean matches(long resultTime) {
+        return filter == ALL_RESULT_TIMES || Arrays.binarySearch(filter, resultTime) >= 0;
+    }
+
+    /**
+     * Determines the key a value is classified by. Falls back to the value's timestamp if no explicit result
+     * time is available.
+     *
+     * @param value
+     *        the value
+     * @return the result time in millis or {@code null} if the value has no time at all
+     */
+    static Long getResultTime(AbstractValue< ? > value) {
+        DateTime resultTime = value.getResultTime();
+        if (resultTime != null) {
+            return resultTime.getMillis();
+        }
+        TimeOutput timestamp = value.getTimestamp();
+        return timestamp != null
+                ? timestamp.getMillis()
+                : null;
+    }
+
+}
@@ -30,6 +30,7 @@ package org.n52.io.format;
 
 import java.util.Map.Entry;
 
+import org.n52.io.request.IoParameters;
 import org.n52.io.response.dataset.AbstractValue;
 import org.n52.io.response.dataset.Data;
 import org.n52.io.response.dataset.DataCollection;
@@ -37,6 +38,20 @@ import org.n52.io.response.dataset.DataCollection;
 public class ResultTimeFormatter<I extends Data< ? extends AbstractValue< ? >>>
         implements DataFormatter<I, ResultTimeClassifiedData<AbstractValue< ? >>> {
 
+    private final ResultTimeClassifier classifier;
+
+    public ResultTimeFormatter() {
+        this(new ResultTimeClassifier());
+    }
+
+    public ResultTimeFormatter(IoParameters parameters) {
+        this(ResultTimeClassifier.createFor(parameters));
+    }
+
+    public ResultTimeFormatter(ResultTimeClassifier classifier) {
+        this.classifier = classifier;
+    }
+
     @Override
     public DataCollection<ResultTimeClassifiedData<AbstractValue< ? >>> format(DataCollection<I> toFormat) {
         DataCollection<ResultTimeClassifiedData<AbstractValue< ? >>> formatted = new DataCollection<>();
@@ -49,11 +64,7 @@ public class ResultTimeFormatter<I extends Data< ? extends AbstractValue< ? >>>
     }
 
     private ResultTimeClassifiedData<AbstractValue< ? >> formatData(Data< ? extends AbstractValue< ? >> data) {
-        ResultTimeClassifiedData<AbstractValue< ? >> rtData = new ResultTimeClassifiedData<>();
-        for (AbstractValue< ? > value : data.getValues()) {
-            rtData.classifyValue(value);
-        }
-        return rtData;
+        return classifier.classify(data);
     }
 
 }
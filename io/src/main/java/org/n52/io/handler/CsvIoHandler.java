@@ -28,18 +28,20 @@
  */
 package org.n52.io.handler;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
-import java.text.MessageFormat;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
 import org.n52.io.IoParseException;
 import org.n52.io.request.IoParameters;
 import org.n52.io.request.Parameters;
@@ -59,14 +61,31 @@ public abstract class CsvIoHandler<T extends AbstractValue< ? >> extends IoHandl
     // needed by some clients to detect UTF-8 encoding (e.g. excel)
     private static final String UTF8_BYTE_ORDER_MARK = "\uFEFF";
 
+    private static final int TIME_SLICE_PREFETCH = 1;
+
+    // same format as DateTime#toString()
+    private static final DateTimeFormatter TIME_FORMAT = ISODateTimeFormat.dateTime();
+
     private final List< ? extends DatasetOutput<T>> seriesMetadatas;
 
     private final boolean useByteOrderMark;
 
     private final String tokenSeparator;
 
+    private final int zipCompressionLevel;
+
+    private final boolean zipStored;
+
+    private final boolean zipParallel;
+
     private boolean zipOutput;
 
+    private ExecutorService zipExecutor;
+
+    private ExecutorService timeSliceExecutor;
+
+    private Function<IoParameters, IoProcessChain<Data<T>>> sliceChainFactory;
+
     public CsvIoHandler(IoParameters parameters,
                         IoProcessChain<Data<T>> processChain,
                         List< ? extends DatasetOutput<T>> seriesMetadatas) {
@@ -74,18 +93,27 @@ public abstract class CsvIoHandler<T extends AbstractValue< ? >> extends IoHandl
         this.seriesMetadatas = seriesMetadatas;
         this.tokenSeparator = parameters.getAsString(Parameters.TOKEN_SEPARATOR, ";");
         this.useByteOrderMark = parameters.getAsBoolean(Parameters.BOM, true);
+        this.zipCompressionLevel = parameters.getZipCompressionLevel();
+        this.zipStored = parameters.isZipStored();
+        this.zipParallel = parameters.isZipParallel();
     }
 
     protected abstract String[] getHeader(DatasetOutput<T> metadata);
 
-    private void writeData(DataCollection<Data<T>> data, OutputStream stream) throws IOException {
-        for (DatasetOutput<T> metadata : seriesMetadatas) {
-            Data<T> series = data.getSeries(metadata.getId());
-            writeData(metadata, series, stream);
-        }
-    }
-
-    protected abstract void writeData(DatasetOutput<T> metadata, Data<T> series, OutputStream stream)
+    /**
+     * Writes the rows of the given series. Implementations shall write each row field by field via
+     * {@link CsvWriter#writeField(CharSequence)} and terminate it with {@link CsvWriter#endRow()}.
+     *
+     * @param metadata
+     *        the dataset metadata
+     * @param series
+     *        the series data to write
+     * @param writer
+     *        the CSV writer
+     * @throws IOException
+     *         if writing fails
+     */
+    protected abstract void writeData(DatasetOutput<T> metadata, Data<T> series, CsvWriter writer)
             throws IOException;
 
     protected abstract String getFilenameFor(DatasetOutput<T> seriesMetadata);
@@ -107,71 +135,210 @@ public abstract class CsvIoHandler<T extends AbstractValue< ? >> extends IoHandl
         }
     }
 
+    @Override
+    public void writeBinary(OutputStream outputStream) throws IoHandlerException {
+        List<IoParameters> slices = createTimeSlices();
+        if (slices.size() < 2) {
+            super.writeBinary(outputStream);
+            return;
+        }
+        try (OutputStream stream = createOutputStream(outputStream)) {
+            SeriesWriter<T> seriesWriter = (dataset, writer) -> writeTimeSlicedData(dataset, slices, writer);
+            if (zipOutput || seriesMetadatas.size() > 1) {
+                writeAsZipStream(seriesWriter, stream);
+            } else {
+                writeAsSingleCsv(seriesWriter, stream);
+            }
+        } catch (IOException e) {
+            throw new IoHandlerException("Error handling output stream.", e);
+        }
+    }
+
+    private List<IoParameters> createTimeSlices() {
+        if (sliceChainFactory == null || seriesMetadatas.isEmpty()) {
+            return Collections.emptyList();
+        }
+        IoParameters parameters = getParameters();
+        return TimeSliceFetcher.createTimeSlices(parameters, parameters.getExportTimeSlice());
+    }
+
+    private void writeTimeSlicedData(DatasetOutput<T> dataset, List<IoParameters> slices, CsvWriter writer)
+            throws IOException {
+        String datasetId = dataset.getId();
+        List<IoParameters> datasetSlices = slices.stream()
+                                                 .map(slice -> slice.replaceWith(Parameters.DATASETS, datasetId))
+                                                 .collect(Collectors.toList());
+        try (TimeSliceFetcher<Data<T>> fetcher = new TimeSliceFetcher<>(datasetSlices,
+                                                                        this::fetchTimeSlice,
+                                                                        TIME_SLICE_PREFETCH,
+                                                                        timeSliceExecutor)) {
+            TimeSliceBoundary<T> boundary = new TimeSliceBoundary<>();
+            while (fetcher.hasNext()) {
+                Data<T> series = fetcher.next()
+                                        .getSeries(datasetId);
+                if (series != null && series.size() > 0) {
+                    // slices are inclusive at their bounds
+                    writeData(dataset, getNewValues(series, boundary), writer);
+                }
+            }
+        }
+    }
+
+    private DataCollection<Data<T>> fetchTimeSlice(IoParameters slice) {
+        return sliceChainFactory.apply(slice)
+                                .getData();
+    }
+
+    private Data<T> getNewValues(Data<T> series, TimeSliceBoundary<T> boundary) {
+        List<T> values = series.getValues();
+        List<T> newValues = boundary.filter(values);
+        if (newValues.size() == values.size()) {
+            return series;
+        }
+        Data<T> data = new Data<>(series.getMetadata());
+        for (T value : newValues) {
+            data.addNewValue(value);
+        }
+        return data;
+    }
+
     protected void writeAsZipStream(DataCollection<Data<T>> data, OutputStream stream) throws IOException {
+        writeAsZipStream(inMemory(data), stream);
+    }
+
+    private void writeAsZipStream(SeriesWriter<T> seriesWriter, OutputStream stream) throws IOException {
+        if (zipStored || zipParallel && seriesMetadatas.size() > 1) {
+            writeAsParallelZipStream(seriesWriter, stream);
+        } else {
+            writeAsSequentialZipStream(seriesWriter, stream);
+        }
+    }
+
+    private void writeAsParallelZipStream(SeriesWriter<T> seriesWriter, OutputStream stream) throws IOException {
+        ParallelZipWriter zipWriter = new ParallelZipWriter(zipCompressionLevel, zipStored, zipExecutor);
+        if (!zipParallel) {
+            zipWriter.setParallelism(1);
+        }
+        for (DatasetOutput<T> dataset : seriesMetadatas) {
+            String filename = getFilenameFor(dataset) + ".csv";
+            zipWriter.addEntry(filename, entryStream -> {
+                try (CsvWriter writer = createWriter(entryStream)) {
+                    writeHeader(dataset, writer);
+                    seriesWriter.write(dataset, writer);
+                }
+            });
+        }
+        try (OutputStream out = stream) {
+            zipWriter.writeTo(out);
+        }
+    }
+
+    private void writeAsSequentialZipStream(SeriesWriter<T> seriesWriter, OutputStream stream)
+            throws IOException {
         try (ZipOutputStream zipStream = new ZipOutputStream(stream)) {
+            zipStream.setLevel(zipCompressionLevel);
+            CsvWriter writer = createWriter(zipStream);
             for (DatasetOutput<T> dataset : seriesMetadatas) {
                 String filename = getFilenameFor(dataset) + ".csv";
 
                 ZipEntry zipEntry = new ZipEntry(filename);
                 zipStream.putNextEntry(zipEntry);
 
-                writeHeader(dataset, zipStream);
-                Data<T> series = data.getSeries(dataset.getId());
-                writeData(dataset, series, zipStream);
+                writeHeader(dataset, writer);
+                seriesWriter.write(dataset, writer);
 
+                writer.flush();
                 zipStream.closeEntry();
-                zipStream.flush();
             }
         }
     }
 
     private void writeAsSingleCsv(DataCollection<Data<T>> data, OutputStream stream) throws IOException {
-        try (BufferedOutputStream bos = new BufferedOutputStream(stream)) {
-            if (data.size() == 1) {
-                DatasetOutput<T> metadata = seriesMetadatas.get(0);
-                writeHeader(metadata, bos);
-                writeData(data, bos);
-                bos.flush();
-            } else {
-                writeAsZipStream(data, stream);
-            }
+        if (data.size() == 1) {
+            writeAsSingleCsv(inMemory(data), stream);
+        } else {
+            writeAsZipStream(data, stream);
+        }
+    }
+
+    private void writeAsSingleCsv(SeriesWriter<T> seriesWriter, OutputStream stream) throws IOException {
+        try (OutputStream out = stream;
+                CsvWriter writer = createWriter(out)) {
+            DatasetOutput<T> metadata = seriesMetadatas.get(0);
+            writeHeader(metadata, writer);
+            seriesWriter.write(metadata, writer);
         }
     }
 
-    protected void writeHeader(DatasetOutput<T> dataset, OutputStream stream) throws IOException {
-        String text = csvEncode(getHeader(dataset));
+    private SeriesWriter<T> inMemory(DataCollection<Data<T>> data) {
+        return (dataset, writer) -> writeData(dataset, data.getSeries(dataset.getId()), writer);
+    }
+
+    protected CsvWriter createWriter(OutputStream stream) {
+        return new CsvWriter(stream, tokenSeparator);
+    }
+
+    protected void writeHeader(DatasetOutput<T> dataset, CsvWriter writer) throws IOException {
         if (useByteOrderMark) {
-            text = UTF8_BYTE_ORDER_MARK + text;
+            writer.writeRaw(UTF8_BYTE_ORDER_MARK);
+        }
+        for (String column : getHeader(dataset)) {
+            writer.writeField(column);
         }
-        writeText(text, stream);
+        writer.endRow();
     }
 
     protected void writeText(String text, OutputStream stream) throws IOException {
         stream.write(text.getBytes(UTF8));
     }
 
-    protected String csvEncode(String[] values) {
-        return Stream.of(values)
-                     .map(v -> v == null
-                             ? ""
-                             : v)
-                     .map(value -> {
-                         return value.contains(tokenSeparator)
-                                 ? MessageFormat.format("\"{0}\"", value)
-                                 : value;
-                     })
-                     .collect(Collectors.joining(tokenSeparator))
-                     .concat("\n");
+    protected String parseTime(T value) {
+        return appendTime(value, new StringBuilder()).toString();
     }
 
-    protected String parseTime(T value) {
+    /**
+     * Appends the (interval) time of the given value to the given builder.
+     *
+     * @param value
+     *        the value
+     * @param builder
+     *        the builder to append to
+     * @return the builder
+     */
+    protected StringBuilder appendTime(T value, StringBuilder builder) {
         TimeOutput timestart = value.getTimestart();
-        TimeOutput timeend = value.getTimeend();
-        TimeOutput timestamp = value.getTimestamp();
-        return timestart != null
-                ? timestart.getDateTime() + "/" + timeend.getDateTime()
-                : timestamp.getDateTime()
-                           .toString();
+        if (timestart != null) {
+            appendDateTime(timestart.getDateTime(), builder);
+            builder.append('/');
+            appendDateTime(value.getTimeend()
+                                .getDateTime(),
+                           builder);
+        } else {
+            appendDateTime(value.getTimestamp()
+                                .getDateTime(),
+                           builder);
+        }
+        return builder;
+    }
+
+    private void appendDateTime(DateTime time, StringBuilder builder) {
+        if (time == null) {
+            builder.append((String) null);
+        } else {
+            TIME_FORMAT.printTo(builder, time);
+        }
+    }
+
+    /**
+     * Enables fetching and writing data in consecutive time slices of
+     * {@link IoParameters#getExportTimeSlice()} length, so that only a bounded number of slices are held in
+     * memory, independent of the length of the requested timespan.
+     *
+     * @param chainFactory
+     *        creates the process chain to fetch a single time slice
+     */
+    public void setTimeSlicing(Function<IoParameters, IoProcessChain<Data<T>>> chainFactory) {
+        this.sliceChainFactory = chainFactory;
     }
 
     public void setZipOutput(boolean zipOutput) {
@@ -182,6 +349,24 @@ public abstract class CsvIoHandler<T extends AbstractValue< ? >> extends IoHandl
         return zipOutput;
     }
 
+    /**
+     * @param zipExecutor
+     *        the worker pool to compress zip entries on, or <code>null</code> to compress them on the
+     *        writing thread
+     */
+    public void setZipExecutor(ExecutorService zipExecutor) {
+        this.zipExecutor = zipExecutor;
+    }
+
+    /**
+     * @param timeSliceExecutor
+     *        the worker pool to prefetch time slices on, or <code>null</code> to fetch them on the writing
+     *        thread
+     */
+    public void setTimeSliceExecutor(ExecutorService timeSliceExecutor) {
+        this.timeSliceExecutor = timeSliceExecutor;
+    }
+
     protected String getLabel(ParameterOutput output) {
         return output.getLabel();
     }
@@ -199,4 +384,10 @@ public abstract class CsvIoHandler<T extends AbstractValue< ? >> extends IoHandl
         return "trajectory".equalsIgnoreCase(datasetType);
     }
 
+    @FunctionalInterface
+    private interface SeriesWriter<T extends AbstractValue< ? >> {
+
+        void write(DatasetOutput<T> dataset, CsvWriter writer) throws IOException;
+    }
+
 }
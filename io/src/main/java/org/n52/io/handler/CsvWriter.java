@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes CSV rows as UTF-8 directly into a byte buffer which is flushed to the underlying stream once full.
+ * Fields are quoted on char level when they contain the token separator, so rows can be written field by
+ * field without building intermediate {@code String[]} or {@code String} instances.
+ * <p>
+ * Instances are not thread-safe. Closing the writer does not close the underlying stream.
+ */
+public class CsvWriter implements Flushable, Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte LINEBREAK = '\n';
+
+    private static final byte QUOTE = '"';
+
+    private final OutputStream stream;
+
+    private final char[] tokenSeparator;
+
+    private final byte[] encodedSeparator;
+
+    private final byte[] buffer;
+
+    private final StringBuilder fieldBuffer;
+
+    private int position;
+
+    private boolean firstField;
+
+    public CsvWriter(OutputStream stream, String tokenSeparator) {
+        this(stream, tokenSeparator, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvWriter(OutputStream stream, String tokenSeparator, int bufferSize) {
+        if (tokenSeparator == null || tokenSeparator.isEmpty()) {
+            throw new IllegalArgumentException("token separator must not be empty");
+        }
+        // worst case for a single char is 3 bytes, surrogate pairs 4 bytes
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+        this.stream = stream;
+        this.tokenSeparator = tokenSeparator.toCharArray();
+        this.encodedSeparator = tokenSeparator.getBytes(CsvIoHandler.UTF8);
+        this.fieldBuffer = new StringBuilder(64);
+        this.firstField = true;
+    }
+
+    /**
+     * Returns a cleared scratch buffer which can be used to assemble a field value before passing it to
+     * {@link #writeField(CharSequence)}. The buffer is reused for each call.
+     *
+     * @return the cleared scratch buffer
+     */
+    public StringBuilder fieldBuffer() {
+        fieldBuffer.setLength(0);
+        return fieldBuffer;
+    }
+
+    /**
+     * Writes the given value as next field of the current row. The value is quoted if it contains the
+     * token separator. A {@code null} value is written as empty field.
+     *
+     * @param value
+     *        the field value
+     * @return this writer
+     * @throws IOException
+     *         if writing to the underlying stream fails
+     */
+    public CsvWriter writeField(CharSequence value) throws IOException {
+        if (!firstField) {
+            writeBytes(encodedSeparator);
+        }
+        firstField = false;
+        if (value == null || value.length() == 0) {
+            return this;
+        }
+        boolean quote = containsSeparator(value);
+        if (quote) {
+            writeByte(QUOTE);
+        }
+        writeChars(value);
+        if (quote) {
+            writeByte(QUOTE);
+        }
+        return this;
+    }
+
+    /**
+     * Terminates the current row with a line break.
+     *
+     * @throws IOException
+     *         if writing to the underlying stream fails
+     */
+    public void endRow() throws IOException {
+        writeByte(LINEBREAK);
+        firstField = true;
+    }
+
+    /**
+     * Writes the given text as is, i.e. without any separator or quoting.
+     *
+     * @param text
+     *        the text to write
+     * @throws IOException
+     *         if writing to the underlying stream fails
+     */
+    public void writeRaw(CharSequence text) throws IOException {
+        writeChars(text);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        stream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private boolean containsSeparator(CharSequence value) {
+        char first = tokenSeparator[0];
+        int last = value.length() - tokenSeparator.length;
+        for (int i = 0; i <= last; i++) {
+            if (value.charAt(i) == first && matchesSeparatorAt(value, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesSeparatorAt(CharSequence value, int offset) {
+        for (int j = 1; j < tokenSeparator.length; j++) {
+            if (value.charAt(offset + j) != tokenSeparator[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeChars(CharSequence value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                ensureCapacity(1);
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, same replacement as String#getBytes
+                ensureCapacity(1);
+                buffer[position++] = (byte) '?';
+            } else {
+                ensureCapacity(3);
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            flushBuffer();
+            stream.write(bytes);
+            return;
+        }
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeByte(byte b) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = b;
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            stream.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+}
@@ -28,11 +28,10 @@
  */
 package org.n52.io.handler;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Base64;
 
-import org.apache.commons.codec.binary.Base64;
 import org.n52.io.I18N;
 import org.n52.io.request.IoParameters;
 import org.n52.io.request.Parameters;
@@ -70,24 +69,49 @@ public abstract class IoHandler<T extends Data< ? extends AbstractValue< ? >>> {
      */
     protected abstract void encodeAndWriteTo(DataCollection<T> data, OutputStream stream) throws IoHandlerException;
 
+    /**
+     * Writes the output to the given stream and closes it. The output is streamed, Base64 encoded if
+     * requested, so output is not buffered in memory before writing.
+     * <p>
+     * Note that a handler failing after having started writing leaves partial output in the stream. This
+     * applies to Base64 encoded output as well: the encoded part written so far has already been passed on,
+     * whereas encoding a buffered output passed nothing on to the stream. Callers have to discard the written
+     * output if an exception is thrown, e.g. not keep a file written partially.
+     *
+     * @param outputStream
+     *        the stream to write the output to.
+     * @throws IoHandlerException
+     *         if creating or writing the output fails.
+     */
     public void writeBinary(OutputStream outputStream) throws IoHandlerException {
-        try (OutputStream stream = outputStream) {
-            if (parameters.isBase64()) {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                encodeAndWriteTo(processChain.getData(), baos);
-                byte[] data = baos.toByteArray();
-                byte[] encode = Base64.encodeBase64(data);
-                stream.write(encode);
-            } else {
-                encodeAndWriteTo(processChain.getData(), stream);
-            }
+        try (OutputStream stream = createOutputStream(outputStream)) {
+            encodeAndWriteTo(processChain.getData(), stream);
         } catch (IOException e) {
             throw new IoHandlerException("Error handling output stream.", e);
         }
     }
 
+    /**
+     * Wraps the given stream into a streaming Base64 encoder if the output shall be Base64 encoded. Closing
+     * the returned stream writes the final padding and closes the given stream.
+     *
+     * @param outputStream
+     *        the stream to write the output to.
+     * @return the stream handlers shall write the (unencoded) output to.
+     */
+    protected OutputStream createOutputStream(OutputStream outputStream) {
+        return parameters.isBase64()
+                ? Base64.getEncoder()
+                        .wrap(outputStream)
+                : outputStream;
+    }
+
     protected IoParameters getParameters() {
         return parameters;
     }
 
+    protected IoProcessChain<T> getProcessChain() {
+        return processChain;
+    }
+
 }
@@ -30,6 +30,7 @@ package org.n52.io.handler;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -54,6 +55,10 @@ public abstract class IoHandlerFactory<P extends DatasetOutput<V>, V extends Abs
 
     private ParameterService<P> datasetService;
 
+    private ExecutorService zipExecutor;
+
+    private ExecutorService timeSliceExecutor;
+
     public IoHandlerFactory() {
         this.parameters = IoParameters.createDefaults();
     }
@@ -73,6 +78,26 @@ public abstract class IoHandlerFactory<P extends DatasetOutput<V>, V extends Abs
         return this;
     }
 
+    /**
+     * @param zipExecutor
+     *        the worker pool to compress zip entries on (see {@link ParallelZipWriter#createExecutor(int)})
+     * @return this instance
+     */
+    public IoHandlerFactory<P, V> setZipExecutor(ExecutorService zipExecutor) {
+        this.zipExecutor = zipExecutor;
+        return this;
+    }
+
+    /**
+     * @param timeSliceExecutor
+     *        the worker pool to prefetch time slices on (see {@link TimeSliceFetcher#createExecutor(int)})
+     * @return this instance
+     */
+    public IoHandlerFactory<P, V> setTimeSliceExecutor(ExecutorService timeSliceExecutor) {
+        this.timeSliceExecutor = timeSliceExecutor;
+        return this;
+    }
+
     public IoHandler<Data<V>> createHandler(String outputMimeType) {
         Constants.MimeType mimeType = Constants.MimeType.toInstance(outputMimeType);
         if (isCsvOutput(mimeType)) {
@@ -82,6 +107,9 @@ public abstract class IoHandlerFactory<P extends DatasetOutput<V>, V extends Abs
 
             boolean zipOutput = parameters.getAsBoolean(Parameters.ZIP, false);
             handler.setZipOutput(zipOutput || mimeType == Constants.MimeType.APPLICATION_ZIP);
+            handler.setTimeSlicing(this::createProcessChain);
+            handler.setZipExecutor(zipExecutor);
+            handler.setTimeSliceExecutor(timeSliceExecutor);
             return handler;
         }
 
@@ -91,6 +119,18 @@ public abstract class IoHandlerFactory<P extends DatasetOutput<V>, V extends Abs
     }
 
     public IoProcessChain<Data<V>> createProcessChain() {
+        return createProcessChain(parameters);
+    }
+
+    /**
+     * Creates a process chain for the given parameters, e.g. to fetch data for a subset (like a time slice)
+     * of the factory's parameters.
+     *
+     * @param parameters
+     *        the parameters to fetch and process data for
+     * @return a process chain
+     */
+    public IoProcessChain<Data<V>> createProcessChain(IoParameters parameters) {
         return new IoProcessChain<Data<V>>() {
 
             @Override
@@ -101,7 +141,7 @@ public abstract class IoHandlerFactory<P extends DatasetOutput<V>, V extends Abs
             @Override
             public DataCollection< ? > getProcessedData() {
                 return parameters.shallClassifyByResultTimes()
-                        ? new ResultTimeFormatter<Data<V>>().format(getData())
+                        ? new ResultTimeFormatter<Data<V>>(parameters).format(getData())
                         // empty chain
                         : getData();
             }
@@ -147,6 +187,14 @@ public abstract class IoHandlerFactory<P extends DatasetOutput<V>, V extends Abs
         return dataService;
     }
 
+    protected ExecutorService getZipExecutor() {
+        return zipExecutor;
+    }
+
+    protected ExecutorService getTimeSliceExecutor() {
+        return timeSliceExecutor;
+    }
+
     protected boolean isCsvOutput(Constants.MimeType mimeType) {
         return mimeType == Constants.MimeType.TEXT_CSV || mimeType == Constants.MimeType.APPLICATION_ZIP;
     }
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.io.response.dataset.AbstractValue;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.DataCollection;
+import org.n52.series.spi.srv.DataService;
+import org.n52.series.spi.srv.RawDataService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Composes a {@link DataService} to fetch the data of multiple datasets concurrently. Requests for more than
+ * one dataset are split into one request per dataset, which are fetched on a shared executor and merged into
+ * a single {@link DataCollection}. Each request fetches at most {@code maxConcurrency} datasets at a time.
+ * <p>
+ * If fetching a dataset fails or the requesting thread gets interrupted, all outstanding fetches of the
+ * request are cancelled. Client disconnects are not detected as such, so their fetches are cancelled only if
+ * the servlet container interrupts the requesting thread.
+ *
+ * @param <V>
+ *        the value type
+ */
+public class ParallelDataService<V extends AbstractValue< ? >> implements DataService<Data<V>> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelDataService.class);
+
+    private final DataService<Data<V>> composedService;
+
+    private final Executor executor;
+
+    private final int maxConcurrency;
+
+    /**
+     * @param toCompose
+     *        the service to fetch the data of single datasets from
+     * @param executor
+     *        the executor to fetch on, see {@link #createExecutor(int, boolean)}
+     * @param maxConcurrency
+     *        the number of datasets fetched concurrently per request, requests are delegated as is if less than
+     *        <code>2</code>
+     */
+    public ParallelDataService(DataService<Data<V>> toCompose, Executor executor, int maxConcurrency) {
+        this.composedService = toCompose;
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public DataCollection<Data<V>> getData(IoParameters parameters) {
+        Set<String> datasets = parameters.getDatasets();
+        if (maxConcurrency < 2 || datasets.size() < 2) {
+            return composedService.getData(parameters);
+        }
+
+        ExecutorCompletionService<DataCollection<Data<V>>> completion = new ExecutorCompletionService<>(executor);
+        List<Future<DataCollection<Data<V>>>> fetches = new ArrayList<>();
+        Iterator<String> pending = datasets.iterator();
+        try {
+            while (fetches.size() < maxConcurrency && pending.hasNext()) {
+                fetches.add(submit(completion, parameters, pending.next()));
+            }
+            DataCollection<Data<V>> collection = new DataCollection<>();
+            for (int i = 0; i < datasets.size(); i++) {
+                collection.addAll(completion.take()
+                                            .get());
+                if (pending.hasNext()) {
+                    fetches.add(submit(completion, parameters, pending.next()));
+                }
+            }
+            return collection;
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+            LOGGER.debug("Fetching data of {} datasets has been cancelled.", datasets.size());
+            throw new CancellationException("Fetching data has been cancelled.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Could not fetch data.", cause);
+        } finally {
+            for (Future<DataCollection<Data<V>>> fetch : fetches) {
+                fetch.cancel(true);
+            }
+        }
+    }
+
+    private Future<DataCollection<Data<V>>> submit(ExecutorCompletionService<DataCollection<Data<V>>> completion,
+                                                   IoParameters parameters,
+                                                   String datasetId) {
+        IoParameters datasetParameters = parameters.replaceWith(Parameters.DATASETS, datasetId);
+        return completion.submit(() -> composedService.getData(datasetParameters));
+    }
+
+    @Override
+    public boolean supportsRawData() {
+        return composedService.supportsRawData();
+    }
+
+    @Override
+    public RawDataService getRawDataService() {
+        return composedService.getRawDataService();
+    }
+
+    /**
+     * Creates an executor running at most the given number of fetches at a time. Virtual threads are used if
+     * requested and available on the running JVM (Java 21 and later), platform threads otherwise.
+     *
+     * @param threads
+     *        the maximum number of concurrent fetches
+     * @param virtualThreads
+     *        if virtual threads shall be used where available
+     * @return the executor, to be shut down by the caller
+     */
+    public static ExecutorService createExecutor(int threads, boolean virtualThreads) {
+        ExecutorService virtualThreadExecutor = virtualThreads
+                ? createVirtualThreadExecutor()
+                : null;
+        return virtualThreadExecutor != null
+                ? new BoundedExecutorService(virtualThreadExecutor, threads)
+                : Executors.newFixedThreadPool(threads, createThreadFactory("data-fetcher-"));
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            LOGGER.debug("Virtual threads not available, fetching data on platform threads.");
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Could not create virtual thread executor, fetching data on platform threads.", e);
+            return null;
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Starts a (cheap) virtual thread per task, but limits the number of tasks running at a time.
+     */
+    private static final class BoundedExecutorService extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+
+        private final Semaphore permits;
+
+        BoundedExecutorService(ExecutorService delegate, int permits) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(permits);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    // shut down while waiting, complete the task to not block anyone waiting for it
+                    if (command instanceof Future) {
+                        ((Future< ? >) command).cancel(false);
+                    }
+                    Thread.currentThread()
+                          .interrupt();
+                    return;
+                }
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+
+}
@@ -0,0 +1,632 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Assembles a ZIP archive whose entries are encoded and compressed concurrently on a shared, bounded worker
+ * pool (see {@link #createExecutor(int)}). Without a pool, entries are encoded on the calling thread. Each
+ * entry is deflated (or stored) into its own buffer which is kept in memory up to a configurable size and
+ * spilled to a temporary file beyond that. Entries are written to the target stream in the order
+ * they have been added, as soon as they are ready.
+ * <p>
+ * Only a limited window of entries is encoded ahead of the entry being written, so that neither the
+ * worker pool nor memory is occupied by a single request.
+ */
+public class ParallelZipWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelZipWriter.class);
+
+    private static final int DEFAULT_MAX_IN_MEMORY_SIZE = 4 * 1024 * 1024;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int ZIP64_EXTRA_FIELD = 0x0001;
+
+    private static final int VERSION_DEFAULT = 20;
+
+    private static final int VERSION_ZIP64 = 45;
+
+    private static final int FLAG_UTF8_NAMES = 0x0800;
+
+    private static final int METHOD_STORED = 0;
+
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private final List<PendingEntry> entries = new ArrayList<>();
+
+    private final int compressionLevel;
+
+    private final boolean stored;
+
+    private final ExecutorService executor;
+
+    private int parallelism;
+
+    private int maxInMemorySize;
+
+    /**
+     * @param compressionLevel
+     *        the deflate level (0-9 or {@link Deflater#DEFAULT_COMPRESSION}).
+     * @param stored
+     *        if entries shall be stored uncompressed.
+     */
+    public ParallelZipWriter(int compressionLevel, boolean stored) {
+        this(compressionLevel, stored, null);
+    }
+
+    /**
+     * @param compressionLevel
+     *        the deflate level (0-9 or {@link Deflater#DEFAULT_COMPRESSION}).
+     * @param stored
+     *        if entries shall be stored uncompressed.
+     * @param executor
+     *        the worker pool to encode entries on, or <code>null</code> to encode on the calling thread.
+     */
+    public ParallelZipWriter(int compressionLevel, boolean stored, ExecutorService executor) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        this.stored = stored;
+        this.executor = executor;
+        this.parallelism = Runtime.getRuntime()
+                                  .availableProcessors();
+        this.maxInMemorySize = DEFAULT_MAX_IN_MEMORY_SIZE;
+    }
+
+    /**
+     * Creates a worker pool to be shared by all writers. The pool is owned by the caller, who has to shut it
+     * down.
+     *
+     * @param threads
+     *        the number of worker threads
+     * @return a fixed size pool of daemon threads
+     */
+    public static ExecutorService createExecutor(int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "zip-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param parallelism
+     *        the number of entries encoded concurrently for this archive (ignored without worker pool).
+     * @return this instance
+     */
+    public ParallelZipWriter setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * @param maxInMemorySize
+     *        the size in bytes up to which an encoded entry is buffered in memory before it is spilled to a
+     *        temporary file.
+     * @return this instance
+     */
+    public ParallelZipWriter setMaxInMemorySize(int maxInMemorySize) {
+        this.maxInMemorySize = Math.max(0, maxInMemorySize);
+        return this;
+    }
+
+    public ParallelZipWriter addEntry(String name, EntryContent content) {
+        entries.add(new PendingEntry(name, content));
+        return this;
+    }
+
+    /**
+     * Encodes all entries and writes the complete archive to the given stream. The stream is not closed.
+     *
+     * @param stream
+     *        the target stream
+     * @throws IOException
+     *         if encoding an entry or writing to the stream fails
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        BufferedOutputStream bos = new BufferedOutputStream(stream, 64 * 1024);
+        ZipStream zip = new ZipStream(bos);
+        Deque<Future<EncodedEntry>> window = new ArrayDeque<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        int windowSize = executor != null
+                ? parallelism
+                : 1;
+        int next = 0;
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                while (next < entries.size() && (next - i) < windowSize) {
+                    PendingEntry pending = entries.get(next++);
+                    window.add(submit(() -> aborted.get()
+                            ? null
+                            : encode(pending)));
+                }
+                try (EncodedEntry entry = await(window.poll())) {
+                    zip.writeEntry(entry);
+                }
+            }
+            zip.finish();
+            bos.flush();
+        } finally {
+            aborted.set(true);
+            discard(window);
+        }
+    }
+
+    private Future<EncodedEntry> submit(Callable<EncodedEntry> task) {
+        if (executor != null) {
+            return executor.submit(task);
+        }
+        FutureTask<EncodedEntry> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
+
+    private EncodedEntry encode(PendingEntry pending) throws IOException {
+        EntryBuffer buffer = new EntryBuffer(maxInMemorySize);
+        Deflater deflater = stored
+                ? null
+                : new Deflater(compressionLevel, true);
+        try {
+            OutputStream target = stored
+                    ? buffer
+                    : new DeflaterOutputStream(buffer, deflater, 8192);
+            EntryOutputStream out = new EntryOutputStream(target);
+            try (OutputStream entryStream = out) {
+                pending.content.writeTo(entryStream);
+            }
+            return new EncodedEntry(pending.name, out.getCrc(), out.getSize(), buffer);
+        } catch (IOException | RuntimeException e) {
+            buffer.dispose();
+            throw e;
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private EncodedEntry await(Future<EncodedEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for zip entry.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Could not encode zip entry.", cause);
+        }
+    }
+
+    private void discard(Deque<Future<EncodedEntry>> window) {
+        // wait for entries already in progress to release their buffers
+        for (Future<EncodedEntry> future : window) {
+            try {
+                EncodedEntry entry = future.get();
+                if (entry != null) {
+                    entry.close();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread()
+                      .interrupt();
+                return;
+            } catch (ExecutionException e) {
+                LOGGER.trace("Discarded zip entry failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Writes the (uncompressed) content of a single ZIP entry.
+     */
+    @FunctionalInterface
+    public interface EntryContent {
+
+        void writeTo(OutputStream stream) throws IOException;
+    }
+
+    private static final class PendingEntry {
+
+        private final String name;
+
+        private final EntryContent content;
+
+        PendingEntry(String name, EntryContent content) {
+            this.name = name;
+            this.content = content;
+        }
+    }
+
+    private final class EncodedEntry implements AutoCloseable {
+
+        private final byte[] name;
+
+        private final long crc;
+
+        private final long size;
+
+        private final EntryBuffer data;
+
+        private long offset;
+
+        EncodedEntry(String name, long crc, long size, EntryBuffer data) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+        }
+
+        long getCompressedSize() {
+            return data.size();
+        }
+
+        int getMethod() {
+            return stored
+                    ? METHOD_STORED
+                    : METHOD_DEFLATED;
+        }
+
+        boolean isZip64() {
+            return size >= ZIP64_MAGIC || getCompressedSize() >= ZIP64_MAGIC;
+        }
+
+        @Override
+        public void close() {
+            data.dispose();
+        }
+    }
+
+    /**
+     * Computes CRC and uncompressed size of the entry content.
+     */
+    private static final class EntryOutputStream extends FilterOutputStream {
+
+        private final CRC32 crc = new CRC32();
+
+        private long size;
+
+        EntryOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+            size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            crc.update(b, off, len);
+            size += len;
+        }
+
+        long getCrc() {
+            return crc.getValue();
+        }
+
+        long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * Buffers in memory up to a threshold and spills to a temporary file beyond.
+     */
+    private static final class EntryBuffer extends OutputStream {
+
+        private final int maxInMemorySize;
+
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+        private Path file;
+
+        private OutputStream fileStream;
+
+        private long size;
+
+        EntryBuffer(int maxInMemorySize) {
+            this.maxInMemorySize = maxInMemorySize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {
+                (byte) b
+            }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (fileStream == null && size + len > maxInMemorySize) {
+                spill();
+            }
+            if (fileStream != null) {
+                fileStream.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+            size += len;
+        }
+
+        private void spill() throws IOException {
+            file = Files.createTempFile("zip-entry-", ".tmp");
+            fileStream = Files.newOutputStream(file);
+            memory.writeTo(fileStream);
+            memory = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileStream != null) {
+                fileStream.close();
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        void writeTo(OutputStream stream) throws IOException {
+            if (file != null) {
+                Files.copy(file, stream);
+            } else {
+                memory.writeTo(stream);
+            }
+        }
+
+        void dispose() {
+            memory = null;
+            if (file != null) {
+                try {
+                    if (fileStream != null) {
+                        fileStream.close();
+                    }
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    LOGGER.warn("Could not delete temporary file '{}'.", file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes ZIP structures (incl. ZIP64 extensions if needed) in little endian order.
+     */
+    private final class ZipStream {
+
+        private final OutputStream out;
+
+        private final List<EncodedEntry> written = new ArrayList<>();
+
+        private final int dosTime;
+
+        private final int dosDate;
+
+        private long position;
+
+        ZipStream(OutputStream out) {
+            this.out = out;
+            LocalDateTime now = LocalDateTime.now();
+            this.dosTime = now.getHour() << 11 | now.getMinute() << 5 | now.getSecond() >> 1;
+            this.dosDate = (now.getYear() - 1980) << 9 | now.getMonthValue() << 5 | now.getDayOfMonth();
+        }
+
+        void writeEntry(EncodedEntry entry) throws IOException {
+            entry.offset = position;
+            boolean zip64 = entry.isZip64();
+            writeInt(LOCAL_HEADER_SIGNATURE);
+            writeShort(zip64
+                    ? VERSION_ZIP64
+                    : VERSION_DEFAULT);
+            writeShort(FLAG_UTF8_NAMES);
+            writeShort(entry.getMethod());
+            writeShort(dosTime);
+            writeShort(dosDate);
+            writeInt(entry.crc);
+            writeInt(zip64
+                    ? ZIP64_MAGIC
+                    : entry.getCompressedSize());
+            writeInt(zip64
+                    ? ZIP64_MAGIC
+                    : entry.size);
+            writeShort(entry.name.length);
+            writeShort(zip64
+                    ? 20
+                    : 0);
+            writeBytes(entry.name);
+            if (zip64) {
+                writeShort(ZIP64_EXTRA_FIELD);
+                writeShort(16);
+                writeLong(entry.size);
+                writeLong(entry.getCompressedSize());
+            }
+            entry.data.writeTo(out);
+            position += entry.getCompressedSize();
+            written.add(entry);
+        }
+
+        void finish() throws IOException {
+            long centralDirectoryOffset = position;
+            for (EncodedEntry entry : written) {
+                writeCentralDirectoryHeader(entry);
+            }
+            long centralDirectorySize = position - centralDirectoryOffset;
+            int count = written.size();
+            if (count >= ZIP64_MAGIC_COUNT
+                    || centralDirectoryOffset >= ZIP64_MAGIC
+                    || centralDirectorySize >= ZIP64_MAGIC) {
+                long zip64EndOffset = position;
+                writeInt(ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+                writeLong(44);
+                writeShort(VERSION_ZIP64);
+                writeShort(VERSION_ZIP64);
+                writeInt(0);
+                writeInt(0);
+                writeLong(count);
+                writeLong(count);
+                writeLong(centralDirectorySize);
+                writeLong(centralDirectoryOffset);
+
+                writeInt(ZIP64_LOCATOR_SIGNATURE);
+                writeInt(0);
+                writeLong(zip64EndOffset);
+                writeInt(1);
+            }
+            writeInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            writeShort(0);
+            writeShort(0);
+            writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+            writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+            writeInt(Math.min(centralDirectorySize, ZIP64_MAGIC));
+            writeInt(Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+            writeShort(0);
+        }
+
+        private void writeCentralDirectoryHeader(EncodedEntry entry) throws IOException {
+            boolean zip64 = entry.isZip64() || entry.offset >= ZIP64_MAGIC;
+            int version = zip64
+                    ? VERSION_ZIP64
+                    : VERSION_DEFAULT;
+            writeInt(CENTRAL_HEADER_SIGNATURE);
+            writeShort(version);
+            writeShort(version);
+            writeShort(FLAG_UTF8_NAMES);
+            writeShort(entry.getMethod());
+            writeShort(dosTime);
+            writeShort(dosDate);
+            writeInt(entry.crc);
+            writeInt(zip64
+                    ? ZIP64_MAGIC
+                    : entry.getCompressedSize());
+            writeInt(zip64
+                    ? ZIP64_MAGIC
+                    : entry.size);
+            writeShort(entry.name.length);
+            writeShort(zip64
+                    ? 28
+                    : 0);
+            // comment length, disk number, internal and external attributes
+            writeShort(0);
+            writeShort(0);
+            writeShort(0);
+            writeInt(0);
+            writeInt(zip64
+                    ? ZIP64_MAGIC
+                    : entry.offset);
+            writeBytes(entry.name);
+            if (zip64) {
+                writeShort(ZIP64_EXTRA_FIELD);
+                writeShort(24);
+                writeLong(entry.size);
+                writeLong(entry.getCompressedSize());
+                writeLong(entry.offset);
+            }
+        }
+
+        private void writeShort(int value) throws IOException {
+            out.write(value & 0xFF);
+            out.write((value >>> 8) & 0xFF);
+            position += 2;
+        }
+
+        private void writeInt(long value) throws IOException {
+            writeShort((int) (value & 0xFFFF));
+            writeShort((int) ((value >>> 16) & 0xFFFF));
+        }
+
+        private void writeLong(long value) throws IOException {
+            writeInt(value & ZIP64_MAGIC);
+            writeInt(value >>> 32);
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            out.write(bytes);
+            position += bytes.length;
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+import org.joda.time.DateTime;
+import org.n52.io.response.TimeOutput;
+import org.n52.io.response.dataset.AbstractValue;
+
+/**
+ * Drops the values of consecutive time slices which have already been written as part of the previous
+ * slice. Slices are inclusive at both bounds, so values at the end of one slice are fetched again at the
+ * start of the next one. Only values equal to an already written value are dropped, other values sharing
+ * the boundary timestamp are kept.
+ *
+ * @param <T>
+ *        the value type
+ */
+final class TimeSliceBoundary<T extends AbstractValue< ? >> {
+
+    private final List<T> lastValues = new ArrayList<>();
+
+    private long lastTime = Long.MIN_VALUE;
+
+    /**
+     * @param values
+     *        the values of the next slice in temporal order
+     * @return the values not written yet
+     */
+    List<T> filter(List<T> values) {
+        List<T> written = new ArrayList<>(lastValues);
+        List<T> newValues = new ArrayList<>(values.size());
+        for (T value : values) {
+            long time = getTimestamp(value);
+            if (time > lastTime || time == lastTime && !removeEqual(written, value)) {
+                newValues.add(value);
+            }
+        }
+        remember(newValues);
+        return newValues;
+    }
+
+    private void remember(List<T> newValues) {
+        if (newValues.isEmpty()) {
+            return;
+        }
+        long time = getTimestamp(newValues.get(newValues.size() - 1));
+        if (time > lastTime) {
+            lastValues.clear();
+            lastTime = time;
+        }
+        for (T value : newValues) {
+            if (getTimestamp(value) == lastTime) {
+                lastValues.add(value);
+            }
+        }
+    }
+
+    private boolean removeEqual(List<T> written, T value) {
+        Iterator<T> iterator = written.iterator();
+        while (iterator.hasNext()) {
+            if (isEqual(iterator.next(), value)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEqual(AbstractValue< ? > a, AbstractValue< ? > b) {
+        return getMillis(a.getTimestart()) == getMillis(b.getTimestart())
+                && getMillis(a.getResultTime()) == getMillis(b.getResultTime())
+                && Objects.equals(a.getValue(), b.getValue());
+    }
+
+    static long getTimestamp(AbstractValue< ? > value) {
+        return getMillis(value.getTimestamp());
+    }
+
+    private static long getMillis(TimeOutput time) {
+        Long millis = time != null
+                ? time.getMillis()
+                : null;
+        return millis != null
+                ? millis
+                : Long.MIN_VALUE;
+    }
+
+    private static long getMillis(DateTime time) {
+        return time != null
+                ? time.getMillis()
+                : Long.MIN_VALUE;
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.joda.time.Period;
+import org.n52.io.IntervalWithTimeZone;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.io.response.dataset.DataCollection;
+
+/**
+ * Fetches data slice by slice, where each slice covers a part of the requested timespan. Up to
+ * {@code prefetch} slices are fetched ahead on a shared worker pool (see {@link #createExecutor(int)}) while
+ * the current slice is being processed, so fetching and encoding overlap while only a bounded number of
+ * slices are held in memory. Without a pool, each slice is fetched on the calling thread when requested.
+ *
+ * @param <T>
+ *        the data type
+ */
+public class TimeSliceFetcher<T> implements AutoCloseable {
+
+    private final Iterator<IoParameters> slices;
+
+    private final Function<IoParameters, DataCollection<T>> fetcher;
+
+    private final Deque<Future<DataCollection<T>>> pending;
+
+    private final ExecutorService executor;
+
+    private final int prefetch;
+
+    /**
+     * @param slices
+     *        the parameters of each slice in temporal order
+     * @param fetcher
+     *        fetches the data of a single slice
+     * @param prefetch
+     *        the number of slices to fetch ahead
+     * @param executor
+     *        the worker pool to fetch slices on, or <code>null</code> to fetch them on the calling thread
+     */
+    public TimeSliceFetcher(List<IoParameters> slices, Function<IoParameters, DataCollection<T>> fetcher,
+                            int prefetch, ExecutorService executor) {
+        this.slices = slices.iterator();
+        this.fetcher = fetcher;
+        this.executor = executor;
+        this.prefetch = executor != null
+                ? Math.max(0, prefetch)
+                : 0;
+        this.pending = new ArrayDeque<>();
+    }
+
+    /**
+     * Creates a worker pool to be shared by all fetchers. The pool is owned by the caller, who has to shut
+     * it down.
+     *
+     * @param threads
+     *        the number of worker threads
+     * @return a fixed size pool of daemon threads
+     */
+    public static ExecutorService createExecutor(int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "slice-fetcher-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Splits the timespan of the given parameters into consecutive slices of the given length. The slices
+     * are aligned to the start of the requested timespan and keep its timezone.
+     *
+     * @param parameters
+     *        the parameters containing the whole timespan
+     * @param sliceLength
+     *        the length of each slice
+     * @return a list of parameters, each replacing {@link Parameters#TIMESPAN} with a single slice
+     */
+    public static List<IoParameters> createTimeSlices(IoParameters parameters, Period sliceLength) {
+        IntervalWithTimeZone timespan = parameters.getTimespan();
+        DateTimeZone zone = timespan.getTimezone();
+        Interval interval = timespan.toInterval();
+        DateTime end = interval.getEnd()
+                               .withZone(zone);
+        DateTime sliceStart = interval.getStart()
+                                      .withZone(zone);
+
+        List<IoParameters> slices = new ArrayList<>();
+        do {
+            DateTime sliceEnd = sliceStart.plus(sliceLength);
+            if (!sliceEnd.isAfter(sliceStart) || sliceEnd.isAfter(end)) {
+                sliceEnd = end;
+            }
+            IntervalWithTimeZone slice = IoParameters.createTimespan(sliceStart, sliceEnd);
+            slices.add(parameters.replaceWith(Parameters.TIMESPAN, slice.toString()));
+            sliceStart = sliceEnd;
+        } while (sliceStart.isBefore(end));
+        return slices;
+    }
+
+    public boolean hasNext() {
+        return !pending.isEmpty() || slices.hasNext();
+    }
+
+    /**
+     * @return the data of the next slice
+     * @throws IOException
+     *         if fetching has been interrupted or failed with a checked exception
+     */
+    public DataCollection<T> next() throws IOException {
+        if (pending.isEmpty() && slices.hasNext()) {
+            submitNextSlice();
+        }
+        Future<DataCollection<T>> next = pending.poll();
+        if (next == null) {
+            throw new IllegalStateException("No more time slices available.");
+        }
+        // keep fetching while the caller processes the current slice
+        while (pending.size() < prefetch && slices.hasNext()) {
+            submitNextSlice();
+        }
+        return await(next);
+    }
+
+    private void submitNextSlice() {
+        IoParameters slice = slices.next();
+        Callable<DataCollection<T>> task = () -> fetcher.apply(slice);
+        if (executor != null) {
+            pending.add(executor.submit(task));
+        } else {
+            FutureTask<DataCollection<T>> future = new FutureTask<>(task);
+            future.run();
+            pending.add(future);
+        }
+    }
+
+    private DataCollection<T> await(Future<DataCollection<T>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+            throw new InterruptedIOException("Interrupted while fetching time slice.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Could not fetch time slice.", cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Future<DataCollection<T>> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+}
@@ -36,6 +36,7 @@ import java.util.List;
 import org.locationtech.jts.geom.Geometry;
 import org.n52.io.IoParseException;
 import org.n52.io.handler.CsvIoHandler;
+import org.n52.io.handler.CsvWriter;
 import org.n52.io.handler.IoProcessChain;
 import org.n52.io.request.IoParameters;
 import org.n52.io.response.FeatureOutput;
@@ -75,8 +76,10 @@ public class ProfileCsvIoHandler extends CsvIoHandler<ProfileValue< ? >> {
                 List<DatasetOutput<ProfileValue< ? >>> metadatas = getMetadatas();
                 DatasetOutput<ProfileValue< ? >> dataset = metadatas.get(0);
 
-                writeHeader(dataset, stream);
-                writeData(dataset, data.getSeries(dataset.getId()), stream);
+                try (CsvWriter writer = createWriter(stream)) {
+                    writeHeader(dataset, writer);
+                    writeData(dataset, data.getSeries(dataset.getId()), writer);
+                }
             } else {
                 writeText("nodata", stream);
             }
@@ -142,31 +145,36 @@ public class ProfileCsvIoHandler extends CsvIoHandler<ProfileValue< ? >> {
     @Override
     protected void writeData(DatasetOutput<ProfileValue< ? >> metadata,
                              Data<ProfileValue< ? >> series,
-                             OutputStream stream)
+                             CsvWriter writer)
             throws IOException {
+        boolean trajectory = isTrajectory(metadata);
         for (ProfileValue< ? > profile : series.getValues()) {
+            // time and geometry are the same for all items of a profile
+            String geometry = trajectory
+                    ? profile.getGeometry()
+                             .toString()
+                    : null;
+            String time = parseTime(profile);
             for (ProfileDataItem< ? > value : profile.getValue()) {
-                String[] row = new String[getHeader(metadata).length];
                 // metaHeader leaves first column empty
-                row[0] = isTrajectory(metadata)
-                        ? profile.getGeometry()
-                                 .toString()
-                        : "";
-                row[1] = parseTime(profile);
-                row[2] = formatVertical(value);
-                row[3] = value.getFormattedValue();
-                writeText(csvEncode(row), stream);
+                writer.writeField(geometry);
+                writer.writeField(time);
+                writer.writeField(formatVertical(value, writer.fieldBuffer()));
+                writer.writeField(value.getFormattedValue());
+                writer.endRow();
             }
         }
     }
 
-    private String formatVertical(ProfileDataItem< ? > value) {
+    private StringBuilder formatVertical(ProfileDataItem< ? > value, StringBuilder builder) {
         BigDecimal vertical = value.getVertical();
         BigDecimal verticalFrom = value.getVerticalFrom();
         BigDecimal verticalTo = value.getVerticalTo();
         return vertical != null
-                ? vertical.toString()
-                : verticalFrom.toString() + "-" + verticalTo.toString();
+                ? builder.append(vertical.toString())
+                : builder.append(verticalFrom.toString())
+                         .append('-')
+                         .append(verticalTo.toString());
     }
 
     @Override
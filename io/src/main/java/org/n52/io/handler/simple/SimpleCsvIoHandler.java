@@ -29,13 +29,13 @@
 package org.n52.io.handler.simple;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.locationtech.jts.geom.Geometry;
 import org.n52.io.handler.CsvIoHandler;
+import org.n52.io.handler.CsvWriter;
 import org.n52.io.handler.IoProcessChain;
 import org.n52.io.request.IoParameters;
 import org.n52.io.response.FeatureOutput;
@@ -115,17 +115,17 @@ public class SimpleCsvIoHandler<T extends AbstractValue< ? >> extends CsvIoHandl
     }
 
     @Override
-    protected void writeData(DatasetOutput<T> metadata, Data<T> series, OutputStream stream)
+    protected void writeData(DatasetOutput<T> metadata, Data<T> series, CsvWriter writer)
             throws IOException {
-        int columnSize = getHeader(metadata).length;
-        String[] row = new String[columnSize];
+        boolean trajectory = isTrajectory(metadata);
         for (T value : series.getValues()) {
-            row[0] = isTrajectory(metadata)
+            // metaHeader leaves first column empty
+            writer.writeField(trajectory
                     ? value.getGeometry().toString()
-                    : "";
-            row[1] = parseTime(value);
-            row[2] = value.getFormattedValue();
-            writeText(csvEncode(row), stream);
+                    : null);
+            writer.writeField(appendTime(value, writer.fieldBuffer()));
+            writer.writeField(value.getFormattedValue());
+            writer.endRow();
         }
     }
 
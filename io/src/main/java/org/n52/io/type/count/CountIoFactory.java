@@ -31,6 +31,7 @@ package org.n52.io.type.count;
 
 import org.n52.io.handler.IoHandlerFactory;
 import org.n52.io.handler.IoProcessChain;
+import org.n52.io.request.IoParameters;
 import org.n52.io.response.dataset.Data;
 import org.n52.io.response.dataset.count.CountDatasetOutput;
 import org.n52.io.response.dataset.count.CountValue;
@@ -38,7 +39,7 @@ import org.n52.io.response.dataset.count.CountValue;
 public class CountIoFactory extends IoHandlerFactory<CountDatasetOutput, CountValue> {
 
     @Override
-    public IoProcessChain<Data<CountValue>> createProcessChain() {
-        return new CountIoProcessChain(getDataService(), getParameters());
+    public IoProcessChain<Data<CountValue>> createProcessChain(IoParameters parameters) {
+        return new CountIoProcessChain(getDataService(), parameters);
     }
 }
@@ -63,7 +63,7 @@ final class CountIoProcessChain implements IoProcessChain<Data<CountValue>> {
     }
 
     private DataCollection<ResultTimeClassifiedData<AbstractValue< ? >>> formatAccordingToResultTimes() {
-        return new ResultTimeFormatter<Data<CountValue>>().format(getData());
+        return new ResultTimeFormatter<Data<CountValue>>(parameters).format(getData());
     }
 
     private DataCollection< ? > formatValueOutputs() {
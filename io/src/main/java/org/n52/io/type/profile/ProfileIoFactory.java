@@ -66,7 +66,7 @@ public class ProfileIoFactory extends IoHandlerFactory<ProfileDatasetOutput, Pro
 
             boolean zipOutput = parameters.getAsBoolean(Parameters.ZIP, false);
             handler.setZipOutput(zipOutput || mimeType == Constants.MimeType.APPLICATION_ZIP);
-
+            handler.setZipExecutor(getZipExecutor());
             return handler;
         }
 
@@ -64,8 +64,8 @@ public final class QuantityIoFactory extends IoHandlerFactory<QuantityDatasetOut
     }
 
     @Override
-    public IoProcessChain<Data<QuantityValue>> createProcessChain() {
-        return new QuantityIoProcessChain(getDataService(), getParameters());
+    public IoProcessChain<Data<QuantityValue>> createProcessChain(IoParameters parameters) {
+        return new QuantityIoProcessChain(getDataService(), parameters);
     }
 
     @Override
@@ -84,6 +84,9 @@ public final class QuantityIoFactory extends IoHandlerFactory<QuantityDatasetOut
 
             boolean zipOutput = parameters.getAsBoolean(Parameters.ZIP, false);
             handler.setZipOutput(zipOutput || mimeType == Constants.MimeType.APPLICATION_ZIP);
+            handler.setTimeSlicing(this::createProcessChain);
+            handler.setZipExecutor(getZipExecutor());
+            handler.setTimeSliceExecutor(getTimeSliceExecutor());
             return handler;
         }
 
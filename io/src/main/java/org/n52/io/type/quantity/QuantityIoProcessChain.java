@@ -68,7 +68,7 @@ final class QuantityIoProcessChain implements IoProcessChain<Data<QuantityValue>
     }
 
     private DataCollection<ResultTimeClassifiedData<AbstractValue< ? >>> formatAccordingToResultTimes() {
-        return new ResultTimeFormatter<Data<QuantityValue>>().format(getData());
+        return new ResultTimeFormatter<Data<QuantityValue>>(parameters).format(getData());
     }
 
     private DataCollection< ? > formatValueOutputs() {
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.aggregate;
+
+import java.util.Arrays;
+
+/**
+ * Aggregated values per calendar bucket, backed by primitive columns.
+ */
+public final class AggregatedBuckets {
+
+    private final long[] starts;
+
+    private final long[] ends;
+
+    private final double[] sums;
+
+    private final double[] mins;
+
+    private final double[] maxs;
+
+    private final int[] counts;
+
+    private int size;
+
+    AggregatedBuckets(long[] boundaries, int size) {
+        this.size = size;
+        this.starts = Arrays.copyOf(boundaries, size);
+        this.ends = Arrays.copyOfRange(boundaries, 1, size + 1);
+        this.sums = new double[size];
+        this.mins = new double[size];
+        this.maxs = new double[size];
+        this.counts = new int[size];
+    }
+
+    void add(int bucket, double value) {
+        if (counts[bucket] == 0) {
+            mins[bucket] = value;
+            maxs[bucket] = value;
+        } else {
+            mins[bucket] = Math.min(mins[bucket], value);
+            maxs[bucket] = Math.max(maxs[bucket], value);
+        }
+        sums[bucket] += value;
+        counts[bucket]++;
+    }
+
+    /**
+     * Removes empty buckets.
+     */
+    AggregatedBuckets compact() {
+        int target = 0;
+        for (int i = 0; i < size; i++) {
+            if (counts[i] > 0) {
+                starts[target] = starts[i];
+                ends[target] = ends[i];
+                sums[target] = sums[i];
+                mins[target] = mins[i];
+                maxs[target] = maxs[i];
+                counts[target] = counts[i];
+                target++;
+            }
+        }
+        size = target;
+        return this;
+    }
+
+    /**
+     * @return the number of (non-empty) buckets
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param bucket
+     *        the bucket index
+     * @return the start of the bucket (inclusive)
+     */
+    public long getStart(int bucket) {
+        checkIndex(bucket);
+        return starts[bucket];
+    }
+
+    /**
+     * @param bucket
+     *        the bucket index
+     * @return the end of the bucket (exclusive)
+     */
+    public long getEnd(int bucket) {
+        checkIndex(bucket);
+        return ends[bucket];
+    }
+
+    public double getSum(int bucket) {
+        checkIndex(bucket);
+        return sums[bucket];
+    }
+
+    public double getAverage(int bucket) {
+        checkIndex(bucket);
+        return sums[bucket] / counts[bucket];
+    }
+
+    public double getMin(int bucket) {
+        checkIndex(bucket);
+        return mins[bucket];
+    }
+
+    public double getMax(int bucket) {
+        checkIndex(bucket);
+        return maxs[bucket];
+    }
+
+    public int getCount(int bucket) {
+        checkIndex(bucket);
+        return counts[bucket];
+    }
+
+    public double getValue(int bucket, Aggregation aggregation) {
+        switch (aggregation) {
+            case SUM:
+                return getSum(bucket);
+            case AVG:
+                return getAverage(bucket);
+            case MIN:
+                return getMin(bucket);
+            case MAX:
+                return getMax(bucket);
+            case COUNT:
+                return getCount(bucket);
+            default:
+                throw new IllegalArgumentException("Unsupported aggregation: " + aggregation);
+        }
+    }
+
+    private void checkIndex(int bucket) {
+        if (bucket < 0 || bucket >= size) {
+            throw new IndexOutOfBoundsException("Bucket " + bucket + " not in [0, " + size + ")");
+        }
+    }
+
+}
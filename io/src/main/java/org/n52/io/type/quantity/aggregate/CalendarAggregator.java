@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.aggregate;
+
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Aggregates values per calendar bucket in a single pass. Bucket boundaries are precomputed in the given
+ * time zone for the whole range of values, so that assigning a value to its bucket is a comparison of
+ * primitive longs. Missing values (<code>NaN</code>) are not counted.
+ */
+public final class CalendarAggregator {
+
+    private final CalendarInterval interval;
+
+    private final DateTimeZone zone;
+
+    public CalendarAggregator(CalendarInterval interval, DateTimeZone zone) {
+        this.interval = interval;
+        this.zone = zone;
+    }
+
+    public AggregatedBuckets aggregate(QuantityColumns columns) {
+        return aggregate(columns.getTimes(), columns.getValues(), columns.size());
+    }
+
+    /**
+     * @param times
+     *        the times in ascending order
+     * @param values
+     *        the values
+     * @param size
+     *        the number of valid entries in both columns
+     * @return sum, avg, min, max and count of all non-empty buckets in ascending order
+     */
+    public AggregatedBuckets aggregate(long[] times, double[] values, int size) {
+        if (size == 0) {
+            return new AggregatedBuckets(new long[1], 0);
+        }
+        long[] boundaries = createBoundaries(times[0], times[size - 1]);
+        AggregatedBuckets buckets = new AggregatedBuckets(boundaries, boundaries.length - 1);
+        int bucket = 0;
+        for (int i = 0; i < size; i++) {
+            long time = times[i];
+            while (time >= boundaries[bucket + 1]) {
+                bucket++;
+            }
+            double value = values[i];
+            if (!Double.isNaN(value)) {
+                buckets.add(bucket, value);
+            }
+        }
+        return buckets.compact();
+    }
+
+    private long[] createBoundaries(long first, long last) {
+        DateTime start = interval.floor(new DateTime(first, zone));
+        long[] boundaries = new long[16];
+        int count = 0;
+        boundaries[count++] = start.getMillis();
+        do {
+            start = interval.next(start);
+            if (count == boundaries.length) {
+                boundaries = Arrays.copyOf(boundaries, count * 2);
+            }
+            boundaries[count++] = start.getMillis();
+        } while (start.getMillis() <= last);
+        return Arrays.copyOf(boundaries, count);
+    }
+
+}
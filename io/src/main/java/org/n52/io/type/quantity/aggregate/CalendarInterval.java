@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.aggregate;
+
+import org.joda.time.DateTime;
+import org.n52.io.style.Style;
+
+/**
+ * Calendar intervals values can be aggregated by. Bucket boundaries are computed in the time zone of the
+ * passed times, so that days and months follow the requested output time zone (incl. daylight saving
+ * changes). Weeks start on Monday (ISO-8601).
+ */
+public enum CalendarInterval {
+
+    HOUR {
+        @Override
+        DateTime floor(DateTime time) {
+            return time.hourOfDay()
+                       .roundFloorCopy();
+        }
+
+        @Override
+        DateTime next(DateTime start) {
+            return start.plusHours(1);
+        }
+    },
+
+    DAY {
+        @Override
+        DateTime floor(DateTime time) {
+            return time.withTimeAtStartOfDay();
+        }
+
+        @Override
+        DateTime next(DateTime start) {
+            return start.plusDays(1)
+                        .withTimeAtStartOfDay();
+        }
+    },
+
+    WEEK {
+        @Override
+        DateTime floor(DateTime time) {
+            return time.withDayOfWeek(1)
+                       .withTimeAtStartOfDay();
+        }
+
+        @Override
+        DateTime next(DateTime start) {
+            return start.plusWeeks(1)
+                        .withTimeAtStartOfDay();
+        }
+    },
+
+    MONTH {
+        @Override
+        DateTime floor(DateTime time) {
+            return time.withDayOfMonth(1)
+                       .withTimeAtStartOfDay();
+        }
+
+        @Override
+        DateTime next(DateTime start) {
+            return start.plusMonths(1)
+                        .withTimeAtStartOfDay();
+        }
+    };
+
+    /**
+     * @param time
+     *        a time
+     * @return the start of the bucket containing the given time
+     */
+    abstract DateTime floor(DateTime time);
+
+    /**
+     * @param start
+     *        the start of a bucket
+     * @return the start of the following bucket
+     */
+    abstract DateTime next(DateTime start);
+
+    /**
+     * @param interval
+     *        the value of the {@value Style#PARAMETER_INTERVAL} style property (may be <code>null</code>)
+     * @return the matching interval, {@link #WEEK} by default
+     */
+    public static CalendarInterval fromStyleInterval(String interval) {
+        if (Style.VALUE_INTERVAL_BY_HOUR.equals(interval)) {
+            return HOUR;
+        } else if (Style.VALUE_INTERVAL_BY_DAY.equals(interval)) {
+            return DAY;
+        } else if (Style.VALUE_INTERVAL_BY_MONTH.equals(interval)) {
+            return MONTH;
+        }
+        return WEEK;
+    }
+
+}
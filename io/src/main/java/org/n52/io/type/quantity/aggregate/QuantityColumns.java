@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.aggregate;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.quantity.QuantityValue;
+
+/**
+ * Primitive time and value columns of a quantity series, sorted by time. Missing values are kept as
+ * {@link Double#NaN}.
+ */
+public final class QuantityColumns {
+
+    private final long[] times;
+
+    private final double[] values;
+
+    private final int size;
+
+    public QuantityColumns(long[] times, double[] values, int size) {
+        if (times.length < size || values.length < size) {
+            throw new IllegalArgumentException("columns must contain at least " + size + " entries.");
+        }
+        this.times = times;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Creates columns from the values of the given series. Values are sorted by time if necessary.
+     *
+     * @param data
+     *        the series data
+     * @return the series' time and value columns
+     */
+    public static QuantityColumns of(Data<QuantityValue> data) {
+        List<QuantityValue> items = data.getValues();
+        int size = items.size();
+        long[] times = new long[size];
+        double[] values = new double[size];
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            QuantityValue item = items.get(i);
+            times[i] = item.getTimestamp()
+                           .getMillis();
+            BigDecimal value = item.getValue();
+            values[i] = value != null
+                    ? value.doubleValue()
+                    : Double.NaN;
+            sorted &= i == 0 || times[i - 1] <= times[i];
+        }
+        return sorted
+                ? new QuantityColumns(times, values, size)
+                : sort(times, values);
+    }
+
+    private static QuantityColumns sort(long[] times, double[] values) {
+        Integer[] order = new Integer[times.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // stable sort keeps order of values with equal times
+        Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+        long[] sortedTimes = new long[times.length];
+        double[] sortedValues = new double[values.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedTimes[i] = times[order[i]];
+            sortedValues[i] = values[order[i]];
+        }
+        return new QuantityColumns(sortedTimes, sortedValues, times.length);
+    }
+
+    /**
+     * @return the times in ascending order. Only the first {@link #size()} entries are valid.
+     */
+    public long[] getTimes() {
+        return times;
+    }
+
+    /**
+     * @return the values. Only the first {@link #size()} entries are valid.
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    public int size() {
+        return size;
+    }
+
+}
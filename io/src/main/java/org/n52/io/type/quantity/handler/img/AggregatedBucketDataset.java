@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.handler.img;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractIntervalXYDataset;
+import org.n52.io.type.quantity.aggregate.AggregatedBuckets;
+import org.n52.io.type.quantity.aggregate.Aggregation;
+
+/**
+ * A single series {@link org.jfree.data.xy.IntervalXYDataset} of aggregated calendar buckets, e.g. to be
+ * rendered as bars spanning each bucket.
+ */
+public class AggregatedBucketDataset extends AbstractIntervalXYDataset implements DomainInfo, RangeInfo {
+
+    private static final long serialVersionUID = 2373093846021478906L;
+
+    private final Comparable< ? > seriesKey;
+
+    private final AggregatedBuckets buckets;
+
+    private final double[] values;
+
+    private final Range rangeBounds;
+
+    public AggregatedBucketDataset(Comparable< ? > seriesKey, AggregatedBuckets buckets, Aggregation aggregation) {
+        this.seriesKey = seriesKey;
+        this.buckets = buckets;
+        this.values = new double[buckets.size()];
+        double lower = Double.POSITIVE_INFINITY;
+        double upper = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buckets.getValue(i, aggregation);
+            lower = Math.min(lower, values[i]);
+            upper = Math.max(upper, values[i]);
+        }
+        this.rangeBounds = values.length > 0
+                ? new Range(lower, upper)
+                : null;
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return 1;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Comparable getSeriesKey(int series) {
+        checkSeries(series);
+        return seriesKey;
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        checkSeries(series);
+        return values.length;
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return buckets.getStart(item);
+    }
+
+    @Override
+    public Number getStartX(int series, int item) {
+        return getStartXValue(series, item);
+    }
+
+    @Override
+    public double getStartXValue(int series, int item) {
+        return buckets.getStart(item);
+    }
+
+    @Override
+    public Number getEndX(int series, int item) {
+        return getEndXValue(series, item);
+    }
+
+    @Override
+    public double getEndXValue(int series, int item) {
+        return buckets.getEnd(item);
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return getYValue(series, item);
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return values[item];
+    }
+
+    @Override
+    public Number getStartY(int series, int item) {
+        return getY(series, item);
+    }
+
+    @Override
+    public Number getEndY(int series, int item) {
+        return getY(series, item);
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        return values.length > 0
+                ? buckets.getStart(0)
+                : Double.NaN;
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        if (values.length == 0) {
+            return Double.NaN;
+        }
+        int last = values.length - 1;
+        return includeInterval
+                ? buckets.getEnd(last)
+                : buckets.getStart(last);
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        return values.length > 0
+                ? new Range(getDomainLowerBound(includeInterval), getDomainUpperBound(includeInterval))
+                : null;
+    }
+
+    @Override
+    public double getRangeLowerBound(boolean includeInterval) {
+        return rangeBounds != null
+                ? rangeBounds.getLowerBound()
+                : Double.NaN;
+    }
+
+    @Override
+    public double getRangeUpperBound(boolean includeInterval) {
+        return rangeBounds != null
+                ? rangeBounds.getUpperBound()
+                : Double.NaN;
+    }
+
+    @Override
+    public Range getRangeBounds(boolean includeInterval) {
+        return rangeBounds;
+    }
+
+    private void checkSeries(int series) {
+        if (series != 0) {
+            throw new IllegalArgumentException("Invalid series index: " + series);
+        }
+    }
+
+}
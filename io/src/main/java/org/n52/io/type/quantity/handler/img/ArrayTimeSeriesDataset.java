@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.handler.img;
+
+import java.util.Arrays;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.quantity.QuantityValue;
+import org.n52.io.type.quantity.aggregate.QuantityColumns;
+
+/**
+ * A single series {@link org.jfree.data.xy.XYDataset} backed by primitive time and value columns. Missing
+ * values are kept as {@link Double#NaN} so that renderers draw gaps.
+ */
+public class ArrayTimeSeriesDataset extends AbstractXYDataset implements DomainInfo, RangeInfo {
+
+    private static final long serialVersionUID = -3190862419873529451L;
+
+    /**
+     * Number of points kept per pixel when decimating (first, min, max, last).
+     */
+    private static final int POINTS_PER_PIXEL = 4;
+
+    private final Comparable< ? > seriesKey;
+
+    private final long[] times;
+
+    private final double[] values;
+
+    private final int size;
+
+    private final Range domainBounds;
+
+    private final Range rangeBounds;
+
+    /**
+     * @param seriesKey
+     *        the key of the only series
+     * @param times
+     *        the times in ascending order
+     * @param values
+     *        the values (<code>NaN</code> for missing values)
+     * @param size
+     *        the number of valid entries in both columns
+     */
+    public ArrayTimeSeriesDataset(Comparable< ? > seriesKey, long[] times, double[] values, int size) {
+        if (times.length < size || values.length < size) {
+            throw new IllegalArgumentException("columns must contain at least " + size + " entries.");
+        }
+        this.seriesKey = seriesKey;
+        this.times = times;
+        this.values = values;
+        this.size = size;
+        this.domainBounds = size > 0
+                ? new Range(times[0], times[size - 1])
+                : null;
+        this.rangeBounds = findRangeBounds(values, size);
+    }
+
+    /**
+     * Creates a dataset from the values of the given series. Values are sorted by time if necessary.
+     *
+     * @param seriesKey
+     *        the series key
+     * @param data
+     *        the series data
+     * @return a dataset backed by the series' time and value columns
+     */
+    public static ArrayTimeSeriesDataset create(Comparable< ? > seriesKey, Data<QuantityValue> data) {
+        QuantityColumns columns = QuantityColumns.of(data);
+        return new ArrayTimeSeriesDataset(seriesKey, columns.getTimes(), columns.getValues(), columns.size());
+    }
+
+    /**
+     * Reduces the dataset to at most {@value #POINTS_PER_PIXEL} points per pixel column. Per pixel the first,
+     * the minimum, the maximum and the last value are kept in time order, so the rendered shape equals the
+     * one of the full series. Gaps (<code>NaN</code> values) are kept.
+     *
+     * @param start
+     *        the start time of the visible domain
+     * @param end
+     *        the end time of the visible domain
+     * @param pixels
+     *        the number of pixel columns available for the domain
+     * @return a decimated dataset, or this instance if there is nothing to reduce
+     */
+    public ArrayTimeSeriesDataset decimate(long start, long end, int pixels) {
+        if (pixels <= 0 || end <= start || size <= (long) pixels * POINTS_PER_PIXEL) {
+            return this;
+        }
+        double pixelsPerMilli = pixels / (double) (end - start);
+        Column column = new Column(Math.min(size, (pixels + 2) * POINTS_PER_PIXEL));
+        int i = 0;
+        while (i < size) {
+            if (Double.isNaN(values[i])) {
+                column.add(times[i], values[i]);
+                i++;
+                continue;
+            }
+            int pixel = toPixel(times[i], start, pixels, pixelsPerMilli);
+            int first = i;
+            int min = i;
+            int max = i;
+            int last = i;
+            i++;
+            while (i < size
+                    && !Double.isNaN(values[i])
+                    && toPixel(times[i], start, pixels, pixelsPerMilli) == pixel) {
+                if (values[i] < values[min]) {
+                    min = i;
+                } else if (values[i] > values[max]) {
+                    max = i;
+                }
+                last = i;
+                i++;
+            }
+            addInOrder(column, first, Math.min(min, max), Math.max(min, max), last);
+        }
+        return new ArrayTimeSeriesDataset(seriesKey, column.times, column.values, column.size);
+    }
+
+    private static int toPixel(long time, long start, int pixels, double pixelsPerMilli) {
+        double pixel = Math.floor((time - start) * pixelsPerMilli);
+        // values outside the visible domain are collected in one column on each side
+        return (int) Math.max(-1, Math.min(pixels, pixel));
+    }
+
+    private void addInOrder(Column column, int first, int lower, int upper, int last) {
+        column.add(times[first], values[first]);
+        if (lower != first) {
+            column.add(times[lower], values[lower]);
+        }
+        if (upper != lower && upper != first) {
+            column.add(times[upper], values[upper]);
+        }
+        if (last != upper && last != first) {
+            column.add(times[last], values[last]);
+        }
+    }
+
+    private static Range findRangeBounds(double[] values, int size) {
+        double lower = Double.POSITIVE_INFINITY;
+        double upper = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            double value = values[i];
+            if (!Double.isNaN(value)) {
+                lower = Math.min(lower, value);
+                upper = Math.max(upper, value);
+            }
+        }
+        return lower <= upper
+                ? new Range(lower, upper)
+                : null;
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return 1;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Comparable getSeriesKey(int series) {
+        checkSeries(series);
+        return seriesKey;
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        checkSeries(series);
+        return size;
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return times[item];
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        double value = getYValue(series, item);
+        return Double.isNaN(value)
+                ? null
+                : value;
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return values[item];
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        return domainBounds != null
+                ? domainBounds.getLowerBound()
+                : Double.NaN;
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        return domainBounds != null
+                ? domainBounds.getUpperBound()
+                : Double.NaN;
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        return domainBounds;
+    }
+
+    @Override
+    public double getRangeLowerBound(boolean includeInterval) {
+        return rangeBounds != null
+                ? rangeBounds.getLowerBound()
+                : Double.NaN;
+    }
+
+    @Override
+    public double getRangeUpperBound(boolean includeInterval) {
+        return rangeBounds != null
+                ? rangeBounds.getUpperBound()
+                : Double.NaN;
+    }
+
+    @Override
+    public Range getRangeBounds(boolean includeInterval) {
+        return rangeBounds;
+    }
+
+    private void checkSeries(int series) {
+        if (series != 0) {
+            throw new IllegalArgumentException("Invalid series index: " + series);
+        }
+    }
+
+    private static final class Column {
+
+        private long[] times;
+
+        private double[] values;
+
+        private int size;
+
+        Column(int capacity) {
+            this.times = new long[capacity];
+            this.values = new double[capacity];
+        }
+
+        void add(long time, double value) {
+            if (size == times.length) {
+                int capacity = Math.max(16, size * 2);
+                times = Arrays.copyOf(times, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            times[size] = time;
+            values[size] = value;
+            size++;
+        }
+    }
+
+}
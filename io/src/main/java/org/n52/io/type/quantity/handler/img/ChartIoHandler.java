@@ -29,18 +29,24 @@
 package org.n52.io.type.quantity.handler.img;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.Paint;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -53,6 +59,7 @@ import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.axis.ValueAxis;
 import org.jfree.chart.block.BlockBorder;
 import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYItemRenderer;
 import org.jfree.chart.title.TextTitle;
 import org.jfree.chart.ui.HorizontalAlignment;
 import org.jfree.chart.ui.RectangleEdge;
@@ -98,6 +105,8 @@ public abstract class ChartIoHandler extends IoHandler<Data<QuantityValue>> {
 
     private JFreeChart jFreeChart;
 
+    private int renderingWidth;
+
     public ChartIoHandler(IoParameters parameters,
                           IoProcessChain<Data<QuantityValue>> processChain,
                           IoStyleContext context) {
@@ -113,18 +122,84 @@ public abstract class ChartIoHandler extends IoHandler<Data<QuantityValue>> {
     public void encodeAndWriteTo(DataCollection<Data<QuantityValue>> data,
                                  OutputStream stream)
             throws IoParseException {
+        IoParameters parameters = getParameters();
+        writeDataToChart(data);
+        writeImage(createImage(parameters.getWidth(), parameters.getHeight()), stream);
+    }
+
+    /**
+     * Renders the chart in each of the given sizes. Data is fetched, generalized and written to the chart
+     * only once. Line series are decimated to the largest requested width.
+     *
+     * @param sizes
+     *        the sizes to render
+     * @return the encoded images by size, in the order of the given sizes
+     * @throws IoParseException
+     *         if encoding fails
+     */
+    public Map<Dimension, byte[]> renderSizes(List<Dimension> sizes) throws IoParseException {
+        renderingWidth = sizes.stream()
+                              .mapToInt(size -> size.width)
+                              .max()
+                              .orElse(getParameters().getWidth());
+        writeDataToChart(getProcessChain().getData());
+        Map<Dimension, byte[]> images = new LinkedHashMap<>();
+        for (Dimension size : sizes) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeImage(createImage(size.width, size.height), out);
+            images.put(size, out.toByteArray());
+        }
+        return images;
+    }
+
+    /**
+     * @return the width in pixels which the chart's data shall be prepared for
+     */
+    protected int getRenderingWidth() {
+        return renderingWidth > 0
+                ? renderingWidth
+                : getParameters().getWidth();
+    }
+
+    private void writeImage(BufferedImage image, OutputStream stream) throws IoParseException {
         try {
-            writeDataToChart(data);
-            ImageIO.write(createImage(), mimeType.getFormatName(), stream);
+            if (mimeType == Constants.MimeType.IMAGE_PNG) {
+                createPngEncoder().encode(image, stream);
+            } else {
+                ImageIO.write(image, mimeType.getFormatName(), stream);
+            }
         } catch (IOException e) {
             throw new IoParseException("Could not write image to output stream.", e);
         }
     }
 
-    private BufferedImage createImage() {
+    private PngEncoder createPngEncoder() {
         IoParameters parameters = getParameters();
-        int width = parameters.getWidth();
-        int height = parameters.getHeight();
+        PngEncoder encoder = new PngEncoder(parameters.getPngCompressionLevel(), parameters.getPngFilter());
+        if (parameters.isPngPalette()) {
+            encoder.setPaletteColors(getChartColors());
+        }
+        return encoder;
+    }
+
+    private List<Color> getChartColors() {
+        List<Color> colors = new ArrayList<>();
+        colors.add(LabelConstants.COLOR);
+        colors.add(Color.LIGHT_GRAY);
+        // series colors as configured by the style properties
+        for (int i = 0; i < xyPlot.getRendererCount(); i++) {
+            XYItemRenderer renderer = xyPlot.getRenderer(i);
+            Paint paint = renderer != null
+                    ? renderer.getSeriesPaint(0)
+                    : null;
+            if (paint instanceof Color) {
+                colors.add((Color) paint);
+            }
+        }
+        return colors;
+    }
+
+    private BufferedImage createImage(int width, int height) {
         BufferedImage chartImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         Graphics2D chartGraphics = chartImage.createGraphics();
         chartGraphics.fillRect(0, 0, width, height);
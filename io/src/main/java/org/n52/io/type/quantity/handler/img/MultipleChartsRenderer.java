@@ -28,22 +28,16 @@
  */
 package org.n52.io.type.quantity.handler.img;
 
-import java.math.BigDecimal;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.jfree.chart.axis.ValueAxis;
 import org.jfree.data.general.DatasetGroup;
-import org.jfree.data.time.Day;
-import org.jfree.data.time.Hour;
-import org.jfree.data.time.Month;
-import org.jfree.data.time.RegularTimePeriod;
-import org.jfree.data.time.Second;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
-import org.jfree.data.time.Week;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDataset;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
 import org.n52.io.IoStyleContext;
 import org.n52.io.handler.IoProcessChain;
 import org.n52.io.request.IoParameters;
@@ -58,6 +52,11 @@ import org.n52.io.response.dataset.quantity.QuantityValue;
 import org.n52.io.style.BarStyle;
 import org.n52.io.style.LineStyle;
 import org.n52.io.style.Style;
+import org.n52.io.type.quantity.aggregate.AggregatedBuckets;
+import org.n52.io.type.quantity.aggregate.Aggregation;
+import org.n52.io.type.quantity.aggregate.CalendarAggregator;
+import org.n52.io.type.quantity.aggregate.CalendarInterval;
+import org.n52.io.type.quantity.aggregate.QuantityColumns;
 
 public class MultipleChartsRenderer extends ChartIoHandler {
 
@@ -190,81 +189,34 @@ public class MultipleChartsRenderer extends ChartIoHandler {
             getXYPlot().setDataset(timeseriesIndex, createTimeseriesCollection(referenceData, style));
         }
 
-        private TimeSeriesCollection createTimeseriesCollection(Data<QuantityValue> referenceData,
-                                                                StyleProperties style) {
-            TimeSeriesCollection timeseriesCollection = new TimeSeriesCollection();
-            timeseriesCollection.addSeries(createDiscreteTimeseries(referenceData, style));
-            timeseriesCollection.setGroup(new DatasetGroup(chartId));
-            return timeseriesCollection;
+        private XYDataset createTimeseriesCollection(Data<QuantityValue> referenceData, StyleProperties style) {
+            AbstractXYDataset dataset = isBarStyle(style)
+                    ? createBarDataset(referenceData, style)
+                    : isLineStyle(style)
+                            ? createLineDataset(referenceData)
+                            : new ArrayTimeSeriesDataset(chartId, new long[0], new double[0], 0);
+            dataset.setGroup(new DatasetGroup(chartId));
+            return dataset;
         }
 
-        private TimeSeries createDiscreteTimeseries(Data<QuantityValue> referenceData, StyleProperties style) {
-            TimeSeries timeseries = new TimeSeries(chartId);
-            if (hasValues(referenceData)) {
-                if (isBarStyle(style)) {
-                    QuantityValue timeseriesValue = referenceData.getValues()
-                                                                 .get(0);
-                    Date timeOfFirstValue = timeseriesValue.getTimestamp().getDateTime().toDate();
-                    RegularTimePeriod timeinterval = determineTimeInterval(timeOfFirstValue, style);
-
-                    BigDecimal intervalSum = BigDecimal.ZERO;
-                    for (QuantityValue value : referenceData.getValues()) {
-                        if (isValueInInterval(value, timeinterval)) {
-                            intervalSum = intervalSum.add(value.getValue());
-                        } else {
-                            timeseries.add(timeinterval, intervalSum);
-                            timeinterval = determineTimeInterval(value.getTimestamp().getDateTime().toDate(), style);
-                            intervalSum = value.getValue();
-                        }
-                    }
-                } else if (isLineStyle(style)) {
-                    for (QuantityValue value : referenceData.getValues()) {
-                        Second second = new Second(value.getTimestamp().getDateTime().toDate());
-                        timeseries.addOrUpdate(second, value.getValue());
-                    }
-                }
-            }
-            return timeseries;
-        }
-
-        private boolean hasValues(Data<QuantityValue> timeseriesData) {
-            return timeseriesData.getValues()
-                                 .size() > 0;
+        private ArrayTimeSeriesDataset createLineDataset(Data<QuantityValue> data) {
+            IoParameters parameters = getParameters();
+            Interval timespan = parameters.getTimespan()
+                                          .toInterval();
+            return ArrayTimeSeriesDataset.create(chartId, data)
+                                         .decimate(timespan.getStartMillis(),
+                                                   timespan.getEndMillis(),
+                                                   getRenderingWidth());
         }
 
-        private RegularTimePeriod determineTimeInterval(Date date, StyleProperties styleProperties) {
-            if (styleProperties.getProperties()
-                               .containsKey(Style.PARAMETER_INTERVAL)) {
-                String interval = styleProperties.getProperties()
-                                                 .get(Style.PARAMETER_INTERVAL);
-                if (interval.equals(Style.VALUE_INTERVAL_BY_HOUR)) {
-                    return new Hour(date);
-                } else if (interval.equals(Style.VALUE_INTERVAL_BY_DAY)) {
-                    return new Day(date);
-                } else if (interval.equals(Style.VALUE_INTERVAL_BY_MONTH)) {
-                    return new Month(date);
-                }
-            }
-            return new Week(date);
-        }
-
-        /**
-         * @param interval
-         *        the interval to check.
-         * @return <code>true</code> if timestamp is within the given interval, otherwise <code>false</code>
-         *         is returned. If passed interval was <code>null</code> false will be returned.
-         * @throws IllegalArgumentException
-         *         if passed in value is <code>null</code>.
-         */
-        private boolean isValueInInterval(QuantityValue value, RegularTimePeriod interval) {
-            if (value == null) {
-                throw new IllegalArgumentException("TimeseriesValue must not be null.");
-            }
-            return (interval == null)
-                    || ((interval.getStart()
-                               .getTime() <= value.getTimestamp().getMillis())
-                            && (value.getTimestamp().getMillis() < interval.getEnd()
-                                                              .getTime()));
+        private AggregatedBucketDataset createBarDataset(Data<QuantityValue> data, StyleProperties style) {
+            String interval = style.getProperties()
+                                   .get(Style.PARAMETER_INTERVAL);
+            DateTimeZone zone = DateTimeZone.forID(getParameters().getOutputTimezone());
+            CalendarAggregator aggregator = new CalendarAggregator(CalendarInterval.fromStyleInterval(interval),
+                                                                   zone);
+            AggregatedBuckets buckets = aggregator.aggregate(QuantityColumns.of(data));
+            return new AggregatedBucketDataset(chartId, buckets, Aggregation.SUM);
         }
 
     }
@@ -0,0 +1,485 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.handler.img;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.n52.io.request.PngFilter;
+
+/**
+ * Encodes opaque images as PNG and streams the result directly to the target. Compression level and
+ * scanline filter strategy are configurable. Optionally, images are written with an indexed palette: if an
+ * image has at most 256 colours the palette is exact, otherwise colours are mapped to the nearest colour of
+ * a palette derived from the given seed colours, their antialiasing blends with the (white) background and a
+ * gray ramp.
+ */
+public class PngEncoder {
+
+    private static final byte[] SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'
+    };
+
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    private static final int BLEND_STEPS = 8;
+
+    private static final int GRAY_STEPS = 16;
+
+    private static final int IDAT_CHUNK_SIZE = 64 * 1024;
+
+    private static final int COLOR_TYPE_TRUECOLOR = 2;
+
+    private static final int COLOR_TYPE_INDEXED = 3;
+
+    private final int compressionLevel;
+
+    private final PngFilter filter;
+
+    private Set<Integer> paletteSeeds;
+
+    public PngEncoder(int compressionLevel, PngFilter filter) {
+        this.compressionLevel = compressionLevel;
+        this.filter = filter;
+    }
+
+    /**
+     * Enables indexed output.
+     *
+     * @param colors
+     *        the colours to derive a palette from in case an image has more than 256 colours
+     */
+    public void setPaletteColors(Collection<Color> colors) {
+        paletteSeeds = new LinkedHashSet<>();
+        paletteSeeds.add(Color.WHITE.getRGB() & 0xffffff);
+        paletteSeeds.add(Color.BLACK.getRGB() & 0xffffff);
+        for (Color color : colors) {
+            paletteSeeds.add(color.getRGB() & 0xffffff);
+        }
+    }
+
+    public void encode(BufferedImage image, OutputStream stream) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        DataOutputStream out = new DataOutputStream(stream);
+        out.write(SIGNATURE);
+
+        Palette palette = paletteSeeds != null
+                ? Palette.create(image, paletteSeeds)
+                : null;
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8);
+        headerData.writeByte(palette != null
+                ? COLOR_TYPE_INDEXED
+                : COLOR_TYPE_TRUECOLOR);
+        // compression, filter and interlace method
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        writeChunk(out, "IHDR", header.toByteArray(), header.size());
+        if (palette != null) {
+            byte[] colors = palette.toBytes();
+            writeChunk(out, "PLTE", colors, colors.length);
+        }
+
+        int bytesPerPixel = palette != null
+                ? 1
+                : 3;
+        Deflater deflater = new Deflater(compressionLevel);
+        try (DeflaterOutputStream idat = new DeflaterOutputStream(new IdatOutputStream(out),
+                                                                  deflater,
+                                                                  IDAT_CHUNK_SIZE)) {
+            ScanlineFilter scanlines = new ScanlineFilter(width * bytesPerPixel, bytesPerPixel);
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                getRow(image, y, row);
+                byte[] raw = scanlines.current();
+                if (palette != null) {
+                    for (int x = 0; x < width; x++) {
+                        raw[x] = (byte) palette.indexOf(row[x]);
+                    }
+                } else {
+                    for (int x = 0, i = 0; x < width; x++) {
+                        int rgb = row[x];
+                        raw[i++] = (byte) (rgb >> 16);
+                        raw[i++] = (byte) (rgb >> 8);
+                        raw[i++] = (byte) rgb;
+                    }
+                }
+                scanlines.writeFiltered(filter, idat);
+            }
+        } finally {
+            deflater.end();
+        }
+        writeChunk(out, "IEND", new byte[0], 0);
+        out.flush();
+    }
+
+    private static void getRow(BufferedImage image, int y, int[] row) {
+        int width = row.length;
+        if (image.getType() == BufferedImage.TYPE_INT_RGB
+                && image.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && image.getRaster()
+                        .getDataBuffer() instanceof DataBufferInt) {
+            SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) image.getSampleModel();
+            int[] data = ((DataBufferInt) image.getRaster()
+                                               .getDataBuffer()).getData();
+            int offset = image.getRaster()
+                              .getDataBuffer()
+                              .getOffset();
+            System.arraycopy(data, offset + y * model.getScanlineStride(), row, 0, width);
+        } else {
+            image.getRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int length)
+            throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Buffers compressed data and writes it as IDAT chunks to the target stream.
+     */
+    private static final class IdatOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+
+        private final byte[] buffer = new byte[IDAT_CHUNK_SIZE];
+
+        private int count;
+
+        IdatOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(remaining, buffer.length - count);
+                System.arraycopy(b, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                remaining -= n;
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk(out, "IDAT", buffer, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the target stream stays open
+            flushChunk();
+        }
+    }
+
+    /**
+     * Applies scanline filters with the current and the previous raw scanline.
+     */
+    private static final class ScanlineFilter {
+
+        private final int bytesPerPixel;
+
+        private byte[] current;
+
+        private byte[] previous;
+
+        private final byte[][] filtered;
+
+        ScanlineFilter(int length, int bytesPerPixel) {
+            this.bytesPerPixel = bytesPerPixel;
+            this.current = new byte[length];
+            this.previous = new byte[length];
+            this.filtered = new byte[PngFilter.ADAPTIVE.ordinal()][length + 1];
+        }
+
+        byte[] current() {
+            return current;
+        }
+
+        void writeFiltered(PngFilter strategy, OutputStream out) throws IOException {
+            byte[] line;
+            if (strategy == PngFilter.ADAPTIVE) {
+                line = filtered[0];
+                long minimum = Long.MAX_VALUE;
+                for (PngFilter candidate : PngFilter.values()) {
+                    if (candidate != PngFilter.ADAPTIVE) {
+                        byte[] result = filter(candidate);
+                        long sum = sumOfAbsolutes(result);
+                        if (sum < minimum) {
+                            minimum = sum;
+                            line = result;
+                        }
+                    }
+                }
+            } else {
+                line = filter(strategy);
+            }
+            out.write(line);
+
+            byte[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+
+        private byte[] filter(PngFilter type) {
+            byte[] line = filtered[type.ordinal()];
+            line[0] = (byte) type.ordinal();
+            int length = current.length;
+            int bpp = Math.min(bytesPerPixel, length);
+            switch (type) {
+                case SUB:
+                    System.arraycopy(current, 0, line, 1, bpp);
+                    for (int i = bpp; i < length; i++) {
+                        line[i + 1] = (byte) (current[i] - current[i - bpp]);
+                    }
+                    break;
+                case UP:
+                    for (int i = 0; i < length; i++) {
+                        line[i + 1] = (byte) (current[i] - previous[i]);
+                    }
+                    break;
+                case AVERAGE:
+                    for (int i = 0; i < bpp; i++) {
+                        line[i + 1] = (byte) (current[i] - ((previous[i] & 0xff) >>> 1));
+                    }
+                    for (int i = bpp; i < length; i++) {
+                        int average = ((current[i - bpp] & 0xff) + (previous[i] & 0xff)) >>> 1;
+                        line[i + 1] = (byte) (current[i] - average);
+                    }
+                    break;
+                case PAETH:
+                    for (int i = 0; i < bpp; i++) {
+                        line[i + 1] = (byte) (current[i] - previous[i]);
+                    }
+                    for (int i = bpp; i < length; i++) {
+                        int predictor = paeth(current[i - bpp] & 0xff,
+                                              previous[i] & 0xff,
+                                              previous[i - bpp] & 0xff);
+                        line[i + 1] = (byte) (current[i] - predictor);
+                    }
+                    break;
+                default:
+                    System.arraycopy(current, 0, line, 1, length);
+            }
+            return line;
+        }
+
+        private static int paeth(int a, int b, int c) {
+            int p = a + b - c;
+            int pa = Math.abs(p - a);
+            int pb = Math.abs(p - b);
+            int pc = Math.abs(p - c);
+            if (pa <= pb && pa <= pc) {
+                return a;
+            }
+            return pb <= pc
+                    ? b
+                    : c;
+        }
+
+        private static long sumOfAbsolutes(byte[] line) {
+            long sum = 0;
+            for (int i = 1; i < line.length; i++) {
+                sum += Math.abs(line[i]);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Maps RGB colours to palette indices.
+     */
+    private static final class Palette {
+
+        private final int[] colors;
+
+        private final int size;
+
+        private final Map<Integer, Integer> indices;
+
+        private Palette(int[] colors, int size, Map<Integer, Integer> indices) {
+            this.colors = colors;
+            this.size = size;
+            this.indices = indices;
+        }
+
+        static Palette create(BufferedImage image, Set<Integer> seeds) {
+            Map<Integer, Integer> exact = findExactColors(image);
+            if (exact != null) {
+                int[] colors = new int[exact.size()];
+                exact.forEach((rgb, index) -> colors[index] = rgb);
+                return new Palette(colors, colors.length, exact);
+            }
+            int[] colors = new int[MAX_PALETTE_SIZE];
+            Map<Integer, Integer> indices = new HashMap<>();
+            int size = 0;
+            for (int seed : seeds) {
+                size = add(seed, colors, size, indices);
+            }
+            int white = Color.WHITE.getRGB() & 0xffffff;
+            for (int step = 1; step < BLEND_STEPS; step++) {
+                for (int seed : seeds) {
+                    size = add(blend(seed, white, step / (double) BLEND_STEPS), colors, size, indices);
+                }
+            }
+            for (int step = 0; step < GRAY_STEPS; step++) {
+                int gray = step * 255 / (GRAY_STEPS - 1);
+                size = add(gray << 16 | gray << 8 | gray, colors, size, indices);
+            }
+            return new Palette(colors, size, indices);
+        }
+
+        private static Map<Integer, Integer> findExactColors(BufferedImage image) {
+            Map<Integer, Integer> colors = new HashMap<>();
+            int width = image.getWidth();
+            int[] row = new int[width];
+            int last = -1;
+            for (int y = 0; y < image.getHeight(); y++) {
+                getRow(image, y, row);
+                for (int x = 0; x < width; x++) {
+                    int rgb = row[x] & 0xffffff;
+                    if (rgb != last) {
+                        last = rgb;
+                        if (!colors.containsKey(rgb)) {
+                            if (colors.size() == MAX_PALETTE_SIZE) {
+                                return null;
+                            }
+                            colors.put(rgb, colors.size());
+                        }
+                    }
+                }
+            }
+            return colors;
+        }
+
+        private static int add(int rgb, int[] colors, int size, Map<Integer, Integer> indices) {
+            if (size == colors.length || indices.containsKey(rgb)) {
+                return size;
+            }
+            colors[size] = rgb;
+            indices.put(rgb, size);
+            return size + 1;
+        }
+
+        private static int blend(int rgb, int background, double ratio) {
+            int r = mix(rgb >> 16 & 0xff, background >> 16 & 0xff, ratio);
+            int g = mix(rgb >> 8 & 0xff, background >> 8 & 0xff, ratio);
+            int b = mix(rgb & 0xff, background & 0xff, ratio);
+            return r << 16 | g << 8 | b;
+        }
+
+        private static int mix(int value, int background, double ratio) {
+            return (int) Math.round(value * (1 - ratio) + background * ratio);
+        }
+
+        int indexOf(int argb) {
+            int rgb = argb & 0xffffff;
+            Integer index = indices.get(rgb);
+            if (index == null) {
+                index = findNearest(rgb);
+                indices.put(rgb, index);
+            }
+            return index;
+        }
+
+        private int findNearest(int rgb) {
+            int r = rgb >> 16 & 0xff;
+            int g = rgb >> 8 & 0xff;
+            int b = rgb & 0xff;
+            int nearest = 0;
+            int minimum = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                int dr = r - (colors[i] >> 16 & 0xff);
+                int dg = g - (colors[i] >> 8 & 0xff);
+                int db = b - (colors[i] & 0xff);
+                int distance = dr * dr + dg * dg + db * db;
+                if (distance < minimum) {
+                    minimum = distance;
+                    nearest = i;
+                }
+            }
+            return nearest;
+        }
+
+        byte[] toBytes() {
+            byte[] bytes = new byte[size * 3];
+            for (int i = 0, j = 0; i < size; i++) {
+                bytes[j++] = (byte) (colors[i] >> 16);
+                bytes[j++] = (byte) (colors[i] >> 8);
+                bytes[j++] = (byte) colors[i];
+            }
+            return bytes;
+        }
+    }
+
+}
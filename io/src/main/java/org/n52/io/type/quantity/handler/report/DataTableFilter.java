@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.handler.report;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.n52.io.I18N;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.DataCollection;
+import org.n52.io.response.dataset.DatasetOutput;
+import org.n52.io.response.dataset.DatasetParameters;
+import org.n52.io.response.dataset.quantity.QuantityValue;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Passes XSL-FO events on to the next handler (usually FOP) and appends a value table for each dataset
+ * right before the document ends. Table rows are emitted as SAX events straight from the data, so no
+ * document tree of the values is built. Tables are split into page sequences of a bounded number of rows,
+ * which allows FOP to release each part after layout.
+ */
+class DataTableFilter extends XMLFilterImpl {
+
+    static final String FO_NAMESPACE = "http://www.w3.org/1999/XSL/Format";
+
+    private static final String FO_PREFIX = "fo:";
+
+    private static final String ROOT = "root";
+
+    private static final String PAGE_MASTER = "default-page";
+
+    private static final String CELL_BORDER = "solid 1pt gray";
+
+    private static final int ROWS_PER_PAGE_SEQUENCE = 1000;
+
+    private final DataCollection<Data<QuantityValue>> data;
+
+    private final List< ? extends DatasetOutput< ? >> metadatas;
+
+    private final I18N i18n;
+
+    private final DateTimeZone zone;
+
+    private final int maxRows;
+
+    /**
+     * @param data
+     *        the data to create tables from
+     * @param metadatas
+     *        the metadata of the datasets, in table order
+     * @param i18n
+     *        localizes the table headers
+     * @param zone
+     *        the zone to print timestamps in
+     * @param maxRows
+     *        the maximum number of rows per table. Longer series are thinned out evenly.
+     */
+    DataTableFilter(DataCollection<Data<QuantityValue>> data,
+                    List< ? extends DatasetOutput< ? >> metadatas,
+                    I18N i18n,
+                    DateTimeZone zone,
+                    int maxRows) {
+        this.data = data;
+        this.metadatas = metadatas;
+        this.i18n = i18n;
+        this.zone = zone;
+        this.maxRows = maxRows;
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (FO_NAMESPACE.equals(uri) && ROOT.equals(localName)) {
+            for (DatasetOutput< ? > metadata : metadatas) {
+                Data<QuantityValue> series = data.getSeries(metadata.getId());
+                if (series != null) {
+                    writeTable(metadata, series.getValues());
+                }
+            }
+        }
+        super.endElement(uri, localName, qName);
+    }
+
+    private void writeTable(DatasetOutput< ? > metadata, List<QuantityValue> values) throws SAXException {
+        int total = values.size();
+        int rows = Math.min(total, maxRows);
+        int row = 0;
+        do {
+            start("page-sequence", "master-reference", PAGE_MASTER);
+            start("flow", "flow-name", "xsl-region-body");
+            if (row == 0) {
+                writeCaption(metadata, rows, total);
+            }
+            start("table", "table-layout", "fixed", "width", "100%", "border", CELL_BORDER);
+            start("table-column", "column-width", "200");
+            end("table-column");
+            start("table-column", "column-width", "proportional-column-width(1)");
+            end("table-column");
+            start("table-header");
+            start("table-row");
+            writeCell(i18n.get("msg.io.chart.time"));
+            writeCell(createValueHeader(metadata));
+            end("table-row");
+            end("table-header");
+            start("table-body");
+            int last = Math.min(rows, row + ROWS_PER_PAGE_SEQUENCE);
+            if (row == last) {
+                // a table body must not be empty
+                writeRow("", "");
+            }
+            for (; row < last; row++) {
+                // thins out evenly if there are more values than rows
+                QuantityValue value = values.get((int) ((long) row * total / rows));
+                writeRow(formatTime(value), formatValue(value.getValue()));
+            }
+            end("table-body");
+            end("table");
+            end("flow");
+            end("page-sequence");
+        } while (row < rows);
+    }
+
+    private void writeCaption(DatasetOutput< ? > metadata, int rows, int total) throws SAXException {
+        start("block", "font-weight", "bold", "space-after", "6pt");
+        text(metadata.getLabel());
+        end("block");
+        if (rows < total) {
+            start("block", "font-size", "small", "space-after", "6pt");
+            text(rows + " / " + total);
+            end("block");
+        }
+    }
+
+    private void writeRow(String time, String value) throws SAXException {
+        start("table-row");
+        writeCell(time);
+        writeCell(value);
+        end("table-row");
+    }
+
+    private void writeCell(String content) throws SAXException {
+        start("table-cell", "border", CELL_BORDER, "padding", "2pt");
+        start("block");
+        text(content);
+        end("block");
+        end("table-cell");
+    }
+
+    private String formatTime(QuantityValue value) {
+        return new DateTime(value.getTimestamp()
+                                 .getMillis(),
+                            zone).toString();
+    }
+
+    private static String formatValue(BigDecimal value) {
+        return value != null
+                ? value.toPlainString()
+                : "";
+    }
+
+    private static String createValueHeader(DatasetOutput< ? > metadata) {
+        DatasetParameters parameters = metadata.getDatasetParameters();
+        String phenomenon = parameters.getPhenomenon()
+                                      .getLabel();
+        String uom = metadata.getUom();
+        return uom == null || uom.isEmpty()
+                ? phenomenon
+                : phenomenon + " (" + uom + ")";
+    }
+
+    private void start(String name, String... attributes) throws SAXException {
+        AttributesImpl atts = new AttributesImpl();
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            atts.addAttribute("", attributes[i], attributes[i], "CDATA", attributes[i + 1]);
+        }
+        super.startElement(FO_NAMESPACE, name, FO_PREFIX + name, atts);
+    }
+
+    private void end(String name) throws SAXException {
+        super.endElement(FO_NAMESPACE, name, FO_PREFIX + name);
+    }
+
+    private void text(String text) throws SAXException {
+        if (text != null && !text.isEmpty()) {
+            super.characters(text.toCharArray(), 0, text.length());
+        }
+    }
+
+}
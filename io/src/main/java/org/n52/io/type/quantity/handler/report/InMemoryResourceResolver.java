@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.handler.report;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.fop.apps.io.ResourceResolverFactory;
+import org.apache.xmlgraphics.io.Resource;
+import org.apache.xmlgraphics.io.ResourceResolver;
+
+/**
+ * Resolves resources registered in memory (e.g. rendered charts) by their <code>memory:</code> URI, so that
+ * FOP can embed them without going through the file system. All other URIs are resolved by FOP's default
+ * resolver.
+ */
+final class InMemoryResourceResolver implements ResourceResolver {
+
+    private static final String SCHEME = "memory";
+
+    private final Map<URI, byte[]> resources = new ConcurrentHashMap<>();
+
+    private final ResourceResolver delegate = ResourceResolverFactory.createDefaultResourceResolver();
+
+    /**
+     * Makes the given content available until it gets {@link #unregister(URI) unregistered}.
+     *
+     * @param content
+     *        the resource content
+     * @return the URI to reference the content with
+     */
+    URI register(byte[] content) {
+        URI uri = URI.create(SCHEME + ":" + UUID.randomUUID());
+        resources.put(uri, content);
+        return uri;
+    }
+
+    void unregister(URI uri) {
+        if (uri != null) {
+            resources.remove(uri);
+        }
+    }
+
+    @Override
+    public Resource getResource(URI uri) throws IOException {
+        if (!SCHEME.equals(uri.getScheme())) {
+            return delegate.getResource(uri);
+        }
+        byte[] content = resources.get(uri);
+        if (content == null) {
+            throw new IOException("No in-memory resource registered for '" + uri + "'.");
+        }
+        return new Resource(new ByteArrayInputStream(content));
+    }
+
+    @Override
+    public OutputStream getOutputStream(URI uri) throws IOException {
+        if (SCHEME.equals(uri.getScheme())) {
+            throw new IOException("In-memory resources are read-only: '" + uri + "'.");
+        }
+        return delegate.getOutputStream(uri);
+    }
+
+}
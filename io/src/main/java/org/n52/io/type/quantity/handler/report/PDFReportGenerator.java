@@ -28,11 +28,8 @@
  */
 package org.n52.io.type.quantity.handler.report;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
-import java.math.BigDecimal;
 import java.net.URI;
 
 import javax.xml.transform.Result;
@@ -41,23 +38,19 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXResult;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.fop.apps.FOPException;
 import org.apache.fop.apps.Fop;
 import org.apache.fop.apps.FopFactory;
-import org.apache.fop.apps.FopFactoryBuilder;
-import org.apache.fop.configuration.Configuration;
-import org.apache.fop.configuration.ConfigurationException;
-import org.apache.fop.configuration.DefaultConfigurationBuilder;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
-import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.n52.io.Constants;
 import org.n52.io.IoParseException;
-import org.n52.io.TvpDataCollection;
 import org.n52.io.handler.IoHandlerException;
 import org.n52.io.handler.IoProcessChain;
 import org.n52.io.request.IoParameters;
@@ -65,32 +58,26 @@ import org.n52.io.response.dataset.Data;
 import org.n52.io.response.dataset.DataCollection;
 import org.n52.io.response.dataset.DatasetOutput;
 import org.n52.io.response.dataset.DatasetParameters;
-import org.n52.io.response.dataset.TimeseriesMetadataOutput;
 import org.n52.io.response.dataset.quantity.QuantityValue;
 import org.n52.io.type.quantity.handler.img.ChartIoHandler;
 import org.n52.oxf.DocumentStructureDocument;
 import org.n52.oxf.DocumentStructureType;
 import org.n52.oxf.DocumentStructureType.TimeSeries;
 import org.n52.oxf.MetadataType;
-import org.n52.oxf.TableType;
-import org.n52.oxf.TableType.Entry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
 
 public class PDFReportGenerator extends ReportGenerator<Data<QuantityValue>> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PDFReportGenerator.class);
 
-    private static final String TEMP_FILE_PREFIX = "52n_swc_";
-
-    private static final String LOCALE_REPLACER = "{locale}";
-
-    private static final String PDF_TRANSORMATION_RULES = "pdf/Document_2_PDF_" + LOCALE_REPLACER + ".xslt";
-
     private final DocumentStructureDocument document;
 
     private final ChartIoHandler renderer;
 
+    private URI chartUri;
+
     public PDFReportGenerator(IoParameters parameters,
                               IoProcessChain<Data<QuantityValue>> processChain,
                               ChartIoHandler renderer) {
@@ -102,26 +89,18 @@ public class PDFReportGenerator extends ReportGenerator<Data<QuantityValue>> {
     }
 
     public void generateOutput(DataCollection<Data<QuantityValue>> data) throws IoHandlerException {
-        try {
-            generateTimeseriesChart(data);
-            generateTimeseriesMetadata();
-        } catch (IOException e) {
-            throw new IoHandlerException("Error handling (temp) file!", e);
-        }
+        generateTimeseriesChart(data);
+        generateTimeseriesMetadata();
     }
 
-    private void generateTimeseriesChart(DataCollection<Data<QuantityValue>> data) throws IOException {
-        renderer.writeDataToChart(data);
-        File tmpFile = File.createTempFile(TEMP_FILE_PREFIX, "_chart.png");
-        try (FileOutputStream stream = new FileOutputStream(tmpFile)) {
-            renderer.encodeAndWriteTo(data, stream);
-            document.getDocumentStructure()
-                    .setDiagramURL(tmpFile.toURI()
-                                          .toString());
-            // String absoluteFilePath = getFoAbsoluteFilepath(tmpFile);
-            // document.getDocumentStructure().setDiagramURL(absoluteFilePath);
-            stream.flush();
-        }
+    private void generateTimeseriesChart(DataCollection<Data<QuantityValue>> data) {
+        // chart data is written by the renderer when encoding
+        ByteArrayOutputStream chart = new ByteArrayOutputStream();
+        renderer.encodeAndWriteTo(data, chart);
+        chartUri = ReportTransformations.getResources()
+                                        .register(chart.toByteArray());
+        document.getDocumentStructure()
+                .setDiagramURL(chartUri.toString());
     }
 
     private void generateTimeseriesMetadata() {
@@ -137,56 +116,58 @@ public class PDFReportGenerator extends ReportGenerator<Data<QuantityValue>> {
             throws IoHandlerException {
         try {
             generateOutput(data);
-            DefaultConfigurationBuilder cfgBuilder = new DefaultConfigurationBuilder();
-            Configuration cfg = cfgBuilder.build(document.newInputStream());
-
-            URI baseURI = new File(".").toURI();
-            FopFactory fopFactory = new FopFactoryBuilder(baseURI).setConfiguration(cfg)
-                                                                  .build();
-            final String mimeType = Constants.APPLICATION_PDF;
-            Fop fop = fopFactory.newFop(mimeType, stream);
-
-            // FopFactory fopFactory = FopFactory.newInstance(cfg);
-            // Fop fop = fopFactory.newFop(APPLICATION_PDF.getMimeType(), stream);
-            // FopFactory fopFactory = fopFactoryBuilder.build();
-            // Fop fop = fopFactory.newFop(APPLICATION_PDF.getMimeType(), stream);
+            ReportTransformations.warmUp();
+            FopFactory fopFactory = ReportTransformations.getFopFactory();
+            Fop fop = fopFactory.newFop(Constants.APPLICATION_PDF, stream);
 
             // Create PDF via XSLT transformation
-            TransformerFactory transFact = TransformerFactory.newInstance();
-            StreamSource transformationRule = getTransforamtionRule();
-            Transformer transformer = transFact.newTransformer(transformationRule);
+            Transformer transformer = ReportTransformations.getTemplates(i18n.getTwoDigitsLanguageCode())
+                                                           .newTransformer();
 
             Source source = new StreamSource(document.newInputStream());
-            Result result = new SAXResult(fop.getDefaultHandler());
+            Result result = new SAXResult(createFoHandler(data, fop.getDefaultHandler()));
             if (LOGGER.isDebugEnabled()) {
+                // transform once and pass the logged result on to FOP
+                DOMResult foDocument = new DOMResult();
+                transformer.transform(source, foDocument);
                 try {
-                    File tempFile = File.createTempFile(TEMP_FILE_PREFIX, ".xml");
-                    StreamResult debugResult = new StreamResult(tempFile);
-                    transformer.transform(source, debugResult);
-                    String xslResult = XmlObject.Factory.parse(tempFile)
+                    String xslResult = XmlObject.Factory.parse(foDocument.getNode())
                                                         .xmlText();
                     LOGGER.debug("xsl-fo input (locale '{}'): {}", i18n.getTwoDigitsLanguageCode(), xslResult);
-                } catch (IOException | TransformerException | XmlException e) {
+                } catch (XmlException e) {
                     LOGGER.error("Could not debug XSL result output!", e);
                 }
+                TransformerFactory.newInstance()
+                                  .newTransformer()
+                                  .transform(new DOMSource(foDocument.getNode()), result);
+            } else {
+                transformer.transform(source, result);
             }
-
-            // XXX debug, diagram is not embedded
-            transformer.transform(source, result);
         } catch (FOPException e) {
             throw new IoParseException("Failed to create Formatting Object Processor (FOP)", e);
-        } catch (ConfigurationException e) {
-            throw new IoParseException("Failed to read config for Formatting Object Processor (FOP)", e);
         } catch (TransformerConfigurationException e) {
             throw new IoParseException("Invalid transform configuration. Inspect xslt!", e);
         } catch (TransformerException e) {
             throw new IoParseException("Could not generate PDF report!", e);
+        } finally {
+            ReportTransformations.getResources()
+                                 .unregister(chartUri);
+            chartUri = null;
         }
     }
 
-    private StreamSource getTransforamtionRule() {
-        String rules = PDF_TRANSORMATION_RULES.replace(LOCALE_REPLACER, i18n.getTwoDigitsLanguageCode());
-        return new StreamSource(getClass().getResourceAsStream("/" + rules));
+    private ContentHandler createFoHandler(DataCollection<Data<QuantityValue>> data, ContentHandler fopHandler) {
+        IoParameters parameters = getParameters();
+        if (!parameters.isReportTables()) {
+            return fopHandler;
+        }
+        DataTableFilter tables = new DataTableFilter(data,
+                                                     getAllDatasetMetadatas(),
+                                                     i18n,
+                                                     DateTimeZone.forID(parameters.getOutputTimezone()),
+                                                     parameters.getReportTableRows());
+        tables.setContentHandler(fopHandler);
+        return tables;
     }
 
     private TimeSeries addTimeseries(DatasetOutput< ? > output) {
@@ -226,32 +207,4 @@ public class PDFReportGenerator extends ReportGenerator<Data<QuantityValue>> {
         return metadata;
     }
 
-    private void addDataTable(TimeSeries timeseries,
-                              TimeseriesMetadataOutput metadata,
-                              TvpDataCollection<Data<QuantityValue>> dataCollection) {
-        TableType dataTable = timeseries.addNewTable();
-
-        // TODO add language context
-        dataTable.setLeftColHeader("Date");
-        dataTable.setRightColHeader(createValueTableHeader(metadata));
-
-        Data<QuantityValue> data = dataCollection.getSeries(metadata.getId());
-        for (QuantityValue valueEntry : data.getValues()) {
-            Entry entry = dataTable.addNewEntry();
-            // TODO update TableType schema to allow start/end time
-            entry.setTime(new DateTime(valueEntry.getTimestamp()).toString());
-            BigDecimal value = valueEntry.getValue();
-            entry.setValue(value != null
-                    ? value.toString()
-                    : null);
-        }
-    }
-
-    private String createValueTableHeader(TimeseriesMetadataOutput metadata) {
-        DatasetParameters parameters = metadata.getDatasetParameters();
-        String phenomenon = parameters.getPhenomenon()
-                                      .getLabel();
-        return phenomenon + " (" + metadata.getUom() + ")";
-    }
-
 }
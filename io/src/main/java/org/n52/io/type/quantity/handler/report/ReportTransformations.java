@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.handler.report;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.fop.apps.FopFactory;
+import org.apache.fop.apps.FopFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the expensive, thread-safe parts of PDF report generation: one shared {@link FopFactory} (resolving
+ * in-memory resources) and the compiled XSLT {@link Templates} per locale. Callers only create a cheap {@link javax.xml.transform.Transformer}
+ * per report.
+ */
+final class ReportTransformations {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReportTransformations.class);
+
+    private static final String LOCALE_REPLACER = "{locale}";
+
+    private static final String PDF_TRANSFORMATION_RULES = "/pdf/Document_2_PDF_" + LOCALE_REPLACER + ".xslt";
+
+    private static final String[] BUNDLED_LOCALES = {
+        "en",
+        "de",
+        "nl"
+    };
+
+    private static final InMemoryResourceResolver RESOURCES = new InMemoryResourceResolver();
+
+    private static final Map<String, Templates> TEMPLATES = new ConcurrentHashMap<>();
+
+    private static final AtomicBoolean WARMED_UP = new AtomicBoolean();
+
+    private ReportTransformations() {
+    }
+
+    static FopFactory getFopFactory() {
+        return FopFactoryHolder.INSTANCE;
+    }
+
+    /**
+     * @return the resolver which makes in-memory resources available to the shared {@link FopFactory}
+     */
+    static InMemoryResourceResolver getResources() {
+        return RESOURCES;
+    }
+
+    /**
+     * @param languageCode
+     *        the two digits language code
+     * @return the compiled transformation rules for the given language
+     * @throws TransformerConfigurationException
+     *         if no rules exist for the given language or if they cannot be compiled
+     */
+    static Templates getTemplates(String languageCode) throws TransformerConfigurationException {
+        Templates templates = TEMPLATES.get(languageCode);
+        if (templates == null) {
+            // compiled outside of the map so that failures are not cached
+            templates = compile(languageCode);
+            Templates existing = TEMPLATES.putIfAbsent(languageCode, templates);
+            return existing != null
+                    ? existing
+                    : templates;
+        }
+        return templates;
+    }
+
+    private static Templates compile(String languageCode) throws TransformerConfigurationException {
+        String rules = PDF_TRANSFORMATION_RULES.replace(LOCALE_REPLACER, languageCode);
+        URL resource = ReportTransformations.class.getResource(rules);
+        if (resource == null) {
+            throw new TransformerConfigurationException("No transformation rules found at '" + rules + "'.");
+        }
+        // TransformerFactory is not thread-safe, the compiled Templates are
+        return TransformerFactory.newInstance()
+                                 .newTemplates(new StreamSource(resource.toExternalForm()));
+    }
+
+    /**
+     * Compiles the transformation rules of all bundled locales in the background, once. Called on the first
+     * report request so that requests in other languages do not pay the compilation costs.
+     */
+    static void warmUp() {
+        if (WARMED_UP.compareAndSet(false, true)) {
+            Thread thread = new Thread(ReportTransformations::compileBundledLocales, "pdf-report-warmup");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private static void compileBundledLocales() {
+        for (String languageCode : BUNDLED_LOCALES) {
+            try {
+                getTemplates(languageCode);
+            } catch (TransformerConfigurationException e) {
+                LOGGER.warn("Could not compile PDF transformation rules for locale '{}'.", languageCode, e);
+            }
+        }
+    }
+
+    private static final class FopFactoryHolder {
+
+        private static final FopFactory INSTANCE = new FopFactoryBuilder(new File(".").toURI(), RESOURCES)
+                .build();
+    }
+
+}
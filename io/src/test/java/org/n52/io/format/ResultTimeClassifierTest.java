@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.format;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+import org.n52.io.response.TimeOutput;
+import org.n52.io.response.dataset.AbstractValue;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.quantity.QuantityValue;
+
+public class ResultTimeClassifierTest {
+
+    private static final DateTime RESULT_TIME_1 = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    private static final DateTime RESULT_TIME_2 = RESULT_TIME_1.plusHours(6);
+
+    private static final DateTime RESULT_TIME_3 = RESULT_TIME_1.plusHours(12);
+
+    @Test
+    public void when_classifyingUnsortedResultTimes_then_groupsAreSortedByResultTime() {
+        Data<QuantityValue> data = new Data<>();
+        data.addNewValue(createValue(RESULT_TIME_3, 1));
+        data.addNewValue(createValue(RESULT_TIME_1, 2));
+        data.addNewValue(createValue(RESULT_TIME_2, 3));
+        data.addNewValue(createValue(RESULT_TIME_1, 4));
+
+        ResultTimeClassifiedData<QuantityValue> classified = new ResultTimeClassifier().classify(data);
+        Map<String, List<AbstractValue< ? >>> valuesByResultTime = classified.getValuesByResultTime();
+        assertThat(valuesByResultTime.keySet(), contains(toKey(RESULT_TIME_1),
+                                                         toKey(RESULT_TIME_2),
+                                                         toKey(RESULT_TIME_3)));
+        assertThat(valuesByResultTime.get(toKey(RESULT_TIME_1)).size(), is(2));
+    }
+
+    @Test
+    public void when_filteringResultTimes_then_onlyRequestedGroupsRemain() {
+        Data<QuantityValue> data = new Data<>();
+        data.addNewValue(createValue(RESULT_TIME_1, 1));
+        data.addNewValue(createValue(RESULT_TIME_2, 2));
+        data.addNewValue(createValue(RESULT_TIME_3, 3));
+
+        List<String> resultTimes = Arrays.asList(RESULT_TIME_2.toString(), RESULT_TIME_3.toString());
+        ResultTimeClassifiedData<QuantityValue> classified = new ResultTimeClassifier(resultTimes).classify(data);
+        assertThat(classified.getValuesByResultTime().keySet(), contains(toKey(RESULT_TIME_2),
+                                                                         toKey(RESULT_TIME_3)));
+    }
+
+    private static String toKey(DateTime resultTime) {
+        return Long.toString(resultTime.getMillis());
+    }
+
+    private static QuantityValue createValue(DateTime resultTime, int value) {
+        QuantityValue quantityValue = new QuantityValue();
+        quantityValue.setTimestamp(new TimeOutput(resultTime.plusHours(value)));
+        quantityValue.setResultTime(resultTime);
+        quantityValue.setValue(BigDecimal.valueOf(value));
+        return quantityValue;
+    }
+}
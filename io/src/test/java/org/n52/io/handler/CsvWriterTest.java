@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+public class CsvWriterTest {
+
+    @Test
+    public void when_fieldContainsSeparator_then_fieldIsQuoted() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (CsvWriter writer = new CsvWriter(stream, ";")) {
+            writer.writeField("a;b");
+            writer.writeField(null);
+            writer.writeField("c");
+            writer.endRow();
+        }
+        assertThat(stream.toString("UTF-8"), is("\"a;b\";;c\n"));
+    }
+
+    @Test
+    public void when_writingNonAsciiCharacters_then_outputIsUtf8Encoded() throws IOException {
+        String text = "ä€😀";
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        // tiny buffer to force flushing within multi-byte sequences
+        try (CsvWriter writer = new CsvWriter(stream, ",", 4)) {
+            writer.writeField(text);
+            writer.writeField(text);
+            writer.endRow();
+        }
+        assertThat(stream.toString("UTF-8"), is(text + "," + text + "\n"));
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.n52.io.Constants;
+import org.n52.io.IoStyleContext;
+import org.n52.io.TvpDataCollection;
+import org.n52.io.handler.simple.SimpleCsvIoHandler;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.io.response.FeatureOutput;
+import org.n52.io.response.OptionalOutput;
+import org.n52.io.response.ParameterOutput;
+import org.n52.io.response.PhenomenonOutput;
+import org.n52.io.response.PlatformOutput;
+import org.n52.io.response.ProcedureOutput;
+import org.n52.io.response.TimeOutput;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.DataCollection;
+import org.n52.io.response.dataset.DatasetOutput;
+import org.n52.io.response.dataset.DatasetParameters;
+import org.n52.io.response.dataset.quantity.QuantityValue;
+import org.n52.io.type.quantity.handler.img.MultipleChartsRenderer;
+import org.n52.io.type.quantity.handler.report.PDFReportGenerator;
+
+/**
+ * Zip entries and PDF documents contain the time they have been created at, so the plain output is captured
+ * from the same run instead of writing the output twice.
+ */
+public class IoHandlerBase64Test {
+
+    private static final String DATASET_ID = "dataset";
+
+    private final IoParameters parameters = IoParameters.createDefaults()
+                                                        .extendWith(Parameters.BASE_64, "true");
+
+    private final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+
+    @Test
+    public void when_writingCsvAsBase64_then_plainOutputIsEncoded() throws IoHandlerException {
+        SimpleCsvIoHandler<QuantityValue> handler = createCsvHandler();
+
+        assertEncoded(write(handler));
+    }
+
+    @Test
+    public void when_writingZipAsBase64_then_plainOutputIsEncoded() throws IoHandlerException {
+        SimpleCsvIoHandler<QuantityValue> handler = createCsvHandler();
+        handler.setZipOutput(true);
+
+        assertEncoded(write(handler));
+    }
+
+    @Test
+    public void when_writingPngAsBase64_then_plainOutputIsEncoded() throws IoHandlerException {
+        MultipleChartsRenderer handler = createChartHandler();
+
+        assertEncoded(write(handler));
+    }
+
+    @Test
+    public void when_writingPdfAsBase64_then_plainOutputIsEncoded() throws IoHandlerException {
+        PDFReportGenerator handler = new PDFReportGenerator(parameters, createChartChain(), createChartRenderer()) {
+
+            @Override
+            protected OutputStream createOutputStream(OutputStream outputStream) {
+                return capture(super.createOutputStream(outputStream));
+            }
+        };
+
+        assertEncoded(write(handler));
+    }
+
+    private void assertEncoded(byte[] encoded) {
+        assertThat(plain.size() > 0, is(true));
+        assertThat(new String(encoded), is(new String(Base64.getEncoder()
+                                                            .encode(plain.toByteArray()))));
+    }
+
+    private static byte[] write(IoHandler< ? > handler) throws IoHandlerException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        handler.writeBinary(encoded);
+        return encoded.toByteArray();
+    }
+
+    /**
+     * @return a stream passing the plain output on to the encoding stream and keeping a copy of it
+     */
+    private OutputStream capture(OutputStream encoding) {
+        return new FilterOutputStream(encoding) {
+
+            @Override
+            public void write(int b) throws IOException {
+                plain.write(b);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                plain.write(b, off, len);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    private SimpleCsvIoHandler<QuantityValue> createCsvHandler() {
+        Data<QuantityValue> data = new Data<>();
+        DateTime start = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+        for (int i = 0; i < 100; i++) {
+            QuantityValue value = new QuantityValue();
+            value.setTimestamp(new TimeOutput(start.plusMinutes(i)));
+            value.setValue(BigDecimal.valueOf(i, 2));
+            data.addNewValue(value);
+        }
+        TvpDataCollection<Data<QuantityValue>> collection = new TvpDataCollection<>();
+        collection.addNewSeries(DATASET_ID, data);
+        List<DatasetOutput<QuantityValue>> metadatas = Collections.singletonList(createMetadata());
+        return new SimpleCsvIoHandler<QuantityValue>(parameters, createChain(collection), metadatas) {
+
+            @Override
+            protected OutputStream createOutputStream(OutputStream outputStream) {
+                return capture(super.createOutputStream(outputStream));
+            }
+        };
+    }
+
+    private MultipleChartsRenderer createChartHandler() {
+        MultipleChartsRenderer renderer = new MultipleChartsRenderer(parameters,
+                                                                     createChartChain(),
+                                                                     IoStyleContext.createEmpty()) {
+
+            @Override
+            protected OutputStream createOutputStream(OutputStream outputStream) {
+                return capture(super.createOutputStream(outputStream));
+            }
+        };
+        renderer.setMimeType(Constants.MimeType.IMAGE_PNG);
+        return renderer;
+    }
+
+    private MultipleChartsRenderer createChartRenderer() {
+        return new MultipleChartsRenderer(parameters, createChartChain(), IoStyleContext.createEmpty());
+    }
+
+    private static IoProcessChain<Data<QuantityValue>> createChartChain() {
+        return createChain(new TvpDataCollection<>());
+    }
+
+    private static <T extends Data<QuantityValue>> IoProcessChain<T> createChain(DataCollection<T> collection) {
+        return new IoProcessChain<T>() {
+
+            @Override
+            public DataCollection<T> getData() {
+                return collection;
+            }
+
+            @Override
+            public DataCollection< ? > getProcessedData() {
+                return collection;
+            }
+        };
+    }
+
+    private DatasetOutput<QuantityValue> createMetadata() {
+        DatasetParameters datasetParameters = new DatasetParameters();
+        datasetParameters.setPhenomenon(createParameter(new PhenomenonOutput(), "phen_1", "phenomenon"));
+        datasetParameters.setProcedure(createParameter(new ProcedureOutput(), "proc_1", "procedure"));
+        datasetParameters.setPlatform(createParameter(new PlatformOutput(), "plat_1", "platform"));
+
+        FeatureOutput feature = createParameter(new FeatureOutput(), "feat_1", "feature");
+        feature.setGeometry(OptionalOutput.of(new GeometryFactory().createPoint(new Coordinate(7.6, 51.9))));
+
+        DatasetOutput<QuantityValue> metadata = new DatasetOutput<>();
+        metadata.setFeature(OptionalOutput.of(feature));
+        metadata.setDatasetParameters(OptionalOutput.of(datasetParameters))
+                .setUom(OptionalOutput.of("m"))
+                .setId(DATASET_ID);
+        return metadata;
+    }
+
+    private <T extends ParameterOutput> T createParameter(T output, String id, String label) {
+        output.setId(id)
+              .setLabel(OptionalOutput.of(label));
+        return output;
+    }
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.DataCollection;
+import org.n52.io.response.dataset.quantity.QuantityValue;
+import org.n52.series.spi.srv.DataService;
+import org.n52.series.spi.srv.RawDataService;
+
+public class ParallelDataServiceTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = ParallelDataService.createExecutor(8, false);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void when_fetchingMultipleDatasets_then_eachIsFetchedSeparatelyAndMerged() {
+        DatasetService backend = new DatasetService(id -> new Data<>());
+        ParallelDataService<QuantityValue> service = new ParallelDataService<>(backend, executor, 2);
+
+        DataCollection<Data<QuantityValue>> data = service.getData(createParameters("a", "b", "c"));
+
+        assertThat(data.getAllSeries()
+                       .keySet(),
+                   containsInAnyOrder("a", "b", "c"));
+        assertThat(backend.requests, containsInAnyOrder(Arrays.asList("a"),
+                                                        Arrays.asList("b"),
+                                                        Arrays.asList("c")));
+    }
+
+    @Test
+    public void when_fetchingSingleDataset_then_requestIsDelegatedAsIs() {
+        DatasetService backend = new DatasetService(id -> new Data<>());
+        ParallelDataService<QuantityValue> service = new ParallelDataService<>(backend, executor, 2);
+
+        service.getData(createParameters("a"));
+
+        assertThat(backend.requests, containsInAnyOrder(Arrays.asList("a")));
+    }
+
+    @Test
+    public void when_maxConcurrencyBelowTwo_then_requestIsDelegatedAsIs() {
+        DatasetService backend = new DatasetService(id -> new Data<>());
+        ParallelDataService<QuantityValue> service = new ParallelDataService<>(backend, executor, 1);
+
+        DataCollection<Data<QuantityValue>> data = service.getData(createParameters("a", "b"));
+
+        assertThat(data.size(), is(2));
+        assertThat(backend.requests.size(), is(1));
+        assertThat(backend.requests.get(0), containsInAnyOrder("a", "b"));
+    }
+
+    @Test
+    public void when_fetchingManyDatasets_then_atMostMaxConcurrencyRunAtATime() {
+        DatasetService backend = new DatasetService(id -> {
+            sleep(20);
+            return new Data<>();
+        });
+        ParallelDataService<QuantityValue> service = new ParallelDataService<>(backend, executor, 2);
+
+        DataCollection<Data<QuantityValue>> data = service.getData(createParameters("a", "b", "c", "d", "e", "f"));
+
+        assertThat(data.size(), is(6));
+        assertThat(backend.maxRunning.get(), is(lessThanOrEqualTo(2)));
+    }
+
+    @Test
+    public void when_fetchFails_then_failureIsPropagated() {
+        IllegalStateException failure = new IllegalStateException("backend not available");
+        DatasetService backend = new DatasetService(id -> {
+            if ("b".equals(id)) {
+                throw failure;
+            }
+            return new Data<>();
+        });
+        ParallelDataService<QuantityValue> service = new ParallelDataService<>(backend, executor, 2);
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                                                    () -> service.getData(createParameters("a", "b", "c")));
+
+        assertThat(thrown, is(sameInstance(failure)));
+    }
+
+    @Test
+    public void when_fetchFails_then_outstandingFetchesAreCancelled() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        DatasetService backend = new DatasetService(id -> {
+            if ("b".equals(id)) {
+                await(started);
+                throw new IllegalStateException("backend not available");
+            }
+            started.countDown();
+            blockUntilInterrupted(cancelled);
+            return new Data<>();
+        });
+        ParallelDataService<QuantityValue> service = new ParallelDataService<>(backend, executor, 2);
+
+        assertThrows(IllegalStateException.class, () -> service.getData(createParameters("a", "b")));
+
+        assertThat(cancelled.await(1, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void when_requestingThreadInterrupted_then_fetchesAreCancelled() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch cancelled = new CountDownLatch(2);
+        DatasetService backend = new DatasetService(id -> {
+            started.countDown();
+            blockUntilInterrupted(cancelled);
+            return new Data<>();
+        });
+        ParallelDataService<QuantityValue> service = new ParallelDataService<>(backend, executor, 2);
+        AtomicReference<RuntimeException> thrown = new AtomicReference<>();
+
+        Thread requester = new Thread(() -> {
+            try {
+                service.getData(createParameters("a", "b", "c"));
+            } catch (RuntimeException e) {
+                thrown.set(e);
+            }
+        });
+        requester.start();
+        assertThat(started.await(1, TimeUnit.SECONDS), is(true));
+        requester.interrupt();
+        requester.join(1000);
+
+        assertThat(thrown.get() instanceof CancellationException, is(true));
+        assertThat(cancelled.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(backend.requests.size(), is(2));
+    }
+
+    @Test
+    public void when_virtualThreadsRequested_then_dataIsFetchedEitherWay() {
+        ExecutorService virtualThreads = ParallelDataService.createExecutor(2, true);
+        try {
+            DatasetService backend = new DatasetService(id -> new Data<>());
+            ParallelDataService<QuantityValue> service = new ParallelDataService<>(backend, virtualThreads, 2);
+
+            DataCollection<Data<QuantityValue>> data = service.getData(createParameters("a", "b", "c"));
+
+            assertThat(data.size(), is(3));
+        } finally {
+            virtualThreads.shutdownNow();
+        }
+    }
+
+    private static IoParameters createParameters(String... datasets) {
+        return IoParameters.createDefaults()
+                           .extendWith(Parameters.DATASETS, datasets);
+    }
+
+    private static void blockUntilInterrupted(CountDownLatch cancelled) {
+        try {
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            cancelled.countDown();
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+    private static final class DatasetService implements DataService<Data<QuantityValue>> {
+
+        private final List<List<String>> requests = new CopyOnWriteArrayList<>();
+
+        private final AtomicInteger running = new AtomicInteger();
+
+        private final AtomicInteger maxRunning = new AtomicInteger();
+
+        private final Function<String, Data<QuantityValue>> fetcher;
+
+        DatasetService(Function<String, Data<QuantityValue>> fetcher) {
+            this.fetcher = fetcher;
+        }
+
+        @Override
+        public DataCollection<Data<QuantityValue>> getData(IoParameters parameters) {
+            Set<String> datasets = parameters.getDatasets();
+            requests.add(new ArrayList<>(datasets));
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                DataCollection<Data<QuantityValue>> collection = new DataCollection<>();
+                for (String dataset : datasets) {
+                    collection.addNewSeries(dataset, fetcher.apply(dataset));
+                }
+                return collection;
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean supportsRawData() {
+            return false;
+        }
+
+        @Override
+        public RawDataService getRawDataService() {
+            return null;
+        }
+    }
+
+}
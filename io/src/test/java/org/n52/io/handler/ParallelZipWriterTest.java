@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ParallelZipWriterTest {
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+
+    @TempDir
+    public Path tempDir;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = ParallelZipWriter.createExecutor(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void when_singleDeflatedEntry_then_readableByZipInputStreamAndZipFile() throws IOException {
+        Map<String, String> entries = Collections.singletonMap("single.csv", content(1, 10_000));
+        ParallelZipWriter writer = new ParallelZipWriter(Deflater.DEFAULT_COMPRESSION, false, executor);
+
+        byte[] zip = write(writer, entries);
+
+        assertThat(readWithZipInputStream(zip), is(entries));
+        assertThat(readWithZipFile(zip), is(entries));
+    }
+
+    @Test
+    public void when_entriesAreStored_then_entriesAreNotCompressed() throws IOException {
+        Map<String, String> entries = createEntries(5, 1000);
+        ParallelZipWriter writer = new ParallelZipWriter(Deflater.DEFAULT_COMPRESSION, true, executor);
+
+        byte[] zip = write(writer, entries);
+
+        assertThat(readWithZipInputStream(zip), is(entries));
+        assertThat(readWithZipFile(zip), is(entries));
+        try (ZipFile zipFile = new ZipFile(toFile(zip).toFile())) {
+            ZipEntry entry = zipFile.getEntry("entry-0.csv");
+            assertThat(entry.getMethod(), is(ZipEntry.STORED));
+            assertThat(entry.getCompressedSize(), is(entry.getSize()));
+        }
+    }
+
+    @Test
+    public void when_manyEntries_then_entriesAreWrittenInOrder() throws IOException {
+        Map<String, String> entries = createEntries(200, 5000);
+        ParallelZipWriter writer = new ParallelZipWriter(Deflater.BEST_SPEED, false, executor).setParallelism(3);
+
+        byte[] zip = write(writer, entries);
+
+        Map<String, String> read = readWithZipInputStream(zip);
+        assertThat(new ArrayList<>(read.keySet()), is(new ArrayList<>(entries.keySet())));
+        assertThat(read, is(entries));
+        assertThat(readWithZipFile(zip), is(entries));
+    }
+
+    @Test
+    public void when_entriesExceedInMemorySize_then_spilledEntriesAreWritten() throws IOException {
+        Map<String, String> entries = createEntries(10, 100_000);
+        ParallelZipWriter writer = new ParallelZipWriter(Deflater.DEFAULT_COMPRESSION, false, executor)
+                .setMaxInMemorySize(1024);
+
+        byte[] zip = write(writer, entries);
+
+        assertThat(readWithZipInputStream(zip), is(entries));
+        assertThat(readWithZipFile(zip), is(entries));
+    }
+
+    @Test
+    public void when_emptyEntry_then_entryIsReadAsEmpty() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("empty.csv", "");
+        entries.put("filled.csv", content(2, 100));
+
+        byte[] deflated = write(new ParallelZipWriter(Deflater.DEFAULT_COMPRESSION, false, executor), entries);
+        byte[] stored = write(new ParallelZipWriter(Deflater.DEFAULT_COMPRESSION, true, executor), entries);
+
+        assertThat(readWithZipInputStream(deflated), is(entries));
+        assertThat(readWithZipFile(deflated), is(entries));
+        assertThat(readWithZipInputStream(stored), is(entries));
+        assertThat(readWithZipFile(stored), is(entries));
+    }
+
+    @Test
+    public void when_noExecutor_then_entriesAreEncodedOnCallingThread() throws IOException {
+        Map<String, String> entries = createEntries(3, 1000);
+        Thread caller = Thread.currentThread();
+        List<Thread> encodingThreads = new ArrayList<>();
+        ParallelZipWriter writer = new ParallelZipWriter(Deflater.DEFAULT_COMPRESSION, false);
+        entries.forEach((name, text) -> writer.addEntry(name, stream -> {
+            encodingThreads.add(Thread.currentThread());
+            writeInChunks(text, stream);
+        }));
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        writer.writeTo(zip);
+
+        assertThat(readWithZipInputStream(zip.toByteArray()), is(entries));
+        assertThat(encodingThreads, is(Collections.nCopies(3, caller)));
+    }
+
+    @Test
+    public void when_entryFails_then_writeFailsWithCause() {
+        ParallelZipWriter writer = new ParallelZipWriter(Deflater.DEFAULT_COMPRESSION, false, executor);
+        writer.addEntry("ok.csv", stream -> writeInChunks(content(1, 10), stream));
+        writer.addEntry("failing.csv", stream -> {
+            throw new IOException("failed");
+        });
+        writer.addEntry("ok2.csv", stream -> writeInChunks(content(2, 10), stream));
+
+        IOException e = assertThrows(IOException.class, () -> writer.writeTo(new ByteArrayOutputStream()));
+        assertThat(e.getMessage(), is("failed"));
+    }
+
+    @Test
+    public void when_entryCountBelowZip64Threshold_then_noZip64Records() throws IOException {
+        int count = 0xFFFF - 1;
+        byte[] zip = writeTinyEntries(count);
+
+        assertThat(hasZip64EndOfCentralDirectory(zip), is(false));
+        assertThat(countWithZipInputStream(zip), is(count));
+        try (ZipFile zipFile = new ZipFile(toFile(zip).toFile())) {
+            assertThat(zipFile.size(), is(count));
+        }
+    }
+
+    @Test
+    public void when_entryCountReachesZip64Threshold_then_zip64RecordsAreWritten() throws IOException {
+        int count = 0xFFFF;
+        byte[] zip = writeTinyEntries(count);
+
+        assertThat(hasZip64EndOfCentralDirectory(zip), is(true));
+        assertThat(countWithZipInputStream(zip), is(count));
+        try (ZipFile zipFile = new ZipFile(toFile(zip).toFile())) {
+            assertThat(zipFile.size(), is(count));
+            ZipEntry last = zipFile.getEntry("entry-" + (count - 1) + ".csv");
+            try (InputStream stream = zipFile.getInputStream(last)) {
+                assertThat(readAll(stream), is(tinyContent(count - 1)));
+            }
+        }
+    }
+
+    private byte[] writeTinyEntries(int count) throws IOException {
+        ParallelZipWriter writer = new ParallelZipWriter(Deflater.BEST_SPEED, false, executor);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = tinyContent(i);
+            writer.addEntry("entry-" + i + ".csv", stream -> stream.write(bytes));
+        }
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        writer.writeTo(zip);
+        return zip.toByteArray();
+    }
+
+    private static byte[] tinyContent(int i) {
+        return Integer.toString(i)
+                      .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean hasZip64EndOfCentralDirectory(byte[] zip) {
+        // zip64 end record (56 bytes) and locator (20 bytes) precede the end record (22 bytes, no comment)
+        int offset = zip.length - 22 - 20 - 56;
+        return offset >= 0 && ByteBuffer.wrap(zip, offset, 4)
+                                        .order(ByteOrder.LITTLE_ENDIAN)
+                                        .getInt() == ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE;
+    }
+
+    private static Map<String, String> createEntries(int count, int size) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            entries.put("entry-" + i + ".csv", content(i, size));
+        }
+        return entries;
+    }
+
+    private static String content(int seed, int size) {
+        StringBuilder builder = new StringBuilder(size + 32);
+        for (int row = 0; builder.length() < size; row++) {
+            builder.append(seed)
+                   .append(';')
+                   .append(row)
+                   .append(";ä€\n");
+        }
+        return builder.toString();
+    }
+
+    private static byte[] write(ParallelZipWriter writer, Map<String, String> entries) throws IOException {
+        entries.forEach((name, text) -> writer.addEntry(name, stream -> writeInChunks(text, stream)));
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        writer.writeTo(zip);
+        return zip.toByteArray();
+    }
+
+    private static void writeInChunks(String text, OutputStream stream) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        for (int offset = 0; offset < bytes.length; offset += 777) {
+            stream.write(bytes, offset, Math.min(777, bytes.length - offset));
+        }
+    }
+
+    private static Map<String, String> readWithZipInputStream(byte[] zip) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream stream = new ZipInputStream(new ByteArrayInputStream(zip), StandardCharsets.UTF_8)) {
+            ZipEntry entry;
+            while ((entry = stream.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(readAll(stream), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+
+    private static int countWithZipInputStream(byte[] zip) throws IOException {
+        int count = 0;
+        try (ZipInputStream stream = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            while (stream.getNextEntry() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Map<String, String> readWithZipFile(byte[] zip) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipFile zipFile = new ZipFile(toFile(zip).toFile(), StandardCharsets.UTF_8)) {
+            List<? extends ZipEntry> zipEntries = Collections.list(zipFile.entries());
+            for (ZipEntry entry : zipEntries) {
+                try (InputStream stream = zipFile.getInputStream(entry)) {
+                    byte[] bytes = readAll(stream);
+                    assertThat(entry.getSize(), is((long) bytes.length));
+                    entries.put(entry.getName(), new String(bytes, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private Path toFile(byte[] zip) throws IOException {
+        Path file = Files.createTempFile(tempDir, "archive", ".zip");
+        Files.write(file, zip);
+        return file;
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+import org.n52.io.response.TimeOutput;
+import org.n52.io.response.dataset.quantity.QuantityValue;
+
+public class TimeSliceBoundaryTest {
+
+    private static final DateTime T0 = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    private static final DateTime T1 = T0.plusHours(1);
+
+    private static final DateTime T2 = T0.plusHours(2);
+
+    @Test
+    public void when_firstSlice_then_allValuesAreKept() {
+        TimeSliceBoundary<QuantityValue> boundary = new TimeSliceBoundary<>();
+
+        List<QuantityValue> values = Arrays.asList(createValue(T0, 1), createValue(T1, 2));
+
+        assertThat(toNumbers(boundary.filter(values)), contains(1, 2));
+    }
+
+    @Test
+    public void when_nextSliceRepeatsBoundaryValue_then_repeatedValueIsDropped() {
+        TimeSliceBoundary<QuantityValue> boundary = new TimeSliceBoundary<>();
+        boundary.filter(Arrays.asList(createValue(T0, 1), createValue(T1, 2)));
+
+        List<QuantityValue> next = boundary.filter(Arrays.asList(createValue(T1, 2), createValue(T2, 3)));
+
+        assertThat(toNumbers(next), contains(3));
+    }
+
+    @Test
+    public void when_nextSliceHasOtherValueAtBoundary_then_otherValueIsKept() {
+        TimeSliceBoundary<QuantityValue> boundary = new TimeSliceBoundary<>();
+        boundary.filter(Arrays.asList(createValue(T0, 1), createValue(T1, 2)));
+
+        List<QuantityValue> next = boundary.filter(Arrays.asList(createValue(T1, 2),
+                                                                 createValue(T1, 5),
+                                                                 createValue(T2, 3)));
+
+        assertThat(toNumbers(next), contains(5, 3));
+    }
+
+    @Test
+    public void when_boundaryValueDiffersInResultTime_then_valueIsKept() {
+        TimeSliceBoundary<QuantityValue> boundary = new TimeSliceBoundary<>();
+        boundary.filter(Arrays.asList(createValue(T1, 2, T0)));
+
+        List<QuantityValue> next = boundary.filter(Arrays.asList(createValue(T1, 2, T0),
+                                                                 createValue(T1, 2, T1)));
+
+        assertThat(next.size(), is(1));
+        assertThat(next.get(0)
+                       .getResultTime(),
+                   is(T1));
+    }
+
+    @Test
+    public void when_boundaryValueIsWrittenTwice_then_onlyMatchingNumberOfDuplicatesIsDropped() {
+        TimeSliceBoundary<QuantityValue> boundary = new TimeSliceBoundary<>();
+        boundary.filter(Arrays.asList(createValue(T0, 1), createValue(T1, 2)));
+
+        List<QuantityValue> next = boundary.filter(Arrays.asList(createValue(T1, 2), createValue(T1, 2)));
+
+        assertThat(toNumbers(next), contains(2));
+    }
+
+    @Test
+    public void when_sliceOnlyContainsBoundaryValues_then_boundaryIsKeptForFollowingSlice() {
+        TimeSliceBoundary<QuantityValue> boundary = new TimeSliceBoundary<>();
+        boundary.filter(Arrays.asList(createValue(T0, 1), createValue(T1, 2)));
+        boundary.filter(Arrays.asList(createValue(T1, 2), createValue(T1, 5)));
+
+        List<QuantityValue> next = boundary.filter(Arrays.asList(createValue(T1, 2),
+                                                                 createValue(T1, 5),
+                                                                 createValue(T2, 3)));
+
+        assertThat(toNumbers(next), contains(3));
+    }
+
+    @Test
+    public void when_sliceContainsValuesBeforeBoundary_then_earlierValuesAreDropped() {
+        TimeSliceBoundary<QuantityValue> boundary = new TimeSliceBoundary<>();
+        boundary.filter(Arrays.asList(createValue(T0, 1), createValue(T1, 2)));
+
+        List<QuantityValue> next = boundary.filter(Arrays.asList(createValue(T0, 1), createValue(T2, 3)));
+
+        assertThat(toNumbers(next), contains(3));
+    }
+
+    private static List<Integer> toNumbers(List<QuantityValue> values) {
+        return values.stream()
+                     .map(value -> value.getValue()
+                                        .intValue())
+                     .collect(Collectors.toList());
+    }
+
+    private static QuantityValue createValue(DateTime time, int value) {
+        return createValue(time, value, null);
+    }
+
+    private static QuantityValue createValue(DateTime time, int value, DateTime resultTime) {
+        QuantityValue quantityValue = new QuantityValue();
+        quantityValue.setTimestamp(new TimeOutput(time));
+        quantityValue.setValue(BigDecimal.valueOf(value));
+        quantityValue.setResultTime(resultTime);
+        return quantityValue;
+    }
+
+}
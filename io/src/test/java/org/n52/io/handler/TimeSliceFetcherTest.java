@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.joda.time.Period;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.DataCollection;
+import org.n52.io.response.dataset.quantity.QuantityValue;
+
+public class TimeSliceFetcherTest {
+
+    private static final DateTime START = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = TimeSliceFetcher.createExecutor(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void when_creatingTimeSlices_then_slicesAreConsecutiveAndCoverTimespan() {
+        IoParameters parameters = createParameters(START, START.plusDays(2)
+                                                               .plusHours(12));
+
+        List<String> slices = toIntervals(TimeSliceFetcher.createTimeSlices(parameters, Period.days(1)));
+
+        assertThat(slices, contains(toString(START, START.plusDays(1)),
+                                    toString(START.plusDays(1), START.plusDays(2)),
+                                    toString(START.plusDays(2), START.plusDays(2)
+                                                                     .plusHours(12))));
+    }
+
+    @Test
+    public void when_timespanShorterThanSlice_then_singleSliceIsCreated() {
+        IoParameters parameters = createParameters(START, START.plusHours(5));
+
+        List<String> slices = toIntervals(TimeSliceFetcher.createTimeSlices(parameters, Period.days(1)));
+
+        assertThat(slices, contains(toString(START, START.plusHours(5))));
+    }
+
+    @Test
+    public void when_timespanIsMultipleOfSliceLength_then_noEmptySliceIsCreated() {
+        IoParameters parameters = createParameters(START, START.plusDays(2));
+
+        List<String> slices = toIntervals(TimeSliceFetcher.createTimeSlices(parameters, Period.days(1)));
+
+        assertThat(slices.size(), is(2));
+    }
+
+    @Test
+    public void when_fetchingWithExecutor_then_slicesAreReturnedInOrder() throws IOException {
+        List<IoParameters> slices = createSlices(5);
+        List<String> fetched = new ArrayList<>();
+        try (TimeSliceFetcher<Data<QuantityValue>> fetcher = new TimeSliceFetcher<>(slices, this::fetch, 2, executor)) {
+            while (fetcher.hasNext()) {
+                fetched.add(getSliceStart(fetcher.next()));
+            }
+        }
+        assertThat(fetched, is(toSliceStarts(slices)));
+    }
+
+    @Test
+    public void when_fetchingWithExecutor_then_nextSliceIsPrefetched() throws Exception {
+        List<IoParameters> slices = createSlices(3);
+        CountDownLatch secondFetched = new CountDownLatch(2);
+        Function<IoParameters, DataCollection<Data<QuantityValue>>> fetch = slice -> {
+            secondFetched.countDown();
+            return fetch(slice);
+        };
+        try (TimeSliceFetcher<Data<QuantityValue>> fetcher = new TimeSliceFetcher<>(slices, fetch, 1, executor)) {
+            fetcher.next();
+            assertThat(secondFetched.await(5, TimeUnit.SECONDS), is(true));
+        }
+    }
+
+    @Test
+    public void when_fetchingWithoutExecutor_then_slicesAreFetchedOnCallingThreadWhenRequested()
+            throws IOException {
+        List<IoParameters> slices = createSlices(3);
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        Function<IoParameters, DataCollection<Data<QuantityValue>>> fetch = slice -> {
+            threads.add(Thread.currentThread());
+            return fetch(slice);
+        };
+        try (TimeSliceFetcher<Data<QuantityValue>> fetcher = new TimeSliceFetcher<>(slices, fetch, 2, null)) {
+            fetcher.next();
+            assertThat(threads.size(), is(1));
+            while (fetcher.hasNext()) {
+                fetcher.next();
+            }
+        }
+        assertThat(threads, is(Collections.nCopies(3, Thread.currentThread())));
+    }
+
+    @Test
+    public void when_fetchFails_then_exceptionIsPropagated() {
+        List<IoParameters> slices = createSlices(2);
+        Function<IoParameters, DataCollection<Data<QuantityValue>>> fetch = slice -> {
+            throw new IllegalStateException("failed");
+        };
+        try (TimeSliceFetcher<Data<QuantityValue>> fetcher = new TimeSliceFetcher<>(slices, fetch, 1, executor)) {
+            IllegalStateException e = assertThrows(IllegalStateException.class, fetcher::next);
+            assertThat(e.getMessage(), is("failed"));
+        }
+    }
+
+    @Test
+    public void when_closed_then_pendingFetchesAreCancelled() throws Exception {
+        List<IoParameters> slices = createSlices(3);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Function<IoParameters, DataCollection<Data<QuantityValue>>> fetch = slice -> {
+            if (slice != slices.get(0)) {
+                blocked.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+            return fetch(slice);
+        };
+        try (TimeSliceFetcher<Data<QuantityValue>> fetcher = new TimeSliceFetcher<>(slices, fetch, 1, executor)) {
+            fetcher.next();
+            assertThat(blocked.await(5, TimeUnit.SECONDS), is(true));
+        }
+        assertThat(interrupted.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    private DataCollection<Data<QuantityValue>> fetch(IoParameters slice) {
+        DataCollection<Data<QuantityValue>> data = new DataCollection<>();
+        data.addNewSeries(slice.getTimespan()
+                               .toInterval()
+                               .getStart()
+                               .toString(),
+                          new Data<>());
+        return data;
+    }
+
+    private static String getSliceStart(DataCollection<Data<QuantityValue>> data) {
+        return data.getAllSeries()
+                   .keySet()
+                   .iterator()
+                   .next();
+    }
+
+    private static List<IoParameters> createSlices(int days) {
+        IoParameters parameters = createParameters(START, START.plusDays(days));
+        return TimeSliceFetcher.createTimeSlices(parameters, Period.days(1));
+    }
+
+    private static List<String> toSliceStarts(List<IoParameters> slices) {
+        return slices.stream()
+                     .map(slice -> slice.getTimespan()
+                                        .toInterval()
+                                        .getStart()
+                                        .toString())
+                     .collect(Collectors.toList());
+    }
+
+    private static List<String> toIntervals(List<IoParameters> slices) {
+        return slices.stream()
+                     .map(slice -> slice.getTimespan()
+                                        .toInterval()
+                                        .toString())
+                     .collect(Collectors.toList());
+    }
+
+    private static String toString(DateTime start, DateTime end) {
+        return new Interval(start, end).toString();
+    }
+
+    private static IoParameters createParameters(DateTime start, DateTime end) {
+        return IoParameters.createDefaults()
+                           .replaceWith(Parameters.TIMESPAN,
+                                        IoParameters.createTimespan(start, end)
+                                                    .toString());
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.handler.simple;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.n52.io.TvpDataCollection;
+import org.n52.io.request.IoParameters;
+import org.n52.io.response.FeatureOutput;
+import org.n52.io.response.OptionalOutput;
+import org.n52.io.response.ParameterOutput;
+import org.n52.io.response.PhenomenonOutput;
+import org.n52.io.response.PlatformOutput;
+import org.n52.io.response.ProcedureOutput;
+import org.n52.io.response.TimeOutput;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.DatasetOutput;
+import org.n52.io.response.dataset.DatasetParameters;
+import org.n52.io.response.dataset.quantity.QuantityValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures exporting a single dataset as CSV. Not run as part of the test phase, run via
+ * {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SimpleCsvIoHandlerBenchmark {
+
+    private static final String DATASET_ID = "dataset";
+
+    @Param({
+        "1000000"
+    })
+    private int rows;
+
+    private SimpleCsvIoHandler<QuantityValue> handler;
+
+    private TvpDataCollection<Data<QuantityValue>> collection;
+
+    @Setup
+    public void setUp() {
+        DatasetOutput<QuantityValue> metadata = createMetadata();
+        IoParameters parameters = IoParameters.createDefaults();
+        handler = new SimpleCsvIoHandler<>(parameters, null, Collections.singletonList(metadata));
+
+        Data<QuantityValue> data = new Data<>();
+        DateTime start = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+        for (int i = 0; i < rows; i++) {
+            QuantityValue value = new QuantityValue();
+            value.setTimestamp(new TimeOutput(start.plusSeconds(10 * i)));
+            value.setValue(BigDecimal.valueOf(i, 2));
+            data.addNewValue(value);
+        }
+        collection = new TvpDataCollection<>();
+        collection.addNewSeries(DATASET_ID, data);
+    }
+
+    @Benchmark
+    public long exportCsv() {
+        CountingOutputStream stream = new CountingOutputStream();
+        handler.encodeAndWriteTo(collection, stream);
+        return stream.count;
+    }
+
+    private DatasetOutput<QuantityValue> createMetadata() {
+        DatasetParameters datasetParameters = new DatasetParameters();
+        datasetParameters.setPhenomenon(createParameter(new PhenomenonOutput(), "phen_1", "phenomenon"));
+        datasetParameters.setProcedure(createParameter(new ProcedureOutput(), "proc_1", "procedure"));
+        datasetParameters.setPlatform(createParameter(new PlatformOutput(), "plat_1", "platform"));
+
+        FeatureOutput feature = createParameter(new FeatureOutput(), "feat_1", "feature");
+        feature.setGeometry(OptionalOutput.of(new GeometryFactory().createPoint(new Coordinate(7.6, 51.9))));
+
+        DatasetOutput<QuantityValue> metadata = new DatasetOutput<>();
+        metadata.setFeature(OptionalOutput.of(feature));
+        metadata.setDatasetParameters(OptionalOutput.of(datasetParameters))
+                .setUom(OptionalOutput.of("m"))
+                .setId(DATASET_ID);
+        return metadata;
+    }
+
+    private <T extends ParameterOutput> T createParameter(T output, String id, String label) {
+        output.setId(id)
+              .setLabel(OptionalOutput.of(label));
+        return output;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SimpleCsvIoHandlerBenchmark.class.getSimpleName())
+                                       .build()).run();
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) throws IOException {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+        }
+    }
+
+}
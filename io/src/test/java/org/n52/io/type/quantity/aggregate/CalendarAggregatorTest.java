@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.aggregate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+
+public class CalendarAggregatorTest {
+
+    private static final DateTimeZone BERLIN = DateTimeZone.forID("Europe/Berlin");
+
+    @Test
+    public void when_aggregatingByDay_then_lastBucketIsIncluded() {
+        DateTime start = new DateTime(2020, 1, 1, 6, 0, DateTimeZone.UTC);
+        long[] times = {
+            start.getMillis(),
+            start.plusHours(1).getMillis(),
+            start.plusDays(1).getMillis(),
+            start.plusDays(1).plusHours(2).getMillis()
+        };
+        double[] values = {1, 2, 3, 5};
+
+        CalendarAggregator aggregator = new CalendarAggregator(CalendarInterval.DAY, DateTimeZone.UTC);
+        AggregatedBuckets buckets = aggregator.aggregate(times, values, times.length);
+
+        assertThat(buckets.size(), is(2));
+        assertThat(buckets.getSum(0), is(3d));
+        assertThat(buckets.getSum(1), is(8d));
+        assertThat(buckets.getAverage(1), is(4d));
+        assertThat(buckets.getMin(1), is(3d));
+        assertThat(buckets.getMax(1), is(5d));
+        assertThat(buckets.getCount(1), is(2));
+    }
+
+    @Test
+    public void when_aggregatingByDayInZone_then_bucketsFollowZone() {
+        // 23:30 UTC is already the next day in Berlin
+        DateTime time = new DateTime(2020, 1, 1, 23, 30, DateTimeZone.UTC);
+        long[] times = {
+            time.minusHours(1).getMillis(),
+            time.getMillis()
+        };
+        double[] values = {1, 2};
+
+        AggregatedBuckets buckets = new CalendarAggregator(CalendarInterval.DAY, BERLIN).aggregate(times,
+                                                                                                     values,
+                                                                                                     2);
+
+        assertThat(buckets.size(), is(2));
+        assertThat(buckets.getStart(1), is(new DateTime(2020, 1, 2, 0, 0, BERLIN).getMillis()));
+        assertThat(buckets.getSum(1), is(2d));
+    }
+
+    @Test
+    public void when_aggregatingOverDaylightSavingChange_then_dayBucketIsShorter() {
+        DateTime day = new DateTime(2020, 3, 29, 0, 0, BERLIN);
+        long[] times = {
+            day.plusHours(1).getMillis(),
+            day.plusHours(22).getMillis()
+        };
+        double[] values = {1, 2};
+
+        AggregatedBuckets buckets = new CalendarAggregator(CalendarInterval.DAY, BERLIN).aggregate(times,
+                                                                                                     values,
+                                                                                                     2);
+
+        assertThat(buckets.size(), is(1));
+        assertThat(buckets.getEnd(0) - buckets.getStart(0), is(23 * 3600 * 1000L));
+    }
+
+    @Test
+    public void when_aggregatingWithGapsAndMissingValues_then_emptyBucketsAreSkipped() {
+        DateTime start = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+        long[] times = {
+            start.getMillis(),
+            start.plusHours(1).getMillis(),
+            start.plusMonths(3).getMillis()
+        };
+        double[] values = {1, Double.NaN, 4};
+
+        AggregatedBuckets buckets = new CalendarAggregator(CalendarInterval.MONTH, DateTimeZone.UTC).aggregate(times,
+                                                                                                                 values,
+                                                                                                                 3);
+
+        assertThat(buckets.size(), is(2));
+        assertThat(buckets.getCount(0), is(1));
+        assertThat(buckets.getValue(1, Aggregation.SUM), is(4d));
+        assertThat(buckets.getStart(1), is(start.plusMonths(3).getMillis()));
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.handler.img;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class ArrayTimeSeriesDatasetTest {
+
+    @Test
+    public void when_fewerPointsThanPixels_then_datasetIsNotDecimated() {
+        ArrayTimeSeriesDataset dataset = createDataset(new long[] {0, 10, 20}, new double[] {1, 2, 3});
+
+        assertThat(dataset.decimate(0, 20, 100), is(sameInstance(dataset)));
+        // up to four points per pixel are kept as they are
+        ArrayTimeSeriesDataset small = createDataset(new long[] {0, 1, 2, 3, 4, 5, 6, 7},
+                                                     new double[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThat(small.decimate(0, 7, 2), is(sameInstance(small)));
+    }
+
+    @Test
+    public void when_decimatingBucket_then_firstMinMaxLastAreKeptInTimeOrder() {
+        // all points fall into a single pixel column, maximum before minimum
+        long[] times = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        double[] values = {5, 6, 9, 7, 3, 1, 2, 3, 5, 4};
+
+        ArrayTimeSeriesDataset decimated = createDataset(times, values).decimate(0, 100, 1);
+
+        assertThat(getTimes(decimated), is(Arrays.asList(0L, 2L, 5L, 9L)));
+        assertThat(getValues(decimated), is(Arrays.asList(5d, 9d, 1d, 4d)));
+    }
+
+    @Test
+    public void when_minimumBeforeMaximum_then_minimumIsKeptFirst() {
+        long[] times = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        double[] values = {5, 4, 1, 2, 3, 6, 9, 8, 7, 6};
+
+        ArrayTimeSeriesDataset decimated = createDataset(times, values).decimate(0, 100, 1);
+
+        assertThat(getTimes(decimated), is(Arrays.asList(0L, 2L, 6L, 9L)));
+        assertThat(getValues(decimated), is(Arrays.asList(5d, 1d, 9d, 6d)));
+    }
+
+    @Test
+    public void when_bucketsAreDecimated_then_eachPixelKeepsItsExtremes() {
+        int size = 1000;
+        long[] times = new long[size];
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            times[i] = i;
+            values[i] = Math.sin(i / 10d) * i;
+        }
+
+        ArrayTimeSeriesDataset decimated = createDataset(times, values).decimate(0, size, 10);
+
+        assertThat(decimated.getItemCount(0) <= 10 * 4, is(true));
+        assertThat(decimated.getRangeLowerBound(false), is(createDataset(times, values).getRangeLowerBound(false)));
+        assertThat(decimated.getRangeUpperBound(false), is(createDataset(times, values).getRangeUpperBound(false)));
+        assertAscending(getTimes(decimated));
+    }
+
+    @Test
+    public void when_valuesAreMissing_then_gapsArePreserved() {
+        long[] times = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        double[] values = {1, 2, 3, 4, Double.NaN, 6, 7, 8, 9, 10};
+
+        ArrayTimeSeriesDataset decimated = createDataset(times, values).decimate(0, 100, 1);
+
+        assertThat(getTimes(decimated), is(Arrays.asList(0L, 3L, 4L, 5L, 9L)));
+        assertThat(decimated.getY(0, 2) == null, is(true));
+        assertThat(Double.isNaN(decimated.getYValue(0, 2)), is(true));
+        // values on either side of a gap are not merged
+        assertThat(getValues(decimated).subList(0, 2), is(Arrays.asList(1d, 4d)));
+        assertThat(getValues(decimated).subList(3, 5), is(Arrays.asList(6d, 10d)));
+    }
+
+    @Test
+    public void when_pointsOutsideDomain_then_theyAreCollectedInOneColumnPerSide() {
+        List<Long> times = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        for (long time = -100; time < 0; time++) {
+            times.add(time);
+            values.add((double) time);
+        }
+        times.add(50L);
+        values.add(0d);
+        for (long time = 101; time < 201; time++) {
+            times.add(time);
+            values.add((double) -time);
+        }
+
+        ArrayTimeSeriesDataset decimated = createDataset(times, values).decimate(0, 100, 10);
+
+        List<Long> decimatedTimes = getTimes(decimated);
+        assertThat(decimatedTimes, is(Arrays.asList(-100L, -1L, 50L, 101L, 200L)));
+        assertThat(getValues(decimated), is(Arrays.asList(-100d, -1d, 0d, -101d, -200d)));
+    }
+
+    @Test
+    public void when_invalidDomain_then_datasetIsNotDecimated() {
+        long[] times = new long[100];
+        double[] values = new double[100];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = i;
+        }
+        ArrayTimeSeriesDataset dataset = createDataset(times, values);
+
+        assertThat(dataset.decimate(100, 0, 10), is(sameInstance(dataset)));
+        assertThat(dataset.decimate(0, 100, 0), is(sameInstance(dataset)));
+    }
+
+    private static void assertAscending(List<Long> times) {
+        for (int i = 1; i < times.size(); i++) {
+            assertThat("ascending at " + i, times.get(i) > times.get(i - 1), is(true));
+        }
+    }
+
+    private static ArrayTimeSeriesDataset createDataset(List<Long> times, List<Double> values) {
+        return createDataset(times.stream()
+                                  .mapToLong(Long::longValue)
+                                  .toArray(),
+                             values.stream()
+                                   .mapToDouble(Double::doubleValue)
+                                   .toArray());
+    }
+
+    private static ArrayTimeSeriesDataset createDataset(long[] times, double[] values) {
+        return new ArrayTimeSeriesDataset("series", times, values, times.length);
+    }
+
+    private static List<Long> getTimes(ArrayTimeSeriesDataset dataset) {
+        List<Long> times = new ArrayList<>();
+        for (int i = 0; i < dataset.getItemCount(0); i++) {
+            times.add((long) dataset.getXValue(0, i));
+        }
+        return times;
+    }
+
+    private static List<Double> getValues(ArrayTimeSeriesDataset dataset) {
+        List<Double> values = new ArrayList<>();
+        for (int i = 0; i < dataset.getItemCount(0); i++) {
+            values.add(dataset.getYValue(0, i));
+        }
+        return values;
+    }
+
+}
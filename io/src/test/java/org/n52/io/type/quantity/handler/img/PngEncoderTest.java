@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.handler.img;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.PngFilter;
+
+public class PngEncoderTest {
+
+    private static final List<Color> SERIES_COLORS = Arrays.asList(Color.RED, Color.BLUE, new Color(0x12a33c));
+
+    @Test
+    public void when_encodingTrueColor_then_everyFilterAndLevelDecodesToSamePixels() throws IOException {
+        BufferedImage image = createGradientImage(BufferedImage.TYPE_INT_RGB);
+        for (PngFilter filter : PngFilter.values()) {
+            for (int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++) {
+                BufferedImage decoded = roundTrip(new PngEncoder(level, filter), image);
+                assertSamePixels(filter + "/" + level, image, decoded);
+            }
+        }
+    }
+
+    @Test
+    public void when_imageIsNotIntRgb_then_pixelsAreReadViaRgb() throws IOException {
+        BufferedImage image = createGradientImage(BufferedImage.TYPE_3BYTE_BGR);
+        for (PngFilter filter : PngFilter.values()) {
+            BufferedImage decoded = roundTrip(new PngEncoder(Deflater.DEFAULT_COMPRESSION, filter), image);
+            assertSamePixels(filter.getName(), image, decoded);
+        }
+    }
+
+    @Test
+    public void when_paletteWithFewColors_then_everyFilterAndLevelDecodesToSamePixels() throws IOException {
+        BufferedImage image = createChartLikeImage();
+        for (PngFilter filter : PngFilter.values()) {
+            for (int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++) {
+                PngEncoder encoder = new PngEncoder(level, filter);
+                encoder.setPaletteColors(SERIES_COLORS);
+                BufferedImage decoded = roundTrip(encoder, image);
+                assertSamePixels(filter + "/" + level, image, decoded);
+            }
+        }
+    }
+
+    @Test
+    public void when_paletteWithManyColors_then_seedColorsAreExactAndOthersAreMapped() throws IOException {
+        BufferedImage image = createGradientImage(BufferedImage.TYPE_INT_RGB);
+        drawSeedColors(image);
+        for (PngFilter filter : PngFilter.values()) {
+            PngEncoder encoder = new PngEncoder(Deflater.DEFAULT_COMPRESSION, filter);
+            encoder.setPaletteColors(SERIES_COLORS);
+            BufferedImage decoded = roundTrip(encoder, image);
+
+            assertThat(decoded.getWidth(), is(image.getWidth()));
+            assertThat(decoded.getHeight(), is(image.getHeight()));
+            Set<Integer> colors = new HashSet<>();
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    colors.add(decoded.getRGB(x, y));
+                }
+            }
+            assertThat(colors.size(), is(lessThanOrEqualTo(256)));
+            for (int i = 0; i < SERIES_COLORS.size(); i++) {
+                assertThat(filter.getName(), decoded.getRGB(i, 0), is(SERIES_COLORS.get(i)
+                                                                                   .getRGB()));
+            }
+            assertThat(decoded.getRGB(SERIES_COLORS.size(), 0), is(Color.WHITE.getRGB()));
+            assertThat(decoded.getRGB(SERIES_COLORS.size() + 1, 0), is(Color.BLACK.getRGB()));
+        }
+    }
+
+    @Test
+    public void when_imageIsSinglePixel_then_pixelIsEncoded() throws IOException {
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, 0x123456);
+        for (PngFilter filter : PngFilter.values()) {
+            assertSamePixels(filter.getName(), image, roundTrip(new PngEncoder(9, filter), image));
+        }
+    }
+
+    @Test
+    public void when_parsingFilterNames_then_namesAreCaseInsensitive() {
+        assertThat(PngFilter.fromString("Paeth"), is(PngFilter.PAETH));
+        assertThat(PngFilter.getNames(), is(Arrays.asList("none", "sub", "up", "average", "paeth", "adaptive")));
+    }
+
+    private static BufferedImage roundTrip(PngEncoder encoder, BufferedImage image) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        encoder.encode(image, png);
+        return ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+    }
+
+    private static void assertSamePixels(String reason, BufferedImage expected, BufferedImage actual) {
+        assertThat(reason, actual.getWidth(), is(expected.getWidth()));
+        assertThat(reason, actual.getHeight(), is(expected.getHeight()));
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertThat(reason + " at " + x + "," + y, actual.getRGB(x, y), is(expected.getRGB(x, y)));
+            }
+        }
+    }
+
+    private static BufferedImage createGradientImage(int type) {
+        // width not divisible by 8 and noise to exercise all filter types
+        BufferedImage image = new BufferedImage(67, 45, type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int red = x * 255 / image.getWidth();
+                int green = y * 255 / image.getHeight();
+                int blue = (x * 31 + y * 17) & 0xff;
+                image.setRGB(x, y, red << 16 | green << 8 | blue);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage createChartLikeImage() {
+        BufferedImage image = new BufferedImage(50, 30, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, Color.WHITE.getRGB());
+            }
+        }
+        for (int x = 0; x < image.getWidth(); x++) {
+            Color color = SERIES_COLORS.get(x % SERIES_COLORS.size());
+            image.setRGB(x, (x * 7) % image.getHeight(), color.getRGB());
+            image.setRGB(x, image.getHeight() - 1, Color.BLACK.getRGB());
+        }
+        return image;
+    }
+
+    private static void drawSeedColors(BufferedImage image) {
+        for (int i = 0; i < SERIES_COLORS.size(); i++) {
+            image.setRGB(i, 0, SERIES_COLORS.get(i)
+                                            .getRGB());
+        }
+        image.setRGB(SERIES_COLORS.size(), 0, Color.WHITE.getRGB());
+        image.setRGB(SERIES_COLORS.size() + 1, 0, Color.BLACK.getRGB());
+    }
+
+}
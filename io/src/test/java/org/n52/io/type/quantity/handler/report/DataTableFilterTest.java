@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.type.quantity.handler.report;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+import org.n52.io.I18N;
+import org.n52.io.response.OptionalOutput;
+import org.n52.io.response.PhenomenonOutput;
+import org.n52.io.response.TimeOutput;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.DataCollection;
+import org.n52.io.response.dataset.DatasetOutput;
+import org.n52.io.response.dataset.DatasetParameters;
+import org.n52.io.response.dataset.quantity.QuantityValue;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+public class DataTableFilterTest {
+
+    private static final String FO = DataTableFilter.FO_NAMESPACE;
+
+    private static final DateTime START = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    private static final String MINIMAL_FO = "<fo:root xmlns:fo=\"" + FO + "\">"
+            + "<fo:layout-master-set/>"
+            + "<fo:page-sequence master-reference=\"default-page\">"
+            + "<fo:flow flow-name=\"xsl-region-body\">"
+            + "<fo:block><x:root xmlns:x=\"urn:other\"/>chart</fo:block>"
+            + "</fo:flow>"
+            + "</fo:page-sequence>"
+            + "</fo:root>";
+
+    @Test
+    public void when_filtering_then_tablesAreAppendedToRootInDatasetOrder() throws Exception {
+        DataCollection<Data<QuantityValue>> data = new DataCollection<>();
+        data.addNewSeries("a", createData(2));
+        data.addNewSeries("b", createData(3));
+        List<DatasetOutput< ? >> metadatas = Arrays.asList(createMetadata("b", "m"),
+                                                           createMetadata("unknown", "m"),
+                                                           createMetadata("a", ""));
+
+        Document document = filter(data, metadatas, 100);
+
+        List<Element> children = getChildElements(document.getDocumentElement());
+        assertThat(getLocalNames(children),
+                   contains("layout-master-set", "page-sequence", "page-sequence", "page-sequence"));
+        assertThat(children.get(1)
+                           .getTextContent(),
+                   is("chart"));
+        assertThat(getCaption(children.get(2)), is("label b"));
+        assertThat(getCaption(children.get(3)), is("label a"));
+        assertThat(getCellTexts(children.get(2), "table-header"), contains("Time", "phenomenon (m)"));
+        assertThat(getCellTexts(children.get(3), "table-header"), contains("Time", "phenomenon"));
+        assertThat(getCellTexts(children.get(3), "table-body"),
+                   contains(START.toString(),
+                            "0",
+                            START.plusMinutes(1)
+                                 .toString(),
+                            "1"));
+    }
+
+    @Test
+    public void when_moreValuesThanTableRows_then_valuesAreThinnedOutEvenly() throws Exception {
+        DataCollection<Data<QuantityValue>> data = new DataCollection<>();
+        data.addNewSeries("a", createData(10));
+
+        Document document = filter(data, Arrays.asList(createMetadata("a", "m")), 4);
+
+        Element table = getChildElements(document.getDocumentElement()).get(2);
+        assertThat(getBlockTexts(table), contains("label a", "4 / 10"));
+        List<String> cells = getCellTexts(table, "table-body");
+        assertThat(cells.size(), is(8));
+        assertThat(Arrays.asList(cells.get(1), cells.get(3), cells.get(5), cells.get(7)),
+                   contains("0", "2", "5", "7"));
+    }
+
+    @Test
+    public void when_moreRowsThanFitInOneSequence_then_tableIsSplitIntoPageSequences() throws Exception {
+        DataCollection<Data<QuantityValue>> data = new DataCollection<>();
+        data.addNewSeries("a", createData(2500));
+
+        Document document = filter(data, Arrays.asList(createMetadata("a", "m")), 2500);
+
+        List<Element> sequences = getChildElements(document.getDocumentElement());
+        assertThat(sequences.size(), is(5));
+        assertThat(countRows(sequences.get(2)), is(1000));
+        assertThat(countRows(sequences.get(3)), is(1000));
+        assertThat(countRows(sequences.get(4)), is(500));
+        assertThat(getCaption(sequences.get(2)), is("label a"));
+        assertThat(getBlockTexts(sequences.get(3)).isEmpty(), is(true));
+        assertThat(getCellTexts(sequences.get(4), "table-header"), contains("Time", "phenomenon (m)"));
+        assertThat(getCellTexts(sequences.get(4), "table-body").get(1), is("2000"));
+    }
+
+    @Test
+    public void when_seriesIsEmpty_then_tableHasOneEmptyRow() throws Exception {
+        DataCollection<Data<QuantityValue>> data = new DataCollection<>();
+        data.addNewSeries("a", createData(0));
+
+        Document document = filter(data, Arrays.asList(createMetadata("a", "m")), 100);
+
+        Element table = getChildElements(document.getDocumentElement()).get(2);
+        assertThat(countRows(table), is(1));
+        assertThat(getCellTexts(table, "table-body"), contains("", ""));
+    }
+
+    private static Document filter(DataCollection<Data<QuantityValue>> data,
+                                   List<DatasetOutput< ? >> metadatas,
+                                   int maxRows)
+            throws Exception {
+        SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+        parserFactory.setNamespaceAware(true);
+        XMLReader reader = parserFactory.newSAXParser()
+                                        .getXMLReader();
+        SAXTransformerFactory transformerFactory = (SAXTransformerFactory) TransformerFactory.newInstance();
+        TransformerHandler handler = transformerFactory.newTransformerHandler();
+        DOMResult result = new DOMResult();
+        handler.setResult(result);
+
+        DataTableFilter filter = new DataTableFilter(data,
+                                                     metadatas,
+                                                     I18N.getDefaultLocalizer(),
+                                                     DateTimeZone.UTC,
+                                                     maxRows);
+        filter.setParent(reader);
+        filter.setContentHandler(handler);
+        filter.parse(new InputSource(new StringReader(MINIMAL_FO)));
+        return (Document) result.getNode();
+    }
+
+    private static Data<QuantityValue> createData(int count) {
+        Data<QuantityValue> data = new Data<>();
+        for (int i = 0; i < count; i++) {
+            QuantityValue value = new QuantityValue();
+            value.setTimestamp(new TimeOutput(START.plusMinutes(i)));
+            value.setValue(BigDecimal.valueOf(i));
+            data.addNewValue(value);
+        }
+        return data;
+    }
+
+    private static DatasetOutput< ? > createMetadata(String id, String uom) {
+        PhenomenonOutput phenomenon = new PhenomenonOutput();
+        phenomenon.setId("phen_1")
+                  .setLabel(OptionalOutput.of("phenomenon"));
+        DatasetParameters datasetParameters = new DatasetParameters();
+        datasetParameters.setPhenomenon(phenomenon);
+        DatasetOutput< ? > metadata = new DatasetOutput();
+        metadata.setDatasetParameters(OptionalOutput.of(datasetParameters))
+                .setUom(OptionalOutput.of(uom))
+                .setLabel(OptionalOutput.of("label " + id))
+                .setId(id);
+        return metadata;
+    }
+
+    private static String getCaption(Element pageSequence) {
+        return getBlockTexts(pageSequence).get(0);
+    }
+
+    private static List<String> getBlockTexts(Element pageSequence) {
+        // captions are the blocks directly within the flow
+        Element flow = getChildElements(pageSequence).get(0);
+        List<String> texts = new ArrayList<>();
+        for (Element child : getChildElements(flow)) {
+            if ("block".equals(child.getLocalName())) {
+                texts.add(child.getTextContent());
+            }
+        }
+        return texts;
+    }
+
+    private static List<String> getCellTexts(Element pageSequence, String part) {
+        Element section = (Element) pageSequence.getElementsByTagNameNS(FO, part)
+                                                .item(0);
+        NodeList cells = section.getElementsByTagNameNS(FO, "table-cell");
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < cells.getLength(); i++) {
+            texts.add(cells.item(i)
+                           .getTextContent());
+        }
+        return texts;
+    }
+
+    private static int countRows(Element pageSequence) {
+        Element body = (Element) pageSequence.getElementsByTagNameNS(FO, "table-body")
+                                             .item(0);
+        return body.getElementsByTagNameNS(FO, "table-row")
+                   .getLength();
+    }
+
+    private static List<Element> getChildElements(Element parent) {
+        List<Element> elements = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                elements.add((Element) child);
+            }
+        }
+        return elements;
+    }
+
+    private static List<String> getLocalNames(List<Element> elements) {
+        List<String> names = new ArrayList<>();
+        for (Element element : elements) {
+            names.add(element.getLocalName());
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,514 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.n52.web.common.FileResponses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends prerendered images to a few large segment files instead of keeping one file per image. An in-memory
+ * index maps each image name to its offset within a segment. Images are served from slices of the
+ * memory-mapped segments.
+ * <p>
+ * Each record of a segment consists of a header (name length, content length, last modification time, CRC32
+ * checksum of name and content), the image name and the image content. The index is rebuilt from the records
+ * when the store is opened, later records superseding earlier ones. A truncated or corrupt record (e.g. after a
+ * crash) is cut off together with all records following it. Segments whose content has been mostly superseded
+ * are compacted by copying their remaining images to the active segment, which is forced to disk before the
+ * former segment is deleted.
+ */
+public class PackedImageStore implements PrerenderedImageStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PackedImageStore.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String PACK_FOLDER = "packs";
+
+    private static final String SEGMENT_GLOB = "segment-*.pack";
+
+    private static final String SEGMENT_NAME_FORMAT = "segment-%010d.pack";
+
+    // name length (int), content length (int), last modified (long), checksum (int)
+    private static final int HEADER_SIZE = 20;
+
+    private static final int MAX_NAME_LENGTH = 1024;
+
+    // segments with less than half of their bytes still in use are compacted
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    private final Map<String, PackedImage> images = new ConcurrentHashMap<>();
+
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    private final int segmentSize;
+
+    private volatile Path directory;
+
+    // guarded by this
+    private Segment active;
+
+    public PackedImageStore() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize
+     *        the size in bytes after which a new segment is started
+     */
+    public PackedImageStore(int segmentSize) {
+        this.segmentSize = Math.max(1, segmentSize);
+    }
+
+    @Override
+    public void open(Path outputFolder) {
+        Path packFolder = outputFolder.resolve(PACK_FOLDER);
+        if (packFolder.equals(directory)) {
+            return;
+        }
+        synchronized (this) {
+            if (packFolder.equals(directory)) {
+                return;
+            }
+            closeSegments();
+            try {
+                Files.createDirectories(packFolder);
+                for (Path file : listSegmentFiles(packFolder)) {
+                    Segment segment = new Segment(parseSegmentId(file), file);
+                    segments.put(segment.id, segment);
+                    load(segment);
+                }
+                LOGGER.debug("Indexed {} prerendered images in {} segments.", images.size(), segments.size());
+            } catch (IOException e) {
+                LOGGER.warn("Could not index prerendered images in '{}'.", packFolder, e);
+            }
+            directory = packFolder;
+        }
+    }
+
+    @Override
+    public void store(String name, ImageWriter writer) throws IOException {
+        // render completely before appending, so that a failing writer does not leave a partial record
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        writer.write(content);
+        synchronized (this) {
+            append(name, content.toByteArray(), System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return images.containsKey(name);
+    }
+
+    @Override
+    public List<String> getNames(String prefix) {
+        return images.keySet()
+                     .stream()
+                     .filter(name -> name.startsWith(prefix))
+                     .sorted()
+                     .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean copy(String name, OutputStream out) throws IOException {
+        return withContent(name, (image, content) -> {
+            WritableByteChannel target = Channels.newChannel(out);
+            while (content.hasRemaining()) {
+                target.write(content);
+            }
+        });
+    }
+
+    @Override
+    public boolean write(String name, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        return withContent(name, (image, content) -> {
+            FileResponses.write(content, image.etag, image.lastModified, request, response);
+        });
+    }
+
+    /**
+     * Copies the remaining images of mostly superseded segments to the active segment and deletes the
+     * former segments.
+     */
+    @Override
+    public void compact() {
+        for (Segment segment : segments.values()) {
+            if (segment != getActive() && segment.getLiveRatio() < COMPACTION_THRESHOLD) {
+                try {
+                    compact(segment);
+                } catch (IOException e) {
+                    LOGGER.warn("Could not compact segment '{}'.", segment.file, e);
+                }
+            }
+        }
+        // called after each run, so images of a run are durable once it has finished
+        forceActive();
+    }
+
+    private void compact(Segment segment) throws IOException {
+        int moved = 0;
+        for (Map.Entry<String, PackedImage> entry : images.entrySet()) {
+            PackedImage image = entry.getValue();
+            if (image.segment == segment) {
+                ByteBuffer slice = image.slice();
+                byte[] content = new byte[slice.remaining()];
+                slice.get(content);
+                synchronized (this) {
+                    // the image may have been replaced in the meantime
+                    if (images.get(entry.getKey()) == image) {
+                        append(entry.getKey(), content, image.lastModified);
+                        moved++;
+                    }
+                }
+            }
+        }
+        // the copies have to be durable before their origin is deleted
+        forceActive();
+        synchronized (this) {
+            segments.remove(segment.id);
+        }
+        segment.delete();
+        LOGGER.debug("Compacted segment '{}', moved {} images.", segment.file, moved);
+    }
+
+    private void forceActive() {
+        Segment current = getActive();
+        if (current != null) {
+            try {
+                current.force();
+            } catch (IOException e) {
+                LOGGER.warn("Could not force segment '{}' to disk.", current.file, e);
+            }
+        }
+    }
+
+    private boolean withContent(String name, ContentConsumer consumer) throws IOException {
+        PackedImage image = images.get(name);
+        if (image == null) {
+            return false;
+        }
+        ByteBuffer content;
+        try {
+            content = image.slice();
+        } catch (ClosedChannelException e) {
+            // segment has been compacted in the meantime
+            image = images.get(name);
+            if (image == null) {
+                return false;
+            }
+            content = image.slice();
+        }
+        consumer.accept(image, content);
+        return true;
+    }
+
+    private void append(String name, byte[] content, long lastModified) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > MAX_NAME_LENGTH) {
+            throw new IOException("Image name too long: " + name);
+        }
+        int recordLength = HEADER_SIZE + nameBytes.length + content.length;
+        Segment segment = getActiveSegment(recordLength);
+        long offset = segment.size;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + nameBytes.length);
+        header.putInt(nameBytes.length);
+        header.putInt(content.length);
+        header.putLong(lastModified);
+        header.putInt(computeChecksum(nameBytes, content));
+        header.put(nameBytes);
+        header.flip();
+        segment.write(header, offset);
+        segment.write(ByteBuffer.wrap(content), offset + header.capacity());
+        segment.size = offset + recordLength;
+
+        PackedImage image = new PackedImage(segment, offset + header.capacity(), content.length, lastModified);
+        add(name, image);
+    }
+
+    private void load(Segment segment) throws IOException {
+        long fileSize = segment.channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (offset < fileSize) {
+            header.clear();
+            segment.read(header, offset);
+            int nameLength = header.getInt(0);
+            int contentLength = header.getInt(4);
+            long lastModified = header.getLong(8);
+            int checksum = header.getInt(16);
+            long contentOffset = offset + HEADER_SIZE + nameLength;
+            if (header.hasRemaining()
+                    || nameLength <= 0
+                    || nameLength > MAX_NAME_LENGTH
+                    || contentLength < 0
+                    || contentOffset + contentLength > fileSize) {
+                LOGGER.warn("Truncating incomplete record at {} of segment '{}'.", offset, segment.file);
+                segment.channel.truncate(offset);
+                break;
+            }
+            byte[] name = new byte[nameLength];
+            byte[] content = new byte[contentLength];
+            segment.read(ByteBuffer.wrap(name), offset + HEADER_SIZE);
+            segment.read(ByteBuffer.wrap(content), contentOffset);
+            if (computeChecksum(name, content) != checksum) {
+                LOGGER.warn("Truncating corrupt record at {} of segment '{}'.", offset, segment.file);
+                segment.channel.truncate(offset);
+                break;
+            }
+            String imageName = new String(name, StandardCharsets.UTF_8);
+            add(imageName, new PackedImage(segment, contentOffset, contentLength, lastModified));
+            offset = contentOffset + contentLength;
+        }
+        segment.size = offset;
+    }
+
+    private static int computeChecksum(byte[] name, byte[] content) {
+        CRC32 checksum = new CRC32();
+        checksum.update(name);
+        checksum.update(content);
+        return (int) checksum.getValue();
+    }
+
+    private void add(String name, PackedImage image) {
+        image.segment.addLive(image.getRecordLength(name));
+        PackedImage replaced = images.put(name, image);
+        if (replaced != null) {
+            replaced.segment.addLive(-replaced.getRecordLength(name));
+        }
+    }
+
+    private Segment getActiveSegment(int recordLength) throws IOException {
+        if (directory == null) {
+            throw new IllegalStateException("Image store has not been opened.");
+        }
+        if (active == null) {
+            Map.Entry<Long, Segment> last = segments.lastEntry();
+            active = last != null
+                    ? last.getValue()
+                    : createSegment(0);
+        }
+        if (active.size > 0 && active.size + recordLength > segmentSize) {
+            active = createSegment(active.id + 1);
+        }
+        return active;
+    }
+
+    private synchronized Segment getActive() {
+        return active;
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Segment segment = new Segment(id, directory.resolve(String.format(SEGMENT_NAME_FORMAT, id)));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void closeSegments() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        images.clear();
+        active = null;
+    }
+
+    private static List<Path> listSegmentFiles(Path folder) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, SEGMENT_GLOB)) {
+            stream.forEach(files::add);
+        }
+        // file names are zero padded, so the order of names is the order of segments
+        files.sort(null);
+        return files;
+    }
+
+    private static long parseSegmentId(Path file) {
+        String name = file.getFileName()
+                          .toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+
+    @FunctionalInterface
+    private interface ContentConsumer {
+
+        void accept(PackedImage image, ByteBuffer content) throws IOException;
+    }
+
+    private static final class PackedImage {
+
+        private final Segment segment;
+
+        private final long offset;
+
+        private final int size;
+
+        private final long lastModified;
+
+        private final String etag;
+
+        PackedImage(Segment segment, long offset, int size, long lastModified) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+            this.lastModified = lastModified;
+            // compaction keeps the modification time, so the entity tag survives moving the image
+            this.etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"";
+        }
+
+        ByteBuffer slice() throws IOException {
+            return segment.slice(offset, size);
+        }
+
+        long getRecordLength(String name) {
+            return HEADER_SIZE + name.getBytes(StandardCharsets.UTF_8).length + size;
+        }
+    }
+
+    private static final class Segment {
+
+        private final long id;
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private final AtomicLong liveBytes = new AtomicLong();
+
+        // bytes of complete records, written by the store only
+        private volatile long size;
+
+        private volatile MappedByteBuffer mapped;
+
+        Segment(long id, Path file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = FileChannel.open(file,
+                                            StandardOpenOption.CREATE,
+                                            StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE);
+        }
+
+        ByteBuffer slice(long offset, int length) throws IOException {
+            MappedByteBuffer current = mapped;
+            if (current == null || current.capacity() < offset + length) {
+                current = remap(offset + length);
+            }
+            ByteBuffer slice = current.duplicate();
+            slice.position((int) offset);
+            slice.limit((int) offset + length);
+            return slice.slice();
+        }
+
+        private synchronized MappedByteBuffer remap(long minimumSize) throws IOException {
+            if (mapped == null || mapped.capacity() < minimumSize) {
+                // former mappings stay valid for readers still holding slices of them
+                mapped = channel.map(MapMode.READ_ONLY, 0, size);
+            }
+            return mapped;
+        }
+
+        void write(ByteBuffer buffer, long position) throws IOException {
+            long current = position;
+            while (buffer.hasRemaining()) {
+                current += channel.write(buffer, current);
+            }
+        }
+
+        void read(ByteBuffer buffer, long position) throws IOException {
+            long current = position;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, current);
+                if (read < 0) {
+                    return;
+                }
+                current += read;
+            }
+        }
+
+        void force() throws IOException {
+            channel.force(false);
+        }
+
+        void addLive(long bytes) {
+            liveBytes.addAndGet(bytes);
+        }
+
+        double getLiveRatio() {
+            long total = size;
+            return total > 0
+                    ? (double) liveBytes.get() / total
+                    : 0;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close segment '{}'.", file, e);
+            }
+        }
+
+        void delete() throws IOException {
+            close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
@@ -28,27 +28,40 @@
  */
 package org.n52.io.task;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.MalformedURLException;
-import java.net.URISyntaxException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
-import javax.imageio.ImageIO;
 import javax.servlet.ServletConfig;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
@@ -56,6 +69,7 @@ import org.n52.faroe.annotation.Setting;
 import org.n52.io.IntervalWithTimeZone;
 import org.n52.io.handler.DatasetFactoryException;
 import org.n52.io.handler.DefaultIoFactory;
+import org.n52.io.handler.IoHandler;
 import org.n52.io.handler.IoHandlerException;
 import org.n52.io.handler.IoHandlerFactory;
 import org.n52.io.request.IoParameters;
@@ -67,8 +81,9 @@ import org.n52.io.response.dataset.quantity.QuantityValue;
 import org.n52.io.task.PreRenderingConfig.RenderingConfig;
 import org.n52.series.spi.srv.DataService;
 import org.n52.series.spi.srv.ParameterService;
-import org.n52.web.common.Stopwatch;
 import org.n52.web.exception.ResourceNotFoundException;
+import org.quartz.CronExpression;
+import org.quartz.CronTrigger;
 import org.quartz.DisallowConcurrentExecution;
 import org.quartz.InterruptableJob;
 import org.quartz.JobBuilder;
@@ -103,7 +118,10 @@ public class PreRenderingJob extends ScheduledJob implements InterruptableJob, S
 
     private static final String JOB_DATA_CONFIG_FILE = "configFile";
     private static final String JOB_DATA_WEBAPP_FOLDER = "webappFolder";
+    private static final String JOB_DATA_RENDERED_STATES = "renderedStates";
     private static final String IMAGE_EXTENSION = "png";
+    private static final String LEASE_FOLDER = "leases";
+    private static final long MAX_LEASE_POLL_INTERVAL = 30_000;
 
     @Autowired
     @Qualifier("datasetService")
@@ -122,7 +140,14 @@ public class PreRenderingJob extends ScheduledJob implements InterruptableJob, S
 
     private String webappFolder;
 
-    private boolean interrupted;
+    private volatile boolean interrupted;
+
+    private volatile ExecutorService executor;
+
+    // reads the factory config once per worker instead of once per image
+    private final ThreadLocal<DefaultIoFactory<DatasetOutput<AbstractValue< ? >>,
+                                               AbstractValue< ? >>> ioFactories =
+            ThreadLocal.withInitial(DefaultIoFactory::new);
 
     @FindbugsSuppressWarnings("OBL_UNSATISFIED_OBLIGATION")
     private PreRenderingConfig readJobConfig(String file) {
@@ -152,86 +177,410 @@ public class PreRenderingJob extends ScheduledJob implements InterruptableJob, S
         }
 
         LOGGER.info("Start prerendering task");
-        final Stopwatch stopwatch = Stopwatch.startStopwatch();
         final JobDetail details = context.getJobDetail();
         JobDataMap jobDataMap = details.getJobDataMap();
         taskConfigPrerendering = readJobConfig(jobDataMap.getString(JOB_DATA_CONFIG_FILE));
         webappFolder = jobDataMap.getString(JOB_DATA_WEBAPP_FOLDER);
 
-        List<RenderingConfig> phenomenonStyles = taskConfigPrerendering.getPhenomenonStyles();
-        List<RenderingConfig> styles = taskConfigPrerendering.getDatasetStyles();
-        for (RenderingConfig config : phenomenonStyles) {
-            Map<String, String> parameters = new HashMap<>();
-            parameters.put(Parameters.PHENOMENA, config.getId());
-            parameters.put(Parameters.FILTER_DATASET_TYPES, "timeseries");
-            parameters.put(Parameters.FILTER_OBSERVATION_TYPES, "simple");
-            parameters.put(Parameters.FILTER_VALUE_TYPES, "quantity");
-            IoParameters query = IoParameters.createFromSingleValueMap(parameters);
+        PreRenderingStats stats = new PreRenderingStats();
+        RenderedImageStates renderedStates = new RenderedImageStates(getRenderedStates(jobDataMap));
+        ExecutorService workers = Executors.newFixedThreadPool(getConfig().getThreads(),
+                                                               createThreadFactory("prerendering-worker-"));
+        executor = workers;
+        try {
+            Map<Integer, List<RenderingBatch>> batches = collectBatches();
+            if (getConfig().isPartitioned()) {
+                renderPartitioned(batches, getRunId(context), workers, renderedStates, stats);
+            } else {
+                List<Future< ? >> tasks = new ArrayList<>();
+                for (List<RenderingBatch> shardBatches : batches.values()) {
+                    tasks.addAll(submit(shardBatches, workers, renderedStates, stats));
+                }
+                awaitAll(tasks);
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.info("Prerendering has been interrupted.");
+        } catch (IOException e) {
+            LOGGER.error("Could not coordinate prerendering with other nodes.", e);
+        } finally {
+            workers.shutdownNow();
+            executor = null;
+        }
+
+        getImageStore().compact();
+        stats.finish();
+        jobDataMap.put(JOB_DATA_RENDERED_STATES, renderedStates.toMap());
+        getConfig().setLastRunStats(stats);
+        LOGGER.info("Finished prerendering task: {}", stats);
+    }
+
+    /**
+     * @return batches of datasets to render, grouped by shard (a single one if work is not partitioned)
+     */
+    private Map<Integer, List<RenderingBatch>> collectBatches() {
+        int shards = Math.max(1, getConfig().getShards());
+        int batchSize = getConfig().getBatchSize();
+        Map<Integer, List<RenderingBatch>> batches = new TreeMap<>();
+        for (RenderingConfig config : taskConfigPrerendering.getPhenomenonStyles()) {
+            IoParameters query = createDatasetQuery().extendWith(Parameters.PHENOMENA, config.getId());
+            Map<Integer, List<String>> datasetIdsByShard = new TreeMap<>();
             for (DatasetOutput< ? > metadata : datasetService.getCondensedParameters(query)) {
-                String timeseriesId = metadata.getId();
-                renderConfiguredIntervals(timeseriesId, config);
-                if (interrupted) {
-                    return;
+                datasetIdsByShard.computeIfAbsent(getShard(metadata.getId(), shards), k -> new ArrayList<>())
+                                 .add(metadata.getId());
+            }
+            // datasets of a phenomenon share their config, so data of a batch can be fetched at once
+            datasetIdsByShard.forEach((shard, datasetIds) -> {
+                for (int i = 0; i < datasetIds.size(); i += batchSize) {
+                    List<String> batch = datasetIds.subList(i, Math.min(i + batchSize, datasetIds.size()));
+                    batches.computeIfAbsent(shard, k -> new ArrayList<>())
+                           .add(new RenderingBatch(batch, config));
+                }
+            });
+        }
+        for (RenderingConfig config : taskConfigPrerendering.getDatasetStyles()) {
+            List<String> batch = Collections.singletonList(config.getId());
+            batches.computeIfAbsent(getShard(config.getId(), shards), k -> new ArrayList<>())
+                   .add(new RenderingBatch(batch, config));
+        }
+        return batches;
+    }
+
+    private static int getShard(String datasetId, int shards) {
+        // String hash codes are the same on all nodes
+        return Math.floorMod(datasetId.hashCode(), shards);
+    }
+
+    private List<Future< ? >> submit(List<RenderingBatch> batches,
+                                     ExecutorService workers,
+                                     RenderedImageStates renderedStates,
+                                     PreRenderingStats stats) {
+        List<Future< ? >> tasks = new ArrayList<>();
+        for (RenderingBatch batch : batches) {
+            tasks.add(workers.submit(() -> renderBatch(batch.datasetIds, batch.style, renderedStates, stats)));
+        }
+        return tasks;
+    }
+
+    private void renderPartitioned(Map<Integer, List<RenderingBatch>> batches,
+                                   String run,
+                                   ExecutorService workers,
+                                   RenderedImageStates renderedStates,
+                                   PreRenderingStats stats)
+            throws IOException {
+        PreRenderingJobConfig config = getConfig();
+        ShardLeases leases = new ShardLeases(getOutputFolder().resolve(LEASE_FOLDER),
+                                             config.getNodeId(),
+                                             config.getLeaseDuration());
+        renderShards(leases, run, shard -> {
+            List<RenderingBatch> shardBatches = batches.getOrDefault(shard, Collections.emptyList());
+            awaitAll(submit(shardBatches, workers, renderedStates, stats));
+        });
+    }
+
+    /**
+     * Renders shards claimed via lease files in the shared output folder, until all shards have been
+     * rendered within this run by any node. Shards of nodes which died while rendering are claimed once
+     * their lease has expired.
+     *
+     * @param leases
+     *        the leases of this node
+     * @param run
+     *        the id of the run, the same on all nodes
+     * @param renderer
+     *        renders all images of a shard
+     */
+    void renderShards(ShardLeases leases, String run, IntConsumer renderer) {
+        PreRenderingJobConfig config = getConfig();
+        int shards = config.getShards();
+        // start at a node specific shard, so that nodes do not compete for the same shards
+        int first = Math.floorMod(leases.getOwner()
+                                        .hashCode(),
+                                  shards);
+        List<Integer> remaining = new LinkedList<>();
+        for (int i = 0; i < shards; i++) {
+            remaining.add((first + i) % shards);
+        }
+
+        long renewalPeriod = Math.max(1, config.getLeaseDuration() / 3);
+        ScheduledExecutorService renewal =
+                Executors.newSingleThreadScheduledExecutor(createThreadFactory("prerendering-lease-"));
+        try {
+            while (!remaining.isEmpty() && !interrupted) {
+                boolean claimed = false;
+                Iterator<Integer> iterator = remaining.iterator();
+                while (iterator.hasNext() && !interrupted) {
+                    int shard = iterator.next();
+                    if (leases.isDone(shard, run)) {
+                        iterator.remove();
+                    } else if (leases.tryClaim(shard)) {
+                        claimed = true;
+                        ScheduledFuture< ? > renewing = renewal.scheduleAtFixedRate(() -> renew(leases, shard),
+                                                                                   renewalPeriod,
+                                                                                   renewalPeriod,
+                                                                                   TimeUnit.MILLISECONDS);
+                        try {
+                            // another node may have finished the shard right before
+                            if (!leases.isDone(shard, run)) {
+                                LOGGER.debug("Node '{}' renders shard {}.", leases.getOwner(), shard);
+                                renderer.accept(shard);
+                                if (!interrupted) {
+                                    markDone(leases, shard, run);
+                                }
+                            }
+                        } finally {
+                            renewing.cancel(false);
+                            leases.release(shard);
+                        }
+                        iterator.remove();
+                    }
+                }
+                if (!claimed && !remaining.isEmpty()) {
+                    // remaining shards are rendered by other nodes, wait until done or their leases expire
+                    Thread.sleep(Math.min(MAX_LEASE_POLL_INTERVAL, renewalPeriod));
                 }
             }
+        } catch (InterruptedException e) {
+            LOGGER.info("Prerendering has been interrupted.");
+            Thread.currentThread()
+                  .interrupt();
+        } finally {
+            renewal.shutdownNow();
         }
+    }
 
-        for (RenderingConfig config : styles) {
-            renderConfiguredIntervals(config.getId(), config);
+    private static void markDone(ShardLeases leases, int shard, String run) {
+        try {
+            leases.markDone(shard, run);
+        } catch (IOException e) {
+            LOGGER.warn("Could not mark shard {} as done, other nodes may render it again.", shard, e);
+        }
+    }
+
+    private static void renew(ShardLeases leases, int shard) {
+        if (!leases.renew(shard)) {
+            LOGGER.warn("Lost lease of shard {}, another node may render it as well.", shard);
+        }
+    }
+
+    private String getRunId(JobExecutionContext context) {
+        Date fireTime = context.getScheduledFireTime() != null
+                ? context.getScheduledFireTime()
+                : context.getFireTime();
+        if (context.getTrigger() instanceof CronTrigger) {
+            // the scheduled fire time is the same for all nodes sharing a cron expression
+            return Long.toString(fireTime.getTime());
+        }
+        return createStartupRunId(getCronExpression(), fireTime);
+    }
 
-            if (interrupted) {
+    /**
+     * Nodes are started at different times, so runs triggered at startup are identified by the next time
+     * the cron expression fires. Nodes started within the same period share their startup run, i.e. a node
+     * started after another one does not render shards already rendered at that node's startup. Without a
+     * (valid) cron expression each node renders all shards at startup.
+     *
+     * @param cronExpression
+     *        the cron expression shared by all nodes
+     * @param fireTime
+     *        the time the startup run has been fired at
+     * @return the id of the startup run
+     */
+    private static String createStartupRunId(String cronExpression, Date fireTime) {
+        try {
+            Date nextFireTime = cronExpression != null
+                    ? new CronExpression(cronExpression).getNextValidTimeAfter(fireTime)
+                    : null;
+            if (nextFireTime != null) {
+                return "startup-" + nextFireTime.getTime();
+            }
+        } catch (ParseException e) {
+            LOGGER.warn("Invalid cron expression '{}', rendering all shards at startup.", cronExpression, e);
+        }
+        return "startup-" + fireTime.getTime();
+    }
+
+    private void awaitAll(List<Future< ? >> tasks) {
+        for (Future< ? > task : tasks) {
+            try {
+                task.get();
+            } catch (CancellationException e) {
+                LOGGER.debug("Prerendering task has been cancelled.");
+            } catch (ExecutionException e) {
+                LOGGER.error("Prerendering task failed.", e.getCause());
+            } catch (InterruptedException e) {
+                LOGGER.info("Prerendering has been interrupted.");
+                Thread.currentThread()
+                      .interrupt();
                 return;
             }
         }
+    }
 
-        LOGGER.debug("prerendering took '{}'", stopwatch.stopInSeconds());
+    private static IoParameters createDatasetQuery() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(Parameters.FILTER_DATASET_TYPES, "timeseries");
+        parameters.put(Parameters.FILTER_OBSERVATION_TYPES, "simple");
+        parameters.put(Parameters.FILTER_VALUE_TYPES, "quantity");
+        return IoParameters.createFromSingleValueMap(parameters);
     }
 
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getRenderedStates(JobDataMap jobDataMap) {
+        Object states = jobDataMap.get(JOB_DATA_RENDERED_STATES);
+        return states instanceof Map
+                ? (Map<String, String>) states
+                : Collections.emptyMap();
+    }
 
-    private void renderConfiguredIntervals(String datasetId, RenderingConfig style) {
-        try {
+    private static ThreadFactory createThreadFactory(String namePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void renderBatch(List<String> datasetIds,
+                             RenderingConfig style,
+                             RenderedImageStates renderedStates,
+                             PreRenderingStats stats) {
+        Map<String, String> states = new HashMap<>();
+        Map<String, List<String>> pendingIntervals = new LinkedHashMap<>();
+        for (String datasetId : datasetIds) {
+            Long lastValueTime = getLastValueTime(datasetId);
+            List<String> intervals = new ArrayList<>();
             for (String interval : style.getInterval()) {
-                renderWithStyle(datasetId, style, interval);
+                String key = createImageName(datasetId, createChartQualifier(interval, style.getChartQualifier()));
+                // the interval name instead of the resolved timespan, which changes with each run
+                String state = lastValueTime != null
+                        ? RenderedImageStates.createState(lastValueTime, createConfig(datasetId, interval, style))
+                        : null;
+                if (getImageStore().contains(key) && renderedStates.isRendered(key, state)) {
+                    // neither new data nor a changed config since the image has been rendered
+                    stats.addSkipped();
+                } else {
+                    states.put(key, state);
+                    intervals.add(interval);
+                }
+            }
+            if (!intervals.isEmpty()) {
+                pendingIntervals.put(datasetId, intervals);
             }
-        } catch (Throwable e) {
-            LOGGER.error("Error occured while prerendering timeseries {}.", datasetId, e);
         }
-    }
+        if (pendingIntervals.isEmpty() || interrupted) {
+            return;
+        }
 
-    private void renderWithStyle(String datasetId, RenderingConfig renderingConfig, String interval)
-            throws IOException, DatasetFactoryException, URISyntaxException {
-        IntervalWithTimeZone timespan = createTimespanFromInterval(datasetId, interval);
-        IoParameters parameters = createConfig(datasetId, timespan.toString(), renderingConfig);
+        // all intervals end now, so shorter ones can be sliced from the data of the longest one
+        DateTime now = new DateTime();
+        PrefetchedDataService<AbstractValue< ? >> data = new PrefetchedDataService<>(dataService);
+        prefetch(data, pendingIntervals, style, now);
+        for (Map.Entry<String, List<String>> pending : pendingIntervals.entrySet()) {
+            String datasetId = pending.getKey();
+            for (String interval : pending.getValue()) {
+                if (interrupted) {
+                    return;
+                }
+                String key = createImageName(datasetId, createChartQualifier(interval, style.getChartQualifier()));
+                try {
+                    IntervalWithTimeZone timespan = createTimespanFromInterval(datasetId, interval, now);
+                    renderWithStyle(datasetId, style, timespan, key, data);
+                    stats.addRendered();
+                    renderedStates.setRendered(key, states.get(key));
+                } catch (Throwable e) {
+                    stats.addFailed();
+                    LOGGER.error("Error occured while prerendering timeseries {}.", datasetId, e);
+                }
+            }
+        }
+    }
 
-        String chartQualifier = renderingConfig.getChartQualifier();
-        FileOutputStream fos = createFile(datasetId, interval, chartQualifier);
+    private void prefetch(PrefetchedDataService<AbstractValue< ? >> data,
+                          Map<String, List<String>> pendingIntervals,
+                          RenderingConfig style,
+                          DateTime now) {
+        DateTime start = now;
+        for (List<String> intervals : pendingIntervals.values()) {
+            for (String interval : intervals) {
+                Interval timespan = toInterval(interval, now);
+                if (timespan != null && timespan.getStart()
+                                                .isBefore(start)) {
+                    start = timespan.getStart();
+                }
+            }
+        }
+        if (!start.isBefore(now)) {
+            return;
+        }
+        Set<String> datasetIds = pendingIntervals.keySet();
+        String timespan = new Interval(start, now).toString();
+        try {
+            IoParameters query = createConfig(datasetIds.iterator()
+                                                        .next(),
+                                              timespan,
+                                              style).replaceWith(Parameters.DATASETS, datasetIds)
+                                                    // a style applies to a single dataset only
+                                                    .removeAllOf(Parameters.STYLE);
+            data.prefetch(query);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not prefetch data of datasets {}, fetching data per image.", datasetIds, e);
+        }
+    }
 
-        try (FileOutputStream out = fos;) {
-            createIoFactory(parameters).createHandler(IMAGE_EXTENSION)
-                                       .writeBinary(out);
-            fos.flush();
-        } catch (IoHandlerException | IOException e) {
-            LOGGER.error("Image creation occures error.", e);
+    private Long getLastValueTime(String datasetId) {
+        try {
+            DatasetOutput<AbstractValue< ? >> dataset = datasetService.getParameter(datasetId, createDatasetQuery());
+            AbstractValue< ? > lastValue = dataset != null
+                    ? dataset.getLastValue()
+                    : null;
+            return lastValue != null && lastValue.getTimestamp() != null
+                    ? lastValue.getTimestamp()
+                               .getMillis()
+                    : null;
+        } catch (RuntimeException e) {
+            LOGGER.debug("Could not determine last value of dataset {}, rendering anyway.", datasetId, e);
+            return null;
         }
     }
 
-    private IoHandlerFactory<DatasetOutput<AbstractValue< ? >>,
-                      AbstractValue< ? >> createIoFactory(IoParameters parameters)
-                              throws DatasetFactoryException, URISyntaxException, MalformedURLException {
-        return createDefaultIoFactory().create(QuantityValue.TYPE)
-                                       .setParameters(parameters)
-                                       .setDataService(dataService)
-                                       .setDatasetService(datasetService);
+    private void renderWithStyle(String datasetId,
+                                 RenderingConfig renderingConfig,
+                                 IntervalWithTimeZone timespan,
+                                 String name,
+                                 DataService<Data<AbstractValue< ? >>> data)
+            throws IOException, DatasetFactoryException {
+        IoParameters parameters = createConfig(datasetId, timespan.toString(), renderingConfig);
+        IoHandler<Data<AbstractValue< ? >>> handler = createIoFactory(parameters, data).createHandler(IMAGE_EXTENSION);
+        // the store makes sure that readers never see partially written images
+        getImageStore().store(name, out -> {
+            try {
+                handler.writeBinary(out);
+            } catch (IoHandlerException e) {
+                throw new IOException("Could not render image '" + name + "'.", e);
+            }
+        });
     }
 
-    private DefaultIoFactory<DatasetOutput<AbstractValue< ? >>,
-                             AbstractValue< ? >> createDefaultIoFactory() {
-        return new DefaultIoFactory<>();
+    private IoHandlerFactory<DatasetOutput<AbstractValue< ? >>,
+                      AbstractValue< ? >> createIoFactory(IoParameters parameters,
+                                                          DataService<Data<AbstractValue< ? >>> data)
+                              throws DatasetFactoryException {
+        // the factory caches the created instance, so each worker reuses its own one
+        return ioFactories.get()
+                          .create(QuantityValue.TYPE)
+                          .setParameters(parameters)
+                          .setDataService(data)
+                          .setDatasetService(datasetService);
     }
 
     @Override
     public void interrupt() throws UnableToInterruptJobException {
         interrupted = true;
+        ExecutorService workers = executor;
+        if (workers != null) {
+            workers.shutdownNow();
+        }
         LOGGER.info("Marked job to interrupt.");
     }
 
@@ -252,6 +601,63 @@ public class PreRenderingJob extends ScheduledJob implements InterruptableJob, S
         getConfig().setConfigFile(configFile);
     }
 
+    /**
+     * @param threads
+     *        the number of workers rendering images in parallel
+     */
+    public void setThreads(int threads) {
+        getConfig().setThreads(threads);
+    }
+
+    /**
+     * @param batchSize
+     *        the number of datasets of a phenomenon whose data is fetched with a single request
+     */
+    public void setBatchSize(int batchSize) {
+        getConfig().setBatchSize(batchSize);
+    }
+
+    /**
+     * @param shards
+     *        the number of shards the rendering work is split into for nodes sharing the output folder, or
+     *        <code>0</code> to render everything on each node
+     */
+    public void setShards(int shards) {
+        getConfig().setShards(shards);
+    }
+
+    /**
+     * @param leaseDuration
+     *        ISO 8601 period after which the shard of a dead node can be claimed by others
+     */
+    public void setLeaseDuration(String leaseDuration) {
+        getConfig().setLeaseDuration(leaseDuration);
+    }
+
+    /**
+     * @param nodeId
+     *        the id of this node, unique among all nodes sharing the output folder
+     */
+    public void setNodeId(String nodeId) {
+        getConfig().setNodeId(nodeId);
+    }
+
+    /**
+     * @param packedStorage
+     *        whether images are appended to a few segment files instead of being stored as one file each
+     */
+    public void setPackedStorage(boolean packedStorage) {
+        getConfig().setPackedStorage(packedStorage);
+    }
+
+    /**
+     * @param packSegmentSize
+     *        the size in bytes after which packed storage starts a new segment file
+     */
+    public void setPackSegmentSize(int packSegmentSize) {
+        getConfig().setPackSegmentSize(packSegmentSize);
+    }
+
     @Override
     @Setting(PreRenderingJobConfig.PRERENDERING_JOB_TRIGGER_STARTUP_KEY)
     public void setTriggerAtStartup(boolean triggerAtStartup) {
@@ -265,20 +671,7 @@ public class PreRenderingJob extends ScheduledJob implements InterruptableJob, S
     }
 
     public List<String> getPrerenderedImages(final String datasetId) {
-        if (taskConfigPrerendering == null) {
-            taskConfigPrerendering = readJobConfig(getConfigFile());
-        }
-        Path outputPath = getOutputFolder();
-        ArrayList<String> files = new ArrayList<>();
-        File outputDir = outputPath.toFile();
-        if (outputDir.isDirectory()) {
-            FilenameFilter startsWithIdFilter = (dir, name) -> name.startsWith(datasetId);
-            String[] filtered = outputDir.list(startsWithIdFilter);
-            if (filtered != null) {
-                files.addAll(Arrays.asList(filtered));
-            }
-        }
-        return files;
+        return getImageStore().getNames(datasetId);
     }
 
     public boolean hasPrerenderedImage(String fileName) {
@@ -286,7 +679,7 @@ public class PreRenderingJob extends ScheduledJob implements InterruptableJob, S
     }
 
     public boolean hasPrerenderedImage(String datasetId, String chartQualifier) {
-        return createFileName(datasetId, chartQualifier).exists();
+        return getImageStore().contains(createImageName(datasetId, chartQualifier));
     }
 
     public void writePrerenderedGraphToOutputStream(String filename, OutputStream outputStream) {
@@ -294,67 +687,90 @@ public class PreRenderingJob extends ScheduledJob implements InterruptableJob, S
     }
 
     public void writePrerenderedGraphToOutputStream(String datasetId, String qualifier, OutputStream outputStream) {
-        if (taskConfigPrerendering == null) {
-            taskConfigPrerendering = readJobConfig(getConfigFile());
-        }
+        String name = createImageName(datasetId, qualifier);
         try {
-            BufferedImage image = loadImage(datasetId, qualifier);
-            if (image == null) {
-                ResourceNotFoundException ex = new ResourceNotFoundException("Could not find image on server.");
-                ex.addHint("Perhaps the image is being rendered at the moment. Try again later.");
-                throw ex;
+            LOGGER.debug("write prerendered image '{}'", name);
+            if (!getImageStore().copy(name, outputStream)) {
+                throw createImageNotFoundException();
             }
-            LOGGER.debug("write prerendered image '{}'", createFileName(datasetId, qualifier));
-            ImageIO.write(image, IMAGE_EXTENSION, outputStream);
         } catch (IOException e) {
             LOGGER.error("Error while loading pre rendered image", e);
         }
     }
 
-    private BufferedImage loadImage(String datasetId, String qualifier) throws IOException {
-        return ImageIO.read(new FileInputStream(createFileName(datasetId, qualifier)));
+    /**
+     * Writes the stored image as is to the response. Conditional requests are answered via
+     * <code>ETag</code> and <code>Last-Modified</code>.
+     *
+     * @param datasetId
+     *        the dataset id (or file name if no qualifier is given)
+     * @param qualifier
+     *        the chart qualifier, may be <code>null</code>
+     * @param request
+     *        the request
+     * @param response
+     *        the response
+     * @throws IOException
+     *         if reading the image or writing the response fails
+     */
+    public void writePrerenderedGraph(String datasetId,
+                                      String qualifier,
+                                      HttpServletRequest request,
+                                      HttpServletResponse response)
+            throws IOException {
+        String name = createImageName(datasetId, qualifier);
+        LOGGER.debug("write prerendered image '{}'", name);
+        if (!getImageStore().write(name, request, response)) {
+            throw createImageNotFoundException();
+        }
     }
 
-    private IntervalWithTimeZone createTimespanFromInterval(String datasetId, String period) {
-        DateTime now = new DateTime();
+    private static ResourceNotFoundException createImageNotFoundException() {
+        ResourceNotFoundException ex = new ResourceNotFoundException("Could not find image on server.");
+        ex.addHint("Perhaps the image is being rendered at the moment. Try again later.");
+        return ex;
+    }
+
+    private PrerenderedImageStore getImageStore() {
+        if (taskConfigPrerendering == null) {
+            taskConfigPrerendering = readJobConfig(getConfigFile());
+        }
+        PrerenderedImageStore store = getConfig().getImageStore();
+        store.open(getOutputFolder());
+        return store;
+    }
+
+    private IntervalWithTimeZone createTimespanFromInterval(String datasetId, String period, DateTime now) {
+        Interval interval = toInterval(period, now);
+        if (interval == null) {
+            throw new ResourceNotFoundException("Unknown interval '" + period + "' for datatset " + datasetId);
+        }
+        return new IntervalWithTimeZone(interval.toString());
+    }
+
+    private static Interval toInterval(String period, DateTime now) {
         if (period.equals("lastDay")) {
-            Interval interval = new Interval(now.minusDays(1), now);
-            return new IntervalWithTimeZone(interval.toString());
+            return new Interval(now.minusDays(1), now);
         } else if (period.equals("lastWeek")) {
-            Interval interval = new Interval(now.minusWeeks(1), now);
-            return new IntervalWithTimeZone(interval.toString());
+            return new Interval(now.minusWeeks(1), now);
         } else if (period.equals("lastMonth")) {
-            Interval interval = new Interval(now.minusMonths(1), now);
-            return new IntervalWithTimeZone(interval.toString());
+            return new Interval(now.minusMonths(1), now);
         } else {
-            throw new ResourceNotFoundException("Unknown interval '" + period + "' for datatset " + datasetId);
+            return null;
         }
     }
 
-    private FileOutputStream createFile(String datasetId, String interval, String postfix) throws IOException {
-        String chartQualifier = postfix != null
+    private static String createChartQualifier(String interval, String postfix) {
+        return postfix != null
                 ? interval + "_" + postfix
                 : interval;
-        File file = createFileName(datasetId, chartQualifier);
-        if (!file.exists() && !file.createNewFile()) {
-            LOGGER.warn("Can't create file '{}'", file.getAbsolutePath());
-        }
-        if (!file.setLastModified(new Date().getTime())) {
-            LOGGER.debug("Can't set last modified date at '{}'", file.getAbsolutePath());
-        }
-        return new FileOutputStream(file);
     }
 
-    private File createFileName(String datasetId, String qualifier) {
-        if (taskConfigPrerendering == null) {
-            taskConfigPrerendering = readJobConfig(getConfigFile());
-        }
-        Path outputDirectory = getOutputFolder();
-        String filename = qualifier != null
+    private static String createImageName(String datasetId, String qualifier) {
+        String name = qualifier != null
                 ? datasetId + "_" + qualifier
                 : datasetId;
-        return outputDirectory.resolve(filename + ".png")
-                              .toFile();
+        return name + "." + IMAGE_EXTENSION;
     }
 
     private Path getOutputFolder() {
@@ -432,4 +848,16 @@ public class PreRenderingJob extends ScheduledJob implements InterruptableJob, S
     public boolean isModified() {
         return jobConfig.isModified();
     }
+
+    private static final class RenderingBatch {
+
+        private final List<String> datasetIds;
+
+        private final RenderingConfig style;
+
+        RenderingBatch(List<String> datasetIds, RenderingConfig style) {
+            this.datasetIds = datasetIds;
+            this.style = style;
+        }
+    }
 }
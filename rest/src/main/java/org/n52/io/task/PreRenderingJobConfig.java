@@ -28,8 +28,14 @@
  */
 package org.n52.io.task;
 
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import org.joda.time.Period;
 import org.n52.faroe.annotation.Configurable;
 import org.n52.faroe.annotation.Setting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @Configurable
 public class PreRenderingJobConfig {
@@ -39,11 +45,33 @@ public class PreRenderingJobConfig {
     protected static final String PRERENDERING_JOB_TRIGGER_STARTUP_KEY = "helgoland.job.prerendering.trigger.startup";
     protected static final String PRERENDERING_JOB_CRON_EXPRESSION_KEY = "helgoland.job.prerendering.cron.expression";
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(PreRenderingJobConfig.class);
+
+    private static final long SHARED_INDEX_REFRESH_INTERVAL = 60_000;
+
     private boolean enabled;
     private String configFile;
     private boolean triggerAtStartup;
     private String cronExpression;
     private boolean modified;
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private volatile PreRenderingStats lastRunStats;
+    private int batchSize = 20;
+    private int shards;
+    private long leaseDuration = 10 * 60 * 1000L;
+    private String nodeId = createNodeId();
+    private boolean packedStorage;
+    private int packSegmentSize = PackedImageStore.DEFAULT_SEGMENT_SIZE;
+    private PrerenderedImageStore imageStore;
+
+    private static String createNodeId() {
+        // process name (pid@host) plus a random part, so that several instances within a process differ
+        String random = UUID.randomUUID()
+                            .toString()
+                            .substring(0, 8);
+        return ManagementFactory.getRuntimeMXBean()
+                                .getName() + "-" + random;
+    }
 
     @Setting(PRERENDERING_JOB_ENABLE_KEY)
     public void setEnabled(boolean enabled) {
@@ -70,6 +98,45 @@ public class PreRenderingJobConfig {
         this.cronExpression = cronExpression;
     }
 
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void setShards(int shards) {
+        this.shards = Math.max(0, shards);
+    }
+
+    /**
+     * @param leaseDuration
+     *        ISO 8601 period after which a shard lease of a dead node can be claimed by others, e.g.
+     *        <code>PT10M</code>
+     */
+    public void setLeaseDuration(String leaseDuration) {
+        this.leaseDuration = Period.parse(leaseDuration)
+                                   .toStandardDuration()
+                                   .getMillis();
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public void setPackedStorage(boolean packedStorage) {
+        this.packedStorage = packedStorage;
+    }
+
+    public void setPackSegmentSize(int packSegmentSize) {
+        this.packSegmentSize = packSegmentSize;
+    }
+
+    void setLastRunStats(PreRenderingStats lastRunStats) {
+        this.lastRunStats = lastRunStats;
+    }
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -89,4 +156,65 @@ public class PreRenderingJobConfig {
     public boolean isModified() {
         return modified;
     }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the number of shards the rendering work is split into, or <code>0</code> if the work is not
+     *         partitioned across nodes
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    public boolean isPartitioned() {
+        return shards > 0;
+    }
+
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isPackedStorage() {
+        return packedStorage;
+    }
+
+    public int getPackSegmentSize() {
+        return packSegmentSize;
+    }
+
+    /**
+     * @return the store of prerendered images, shared by the job and the instance serving the images
+     */
+    public synchronized PrerenderedImageStore getImageStore() {
+        if (imageStore == null && isPartitioned()) {
+            if (packedStorage) {
+                LOGGER.warn("Packed storage can not be shared by several nodes, storing images as files.");
+            }
+            // other nodes write to the same folder
+            imageStore = new PrerenderedImageIndex(SHARED_INDEX_REFRESH_INTERVAL);
+        } else if (imageStore == null) {
+            imageStore = packedStorage
+                    ? new PackedImageStore(packSegmentSize)
+                    : new PrerenderedImageIndex();
+        }
+        return imageStore;
+    }
+
+    /**
+     * @return the statistics of the last finished prerendering run, or <code>null</code> if none finished yet
+     */
+    public PreRenderingStats getLastRunStats() {
+        return lastRunStats;
+    }
 }
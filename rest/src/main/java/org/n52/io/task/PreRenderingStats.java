@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the outcome of a single prerendering run. Counters may be incremented concurrently by the render
+ * workers.
+ */
+public class PreRenderingStats {
+
+    private final AtomicInteger rendered = new AtomicInteger();
+
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final long start = System.currentTimeMillis();
+
+    private volatile long durationInMillis = -1;
+
+    void addRendered() {
+        rendered.incrementAndGet();
+    }
+
+    void addSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    void addFailed() {
+        failed.incrementAndGet();
+    }
+
+    void finish() {
+        durationInMillis = System.currentTimeMillis() - start;
+    }
+
+    public int getRendered() {
+        return rendered.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the duration of the run in milliseconds, or <code>-1</code> if the run has not finished yet
+     */
+    public long getDurationInMillis() {
+        return durationInMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "rendered=" + getRendered()
+                + ", skipped=" + getSkipped()
+                + ", failed=" + getFailed()
+                + ", duration=" + getDurationInMillis() + "ms";
+    }
+
+}
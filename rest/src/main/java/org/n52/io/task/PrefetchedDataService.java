@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.Interval;
+import org.n52.io.request.IoParameters;
+import org.n52.io.response.dataset.AbstractValue;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.DataCollection;
+import org.n52.io.response.dataset.DatasetMetadata;
+import org.n52.series.spi.srv.DataService;
+import org.n52.series.spi.srv.RawDataService;
+
+/**
+ * Composes a {@link DataService} to serve data of prefetched datasets from memory. Requests for a timespan
+ * within the prefetched one are answered by slicing the prefetched values, all other requests are delegated.
+ *
+ * @param <V>
+ *        the value type
+ */
+class PrefetchedDataService<V extends AbstractValue< ? >> implements DataService<Data<V>> {
+
+    private final DataService<Data<V>> composedService;
+
+    private final Map<String, Data<V>> prefetched = new HashMap<>();
+
+    private Interval prefetchedTimespan;
+
+    PrefetchedDataService(DataService<Data<V>> toCompose) {
+        this.composedService = toCompose;
+    }
+
+    /**
+     * Fetches data of all datasets and the timespan of the given parameters with a single request.
+     *
+     * @param parameters
+     *        the parameters to fetch data for
+     */
+    void prefetch(IoParameters parameters) {
+        DataCollection<Data<V>> data = composedService.getData(parameters);
+        prefetched.putAll(data.getAllSeries());
+        prefetchedTimespan = parameters.getTimespan()
+                                       .toInterval();
+    }
+
+    @Override
+    public DataCollection<Data<V>> getData(IoParameters parameters) {
+        Interval timespan = parameters.getTimespan()
+                                      .toInterval();
+        Set<String> datasets = parameters.getDatasets();
+        if (prefetchedTimespan == null
+                || !prefetchedTimespan.contains(timespan)
+                || !prefetched.keySet()
+                              .containsAll(datasets)) {
+            return composedService.getData(parameters);
+        }
+        DataCollection<Data<V>> collection = new DataCollection<>();
+        for (String datasetId : datasets) {
+            collection.addNewSeries(datasetId, slice(prefetched.get(datasetId), timespan));
+        }
+        return collection;
+    }
+
+    private Data<V> slice(Data<V> data, Interval timespan) {
+        DatasetMetadata<V> metadata = data.getMetadata();
+        V valueBefore = metadata != null
+                ? metadata.getValueBeforeTimespan()
+                : null;
+        V valueAfter = null;
+        Data<V> slice = new Data<>();
+        for (V value : data.getValues()) {
+            if (value.getTimestamp() == null) {
+                slice.addNewValue(value);
+            } else if (value.getTimestamp()
+                            .getMillis() < timespan.getStartMillis()) {
+                valueBefore = value;
+            } else if (value.getTimestamp()
+                            .getMillis() <= timespan.getEndMillis()) {
+                slice.addNewValue(value);
+            } else if (valueAfter == null) {
+                valueAfter = value;
+            }
+        }
+        if (metadata != null) {
+            DatasetMetadata<V> sliceMetadata = new DatasetMetadata<>();
+            sliceMetadata.setValueBeforeTimespan(valueBefore);
+            // slices ending with the prefetched timespan have no prefetched value after them
+            sliceMetadata.setValueAfterTimespan(valueAfter != null
+                    ? valueAfter
+                    : metadata.getValueAfterTimespan());
+            if (metadata.hasReferenceValues()) {
+                Map<String, Data<V>> referenceValues = new HashMap<>();
+                metadata.getReferenceValues()
+                        .forEach((id, values) -> referenceValues.put(id, slice(values, timespan)));
+                sliceMetadata.setReferenceValues(referenceValues);
+            }
+            slice.setMetadata(sliceMetadata);
+        }
+        return slice;
+    }
+
+    @Override
+    public boolean supportsRawData() {
+        return composedService.supportsRawData();
+    }
+
+    @Override
+    public RawDataService getRawDataService() {
+        return composedService.getRawDataService();
+    }
+
+}
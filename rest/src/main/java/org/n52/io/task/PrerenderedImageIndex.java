@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.n52.web.common.FileResponses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores each prerendered image as a file in the output folder. Size, modification time and entity tag of
+ * all images are kept in memory, so that requests do not have to hit the file system for listing or
+ * checking images. The output folder is scanned once, later changes are made through the store.
+ */
+public class PrerenderedImageIndex implements PrerenderedImageStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrerenderedImageIndex.class);
+
+    private static final String IMAGE_GLOB = "*.png";
+
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    private final Map<String, PrerenderedImage> images = new ConcurrentHashMap<>();
+
+    private final long refreshInterval;
+
+    private volatile Path directory;
+
+    private volatile long lastScan;
+
+    public PrerenderedImageIndex() {
+        this(0);
+    }
+
+    /**
+     * @param refreshInterval
+     *        the time in milliseconds after which the folder is scanned again, e.g. when other nodes write to
+     *        it as well. Entries are checked against the file before being served then. Zero to scan once.
+     */
+    public PrerenderedImageIndex(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    @Override
+    public void open(Path outputFolder) {
+        if (outputFolder.equals(directory) && !isRefreshDue()) {
+            return;
+        }
+        synchronized (this) {
+            if (outputFolder.equals(directory) && !isRefreshDue()) {
+                return;
+            }
+            if (!outputFolder.equals(directory)) {
+                images.clear();
+            }
+            Set<String> found = new HashSet<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(outputFolder, IMAGE_GLOB)) {
+                files.forEach(file -> {
+                    found.add(file.getFileName()
+                                  .toString());
+                    update(file.toFile());
+                });
+                images.keySet()
+                      .retainAll(found);
+            } catch (IOException e) {
+                LOGGER.warn("Could not index prerendered images in '{}'.", outputFolder, e);
+            }
+            directory = outputFolder;
+            lastScan = System.currentTimeMillis();
+        }
+    }
+
+    private boolean isRefreshDue() {
+        return refreshInterval > 0 && System.currentTimeMillis() - lastScan > refreshInterval;
+    }
+
+    @Override
+    public void store(String name, ImageWriter writer) throws IOException {
+        Path target = getDirectory().resolve(name);
+        // write to a temporary file and replace the image atomically, so that readers never see partial images
+        // hidden name, so that scanning the folder does not include unfinished ones
+        Path temporary = Files.createTempFile(target.getParent(), "." + name, TEMP_FILE_EXTENSION);
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                writer.write(out);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            update(target.toFile());
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return images.containsKey(name);
+    }
+
+    @Override
+    public List<String> getNames(String prefix) {
+        return images.keySet()
+                     .stream()
+                     .filter(name -> name.startsWith(prefix))
+                     .sorted()
+                     .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean copy(String name, OutputStream out) throws IOException {
+        PrerenderedImage image = images.get(name);
+        if (image == null) {
+            return false;
+        }
+        try {
+            Files.copy(image.getFile()
+                            .toPath(),
+                       out);
+            return true;
+        } catch (NoSuchFileException e) {
+            // removed from outside
+            update(image.getFile());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean write(String name, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        PrerenderedImage image = images.get(name);
+        if (image != null && refreshInterval > 0) {
+            // may have been replaced by another node
+            update(image.getFile());
+            image = images.get(name);
+        }
+        if (image == null) {
+            return false;
+        }
+        try {
+            FileResponses.write(image.getFile(), image.getEtag(), image.getLastModified(), request, response);
+            return true;
+        } catch (NoSuchFileException e) {
+            // removed from outside
+            update(image.getFile());
+            return false;
+        }
+    }
+
+    /**
+     * Adds or refreshes the entry of the given file. Removes the entry if the file does not exist.
+     *
+     * @param file
+     *        the image file
+     */
+    void update(File file) {
+        String name = file.getName();
+        long lastModified = file.lastModified();
+        if (lastModified == 0L && !file.exists()) {
+            images.remove(name);
+        } else {
+            images.put(name, new PrerenderedImage(file, file.length(), lastModified));
+        }
+    }
+
+    private Path getDirectory() {
+        Path current = directory;
+        if (current == null) {
+            throw new IllegalStateException("Image store has not been opened.");
+        }
+        return current;
+    }
+
+    /**
+     * A prerendered image file.
+     */
+    static final class PrerenderedImage {
+
+        private final File file;
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final String etag;
+
+        PrerenderedImage(File file, long size, long lastModified) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            // images are replaced atomically, so size and modification time identify the content
+            this.etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"";
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+    }
+
+}
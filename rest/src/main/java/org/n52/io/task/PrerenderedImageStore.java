@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Storage of prerendered images, written by the prerendering job and read when images are requested.
+ */
+public interface PrerenderedImageStore {
+
+    /**
+     * Prepares the store to keep its images in the given folder, unless it has been opened for it already.
+     *
+     * @param outputFolder
+     *        the configured output folder of the prerendering job
+     */
+    void open(Path outputFolder);
+
+    /**
+     * Stores an image. Readers keep seeing the former image until the new one has been stored completely.
+     *
+     * @param name
+     *        the image name
+     * @param writer
+     *        writes the image content
+     * @throws IOException
+     *         if storing the image fails
+     */
+    void store(String name, ImageWriter writer) throws IOException;
+
+    /**
+     * @param name
+     *        the image name
+     * @return <code>true</code> if an image with the given name is stored
+     */
+    boolean contains(String name);
+
+    /**
+     * @param prefix
+     *        the prefix of the image names to find
+     * @return the sorted names of all stored images starting with the given prefix
+     */
+    List<String> getNames(String prefix);
+
+    /**
+     * Copies an image to the given stream.
+     *
+     * @param name
+     *        the image name
+     * @param out
+     *        the stream to write to
+     * @return <code>false</code> if no image with the given name is stored
+     * @throws IOException
+     *         if reading the image or writing to the stream fails
+     */
+    boolean copy(String name, OutputStream out) throws IOException;
+
+    /**
+     * Writes an image to the response, answering conditional requests via <code>ETag</code> and
+     * <code>Last-Modified</code>. The content type has to be set by the caller.
+     *
+     * @param name
+     *        the image name
+     * @param request
+     *        the request
+     * @param response
+     *        the response
+     * @return <code>false</code> if no image with the given name is stored
+     * @throws IOException
+     *         if reading the image or writing the response fails
+     */
+    boolean write(String name, HttpServletRequest request, HttpServletResponse response) throws IOException;
+
+    /**
+     * Releases space of images which have been replaced. Called after each prerendering run.
+     */
+    default void compact() {
+        // nothing to release by default
+    }
+
+    /**
+     * Writes image content.
+     */
+    @FunctionalInterface
+    interface ImageWriter {
+
+        void write(OutputStream out) throws IOException;
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.n52.io.request.IoParameters;
+
+/**
+ * Remembers the state each prerendered image has been rendered from, so that images are rendered again only
+ * if the dataset has new values or the rendering configuration (size, style, title, etc.) has changed.
+ */
+class RenderedImageStates {
+
+    private final Map<String, String> states;
+
+    /**
+     * @param states
+     *        the states of a former run, by image name
+     */
+    RenderedImageStates(Map<String, String> states) {
+        this.states = new ConcurrentHashMap<>(states);
+    }
+
+    /**
+     * @param lastValueTime
+     *        the time of the dataset's last value
+     * @param config
+     *        the rendering configuration
+     * @return the state an image is rendered from
+     */
+    static String createState(long lastValueTime, IoParameters config) {
+        return lastValueTime + "/" + hash(config.toCanonicalString());
+    }
+
+    /**
+     * @param name
+     *        the image name
+     * @param state
+     *        the current state, may be <code>null</code> if unknown
+     * @return <code>true</code> if the image has been rendered from the given state
+     */
+    boolean isRendered(String name, String state) {
+        return state != null && state.equals(states.get(name));
+    }
+
+    void setRendered(String name, String state) {
+        if (state != null) {
+            states.put(name, state);
+        }
+    }
+
+    /**
+     * @return a copy of the states to be kept until the next run
+     */
+    Map<String, String> toMap() {
+        return new HashMap<>(states);
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                                       .digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                sb.append(String.format("%02x", hash[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.joda.time.DateTimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordinates nodes sharing an output folder via lease files. A node owns a shard as long as its lease has
+ * not expired, and marks the shard done for a run once it has been rendered. Leases of dead nodes expire and
+ * can be claimed by other nodes.
+ * <p>
+ * Leases are advisory: in rare races two nodes may render the same shard, which only costs time as images
+ * are replaced atomically.
+ */
+public class ShardLeases {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardLeases.class);
+
+    private static final String LEASE_EXTENSION = ".lease";
+
+    private static final String DONE_EXTENSION = ".done";
+
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    private final Path directory;
+
+    private final String owner;
+
+    private final long leaseDuration;
+
+    /**
+     * @param directory
+     *        the folder shared by all nodes to keep the lease files in
+     * @param owner
+     *        the id of this node, unique among all nodes
+     * @param leaseDuration
+     *        the time in milliseconds after which a lease expires unless renewed
+     * @throws IOException
+     *         if the folder could not be created
+     */
+    public ShardLeases(Path directory, String owner, long leaseDuration) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.owner = owner;
+        this.leaseDuration = leaseDuration;
+    }
+
+    /**
+     * Claims a shard if it is not leased by another node, or if the other node's lease has expired.
+     *
+     * @param shard
+     *        the shard to claim
+     * @return <code>true</code> if this node owns the shard now
+     */
+    public boolean tryClaim(int shard) {
+        Path lease = getLeaseFile(shard);
+        try {
+            Files.write(lease, createLease(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return tryTakeOver(shard, lease);
+        } catch (IOException e) {
+            LOGGER.warn("Could not claim shard {}.", shard, e);
+            return false;
+        }
+    }
+
+    private boolean tryTakeOver(int shard, Path lease) {
+        try {
+            Lease current = readLease(lease);
+            if (owner.equals(current.owner)) {
+                return renew(shard);
+            }
+            if (!current.isExpired()) {
+                return false;
+            }
+            // move the expired lease away, only one node succeeds
+            Path stale = lease.resolveSibling(lease.getFileName() + "." + owner + TEMP_FILE_EXTENSION);
+            Files.move(lease, stale, StandardCopyOption.ATOMIC_MOVE);
+            Lease moved = readLease(stale);
+            if (!moved.isExpired()) {
+                // another node took over in the meantime, give its lease back
+                Files.move(stale, lease, StandardCopyOption.ATOMIC_MOVE);
+                return false;
+            }
+            Files.delete(stale);
+            LOGGER.info("Lease of node '{}' on shard {} has expired.", current.owner, shard);
+            Files.write(lease, createLease(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException | NoSuchFileException e) {
+            // another node has been faster
+            return false;
+        } catch (IOException e) {
+            LOGGER.warn("Could not take over shard {}.", shard, e);
+            return false;
+        }
+    }
+
+    /**
+     * Extends the lease of an owned shard.
+     *
+     * @param shard
+     *        the shard
+     * @return <code>false</code> if the shard is not owned by this node (anymore)
+     */
+    public boolean renew(int shard) {
+        Path lease = getLeaseFile(shard);
+        try {
+            if (!owner.equals(readLease(lease).owner)) {
+                return false;
+            }
+            writeAtomically(lease, createLease());
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Could not renew lease of shard {}.", shard, e);
+            return false;
+        }
+    }
+
+    /**
+     * Gives up the lease of a shard, if owned by this node.
+     *
+     * @param shard
+     *        the shard
+     */
+    public void release(int shard) {
+        Path lease = getLeaseFile(shard);
+        try {
+            if (owner.equals(readLease(lease).owner)) {
+                Files.delete(lease);
+            }
+        } catch (NoSuchFileException e) {
+            LOGGER.debug("Lease of shard {} has been removed already.", shard);
+        } catch (IOException e) {
+            LOGGER.warn("Could not release lease of shard {}.", shard, e);
+        }
+    }
+
+    /**
+     * @param shard
+     *        the shard
+     * @param run
+     *        the id of the run, the same on all nodes
+     * @throws IOException
+     *         if the marker could not be written
+     */
+    public void markDone(int shard, String run) throws IOException {
+        writeAtomically(getDoneFile(shard), run.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param shard
+     *        the shard
+     * @param run
+     *        the id of the run, the same on all nodes
+     * @return <code>true</code> if the shard has been rendered within the given run by any node
+     */
+    public boolean isDone(int shard, String run) {
+        try {
+            byte[] content = Files.readAllBytes(getDoneFile(shard));
+            return run.equals(new String(content, StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            LOGGER.debug("Could not read done marker of shard {}.", shard, e);
+            return false;
+        }
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    private Lease readLease(Path lease) throws IOException {
+        List<String> lines = Files.readAllLines(lease, StandardCharsets.UTF_8);
+        try {
+            return new Lease(lines.get(0), Long.parseLong(lines.get(1)));
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            // written right now, or broken: consider it held until the file itself is old enough
+            long modified = Files.getLastModifiedTime(lease)
+                                 .toMillis();
+            return new Lease("", modified + leaseDuration);
+        }
+    }
+
+    private byte[] createLease() {
+        long expires = DateTimeUtils.currentTimeMillis() + leaseDuration;
+        return (owner + "\n" + expires + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeAtomically(Path target, byte[] content) throws IOException {
+        Path temporary = Files.createTempFile(directory, "." + target.getFileName(), TEMP_FILE_EXTENSION);
+        try {
+            Files.write(temporary, content);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private Path getLeaseFile(int shard) {
+        return directory.resolve("shard-" + shard + LEASE_EXTENSION);
+    }
+
+    private Path getDoneFile(int shard) {
+        return directory.resolve("shard-" + shard + DONE_EXTENSION);
+    }
+
+    private static final class Lease {
+
+        private final String owner;
+
+        private final long expires;
+
+        Lease(String owner, long expires) {
+            this.owner = owner;
+            this.expires = expires;
+        }
+
+        boolean isExpired() {
+            return expires <= DateTimeUtils.currentTimeMillis();
+        }
+    }
+
+}
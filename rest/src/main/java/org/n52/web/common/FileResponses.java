@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+
+/**
+ * Writes files to HTTP responses, supporting conditional requests via ETag and single byte ranges.
+ */
+public final class FileResponses {
+
+    private static final String BYTES = "bytes";
+
+    private static final String WEAK_PREFIX = "W/";
+
+    private FileResponses() {
+    }
+
+    /**
+     * Writes the given file (or the requested byte range of it) to the response. The content type has to be
+     * set by the caller.
+     *
+     * @param file
+     *        the file to write
+     * @param etag
+     *        the (quoted) entity tag of the file's content
+     * @param request
+     *        the request
+     * @param response
+     *        the response
+     * @throws IOException
+     *         if reading the file or writing the response fails
+     */
+    public static void write(File file, String etag, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        write(file, etag, -1L, request, response);
+    }
+
+    /**
+     * Writes the given file (or the requested byte range of it) to the response. Besides the entity tag, the
+     * last modification time is used to answer conditional requests. The content type has to be set by the
+     * caller.
+     *
+     * @param file
+     *        the file to write
+     * @param etag
+     *        the (quoted) entity tag of the file's content
+     * @param lastModified
+     *        the file's last modification time in milliseconds, or a negative value if unknown
+     * @param request
+     *        the request
+     * @param response
+     *        the response
+     * @throws IOException
+     *         if reading the file or writing the response fails
+     */
+    public static void write(File file,
+                             String etag,
+                             long lastModified,
+                             HttpServletRequest request,
+                             HttpServletResponse response)
+            throws IOException {
+        if (isAnsweredByHeaders(etag, lastModified, request, response)) {
+            return;
+        }
+        long[] range = resolveRange(file.length(), etag, request, response);
+        if (range == null) {
+            return;
+        }
+        long start = range[0];
+        long end = range[1];
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            while (position <= end) {
+                long transferred = channel.transferTo(position, end - position + 1, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes the remaining content of the given buffer (or the requested byte range of it) to the response.
+     * Besides the entity tag, the last modification time is used to answer conditional requests. The
+     * content type has to be set by the caller. The buffer's position and limit are not changed.
+     *
+     * @param content
+     *        the content to write, e.g. a slice of a memory-mapped file
+     * @param etag
+     *        the (quoted) entity tag of the content
+     * @param lastModified
+     *        the content's last modification time in milliseconds, or a negative value if unknown
+     * @param request
+     *        the request
+     * @param response
+     *        the response
+     * @throws IOException
+     *         if writing the response fails
+     */
+    public static void write(ByteBuffer content,
+                             String etag,
+                             long lastModified,
+                             HttpServletRequest request,
+                             HttpServletResponse response)
+            throws IOException {
+        if (isAnsweredByHeaders(etag, lastModified, request, response)) {
+            return;
+        }
+        long[] range = resolveRange(content.remaining(), etag, request, response);
+        if (range == null) {
+            return;
+        }
+        ByteBuffer slice = content.duplicate();
+        slice.position(content.position() + (int) range[0]);
+        slice.limit(content.position() + (int) range[1] + 1);
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        while (slice.hasRemaining()) {
+            target.write(slice);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the given content to the response, or answers with 304 if the client already holds it. The
+     * content type has to be set by the caller.
+     *
+     * @param content
+     *        the content to write
+     * @param etag
+     *        the (quoted) entity tag of the content
+     * @param request
+     *        the request
+     * @param response
+     *        the response
+     * @throws IOException
+     *         if writing the response fails
+     */
+    public static void write(byte[] content, String etag, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        if (isNotModified(request, etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentLength(content.length);
+        OutputStream out = response.getOutputStream();
+        out.write(content);
+        out.flush();
+    }
+
+    /**
+     * @param request
+     *        the request
+     * @param etag
+     *        the (quoted) entity tag of the current content
+     * @return <code>true</code> if the request's <code>If-None-Match</code> header matches the given entity
+     *         tag
+     */
+    public static boolean isNotModified(HttpServletRequest request, String etag) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // If-None-Match uses the weak comparison function
+            if (tag.startsWith(WEAK_PREFIX)) {
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            if ("*".equals(tag) || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAnsweredByHeaders(String etag,
+                                               long lastModified,
+                                               HttpServletRequest request,
+                                               HttpServletResponse response) {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, BYTES);
+        if (lastModified >= 0) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
+        if (isNotModified(request, etag) || isNotModifiedSince(request, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determines the byte range to write and sets status and length headers accordingly.
+     *
+     * @return the first and last byte to write, or <code>null</code> if the request has been answered with an
+     *         error
+     */
+    private static long[] resolveRange(long length,
+                                       String etag,
+                                       HttpServletRequest request,
+                                       HttpServletResponse response)
+            throws IOException {
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isRangeApplicable(request, etag)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                // invalid range headers are ignored
+                ranges = Collections.emptyList();
+            }
+            // multiple ranges are not supported, the full content is returned instead
+            if (ranges.size() == 1 && !isSatisfiable(ranges.get(0), length)) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES + " */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return null;
+            } else if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES + " " + start + "-" + end + "/" + length);
+            }
+        }
+        response.setContentLengthLong(Math.max(0, end - start + 1));
+        return new long[] {
+            start,
+            end
+        };
+    }
+
+    private static boolean isNotModifiedSince(HttpServletRequest request, long lastModified) {
+        // If-Modified-Since is ignored if If-None-Match is given
+        if (lastModified < 0 || request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            return false;
+        }
+        try {
+            long ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+            // HTTP dates have a precision of seconds
+            return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean isRangeApplicable(HttpServletRequest request, String etag) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        return ifRange == null || ifRange.equals(etag);
+    }
+
+    private static boolean isSatisfiable(HttpRange range, long length) {
+        try {
+            return range.getRangeStart(length) < length;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+}
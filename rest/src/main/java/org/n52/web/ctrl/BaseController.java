@@ -50,9 +50,11 @@ import org.n52.io.request.RequestStyledParameterSet;
 import org.n52.web.common.RequestUtils;
 import org.n52.web.exception.BadQueryParameterException;
 import org.n52.web.exception.BadRequestException;
+import org.n52.web.exception.ConflictException;
 import org.n52.web.exception.ExceptionResponse;
 import org.n52.web.exception.InternalServerException;
 import org.n52.web.exception.ResourceNotFoundException;
+import org.n52.web.exception.ServiceUnavailableException;
 import org.n52.web.exception.WebException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -199,11 +201,21 @@ public abstract class BaseController {
         writeExceptionResponse((WebException) e, response, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(value = ConflictException.class)
+    public void handle409(Exception e, HttpServletRequest request, HttpServletResponse response) {
+        writeExceptionResponse((WebException) e, response, HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler(value = InternalServerException.class)
     public void handle500(Exception e, HttpServletRequest request, HttpServletResponse response) {
         writeExceptionResponse((WebException) e, response, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(value = ServiceUnavailableException.class)
+    public void handle503(Exception e, HttpServletRequest request, HttpServletResponse response) {
+        writeExceptionResponse((WebException) e, response, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler(value = {
         RuntimeException.class,
         Exception.class,
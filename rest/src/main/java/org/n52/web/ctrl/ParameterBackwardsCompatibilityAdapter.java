@@ -28,6 +28,9 @@
  */
 package org.n52.web.ctrl;
 
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
 
 import org.n52.io.request.IoParameters;
 import org.n52.io.response.OutputCollection;
@@ -64,11 +67,21 @@ public class ParameterBackwardsCompatibilityAdapter<T extends ParameterOutput> e
         return service.getParameter(item, parameters.respectBackwardsCompatibility());
     }
 
+    @Override
+    public Optional<T> findParameter(String item, IoParameters parameters) {
+        return service.findParameter(item, parameters.respectBackwardsCompatibility());
+    }
+
     @Override
     public boolean exists(String id, IoParameters parameters) {
         return service.exists(id, parameters);
     }
 
+    @Override
+    public Set<String> findMissing(Collection<String> ids, IoParameters parameters) {
+        return service.findMissing(ids, parameters);
+    }
+
     @Override
     public boolean supportsRawData() {
         return service.supportsRawData();
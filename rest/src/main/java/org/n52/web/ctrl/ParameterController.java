@@ -52,12 +52,14 @@ import org.n52.web.common.OffsetBasedPagination;
 import org.n52.web.common.PageLinkUtil;
 import org.n52.web.common.Paginated;
 import org.n52.web.common.Stopwatch;
+import org.n52.web.ctrl.data.KnownIdFilter;
 import org.n52.web.exception.BadRequestException;
 import org.n52.web.exception.InternalServerException;
 import org.n52.web.exception.ResourceNotFoundException;
 import org.n52.web.exception.SpiAssertionExceptionAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.servlet.ModelAndView;
 
@@ -70,10 +72,25 @@ public abstract class ParameterController<T extends ParameterOutput>
 
     private final ParameterService<T> parameterService;
 
+    private KnownIdFilter.KnownIds knownIds;
+
     public ParameterController(ParameterService<T> parameterService) {
         this.parameterService = new SpiAssertionExceptionAdapter<>(parameterService);
     }
 
+    /**
+     * Rejects unknown item ids without asking the backend.
+     *
+     * @param knownIdFilter
+     *        the filter of known ids
+     */
+    @Autowired(required = false)
+    public void setKnownIdFilter(KnownIdFilter knownIdFilter) {
+        if (knownIdFilter.isEnabled()) {
+            this.knownIds = knownIdFilter.register(parameterService);
+        }
+    }
+
     @Override
     public void getRawData(HttpServletResponse response,
                            String id,
@@ -101,6 +118,7 @@ public abstract class ParameterController<T extends ParameterOutput>
         LOGGER.debug("getExtras() with id '{}' and query '{}'", resourceId, map);
 
         Map<String, Object> extras = new HashMap<>();
+        assertKnownId(resourceId, map);
         T from = parameterService.getParameter(resourceId, map);
         for (MetadataExtension<T> extension : metadataExtensions) {
             final Map<String, Object> furtherExtras = extension.getExtras(from, map);
@@ -174,6 +192,7 @@ public abstract class ParameterController<T extends ParameterOutput>
     }
 
     private T getItem(String id, IoParameters parameters) {
+        assertKnownId(id, parameters);
         T item = parameterService.getParameter(id, parameters);
         if (item == null) {
             throw new ResourceNotFoundException("Resource with id '" + id + "' not found.");
@@ -181,6 +200,12 @@ public abstract class ParameterController<T extends ParameterOutput>
         return addExtensionInfos(item, parameters);
     }
 
+    private void assertKnownId(String id, IoParameters parameters) {
+        if (knownIds != null && knownIds.isUnknown(id, parameters)) {
+            throw new ResourceNotFoundException("Resource with id '" + id + "' not found.");
+        }
+    }
+
     protected T addExtensionInfos(T output, IoParameters parameters) {
         Collection<String> extras = metadataExtensions.stream()
                                                       .map(e -> e.getExtraMetadataFieldNames(output))
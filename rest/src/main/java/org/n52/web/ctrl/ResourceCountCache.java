@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.joda.time.Period;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Computes resource counts concurrently on a bounded executor and caches them by the filter parameters of
+ * the request. Expired counts are still returned while a refresh runs in the background
+ * (stale-while-revalidate), so only counts never computed before have to be waited for.
+ */
+@Component
+public class ResourceCountCache implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceCountCache.class);
+
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final int QUEUE_SIZE = 100;
+
+    private final Map<String, CachedCount> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long ttl;
+
+    private final long maxWait;
+
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public ResourceCountCache(@Value("${resources.counts.ttl:PT5M}") String ttl,
+                              @Value("${resources.counts.maxWait:PT10S}") String maxWait,
+                              @Value("${resources.counts.threads:4}") int threads) {
+        this.ttl = toMillis(ttl);
+        this.maxWait = toMillis(maxWait);
+        this.executor = new ThreadPoolExecutor(threads,
+                                               threads,
+                                               0L,
+                                               TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<>(QUEUE_SIZE),
+                                               createThreadFactory("resource-count-"));
+    }
+
+    /**
+     * @return the time in milliseconds a request waits for counts never computed before
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Gets a count. Cached counts are returned immediately, expired ones are refreshed in the background.
+     * Counts not cached yet are computed on the executor (or by the calling thread if the executor is busy).
+     *
+     * @param <V>
+     *        the type of count, e.g. a single number or the counts of multiple resources
+     * @param resource
+     *        the counted resource(s)
+     * @param parameters
+     *        the filter parameters
+     * @param counter
+     *        computes the count
+     * @return the (possibly not yet completed) count
+     */
+    @SuppressWarnings("unchecked")
+    public <V> CompletableFuture<V> getCount(String resource,
+                                             IoParameters parameters,
+                                             Function<IoParameters, V> counter) {
+        String key = createKey(resource, parameters);
+        long now = System.currentTimeMillis();
+        CachedCount entry;
+        Object cached;
+        CompletableFuture<Object> loading;
+        boolean refresh;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new CachedCount();
+                put(key, entry);
+            }
+            cached = entry.value;
+            refresh = entry.loading == null && (cached == null || now - entry.created > ttl);
+            if (refresh) {
+                entry.loading = new CompletableFuture<>();
+            }
+            loading = entry.loading;
+        }
+        if (refresh) {
+            load(key, entry, parameters, counter, cached != null);
+        }
+        return cached != null
+                ? CompletableFuture.completedFuture((V) cached)
+                : (CompletableFuture<V>) (CompletableFuture< ? >) loading;
+    }
+
+    private void load(String key,
+                      CachedCount entry,
+                      IoParameters parameters,
+                      Function<IoParameters, ? > counter,
+                      boolean stale) {
+        Runnable loader = () -> {
+            CompletableFuture<Object> loading;
+            try {
+                Object count = counter.apply(parameters);
+                synchronized (this) {
+                    entry.value = count;
+                    entry.created = System.currentTimeMillis();
+                    loading = entry.loading;
+                    entry.loading = null;
+                }
+                loading.complete(count);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    loading = entry.loading;
+                    entry.loading = null;
+                }
+                LOGGER.warn("Could not count '{}'.", key.replace('\n', ' '), e);
+                loading.completeExceptionally(e);
+            }
+        };
+        try {
+            executor.execute(loader);
+        } catch (RejectedExecutionException e) {
+            if (stale) {
+                // the stale count is returned meanwhile, next request tries again
+                synchronized (this) {
+                    entry.loading = null;
+                }
+            } else {
+                loader.run();
+            }
+        }
+    }
+
+    private synchronized void put(String key, CachedCount entry) {
+        entries.put(key, entry);
+        Iterator<CachedCount> eldest = entries.values()
+                                              .iterator();
+        while (entries.size() > MAX_ENTRIES && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    static String createKey(String resource, IoParameters parameters) {
+        // parameters not filtering the counted resources
+        IoParameters filter = parameters.removeAllOf(Parameters.EXPANDED)
+                                        .removeAllOf(Parameters.LOCALE);
+        return resource + "\n" + filter.toCanonicalString();
+    }
+
+    private static long toMillis(String period) {
+        return Period.parse(period)
+                     .toStandardDuration()
+                     .getMillis();
+    }
+
+    private static ThreadFactory createThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static final class CachedCount {
+
+        private Object value;
+
+        private long created;
+
+        private CompletableFuture<Object> loading;
+    }
+
+}
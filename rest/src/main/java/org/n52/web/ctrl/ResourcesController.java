@@ -29,14 +29,28 @@
 package org.n52.web.ctrl;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.n52.io.I18N;
 import org.n52.io.request.IoParameters;
 import org.n52.series.spi.srv.CountingMetadataService;
+import org.n52.series.spi.srv.CountingMetadataService.CountedType;
+import org.n52.web.exception.InternalServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -54,11 +68,39 @@ public class ResourcesController {
     private static final String TAJECTORIES = "trajectories";
     private static final String INDIVIDUAL_OBSERVATIONS = "individualObservations";
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourcesController.class);
+
+    private static final Set<CountedType> COUNTED_TYPES = EnumSet.of(CountedType.SERVICES,
+                                                                     CountedType.CATEGORIES,
+                                                                     CountedType.OFFERINGS,
+                                                                     CountedType.FEATURES,
+                                                                     CountedType.PROCEDURES,
+                                                                     CountedType.PHENOMENA,
+                                                                     CountedType.PLATFORMS,
+                                                                     CountedType.DATASETS);
+
     private final CountingMetadataService metadataService;
 
+    private final boolean groupedCounts;
+
+    private ResourceCountCache countCache;
+
     @Autowired
     public ResourcesController(CountingMetadataService metadataService) {
         this.metadataService = metadataService;
+        this.groupedCounts = metadataService.isCountingGrouped();
+    }
+
+    /**
+     * Computes the counts of expanded resources concurrently and caches them. Without a cache, counts are
+     * computed sequentially on each request.
+     *
+     * @param countCache
+     *        the resource count cache
+     */
+    @Autowired(required = false)
+    public void setResourceCountCache(ResourceCountCache countCache) {
+        this.countCache = countCache;
     }
 
     @RequestMapping("/")
@@ -87,18 +129,22 @@ public class ResourcesController {
         ResourceCollection features = add("features", "Feature", i18n.get("msg.web.resources.features"));
         ResourceCollection procedures = add("procedures", "Procedure", i18n.get("msg.web.resources.procedures"));
         ResourceCollection phenomena = add("phenomena", "Phenomenon", i18n.get("msg.web.resources.phenomena"));
+        Map<ResourceCollection, CompletableFuture<Long>> counts = new LinkedHashMap<>();
+        Map<CountedType, CompletableFuture<Long>> typeCounts = parameters.isExpanded()
+                ? countTypes(parameters)
+                : null;
         if (parameters.isExpanded()) {
-            services.setSize(metadataService.getServiceCount(parameters));
+            counts.put(services, typeCounts.get(CountedType.SERVICES));
             // if (parameters.shallBehaveBackwardsCompatible()) {
             // ensure backwards compatibility
             // stations.setSize(metadataService.getStationCount());
             // timeseries.setSize(metadataService.getTimeseriesCount());
             // }
-            categories.setSize(metadataService.getCategoryCount(parameters));
-            offerings.setSize(metadataService.getOfferingCount(parameters));
-            features.setSize(metadataService.getFeatureCount(parameters));
-            procedures.setSize(metadataService.getProcedureCount(parameters));
-            phenomena.setSize(metadataService.getPhenomenaCount(parameters));
+            counts.put(categories, typeCounts.get(CountedType.CATEGORIES));
+            counts.put(offerings, typeCounts.get(CountedType.OFFERINGS));
+            counts.put(features, typeCounts.get(CountedType.FEATURES));
+            counts.put(procedures, typeCounts.get(CountedType.PROCEDURES));
+            counts.put(phenomena, typeCounts.get(CountedType.PHENOMENA));
         }
 
         List<ResourceCollection> resources = new ArrayList<>();
@@ -130,14 +176,15 @@ public class ResourcesController {
 
         // resources.add(geometries);
         if (parameters.isExpanded()) {
-            platforms.setSize(metadataService.getPlatformCount(parameters));
-            datasets.setSize(metadataService.getDatasetCount(parameters));
+            counts.put(platforms, typeCounts.get(CountedType.PLATFORMS));
+            counts.put(datasets, typeCounts.get(CountedType.DATASETS));
 
             List<String> datasetTypes = new LinkedList<>(parameters.getDatasetTypes());
-            timeseries.setSize(countDatasets(parameters, TIMESERIES));
-            trajectories.setSize(countDatasets(parameters, TAJECTORIES));
-            individualObservations.setSize(countDatasets(parameters, INDIVIDUAL_OBSERVATIONS));
+            counts.put(timeseries, countDatasets(parameters, TIMESERIES));
+            counts.put(trajectories, countDatasets(parameters, TAJECTORIES));
+            counts.put(individualObservations, countDatasets(parameters, INDIVIDUAL_OBSERVATIONS));
             parameters.extendWith(IoParameters.FILTER_DATASET_TYPES, datasetTypes);
+            setSizes(counts);
         }
 
         ResourceCollection samplings = add("samplings", "Samplings", i18n.get("msg.web.resources.samplings"));
@@ -150,10 +197,65 @@ public class ResourcesController {
         return resources;
     }
 
-    private Long countDatasets(IoParameters parameters, String datasetType) {
+    private Map<CountedType, CompletableFuture<Long>> countTypes(IoParameters parameters) {
+        Map<CountedType, CompletableFuture<Long>> counts = new EnumMap<>(CountedType.class);
+        if (groupedCounts) {
+            CompletableFuture<Map<CountedType, Long>> all = count("types",
+                                                                  parameters,
+                                                                  p -> metadataService.getCounts(COUNTED_TYPES, p));
+            for (CountedType type : COUNTED_TYPES) {
+                counts.put(type, all.thenApply(c -> c.get(type)));
+            }
+        } else {
+            // counted one by one anyway, so let the cache count them concurrently
+            for (CountedType type : COUNTED_TYPES) {
+                Set<CountedType> single = EnumSet.of(type);
+                counts.put(type, count(type.name(), parameters, p -> metadataService.getCounts(single, p)
+                                                                                    .get(type)));
+            }
+        }
+        return counts;
+    }
+
+    private CompletableFuture<Long> countDatasets(IoParameters parameters, String datasetType) {
         String filterName = IoParameters.FILTER_DATASET_TYPES;
         IoParameters filter = parameters.extendWith(filterName, datasetType);
-        return metadataService.getDatasetCount(filter);
+        return count("datasets", filter, metadataService::getDatasetCount);
+    }
+
+    private <V> CompletableFuture<V> count(String resource,
+                                           IoParameters parameters,
+                                           Function<IoParameters, V> counter) {
+        return countCache != null
+                ? countCache.getCount(resource, parameters, counter)
+                : CompletableFuture.completedFuture(counter.apply(parameters));
+    }
+
+    private void setSizes(Map<ResourceCollection, CompletableFuture<Long>> counts) {
+        long maxWait = countCache != null
+                ? countCache.getMaxWait()
+                : 0;
+        long deadline = System.currentTimeMillis() + maxWait;
+        for (Map.Entry<ResourceCollection, CompletableFuture<Long>> count : counts.entrySet()) {
+            ResourceCollection resource = count.getKey();
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                resource.setSize(count.getValue()
+                                      .get(remaining, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                // the size is omitted, later requests get the count from the cache
+                LOGGER.debug("Count of '{}' not available yet.", resource.getId());
+            } catch (InterruptedException e) {
+                Thread.currentThread()
+                      .interrupt();
+                throw new InternalServerException("Interrupted while counting resources.", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new InternalServerException("Could not count resources.", e.getCause());
+            }
+        }
     }
 
     private void addVersionHeader(HttpServletResponse response) {
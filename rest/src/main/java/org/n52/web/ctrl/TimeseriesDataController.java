@@ -37,6 +37,7 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
@@ -410,7 +411,8 @@ public class TimeseriesDataController extends BaseController {
             Constants.IMAGE_PNG
         },
         method = RequestMethod.GET)
-    public void getChartByInterval(HttpServletResponse response,
+    public void getChartByInterval(HttpServletRequest httpRequest,
+                                   HttpServletResponse response,
                                    @PathVariable String timeseriesId,
                                    @PathVariable String chartQualifier,
                                    @RequestHeader(value = Parameters.HttpHeader.ACCEPT_LANGUAGE,
@@ -428,7 +430,8 @@ public class TimeseriesDataController extends BaseController {
                     + timeseriesId
                     + "'.");
         }
-        preRenderingTask.writePrerenderedGraphToOutputStream(timeseriesId, chartQualifier, response.getOutputStream());
+        response.setContentType(Constants.IMAGE_PNG);
+        preRenderingTask.writePrerenderedGraph(timeseriesId, chartQualifier, httpRequest, response);
     }
 
     private void checkAgainstTimespanRestriction(IntervalWithTimeZone timespan) {
@@ -447,12 +450,16 @@ public class TimeseriesDataController extends BaseController {
     }
 
     private void checkIfUnknownTimeseriesIds(IoParameters parameters, Set<String> timeseriesIds) {
-        for (String timeseriesId : timeseriesIds) {
-            if (!timeseriesMetadataService.exists(timeseriesId, parameters)) {
-                throw new ResourceNotFoundException("The timeseries with id '"
-                        + timeseriesId
-                        + "' was not found.");
+        Set<String> missing = timeseriesMetadataService.findMissing(timeseriesIds, parameters);
+        if (!missing.isEmpty()) {
+            ResourceNotFoundException e = new ResourceNotFoundException("The timeseries with id '"
+                    + missing.iterator()
+                             .next()
+                    + "' was not found.");
+            if (missing.size() > 1) {
+                e.addHint("Unknown timeseries ids: " + String.join(", ", missing));
             }
+            throw e;
         }
     }
 
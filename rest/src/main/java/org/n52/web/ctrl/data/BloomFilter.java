@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import java.util.Collection;
+
+/**
+ * An immutable Bloom filter of strings. A negative membership test is definite, a positive one may be wrong
+ * with (about) the false positive rate the filter was sized for.
+ */
+final class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private static final int MAX_HASH_FUNCTIONS = 16;
+
+    private final long[] bits;
+
+    private final long bitSize;
+
+    private final int hashFunctions;
+
+    private final int count;
+
+    private BloomFilter(long bitSize, int hashFunctions, int count) {
+        this.bits = new long[(int) ((bitSize + 63) / 64)];
+        this.bitSize = bits.length * 64L;
+        this.hashFunctions = hashFunctions;
+        this.count = count;
+    }
+
+    /**
+     * @param values
+     *        the values to add
+     * @param falsePositiveRate
+     *        the targeted false positive rate, greater than 0 and less than 1
+     * @return a filter containing all given values
+     */
+    static BloomFilter create(Collection<String> values, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("false positive rate must be in (0, 1): " + falsePositiveRate);
+        }
+        int n = Math.max(1, values.size());
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (LN2 * LN2));
+        long bitSize = Math.max(64L, Math.min(m, Integer.MAX_VALUE * 64L));
+        int k = (int) Math.round((double) bitSize / n * LN2);
+        BloomFilter filter = new BloomFilter(bitSize, Math.max(1, Math.min(k, MAX_HASH_FUNCTIONS)), values.size());
+        for (String value : values) {
+            filter.add(value);
+        }
+        return filter;
+    }
+
+    private void add(String value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, bitSize);
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    /**
+     * @param value
+     *        the value to test
+     * @return <code>false</code> if the value is definitely not contained, <code>true</code> if it may be
+     */
+    boolean mightContain(String value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, bitSize);
+            if ((bits[(int) (index >>> 6)] & 1L << index) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getSizeInBytes() {
+        return bits.length * 8L;
+    }
+
+    /**
+     * @return the false positive rate expected for the actual number of contained values
+     */
+    double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashFunctions * count / bitSize), hashFunctions);
+    }
+
+    private static long hash(String value) {
+        // FNV-1a over the UTF-16 chars
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long value) {
+        // finalizer of MurmurHash3, makes the second hash independent enough for double hashing
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash | 1;
+    }
+
+}
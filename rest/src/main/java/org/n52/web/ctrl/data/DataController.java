@@ -28,10 +28,15 @@
  */
 package org.n52.web.ctrl.data;
 
+import java.awt.Dimension;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,6 +52,7 @@ import org.n52.io.Constants;
 import org.n52.io.IntervalWithTimeZone;
 import org.n52.io.handler.DatasetFactoryException;
 import org.n52.io.handler.DefaultIoFactory;
+import org.n52.io.handler.IoHandler;
 import org.n52.io.handler.IoHandlerFactory;
 import org.n52.io.handler.IoProcessChain;
 import org.n52.io.request.IoParameters;
@@ -57,17 +63,21 @@ import org.n52.io.response.dataset.AbstractValue;
 import org.n52.io.response.dataset.Data;
 import org.n52.io.response.dataset.DataCollection;
 import org.n52.io.response.dataset.DatasetOutput;
+import org.n52.io.type.quantity.handler.img.ChartIoHandler;
 import org.n52.series.spi.srv.DataService;
 import org.n52.series.spi.srv.ParameterService;
 import org.n52.series.spi.srv.RawDataService;
 import org.n52.series.spi.srv.RawFormats;
+import org.n52.web.common.FileResponses;
 import org.n52.web.ctrl.BaseController;
 import org.n52.web.exception.BadRequestException;
+import org.n52.web.exception.ConflictException;
 import org.n52.web.exception.InternalServerException;
 import org.n52.web.exception.ResourceNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -94,21 +104,100 @@ public abstract class DataController extends BaseController {
 
     private static final String DEFAULT_RESPONSE_ENCODING = "UTF-8";
 
+    private static final String EXPORT_MIME_TYPE = "mimeType";
+
+    private static final Set<String> EXPORT_MIME_TYPES = new HashSet<>(Arrays.asList(Constants.APPLICATION_PDF,
+                                                                                      Constants.APPLICATION_ZIP,
+                                                                                      Constants.TEXT_CSV));
+
     private final DefaultIoFactory<DatasetOutput<AbstractValue< ? >>, AbstractValue< ? >> ioFactoryCreator;
 
-    private final DataService<Data<AbstractValue< ? >>> dataService;
+    private DataService<Data<AbstractValue< ? >>> dataService;
+
+    private final ParameterService<DatasetOutput<AbstractValue< ? >>> datasetBackend;
+
+    private ParameterService<DatasetOutput<AbstractValue< ? >>> datasetService;
+
+    private KnownIdFilter.KnownIds knownDatasetIds;
 
-    private final ParameterService<DatasetOutput<AbstractValue< ? >>> datasetService;
+    private ExportWorkerPools exportWorkerPools;
+
+    private ExportJobManager exportJobManager;
+
+    @Autowired(required = false)
+    private RenderedChartCache renderedChartCache;
 
     @Autowired
     public DataController(DefaultIoFactory<DatasetOutput<AbstractValue< ? >>, AbstractValue< ? >> ioFactory,
                           ParameterService<DatasetOutput<AbstractValue< ? >>> datasetService,
                           DataService<Data<AbstractValue< ? >>> dataService) {
         this.ioFactoryCreator = ioFactory;
+        this.datasetBackend = datasetService;
         this.datasetService = datasetService;
         this.dataService = dataService;
     }
 
+    /**
+     * Answers existence checks, value type resolution and metadata lookups of output handlers from the
+     * given cache, so that only the actual data read hits the backend.
+     *
+     * @param metadataCache
+     *        the dataset metadata cache
+     */
+    @Autowired(required = false)
+    public void setDatasetMetadataCache(DatasetMetadataCache metadataCache) {
+        this.datasetService = metadataCache.decorate(datasetService);
+    }
+
+    /**
+     * Fetches the data of multi-dataset requests (like collection data or reports) concurrently.
+     *
+     * @param parallelDataFetching
+     *        provides the shared executor
+     */
+    @Autowired(required = false)
+    public void setParallelDataFetching(ParallelDataFetching parallelDataFetching) {
+        this.dataService = parallelDataFetching.decorate(dataService);
+    }
+
+    /**
+     * Rejects unknown dataset ids without asking the backend. The filter is built from the undecorated
+     * dataset service, so that all data controllers share one filter.
+     *
+     * @param knownIdFilter
+     *        the filter of known ids
+     */
+    @Autowired(required = false)
+    public void setKnownIdFilter(KnownIdFilter knownIdFilter) {
+        if (knownIdFilter.isEnabled()) {
+            this.knownDatasetIds = knownIdFilter.register(datasetBackend);
+        }
+    }
+
+    /**
+     * Runs exports requested via <code>/observations/exports</code> asynchronously. Without a manager, export
+     * jobs are not supported.
+     *
+     * @param exportJobManager
+     *        the export job manager
+     */
+    @Autowired(required = false)
+    public void setExportJobManager(ExportJobManager exportJobManager) {
+        this.exportJobManager = exportJobManager;
+    }
+
+    /**
+     * Compresses the entries of zip exports and prefetches the time slices of CSV exports on shared worker
+     * pools instead of the request thread.
+     *
+     * @param exportWorkerPools
+     *        provides the shared worker pools
+     */
+    @Autowired(required = false)
+    public void setExportWorkerPools(ExportWorkerPools exportWorkerPools) {
+        this.exportWorkerPools = exportWorkerPools;
+    }
+
     protected abstract String getValueType(IoParameters map, String requestUrl);
 
     protected ParameterService<DatasetOutput<AbstractValue< ? >>> getDatasetService() {
@@ -247,10 +336,7 @@ public abstract class DataController extends BaseController {
         // final String datasetType = getValueType(parameters);
         final String valueType = getValueType(parameters, request.getRequestURI());
         String outputFormat = Constants.APPLICATION_PDF;
-        response.setContentType(outputFormat);
-        createIoFactory(valueType).setParameters(parameters)
-                                  .createHandler(outputFormat)
-                                  .writeBinary(response.getOutputStream());
+        writeRendering(request, response, valueType, outputFormat, parameters);
     }
 
     @RequestMapping(value = "/{datasetId}/observations",
@@ -276,10 +362,7 @@ public abstract class DataController extends BaseController {
         response.setContentType(outputFormat);
         response.setHeader(CONTENT_DISPOSITION_HEADER,
                 CONTENT_DISPOSITION_VALUE_TEMPLATE + validateResponseSplitting(datasetId) + ".pdf\"");
-
-        createIoFactory(valueType).setParameters(parameters)
-                                  .createHandler(outputFormat)
-                                  .writeBinary(response.getOutputStream());
+        writeRendering(request, response, valueType, outputFormat, parameters);
     }
 
     @RequestMapping(value = "/{datasetId}/observations",
@@ -353,6 +436,192 @@ public abstract class DataController extends BaseController {
                                   .writeBinary(response.getOutputStream());
     }
 
+    @RequestMapping(value = "/observations/exports",
+        produces = {
+            Constants.APPLICATION_JSON
+        },
+        method = RequestMethod.POST)
+    public ModelAndView createExportJob(HttpServletRequest request,
+                                        HttpServletResponse response,
+                                        @RequestHeader(value = Parameters.HttpHeader.ACCEPT_LANGUAGE,
+                                            required = false) String locale,
+                                        @RequestParam(value = EXPORT_MIME_TYPE,
+                                            defaultValue = Constants.APPLICATION_PDF) String mimeType,
+                                        @RequestBody RequestStyledParameterSet styledParameters)
+            throws Exception {
+        ExportJobManager jobManager = getExportJobManager();
+        if (!EXPORT_MIME_TYPES.contains(mimeType)) {
+            throw new BadRequestException("Unsupported export format '" + mimeType + "'.")
+                    .addHint("Supported formats are: " + EXPORT_MIME_TYPES);
+        }
+        IoParameters parameters = createParameters(styledParameters, locale, response);
+        LOGGER.debug("create export job with parameter set: {}", parameters);
+        checkForUnknownDatasetIds(parameters, parameters.getDatasets());
+        checkAgainstTimespanRestriction(parameters.getTimespan());
+
+        final String valueType = getValueType(parameters, request.getRequestURI());
+        // factories are shared per value type, so create the handler before other requests reconfigure it
+        IoHandler< ? > handler = createIoFactory(valueType).setParameters(parameters)
+                                                           .createHandler(mimeType);
+        String key = valueType + "\n" + parameters.toCanonicalString();
+        ExportJob job = jobManager.submit(key, mimeType, handler::writeBinary);
+
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        response.setHeader(HttpHeaders.LOCATION, request.getRequestURL() + "/" + job.getId());
+        return new ModelAndView().addObject(job);
+    }
+
+    @RequestMapping(value = "/observations/exports/{jobId}",
+        produces = {
+            Constants.APPLICATION_JSON
+        },
+        method = RequestMethod.GET)
+    public ModelAndView getExportJob(@PathVariable String jobId) {
+        return new ModelAndView().addObject(findExportJob(jobId));
+    }
+
+    @RequestMapping(value = "/observations/exports/{jobId}/result",
+        method = RequestMethod.GET)
+    public void getExportJobResult(HttpServletRequest request,
+                                   HttpServletResponse response,
+                                   @PathVariable String jobId)
+            throws IOException {
+        ExportJob job = findExportJob(jobId);
+        if (job.getStatus() == ExportJob.Status.FAILED) {
+            throw new ConflictException("Export '" + jobId + "' has failed.")
+                    .addHint("Cause: " + job.getError())
+                    .addHint("Submit the export again.");
+        } else if (!job.isFinished()) {
+            throw new ConflictException("Export '" + jobId + "' is not finished.")
+                    .addHint("Current status is " + job.getStatus() + ". Try again later.");
+        }
+        String filename = "Observations_Export_" + jobId + ExportJobManager.getExtension(job.getMimeType());
+        response.setContentType(job.getMimeType());
+        response.setHeader(CONTENT_DISPOSITION_HEADER, "attachment; filename=\"" + filename + "\"");
+        FileResponses.write(job.getResult(), job.getEtag(), request, response);
+    }
+
+    private ExportJob findExportJob(String jobId) {
+        return getExportJobManager().getJob(jobId)
+                                    .orElseThrow(() -> new ResourceNotFoundException("Export with id '"
+                                            + jobId
+                                            + "' wasn't found."));
+    }
+
+    private ExportJobManager getExportJobManager() {
+        if (exportJobManager == null) {
+            throw new BadRequestException("Export jobs are not supported by this service.");
+        }
+        return exportJobManager;
+    }
+
+    /**
+     * Renders the given parameters to the response. Outputs supported by the {@link RenderedChartCache} are
+     * served from the cache (or rendered once and cached), with a strong <code>ETag</code> so that clients
+     * can revalidate via <code>If-None-Match</code>.
+     * <p>
+     * If a chart is requested in multiple {@link Parameters#CHART_SIZES sizes}, all of them are rendered from
+     * one data fetch and cached. The response contains the size matching the requested width and height, or
+     * the first one given.
+     *
+     * @param request
+     *        the request
+     * @param response
+     *        the response
+     * @param valueType
+     *        the value type of the requested datasets
+     * @param outputFormat
+     *        the output format
+     * @param parameters
+     *        the request parameters
+     * @throws Exception
+     *         if rendering or writing fails
+     */
+    protected void writeRendering(HttpServletRequest request,
+                                  HttpServletResponse response,
+                                  String valueType,
+                                  String outputFormat,
+                                  IoParameters parameters)
+            throws Exception {
+        response.setContentType(outputFormat);
+        List<Dimension> sizes = Constants.IMAGE_PNG.equals(outputFormat)
+                ? parameters.getChartSizes()
+                : Collections.emptyList();
+        Dimension size = new Dimension(parameters.getWidth(), parameters.getHeight());
+        Dimension requested = sizes.contains(size)
+                ? size
+                : sizes.isEmpty()
+                        ? null
+                        : sizes.get(0);
+        IoParameters single = requested == null
+                ? parameters
+                : withChartSize(parameters, requested);
+        if (renderedChartCache == null || !renderedChartCache.isCaching(outputFormat)) {
+            // without a cache the other sizes would be rendered in vain
+            createIoFactory(valueType).setParameters(single)
+                                      .createHandler(outputFormat)
+                                      .writeBinary(response.getOutputStream());
+            return;
+        }
+        String key = renderedChartCache.createKey(valueType, outputFormat, single);
+        RenderedChartCache.CachedChart chart = renderedChartCache.getOrRender(key, () -> {
+            if (requested != null && !parameters.isBase64()) {
+                return renderChartSizes(valueType, outputFormat, parameters, sizes).get(requested);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            createIoFactory(valueType).setParameters(single)
+                                      .createHandler(outputFormat)
+                                      .writeBinary(out);
+            return renderedChartCache.put(key, out.toByteArray(), renderedChartCache.getTimeToLive(single));
+        });
+        FileResponses.write(chart.getContent(), chart.getEtag(), request, response);
+    }
+
+    /**
+     * Renders a chart in all given sizes from one data fetch and puts each variant into the cache, so that
+     * follow-up requests for the other sizes become cache hits.
+     */
+    private Map<Dimension, RenderedChartCache.CachedChart> renderChartSizes(String valueType,
+                                                                         String outputFormat,
+                                                                         IoParameters parameters,
+                                                                         List<Dimension> sizes)
+            throws Exception {
+        IoParameters first = withChartSize(parameters, sizes.get(0));
+        IoHandler< ? > handler = createIoFactory(valueType).setParameters(first)
+                                                           .createHandler(outputFormat);
+        Map<Dimension, RenderedChartCache.CachedChart> charts = new HashMap<>();
+        if (handler instanceof ChartIoHandler) {
+            ((ChartIoHandler) handler).renderSizes(sizes)
+                                      .forEach((size, content) -> {
+                                          IoParameters variant = withChartSize(parameters, size);
+                                          String key = renderedChartCache.createKey(valueType,
+                                                                                    outputFormat,
+                                                                                    variant);
+                                          long timeToLive = renderedChartCache.getTimeToLive(variant);
+                                          charts.put(size, renderedChartCache.put(key, content, timeToLive));
+                                      });
+        } else {
+            // only charts can be rendered in multiple sizes at once
+            for (Dimension size : sizes) {
+                IoParameters variant = withChartSize(parameters, size);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                createIoFactory(valueType).setParameters(variant)
+                                          .createHandler(outputFormat)
+                                          .writeBinary(out);
+                String key = renderedChartCache.createKey(valueType, outputFormat, variant);
+                long timeToLive = renderedChartCache.getTimeToLive(variant);
+                charts.put(size, renderedChartCache.put(key, out.toByteArray(), timeToLive));
+            }
+        }
+        return charts;
+    }
+
+    private static IoParameters withChartSize(IoParameters parameters, Dimension size) {
+        return parameters.removeAllOf(Parameters.CHART_SIZES)
+                         .replaceWith(Parameters.WIDTH, Integer.toString(size.width))
+                         .replaceWith(Parameters.HEIGHT, Integer.toString(size.height));
+    }
+
     protected void checkAgainstTimespanRestriction(IntervalWithTimeZone timespan) {
         if (getRequestIntervalRestriction() != null) {
             Duration duration = Period.parse(getRequestIntervalRestriction())
@@ -371,11 +640,24 @@ public abstract class DataController extends BaseController {
     }
 
     protected void checkForUnknownDatasetIds(IoParameters parameters, Set<String> seriesIds) {
-        if (seriesIds != null) {
-            for (String id : seriesIds) {
-                if (!datasetService.exists(id, parameters)) {
-                    throw new ResourceNotFoundException("Series with id '" + id + "' wasn't found.");
+        if (seriesIds != null && !seriesIds.isEmpty()) {
+            if (knownDatasetIds != null) {
+                for (String id : seriesIds) {
+                    if (knownDatasetIds.isUnknown(id, parameters)) {
+                        throw new ResourceNotFoundException("Series with id '" + id + "' wasn't found.");
+                    }
+                }
+            }
+            Set<String> missing = datasetService.findMissing(seriesIds, parameters);
+            if (!missing.isEmpty()) {
+                String id = missing.iterator()
+                                   .next();
+                String message = "Series with id '" + id + "' wasn't found.";
+                ResourceNotFoundException e = new ResourceNotFoundException(message);
+                if (missing.size() > 1) {
+                    e.addHint("Unknown series ids: " + String.join(", ", missing));
                 }
+                throw e;
             }
         }
     }
@@ -386,9 +668,15 @@ public abstract class DataController extends BaseController {
         if (!ioFactoryCreator.isKnown(valueType)) {
             throw new ResourceNotFoundException("unknown dataset type: " + valueType);
         }
-        return ioFactoryCreator.create(valueType)
-                               .setDataService(dataService)
-                               .setDatasetService(datasetService);
+        IoHandlerFactory<DatasetOutput<AbstractValue< ? >>, AbstractValue< ? >> factory =
+                ioFactoryCreator.create(valueType)
+                                .setDataService(dataService)
+                                .setDatasetService(datasetService);
+        if (exportWorkerPools != null) {
+            factory.setZipExecutor(exportWorkerPools.getZipExecutor())
+                   .setTimeSliceExecutor(exportWorkerPools.getTimeSliceExecutor());
+        }
+        return factory;
     }
 
     @Override
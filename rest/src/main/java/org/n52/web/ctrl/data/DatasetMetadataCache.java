@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.joda.time.Period;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.io.response.OutputCollection;
+import org.n52.io.response.ParameterOutput;
+import org.n52.series.spi.srv.ParameterService;
+import org.n52.series.spi.srv.RawDataService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches dataset metadata looked up before the actual data is read, i.e. existence checks, value type
+ * resolution and the metadata used by output handlers. Entries expire after a configurable time and are
+ * bounded in number (least recently used entries are evicted first).
+ * <p>
+ * Parameters which only control the data or the output (like timespan or chart size) are not part of the
+ * cache keys, so that requests for different timespans share the metadata of their datasets. Backends
+ * changing datasets can drop cached metadata via {@link #invalidate(String)} or {@link #invalidateAll()}.
+ */
+@Component
+public class DatasetMetadataCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetMetadataCache.class);
+
+    private static final List<String> OUTPUT_PARAMETERS = Arrays.asList(Parameters.TIMESPAN,
+                                                                        Parameters.RESULTTIME,
+                                                                        Parameters.WIDTH,
+                                                                        Parameters.HEIGHT,
+                                                                        Parameters.CHART_SIZES,
+                                                                        Parameters.GRID,
+                                                                        Parameters.LEGEND,
+                                                                        Parameters.GENERALIZE,
+                                                                        Parameters.BASE_64,
+                                                                        Parameters.FORMAT,
+                                                                        Parameters.TIME_FORMAT,
+                                                                        Parameters.RAW_FORMAT,
+                                                                        Parameters.RENDERING_TRIGGER,
+                                                                        Parameters.ZIP,
+                                                                        Parameters.ZIP_COMPRESSION_LEVEL,
+                                                                        Parameters.ZIP_STORED,
+                                                                        Parameters.ZIP_PARALLEL,
+                                                                        Parameters.REPORT_TABLES,
+                                                                        Parameters.REPORT_TABLE_ROWS,
+                                                                        Parameters.BOM,
+                                                                        Parameters.TOKEN_SEPARATOR,
+                                                                        Parameters.STYLE,
+                                                                        Parameters.STYLES,
+                                                                        Parameters.CACHE);
+
+    private final Map<String, CachedMetadata> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // separates the entries of decorated services, which may answer equal queries differently
+    private final AtomicLong serviceIds = new AtomicLong();
+
+    private final long ttl;
+
+    private final int maxEntries;
+
+    @Autowired
+    public DatasetMetadataCache(@Value("${dataset.metadata.cache.ttl:PT5M}") String ttl,
+                                @Value("${dataset.metadata.cache.maxEntries:10000}") int maxEntries) {
+        this.ttl = Period.parse(ttl)
+                         .toStandardDuration()
+                         .getMillis();
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Composes the given service, so that metadata lookups are answered from this cache.
+     *
+     * @param service
+     *        the service to compose
+     * @param <T>
+     *        the parameter type
+     * @return the caching service, or the given one if caching is disabled
+     */
+    public <T extends ParameterOutput> ParameterService<T> decorate(ParameterService<T> service) {
+        return isEnabled()
+                ? new CachingParameterService<>(service, this, serviceIds.incrementAndGet())
+                : service;
+    }
+
+    public boolean isEnabled() {
+        return ttl > 0 && maxEntries > 0;
+    }
+
+    /**
+     * Removes all cached metadata referring to the given dataset.
+     *
+     * @param datasetId
+     *        the id of the changed or deleted dataset
+     */
+    public synchronized void invalidate(String datasetId) {
+        entries.values()
+               .removeIf(entry -> entry.datasetIds.contains(datasetId));
+    }
+
+    /**
+     * Removes all cached metadata, e.g. after datasets have been added.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        LOGGER.debug("Invalidated dataset metadata cache.");
+    }
+
+    <V> V get(String key, Supplier<V> loader, Function<V, Collection<String>> datasetIds) {
+        V cached = peek(key);
+        if (cached != null) {
+            return cached;
+        }
+        // loaded outside the lock, concurrent misses of the same key load twice
+        long now = System.currentTimeMillis();
+        V value = loader.get();
+        if (value != null) {
+            put(key, new CachedMetadata(value, now, new HashSet<>(datasetIds.apply(value))));
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized <V> V peek(String key) {
+        CachedMetadata entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.created <= ttl) {
+            return (V) entry.value;
+        } else if (entry != null) {
+            entries.remove(key);
+        }
+        return null;
+    }
+
+    void put(String key, Object value, Collection<String> datasetIds) {
+        put(key, new CachedMetadata(value, System.currentTimeMillis(), new HashSet<>(datasetIds)));
+    }
+
+    private synchronized void put(String key, CachedMetadata entry) {
+        entries.put(key, entry);
+        Iterator<CachedMetadata> eldest = entries.values()
+                                                 .iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    static String createKey(long serviceId, String operation, Collection<String> ids, IoParameters parameters) {
+        IoParameters metadataParameters = parameters;
+        for (String parameter : OUTPUT_PARAMETERS) {
+            if (metadataParameters.containsParameter(parameter)) {
+                metadataParameters = metadataParameters.removeAllOf(parameter);
+            }
+        }
+        List<String> sortedIds = ids.stream()
+                                    .sorted()
+                                    .collect(Collectors.toList());
+        return new StringBuilder().append(serviceId)
+                                  .append('\n')
+                                  .append(operation)
+                                  .append('\n')
+                                  .append(sortedIds)
+                                  .append('\n')
+                                  .append(metadataParameters.toCanonicalString())
+                                  .toString();
+    }
+
+    private static final class CachedMetadata {
+
+        private final Object value;
+
+        private final long created;
+
+        private final Set<String> datasetIds;
+
+        CachedMetadata(Object value, long created, Set<String> datasetIds) {
+            this.value = value;
+            this.created = created;
+            this.datasetIds = datasetIds;
+        }
+    }
+
+    /**
+     * Answers (batched) existence checks and metadata lookups from the cache. Other calls are delegated.
+     */
+    private static final class CachingParameterService<T extends ParameterOutput> extends ParameterService<T> {
+
+        private final ParameterService<T> composedService;
+
+        private final DatasetMetadataCache cache;
+
+        private final long serviceId;
+
+        CachingParameterService(ParameterService<T> toCompose, DatasetMetadataCache cache, long serviceId) {
+            this.composedService = toCompose;
+            this.cache = cache;
+            this.serviceId = serviceId;
+        }
+
+        @Override
+        public OutputCollection<T> getExpandedParameters(IoParameters query) {
+            return composedService.getExpandedParameters(query);
+        }
+
+        @Override
+        public OutputCollection<T> getCondensedParameters(IoParameters query) {
+            Set<String> datasets = query.getDatasets();
+            String key = createKey(serviceId, "condensed", datasets, query);
+            return cache.get(key,
+                             () -> composedService.getCondensedParameters(query),
+                             output -> getIds(datasets, output));
+        }
+
+        @Override
+        public OutputCollection<T> getParameters(String[] items, IoParameters query) {
+            List<String> ids = Arrays.asList(items);
+            String key = createKey(serviceId, "items", ids, query);
+            return cache.get(key,
+                             () -> composedService.getParameters(items, query),
+                             output -> getIds(ids, output));
+        }
+
+        @Override
+        public T getParameter(String item, IoParameters query) {
+            return composedService.getParameter(item, query);
+        }
+
+        @Override
+        public Optional<T> findParameter(String item, IoParameters query) {
+            return composedService.findParameter(item, query);
+        }
+
+        @Override
+        public boolean exists(String id, IoParameters parameters) {
+            List<String> ids = Collections.singletonList(id);
+            String key = createExistsKey(id, parameters);
+            // unknown ids are not cached, so that new datasets are found right away
+            Boolean exists = cache.get(key,
+                                       () -> composedService.exists(id, parameters)
+                                               ? Boolean.TRUE
+                                               : null,
+                                       value -> ids);
+            return exists != null;
+        }
+
+        @Override
+        public Set<String> findMissing(Collection<String> ids, IoParameters parameters) {
+            Set<String> uncached = new LinkedHashSet<>();
+            for (String id : ids) {
+                if (cache.peek(createExistsKey(id, parameters)) == null) {
+                    uncached.add(id);
+                }
+            }
+            if (uncached.isEmpty()) {
+                return Collections.emptySet();
+            }
+            // one backend call for all ids not known to exist yet
+            Set<String> missing = composedService.findMissing(uncached, parameters);
+            for (String id : uncached) {
+                if (!missing.contains(id)) {
+                    cache.put(createExistsKey(id, parameters), Boolean.TRUE, Collections.singleton(id));
+                }
+            }
+            return missing;
+        }
+
+        private String createExistsKey(String id, IoParameters parameters) {
+            return createKey(serviceId, "exists", Collections.singletonList(id), parameters);
+        }
+
+        private Collection<String> getIds(Collection<String> requested, OutputCollection<T> output) {
+            Set<String> ids = new HashSet<>(requested);
+            for (T item : output) {
+                ids.add(item.getId());
+            }
+            return ids;
+        }
+
+        @Override
+        public boolean supportsRawData() {
+            return composedService.supportsRawData();
+        }
+
+        @Override
+        public RawDataService getRawDataService() {
+            return composedService.getRawDataService();
+        }
+
+        @Override
+        public void setRawDataService(RawDataService rawDataService) {
+            composedService.setRawDataService(rawDataService);
+        }
+    }
+
+}
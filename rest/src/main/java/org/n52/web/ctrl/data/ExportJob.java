@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import java.io.File;
+
+import org.joda.time.DateTime;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * State of an asynchronous export. Jobs with equal canonical parameters share the same id and thus the same
+ * result.
+ */
+@JsonInclude(Include.NON_NULL)
+public class ExportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, FINISHED, FAILED
+    }
+
+    private final String id;
+
+    private final String mimeType;
+
+    private final long created;
+
+    private volatile Status status;
+
+    private volatile long finished;
+
+    private volatile File result;
+
+    private volatile String contentHash;
+
+    private volatile String error;
+
+    ExportJob(String id, String mimeType) {
+        this.id = id;
+        this.mimeType = mimeType;
+        this.created = System.currentTimeMillis();
+        this.status = Status.QUEUED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getCreated() {
+        return new DateTime(created).toString();
+    }
+
+    public String getFinished() {
+        return isDone()
+                ? new DateTime(finished).toString()
+                : null;
+    }
+
+    public Long getSize() {
+        return status == Status.FINISHED
+                ? result.length()
+                : null;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @JsonIgnore
+    public File getResult() {
+        return result;
+    }
+
+    /**
+     * @return the (quoted) entity tag of the result, derived from its content
+     */
+    @JsonIgnore
+    public String getEtag() {
+        return contentHash != null
+                ? "\"" + contentHash + "\""
+                : null;
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return status == Status.FINISHED;
+    }
+
+    @JsonIgnore
+    public boolean isDone() {
+        return status == Status.FINISHED || status == Status.FAILED;
+    }
+
+    boolean isExpired(long now, long ttl) {
+        return isDone() && now - finished > ttl;
+    }
+
+    void setRunning() {
+        this.status = Status.RUNNING;
+    }
+
+    void setFinished(File file, String contentHash) {
+        this.result = file;
+        this.contentHash = contentHash;
+        this.finished = System.currentTimeMillis();
+        this.status = Status.FINISHED;
+    }
+
+    void setFailed(String message) {
+        this.error = message;
+        this.finished = System.currentTimeMillis();
+        this.status = Status.FAILED;
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.joda.time.Period;
+import org.n52.io.Constants;
+import org.n52.io.handler.IoHandlerException;
+import org.n52.web.exception.ServiceUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs exports on a bounded executor, separate from request threads, and keeps finished results in a local
+ * directory until their time to live has expired.
+ */
+@Component
+public class ExportJobManager implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExportJobManager.class);
+
+    private static final String PARTIAL_EXTENSION = ".part";
+
+    private static final long MIN_CLEANUP_INTERVAL = 1000L;
+
+    // job ids are 32 hex chars, see createId()
+    private static final Pattern RESULT_FILE_PATTERN = Pattern.compile("[0-9a-f]{32}\\.(pdf|zip|csv|png|bin|part)");
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+
+    private final Path directory;
+
+    private final long ttl;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService cleanup;
+
+    @Autowired
+    public ExportJobManager(@Value("${export.jobs.directory:}") String directory,
+                            @Value("${export.jobs.threads:2}") int threads,
+                            @Value("${export.jobs.queueSize:20}") int queueSize,
+                            @Value("${export.jobs.ttl:PT1H}") String ttl) throws IOException {
+        this.directory = directory == null || directory.isEmpty()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "helgoland-exports")
+                : Paths.get(directory);
+        this.ttl = Period.parse(ttl)
+                         .toStandardDuration()
+                         .getMillis();
+        Files.createDirectories(this.directory);
+        deleteStaleResults();
+
+        this.executor = new ThreadPoolExecutor(threads,
+                                               threads,
+                                               0L,
+                                               TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<>(queueSize),
+                                               createThreadFactory("export-worker-"));
+        this.cleanup = Executors.newSingleThreadScheduledExecutor(createThreadFactory("export-cleanup-"));
+        long interval = Math.max(MIN_CLEANUP_INTERVAL, this.ttl / 4);
+        cleanup.scheduleWithFixedDelay(this::removeExpiredJobs, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Submits an export unless an equal export (same key and output format) is already queued, running or
+     * finished. In that case the existing job is returned.
+     *
+     * @param key
+     *        canonical key identifying the export's data and parameters
+     * @param mimeType
+     *        the output format
+     * @param export
+     *        writes the export to a stream
+     * @return the (possibly shared) job
+     * @throws ServiceUnavailableException
+     *         if too many exports are pending
+     */
+    public ExportJob submit(String key, String mimeType, Export export) {
+        String id = createId(key + "\n" + mimeType);
+        ExportJob candidate = new ExportJob(id, mimeType);
+        ExportJob job = jobs.compute(id, (k, existing) -> isReusable(existing)
+                ? existing
+                : candidate);
+        if (job == candidate) {
+            try {
+                executor.execute(() -> runExport(candidate, export));
+            } catch (RejectedExecutionException e) {
+                jobs.remove(id, candidate);
+                throw new ServiceUnavailableException("Too many pending exports.", e)
+                        .addHint("Try again later.");
+            }
+        }
+        return job;
+    }
+
+    /**
+     * Gets a job in any state, including failed ones, until its time to live has expired.
+     *
+     * @param id
+     *        the job id
+     * @return the job, or an empty optional if no such job exists (anymore)
+     */
+    public Optional<ExportJob> getJob(String id) {
+        ExportJob job = jobs.get(id);
+        return isAvailable(job)
+                ? Optional.of(job)
+                : Optional.empty();
+    }
+
+    private boolean isAvailable(ExportJob job) {
+        return job != null && !job.isExpired(System.currentTimeMillis(), ttl);
+    }
+
+    private boolean isReusable(ExportJob job) {
+        // failed exports are tried again
+        return isAvailable(job) && job.getStatus() != ExportJob.Status.FAILED;
+    }
+
+    private void runExport(ExportJob job, Export export) {
+        job.setRunning();
+        Path partial = directory.resolve(job.getId() + PARTIAL_EXTENSION);
+        try {
+            MessageDigest digest = createDigest();
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(partial), digest)) {
+                export.writeTo(out);
+            }
+            Path result = directory.resolve(job.getId() + getExtension(job.getMimeType()));
+            Files.move(partial, result, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // results of equal jobs differ over time (e.g. for relative timespans), so tag the content
+            job.setFinished(result.toFile(), toHex(digest.digest(), 16));
+            LOGGER.debug("Finished export job '{}'.", job.getId());
+        } catch (IoHandlerException | IOException | RuntimeException e) {
+            LOGGER.error("Export job '{}' failed.", job.getId(), e);
+            job.setFailed(e.getMessage());
+            deleteQuietly(partial);
+        }
+    }
+
+    void removeExpiredJobs() {
+        long now = System.currentTimeMillis();
+        jobs.values()
+            .removeIf(job -> {
+                boolean expired = job.isExpired(now, ttl);
+                if (expired && job.getResult() != null) {
+                    deleteQuietly(job.getResult()
+                                     .toPath());
+                }
+                return expired;
+            });
+    }
+
+    private void deleteStaleResults() throws IOException {
+        DirectoryStream.Filter<Path> filter = file -> RESULT_FILE_PATTERN.matcher(file.getFileName()
+                                                                                      .toString())
+                                                                         .matches();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, filter)) {
+            files.forEach(this::deleteQuietly);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete export file '{}'.", file, e);
+        }
+    }
+
+    static String getExtension(String mimeType) {
+        if (Constants.APPLICATION_PDF.equals(mimeType)) {
+            return ".pdf";
+        } else if (Constants.APPLICATION_ZIP.equals(mimeType)) {
+            return ".zip";
+        } else if (Constants.TEXT_CSV.equals(mimeType)) {
+            return ".csv";
+        } else if (Constants.IMAGE_PNG.equals(mimeType)) {
+            return ".png";
+        }
+        return ".bin";
+    }
+
+    private static String createId(String key) {
+        byte[] hash = createDigest().digest(key.getBytes(StandardCharsets.UTF_8));
+        return toHex(hash, 16);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static String toHex(byte[] hash, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(String.format("%02x", hash[i]));
+        }
+        return sb.toString();
+    }
+
+    private static ThreadFactory createThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void destroy() {
+        cleanup.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Writes an export to the given stream.
+     */
+    @FunctionalInterface
+    public interface Export {
+
+        void writeTo(OutputStream stream) throws IoHandlerException, IOException;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import java.util.concurrent.ExecutorService;
+
+import org.n52.io.handler.ParallelZipWriter;
+import org.n52.io.handler.TimeSliceFetcher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Provides the worker pools shared by all exports, so that their threads are bounded overall and stopped
+ * when the application context is closed. Entries of zip exports are compressed on
+ * <code>export.zip.threads</code> threads (defaults to the number of processors) and time slices of CSV
+ * exports are prefetched on <code>export.timeslice.threads</code> threads (defaults to the number of
+ * processors, at least 4).
+ */
+@Component
+public class ExportWorkerPools implements DisposableBean {
+
+    private final ExecutorService zipExecutor;
+
+    private final ExecutorService timeSliceExecutor;
+
+    @Autowired
+    public ExportWorkerPools(@Value("${export.zip.threads:0}") int zipThreads,
+                             @Value("${export.timeslice.threads:0}") int timeSliceThreads) {
+        int processors = Runtime.getRuntime()
+                                .availableProcessors();
+        this.zipExecutor = ParallelZipWriter.createExecutor(zipThreads > 0
+                ? zipThreads
+                : processors);
+        this.timeSliceExecutor = TimeSliceFetcher.createExecutor(timeSliceThreads > 0
+                ? timeSliceThreads
+                : Math.max(4, processors));
+    }
+
+    public ExecutorService getZipExecutor() {
+        return zipExecutor;
+    }
+
+    public ExecutorService getTimeSliceExecutor() {
+        return timeSliceExecutor;
+    }
+
+    @Override
+    public void destroy() {
+        zipExecutor.shutdownNow();
+        timeSliceExecutor.shutdownNow();
+    }
+
+}
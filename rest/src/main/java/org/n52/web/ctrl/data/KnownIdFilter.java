@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.Period;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.io.response.OutputCollection;
+import org.n52.io.response.ParameterOutput;
+import org.n52.series.spi.srv.ParameterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.AnnotationMBeanExporter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.RegistrationPolicy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rejects ids unknown to a {@link ParameterService} without asking the service. For each registered service
+ * a Bloom filter of all its ids is rebuilt periodically. Ids not contained in the filter are definitely
+ * unknown, all other ids still have to be checked by the service.
+ * <p>
+ * Ids added to a backend are rejected until the next rebuild, so the filter is disabled by default. Set
+ * <code>known.ids.filter.refreshInterval</code> (an ISO 8601 period) to enable it.
+ * <p>
+ * The filters contain the ids listed for the default query only. Requests with filter parameters (e.g.
+ * <code>datasetTypes</code> or <code>platforms</code>) deviating from the configured defaults may address ids
+ * hidden by default, so their ids are always passed on to the service. The <code>datasets</code> parameter
+ * is not such a filter, as data requests list the very datasets they address there.
+ * <p>
+ * Filter sizes, false positive rates and check counts are available as JMX attributes. An enabled filter
+ * registers itself at the platform MBean server unless the application context provides an
+ * {@link MBeanExporter} of its own.
+ */
+@Component
+@ManagedResource(objectName = KnownIdFilter.OBJECT_NAME,
+    description = "Bloom filters of known ids rejecting unknown ids without backend calls")
+public class KnownIdFilter implements InitializingBean, DisposableBean {
+
+    /**
+     * The JMX object name of the filter.
+     */
+    public static final String OBJECT_NAME = "org.n52.helgoland:type=KnownIdFilter";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KnownIdFilter.class);
+
+    private static final Set<String> FILTER_PARAMETERS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            Parameters.SERVICES,
+            Parameters.SERVICE,
+            Parameters.CATEGORIES,
+            Parameters.CATEGORY,
+            Parameters.OFFERINGS,
+            Parameters.OFFERING,
+            Parameters.FEATURES,
+            Parameters.FEATURE,
+            Parameters.PROCEDURES,
+            Parameters.PROCEDURE,
+            Parameters.PHENOMENA,
+            Parameters.PHENOMENON,
+            Parameters.STATIONS,
+            Parameters.STATION,
+            Parameters.PLATFORMS,
+            Parameters.SAMPLINGS,
+            Parameters.MEASURING_PROGRAMS,
+            Parameters.FILTER_MOBILE,
+            Parameters.FILTER_INSITU,
+            Parameters.FILTER_DATASET_TYPES,
+            Parameters.FILTER_OBSERVATION_TYPES,
+            Parameters.FILTER_VALUE_TYPES,
+            Parameters.FILTER_PLATFORM_GEOMETRIES,
+            Parameters.FILTER_OBSERVED_GEOMETRIES,
+            Parameters.GEOMETRY_TYPES,
+            Parameters.BBOX,
+            Parameters.NEAR,
+            Parameters.ODATA_FILTER)));
+
+    private final Map<ParameterService< ? >, KnownIds> filters = new IdentityHashMap<>();
+
+    private final long refreshInterval;
+
+    private final double falsePositiveRate;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong passed = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    private MBeanExporter contextExporter;
+
+    private MBeanExporter exporter;
+
+    @Autowired
+    public KnownIdFilter(@Value("${known.ids.filter.refreshInterval:PT0S}") String refreshInterval,
+                         @Value("${known.ids.filter.falsePositiveRate:0.01}") double falsePositiveRate) {
+        this.refreshInterval = Period.parse(refreshInterval)
+                                     .toStandardDuration()
+                                     .getMillis();
+        this.falsePositiveRate = falsePositiveRate;
+        if (isEnabled() && (falsePositiveRate <= 0 || falsePositiveRate >= 1)) {
+            throw new IllegalArgumentException("false positive rate must be in (0, 1): " + falsePositiveRate);
+        }
+    }
+
+    /**
+     * Sets the exporter of the application context. If set, the exporter is expected to export this filter,
+     * otherwise the filter registers itself.
+     *
+     * @param contextExporter
+     *        the MBean exporter of the application context
+     */
+    @Autowired(required = false)
+    public void setMBeanExporter(MBeanExporter contextExporter) {
+        this.contextExporter = contextExporter;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (isEnabled() && contextExporter == null) {
+            AnnotationMBeanExporter selfExporter = new AnnotationMBeanExporter();
+            selfExporter.setServer(ManagementFactory.getPlatformMBeanServer());
+            selfExporter.setRegistrationPolicy(RegistrationPolicy.REPLACE_EXISTING);
+            try {
+                selfExporter.registerManagedResource(this);
+                exporter = selfExporter;
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not register known id filter at the platform MBean server.", e);
+            }
+        }
+    }
+
+    @ManagedAttribute(description = "If unknown ids are rejected")
+    public boolean isEnabled() {
+        return refreshInterval > 0;
+    }
+
+    /**
+     * Gets the filter of the given service. The filter is created (and its periodic rebuild scheduled) on
+     * first access. Equal service instances share one filter.
+     *
+     * @param service
+     *        the service knowing all ids
+     * @return the filter of the service's ids
+     */
+    public synchronized KnownIds register(ParameterService< ? > service) {
+        KnownIds knownIds = filters.get(service);
+        if (knownIds == null) {
+            knownIds = new KnownIds(service);
+            filters.put(service, knownIds);
+            if (isEnabled()) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(createThreadFactory());
+                }
+                scheduler.scheduleWithFixedDelay(knownIds::rebuild, 0, refreshInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+        return knownIds;
+    }
+
+    @ManagedAttribute(description = "Number of registered filters")
+    public synchronized int getFilterCount() {
+        return filters.size();
+    }
+
+    @ManagedAttribute(description = "Number of ids in all filters")
+    public long getIdCount() {
+        return getBuiltFilters().stream()
+                                .mapToLong(BloomFilter::getCount)
+                                .sum();
+    }
+
+    @ManagedAttribute(description = "Memory used by all filters in bytes")
+    public long getSizeInBytes() {
+        return getBuiltFilters().stream()
+                                .mapToLong(BloomFilter::getSizeInBytes)
+                                .sum();
+    }
+
+    @ManagedAttribute(description = "Configured false positive rate")
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    @ManagedAttribute(description = "Highest false positive rate expected for the current filter contents")
+    public double getExpectedFalsePositiveRate() {
+        return getBuiltFilters().stream()
+                                .mapToDouble(BloomFilter::getExpectedFalsePositiveRate)
+                                .max()
+                                .orElse(0);
+    }
+
+    @ManagedAttribute(description = "Number of ids rejected as unknown")
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @ManagedAttribute(description = "Number of ids passed on to the backend")
+    public long getPassedCount() {
+        return passed.get();
+    }
+
+    private synchronized List<BloomFilter> getBuiltFilters() {
+        List<BloomFilter> built = new ArrayList<>();
+        for (KnownIds knownIds : filters.values()) {
+            if (knownIds.filter != null) {
+                built.add(knownIds.filter);
+            }
+        }
+        return built;
+    }
+
+    private static ThreadFactory createThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "known-ids-refresh-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (exporter != null) {
+            exporter.destroy();
+            exporter = null;
+        }
+    }
+
+    /**
+     * The ids known to a single service.
+     */
+    public final class KnownIds {
+
+        private final ParameterService< ? > service;
+
+        private final IoParameters defaults = IoParameters.createDefaults();
+
+        private volatile BloomFilter filter;
+
+        private KnownIds(ParameterService< ? > service) {
+            this.service = service;
+        }
+
+        /**
+         * Checks if an id is definitely unknown. Ids are never reported unknown before the filter has been
+         * built, nor for requests matching domain ids instead of ids or deviating from the default filters.
+         *
+         * @param id
+         *        the id to check
+         * @param parameters
+         *        the request parameters
+         * @return <code>true</code> if the service does not know the id, <code>false</code> if it may know it
+         */
+        public boolean isUnknown(String id, IoParameters parameters) {
+            BloomFilter current = filter;
+            if (current == null || parameters.isMatchDomainIds() || isFiltered(parameters)) {
+                return false;
+            }
+            if (current.mightContain(id)) {
+                passed.incrementAndGet();
+                return false;
+            }
+            rejected.incrementAndGet();
+            return true;
+        }
+
+        private boolean isFiltered(IoParameters parameters) {
+            // the filter contains the ids of the default query only
+            for (String parameter : FILTER_PARAMETERS) {
+                if (!Objects.equals(parameters.getAsString(parameter), defaults.getAsString(parameter))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void rebuild() {
+            try {
+                OutputCollection< ? extends ParameterOutput> all = service.getCondensedParameters(defaults);
+                Collection<String> ids = new ArrayList<>();
+                for (ParameterOutput output : all) {
+                    if (output.getId() != null) {
+                        ids.add(output.getId());
+                    }
+                }
+                BloomFilter rebuilt = BloomFilter.create(ids, falsePositiveRate);
+                filter = rebuilt;
+                LOGGER.debug("Rebuilt known id filter with {} ids ({} bytes, expected false positive rate {}).",
+                             rebuilt.getCount(),
+                             rebuilt.getSizeInBytes(),
+                             rebuilt.getExpectedFalsePositiveRate());
+            } catch (RuntimeException e) {
+                // the previous filter stays in use until the next successful rebuild
+                LOGGER.warn("Could not rebuild known id filter, keeping the previous one.", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import java.util.concurrent.ExecutorService;
+
+import org.n52.io.handler.ParallelDataService;
+import org.n52.io.response.dataset.AbstractValue;
+import org.n52.io.response.dataset.Data;
+import org.n52.series.spi.srv.DataService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Provides the executor shared by all {@link ParallelDataService}s, which fetch the data of multi-dataset
+ * requests concurrently. At most <code>data.fetch.threads</code> datasets are fetched at a time overall and
+ * at most <code>data.fetch.maxConcurrency</code> per request.
+ * <p>
+ * Concurrent fetching puts more load on the backend per request, so it is disabled by default. Set
+ * <code>data.fetch.maxConcurrency</code> to <code>2</code> or more to enable it.
+ */
+@Component
+public class ParallelDataFetching implements DisposableBean {
+
+    private final int maxConcurrency;
+
+    private final ExecutorService executor;
+
+    @Autowired
+    public ParallelDataFetching(@Value("${data.fetch.threads:16}") int threads,
+                                @Value("${data.fetch.maxConcurrency:1}") int maxConcurrency,
+                                @Value("${data.fetch.virtualThreads:true}") boolean virtualThreads) {
+        this.maxConcurrency = maxConcurrency;
+        this.executor = maxConcurrency > 1
+                ? ParallelDataService.createExecutor(threads, virtualThreads)
+                : null;
+    }
+
+    /**
+     * @param <V>
+     *        the value type
+     * @param dataService
+     *        the service to fetch data from
+     * @return a service fetching the datasets of a request concurrently, or the given service if disabled
+     */
+    public <V extends AbstractValue< ? >> DataService<Data<V>> decorate(DataService<Data<V>> dataService) {
+        return executor != null
+                ? new ParallelDataService<>(dataService, executor, maxConcurrency)
+                : dataService;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,464 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.joda.time.Period;
+import org.n52.io.Constants;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches rendered charts (and optionally PDF reports) by their canonical request parameters. Entries are kept
+ * in a memory tier bounded by the sum of their sizes (least recently used entries are evicted first) and,
+ * if a directory is configured, in a disk tier which survives evictions from memory.
+ * <p>
+ * Requests with a relative timespan (no timespan at all or one referring to <code>now</code>) resolve to a
+ * different interval on each call. Their keys include the current time bucket, so equal requests within the
+ * same bucket share one rendering. The same applies to absolute timespans ending in the future, as values may
+ * still arrive for them. Such renderings are kept for one bucket only and are not written to disk.
+ * <p>
+ * The cache is disabled by default. Set <code>chart.cache.maxBytes</code> and/or
+ * <code>chart.cache.directory</code> to enable it.
+ */
+@Component
+public class RenderedChartCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenderedChartCache.class);
+
+    private static final String CACHE_FILE_EXTENSION = ".bin";
+
+    private static final String PARTIAL_EXTENSION = ".part";
+
+    private static final String NOW = "now";
+
+    private final Map<String, CachedChart> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, CompletableFuture<CachedChart>> renderings = new ConcurrentHashMap<>();
+
+    private final long maxBytes;
+
+    private final long ttl;
+
+    private final long relativeTimespanBucket;
+
+    private final boolean cachingReports;
+
+    private final Path directory;
+
+    private long currentBytes;
+
+    private volatile long lastCleanup;
+
+    @Autowired
+    public RenderedChartCache(@Value("${chart.cache.maxBytes:0}") long maxBytes,
+                              @Value("${chart.cache.ttl:PT1H}") String ttl,
+                              @Value("${chart.cache.relativeTimespanBucket:PT1M}") String relativeTimespanBucket,
+                              @Value("${chart.cache.reports:false}") boolean cachingReports,
+                              @Value("${chart.cache.directory:}") String directory) throws IOException {
+        this.maxBytes = maxBytes;
+        this.ttl = toMillis(ttl);
+        this.relativeTimespanBucket = Math.max(1L, toMillis(relativeTimespanBucket));
+        this.cachingReports = cachingReports;
+        this.directory = directory == null || directory.isEmpty()
+                ? null
+                : Paths.get(directory);
+        if (this.directory != null) {
+            Files.createDirectories(this.directory);
+            removeExpiredFiles();
+        }
+        this.lastCleanup = System.currentTimeMillis();
+    }
+
+    /**
+     * @param mimeType
+     *        the output format
+     * @return <code>true</code> if outputs of the given format are cached
+     */
+    public boolean isCaching(String mimeType) {
+        if (maxBytes <= 0 && directory == null) {
+            return false;
+        }
+        return Constants.IMAGE_PNG.equals(mimeType)
+                || cachingReports && Constants.APPLICATION_PDF.equals(mimeType);
+    }
+
+    /**
+     * Creates the cache key for a rendering. Equal keys are created for parameter sets which only differ in
+     * parameter order, and for relative or ongoing timespans requested within the same time bucket.
+     *
+     * @param valueType
+     *        the value type of the rendered datasets
+     * @param mimeType
+     *        the output format
+     * @param parameters
+     *        the request parameters
+     * @return the cache key
+     */
+    public String createKey(String valueType, String mimeType, IoParameters parameters) {
+        StringBuilder key = new StringBuilder().append(valueType)
+                                               .append('\n')
+                                               .append(mimeType)
+                                               .append('\n')
+                                               .append(parameters.toCanonicalString());
+        if (isOngoing(parameters)) {
+            key.append("\nbucket=")
+               .append(System.currentTimeMillis() / relativeTimespanBucket);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param parameters
+     *        the request parameters
+     * @return how long a rendering of the given parameters may be served from the cache (in milliseconds)
+     */
+    public long getTimeToLive(IoParameters parameters) {
+        return isOngoing(parameters)
+                ? Math.min(relativeTimespanBucket, ttl)
+                : ttl;
+    }
+
+    private static boolean isOngoing(IoParameters parameters) {
+        if (hasRelativeTimespan(parameters)) {
+            return true;
+        }
+        try {
+            return parameters.getTimespan()
+                             .toInterval()
+                             .getEndMillis() > System.currentTimeMillis();
+        } catch (RuntimeException e) {
+            // invalid timespans are rejected when rendering
+            return false;
+        }
+    }
+
+    private static boolean hasRelativeTimespan(IoParameters parameters) {
+        if (!parameters.containsParameter(Parameters.TIMESPAN)) {
+            return true;
+        }
+        String timespan = parameters.getAsString(Parameters.TIMESPAN);
+        return timespan == null
+                || timespan.toLowerCase(Locale.ROOT)
+                           .contains(NOW);
+    }
+
+    public Optional<CachedChart> get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            CachedChart chart = memory.get(key);
+            if (chart != null && !chart.isExpired(now)) {
+                return Optional.of(chart);
+            } else if (chart != null) {
+                remove(key);
+            }
+        }
+        return readFromDisk(key, now);
+    }
+
+    /**
+     * Gets a cached rendering or renders it. Concurrent calls for the same key wait for the first one to render
+     * instead of rendering the same chart again.
+     *
+     * @param key
+     *        the key created by {@link #createKey(String, String, IoParameters)}
+     * @param rendering
+     *        renders the output and {@link #put(String, byte[], long) puts} it into the cache
+     * @return the cached or rendered chart
+     * @throws Exception
+     *         if rendering fails
+     */
+    public CachedChart getOrRender(String key, Rendering rendering) throws Exception {
+        Optional<CachedChart> cached = get(key);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        CompletableFuture<CachedChart> own = new CompletableFuture<>();
+        CompletableFuture<CachedChart> running = renderings.putIfAbsent(key, own);
+        if (running != null) {
+            return awaitRendering(running);
+        }
+        try {
+            // a rendering may have completed between the lookup and the claim
+            CachedChart chart = get(key).orElse(null);
+            if (chart == null) {
+                chart = rendering.render();
+            }
+            own.complete(chart);
+            return chart;
+        } catch (Throwable e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            renderings.remove(key, own);
+        }
+    }
+
+    private static CachedChart awaitRendering(CompletableFuture<CachedChart> rendering) throws Exception {
+        try {
+            return rendering.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Caches a rendered output. Outputs living shorter than the configured time to live are kept in memory
+     * only.
+     *
+     * @param key
+     *        the key created by {@link #createKey(String, String, IoParameters)}
+     * @param content
+     *        the rendered output
+     * @param timeToLive
+     *        the time to live as returned by {@link #getTimeToLive(IoParameters)}
+     * @return the cached chart
+     */
+    public CachedChart put(String key, byte[] content, long timeToLive) {
+        long now = System.currentTimeMillis();
+        if (now - lastCleanup > ttl / 4) {
+            // expired entries are removed along the way, no extra thread needed
+            lastCleanup = now;
+            removeExpired();
+        }
+        CachedChart chart = new CachedChart(content, now + Math.min(timeToLive, ttl));
+        putInMemory(key, chart);
+        if (timeToLive >= ttl) {
+            writeToDisk(key, chart);
+        }
+        return chart;
+    }
+
+    private synchronized void putInMemory(String key, CachedChart chart) {
+        if (chart.getSize() > maxBytes) {
+            return;
+        }
+        remove(key);
+        memory.put(key, chart);
+        currentBytes += chart.getSize();
+        Iterator<CachedChart> eldest = memory.values()
+                                             .iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            currentBytes -= eldest.next()
+                                  .getSize();
+            eldest.remove();
+        }
+    }
+
+    private void remove(String key) {
+        CachedChart removed = memory.remove(key);
+        if (removed != null) {
+            currentBytes -= removed.getSize();
+        }
+    }
+
+    private Optional<CachedChart> readFromDisk(String key, long now) {
+        if (directory == null) {
+            return Optional.empty();
+        }
+        Path file = directory.resolve(hash(key) + CACHE_FILE_EXTENSION);
+        try {
+            long created = Files.getLastModifiedTime(file)
+                                .toMillis();
+            if (now - created > ttl) {
+                Files.deleteIfExists(file);
+                return Optional.empty();
+            }
+            CachedChart chart = new CachedChart(Files.readAllBytes(file), created + ttl);
+            putInMemory(key, chart);
+            return Optional.of(chart);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            LOGGER.warn("Could not read cached chart '{}'.", file, e);
+            return Optional.empty();
+        }
+    }
+
+    private void writeToDisk(String key, CachedChart chart) {
+        if (directory == null) {
+            return;
+        }
+        String name = hash(key);
+        Path partial = directory.resolve(name + "-" + Thread.currentThread()
+                                                            .getId() + PARTIAL_EXTENSION);
+        try {
+            Files.write(partial, chart.getContent());
+            Files.move(partial,
+                       directory.resolve(name + CACHE_FILE_EXTENSION),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write cached chart '{}'.", name, e);
+            deleteQuietly(partial);
+        }
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<CachedChart> charts = memory.values()
+                                                 .iterator();
+            while (charts.hasNext()) {
+                CachedChart chart = charts.next();
+                if (chart.isExpired(now)) {
+                    currentBytes -= chart.getSize();
+                    charts.remove();
+                }
+            }
+        }
+        if (directory != null) {
+            try {
+                removeExpiredFiles();
+            } catch (IOException e) {
+                LOGGER.warn("Could not clean up chart cache directory '{}'.", directory, e);
+            }
+        }
+    }
+
+    private void removeExpiredFiles() throws IOException {
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{bin,part}")) {
+            for (Path file : files) {
+                if (now - Files.getLastModifiedTime(file)
+                               .toMillis() > ttl) {
+                    deleteQuietly(file);
+                }
+            }
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete cached chart '{}'.", file, e);
+        }
+    }
+
+    private static long toMillis(String period) {
+        return Period.parse(period)
+                     .toStandardDuration()
+                     .getMillis();
+    }
+
+    private static String hash(String value) {
+        return toHex(digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] digest(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256")
+                                .digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            sb.append(String.format("%02x", hash[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renders an output and puts it into the cache.
+     */
+    @FunctionalInterface
+    public interface Rendering {
+
+        CachedChart render() throws Exception;
+    }
+
+    /**
+     * A cached rendering and its strong entity tag.
+     */
+    public static final class CachedChart {
+
+        private final byte[] content;
+
+        private final String etag;
+
+        private final long expires;
+
+        CachedChart(byte[] content, long expires) {
+            this.content = content;
+            this.etag = "\"" + toHex(digest(content)) + "\"";
+            this.expires = expires;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public int getSize() {
+            return content.length;
+        }
+
+        boolean isExpired(long now) {
+            return now > expires;
+        }
+    }
+
+}
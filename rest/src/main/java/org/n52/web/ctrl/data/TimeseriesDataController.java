@@ -94,10 +94,7 @@ public class TimeseriesDataController extends DataController {
         // final String datasetType = getValueType(parameters);
         final String valueType = getValueType(parameters, request.getRequestURI());
         String outputFormat = Constants.IMAGE_PNG;
-        response.setContentType(outputFormat);
-        createIoFactory(valueType).setParameters(parameters)
-                                  .createHandler(outputFormat)
-                                  .writeBinary(response.getOutputStream());
+        writeRendering(request, response, valueType, outputFormat, parameters);
     }
 
     @RequestMapping(value = "/{datasetId}/observations",
@@ -121,10 +118,7 @@ public class TimeseriesDataController extends DataController {
         // String valueType = ValueType.extractType(datasetId, handleAsValueTypeFallback);
         String valueType = getValueType(parameters, request.getRequestURI());
         String outputFormat = Constants.IMAGE_PNG;
-        response.setContentType(outputFormat);
-        createIoFactory(valueType).setParameters(parameters)
-                                  .createHandler(outputFormat)
-                                  .writeBinary(response.getOutputStream());
+        writeRendering(request, response, valueType, outputFormat, parameters);
     }
 
     @RequestMapping(value = "/{datasetId}/images", method = RequestMethod.GET)
@@ -135,7 +129,8 @@ public class TimeseriesDataController extends DataController {
     }
 
     @RequestMapping(value = "/{datasetId}/{chartQualifier}", produces = Constants.IMAGE_PNG, method = RequestMethod.GET)
-    public void getSeriesChartByInterval(HttpServletResponse response,
+    public void getSeriesChartByInterval(HttpServletRequest request,
+                                         HttpServletResponse response,
                                          @PathVariable String datasetId,
                                          @PathVariable String chartQualifier)
             throws Exception {
@@ -144,12 +139,13 @@ public class TimeseriesDataController extends DataController {
 
         response.setContentType(Constants.IMAGE_PNG);
         LOGGER.debug("get prerendered chart for '{}' ({})", datasetId, chartQualifier);
-        preRenderingTask.writePrerenderedGraphToOutputStream(datasetId, chartQualifier, response.getOutputStream());
+        preRenderingTask.writePrerenderedGraph(datasetId, chartQualifier, request, response);
     }
 
     @RequestMapping(value = "/{datasetId}/images/{fileName}", produces = Constants.IMAGE_PNG,
         method = RequestMethod.GET)
-    public void getSeriesChartByFilename(HttpServletResponse response,
+    public void getSeriesChartByFilename(HttpServletRequest request,
+                                         HttpServletResponse response,
                                          @PathVariable String datasetId,
                                          @PathVariable String fileName)
             throws Exception {
@@ -158,8 +154,7 @@ public class TimeseriesDataController extends DataController {
 
         response.setContentType(Constants.IMAGE_PNG);
         LOGGER.debug("get prerendered chart for '{}'", fileName);
-        preRenderingTask.writePrerenderedGraphToOutputStream(fileName, response.getOutputStream());
-
+        preRenderingTask.writePrerenderedGraph(fileName, null, request, response);
     }
 
     @Deprecated
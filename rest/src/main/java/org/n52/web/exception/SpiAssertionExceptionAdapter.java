@@ -29,6 +29,9 @@
 package org.n52.web.exception;
 
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
 
 import org.n52.io.request.IoParameters;
 import org.n52.io.response.OutputCollection;
@@ -74,14 +77,13 @@ public class SpiAssertionExceptionAdapter<T extends ParameterOutput> extends Par
 
     @Override
     public T getParameter(String item, IoParameters query) {
-        assertItemExists(item, query);
-        return composedService.getParameter(item, query);
+        return findParameter(item, query).orElseThrow(
+            () -> new ResourceNotFoundException("Resource with id '" + item + "' was not found."));
     }
 
-    private void assertItemExists(String item, IoParameters parameters) {
-        if (!exists(item, parameters)) {
-            throw new ResourceNotFoundException("Resource with id '" + item + "' was not found.");
-        }
+    @Override
+    public Optional<T> findParameter(String item, IoParameters query) {
+        return composedService.findParameter(item, query);
     }
 
     @Override
@@ -89,6 +91,11 @@ public class SpiAssertionExceptionAdapter<T extends ParameterOutput> extends Par
         return composedService.exists(id, parameters);
     }
 
+    @Override
+    public Set<String> findMissing(Collection<String> ids, IoParameters parameters) {
+        return composedService.findMissing(ids, parameters);
+    }
+
     @Override
     public InputStream getRawData(String id, IoParameters query) {
         if (composedService.supportsRawData()) {
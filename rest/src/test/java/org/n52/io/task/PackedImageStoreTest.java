@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class PackedImageStoreTest {
+
+    @TempDir
+    public Path directory;
+
+    @Test
+    public void when_imagesStored_then_theyAreReadBack() throws IOException {
+        PackedImageStore store = createStore(PackedImageStore.DEFAULT_SEGMENT_SIZE);
+        store.store("ts_2.png", out -> out.write(bytes("second")));
+        store.store("ts_1.png", out -> out.write(bytes("first")));
+
+        MockHttpServletResponse response = writeToResponse(store, "ts_1.png");
+
+        assertThat(store.getNames("ts_"), contains("ts_1.png", "ts_2.png"));
+        assertThat(read(store, "ts_2.png"), is(bytes("second")));
+        assertThat(response.getContentAsString(), is("first"));
+        assertThat(response.getHeader(HttpHeaders.ETAG), is(notNullValue()));
+        assertThat(response.getHeader(HttpHeaders.LAST_MODIFIED), is(notNullValue()));
+        assertThat(store.copy("unknown.png", new ByteArrayOutputStream()), is(false));
+    }
+
+    @Test
+    public void when_imageReplaced_then_latestContentIsRead() throws IOException {
+        PackedImageStore store = createStore(PackedImageStore.DEFAULT_SEGMENT_SIZE);
+        store.store("ts_1.png", out -> out.write(bytes("former")));
+        store.store("ts_1.png", out -> out.write(bytes("latest")));
+
+        assertThat(read(store, "ts_1.png"), is(bytes("latest")));
+    }
+
+    @Test
+    public void when_writerFails_then_nothingIsAppended() throws IOException {
+        PackedImageStore store = createStore(PackedImageStore.DEFAULT_SEGMENT_SIZE);
+        store.store("ts_1.png", out -> out.write(bytes("former")));
+        long size = Files.size(getSegmentFile(0));
+
+        assertThrows(IOException.class, () -> store.store("ts_1.png", out -> {
+            out.write(bytes("partial"));
+            throw new IOException("rendering failed");
+        }));
+
+        assertThat(Files.size(getSegmentFile(0)), is(size));
+        assertThat(read(store, "ts_1.png"), is(bytes("former")));
+    }
+
+    @Test
+    public void when_reopened_then_indexIsRebuiltFromSegments() throws IOException {
+        PackedImageStore store = createStore(64);
+        store.store("ts_1.png", out -> out.write(bytes("former")));
+        store.store("ts_2.png", out -> out.write(new byte[100]));
+        store.store("ts_1.png", out -> out.write(bytes("latest")));
+        String etag = writeToResponse(store, "ts_1.png").getHeader(HttpHeaders.ETAG);
+
+        PackedImageStore reopened = createStore(64);
+
+        assertThat(Files.exists(getSegmentFile(2)), is(true));
+        assertThat(reopened.getNames(""), contains("ts_1.png", "ts_2.png"));
+        assertThat(read(reopened, "ts_1.png"), is(bytes("latest")));
+        assertThat(read(reopened, "ts_2.png"), is(new byte[100]));
+        assertThat(writeToResponse(reopened, "ts_1.png").getHeader(HttpHeaders.ETAG), is(etag));
+    }
+
+    @Test
+    public void when_recordIsHalfWritten_then_itIsTruncated() throws IOException {
+        PackedImageStore store = createStore(PackedImageStore.DEFAULT_SEGMENT_SIZE);
+        store.store("ts_1.png", out -> out.write(bytes("image")));
+        long size = Files.size(getSegmentFile(0));
+        // a header announcing more content than has been written
+        ByteBuffer partial = ByteBuffer.allocate(30);
+        partial.putInt(8)
+               .putInt(1000)
+               .putLong(0L)
+               .putInt(0)
+               .put(bytes("ts_2.png"))
+               .put(bytes("pn"));
+        Files.write(getSegmentFile(0), partial.array(), StandardOpenOption.APPEND);
+
+        PackedImageStore reopened = createStore(PackedImageStore.DEFAULT_SEGMENT_SIZE);
+
+        assertThat(Files.size(getSegmentFile(0)), is(size));
+        assertThat(reopened.getNames(""), contains("ts_1.png"));
+        reopened.store("ts_3.png", out -> out.write(bytes("after")));
+        assertThat(read(createStore(PackedImageStore.DEFAULT_SEGMENT_SIZE), "ts_3.png"), is(bytes("after")));
+    }
+
+    @Test
+    public void when_recordIsCorrupt_then_itIsTruncated() throws IOException {
+        PackedImageStore store = createStore(PackedImageStore.DEFAULT_SEGMENT_SIZE);
+        store.store("ts_1.png", out -> out.write(bytes("first")));
+        long size = Files.size(getSegmentFile(0));
+        store.store("ts_2.png", out -> out.write(bytes("second")));
+        byte[] segment = Files.readAllBytes(getSegmentFile(0));
+        segment[segment.length - 1] ^= 0x1;
+        Files.write(getSegmentFile(0), segment);
+
+        PackedImageStore reopened = createStore(PackedImageStore.DEFAULT_SEGMENT_SIZE);
+
+        assertThat(reopened.getNames(""), contains("ts_1.png"));
+        assertThat(read(reopened, "ts_1.png"), is(bytes("first")));
+        assertThat(Files.size(getSegmentFile(0)), is(size));
+    }
+
+    @Test
+    public void when_compactingWhileReading_then_readerGetsCompleteImage() throws IOException {
+        PackedImageStore store = createStore(60_000);
+        byte[] kept = createContent(20_000);
+        store.store("kept.png", out -> out.write(kept));
+        store.store("replaced.png", out -> out.write(createContent(30_000)));
+        store.store("replaced.png", out -> out.write(createContent(30_000)));
+        MockHttpServletResponse before = writeToResponse(store, "kept.png");
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        boolean copied = store.copy("kept.png", new OutputStream() {
+
+            private boolean compacted;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (!compacted) {
+                    // the first segment is deleted while its content is still being read
+                    compacted = true;
+                    store.compact();
+                    assertThat(Files.exists(getSegmentFile(0)), is(false));
+                }
+                received.write(b, off, len);
+            }
+        });
+        MockHttpServletResponse after = writeToResponse(store, "kept.png");
+
+        assertThat(copied, is(true));
+        assertThat(Arrays.equals(received.toByteArray(), kept), is(true));
+        assertThat(after.getContentAsByteArray(), is(kept));
+        assertThat(after.getHeader(HttpHeaders.ETAG), is(before.getHeader(HttpHeaders.ETAG)));
+        assertThat(after.getHeader(HttpHeaders.LAST_MODIFIED), is(before.getHeader(HttpHeaders.LAST_MODIFIED)));
+        assertThat(read(createStore(60_000), "kept.png"), is(kept));
+    }
+
+    @Test
+    public void when_segmentIsMostlyLive_then_itIsNotCompacted() throws IOException {
+        PackedImageStore store = createStore(100);
+        store.store("ts_1.png", out -> out.write(createContent(80)));
+        store.store("ts_2.png", out -> out.write(createContent(80)));
+
+        store.compact();
+
+        assertThat(Files.exists(getSegmentFile(0)), is(true));
+        assertThat(store.getNames(""), contains("ts_1.png", "ts_2.png"));
+    }
+
+    private PackedImageStore createStore(int segmentSize) {
+        PackedImageStore store = new PackedImageStore(segmentSize);
+        store.open(directory);
+        return store;
+    }
+
+    private Path getSegmentFile(long id) {
+        return directory.resolve("packs")
+                        .resolve(String.format("segment-%010d.pack", id));
+    }
+
+    private static MockHttpServletResponse writeToResponse(PrerenderedImageStore store, String name)
+            throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(store.write(name, new MockHttpServletRequest("GET", "/" + name), response), is(true));
+        return response;
+    }
+
+    private static byte[] read(PrerenderedImageStore store, String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(store.copy(name, out), is(true));
+        return out.toByteArray();
+    }
+
+    private static byte[] createContent(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        return content;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
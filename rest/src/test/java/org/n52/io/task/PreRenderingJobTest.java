@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.Period;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PreRenderingJobTest {
+
+    private static final int SHARDS = 8;
+
+    private static final String RUN = "run1";
+
+    @TempDir
+    Path directory;
+
+    private final Map<Integer, Integer> rendered = new TreeMap<>();
+
+    private ExecutorService nodes;
+
+    @BeforeEach
+    public void setUp() {
+        nodes = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        nodes.shutdownNow();
+    }
+
+    @Test
+    public void when_twoNodesRenderConcurrently_then_eachShardIsRenderedOnce() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        Future< ? > node1 = render("node1", 1_000, RUN, start);
+        Future< ? > node2 = render("node2", 1_000, RUN, start);
+        start.countDown();
+        node1.get(10, TimeUnit.SECONDS);
+        node2.get(10, TimeUnit.SECONDS);
+
+        assertEachShardRenderedOnce();
+    }
+
+    @Test
+    public void when_shardsDoneInRun_then_notRenderedAgainInSameRun() throws Exception {
+        render("node1", 1_000, RUN, null).get(10, TimeUnit.SECONDS);
+        render("node2", 1_000, RUN, null).get(10, TimeUnit.SECONDS);
+        assertEachShardRenderedOnce();
+
+        rendered.clear();
+        render("node2", 1_000, "run2", null).get(10, TimeUnit.SECONDS);
+        assertEachShardRenderedOnce();
+    }
+
+    @Test
+    public void when_shardLeasedByOtherNode_then_waitUntilOtherNodeIsDone() throws Exception {
+        ShardLeases other = new ShardLeases(directory, "other", 10_000);
+        List<Integer> claimed = claimAll(other);
+
+        Future< ? > node1 = render("node1", 300, RUN, null);
+        Thread.sleep(200);
+        for (int shard : claimed) {
+            other.markDone(shard, RUN);
+            other.release(shard);
+        }
+        node1.get(10, TimeUnit.SECONDS);
+
+        // shards claimed by the other node have been waited for, but not rendered again
+        assertThat(rendered.isEmpty(), is(true));
+    }
+
+    @Test
+    public void when_leaseOfDeadNodeExpired_then_shardIsReclaimed() throws Exception {
+        ShardLeases dead = new ShardLeases(directory, "dead", 300);
+        claimAll(dead);
+
+        long start = System.currentTimeMillis();
+        render("node1", 300, RUN, null).get(10, TimeUnit.SECONDS);
+
+        assertThat(System.currentTimeMillis() - start >= 300, is(true));
+        assertEachShardRenderedOnce();
+    }
+
+    private static List<Integer> claimAll(ShardLeases leases) {
+        List<Integer> claimed = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            if (leases.tryClaim(shard)) {
+                claimed.add(shard);
+            }
+        }
+        assertThat(claimed.size(), is(SHARDS));
+        return claimed;
+    }
+
+    private Future< ? > render(String nodeId, long leaseDuration, String run, CountDownLatch start)
+            throws IOException {
+        PreRenderingJob job = new PreRenderingJob();
+        job.setShards(SHARDS);
+        job.setNodeId(nodeId);
+        job.setLeaseDuration(new Period(leaseDuration).toString());
+        ShardLeases leases = new ShardLeases(directory, nodeId, leaseDuration);
+        return nodes.submit(() -> {
+            if (start != null) {
+                start.await();
+            }
+            job.renderShards(leases, run, shard -> {
+                synchronized (rendered) {
+                    rendered.merge(shard, 1, Integer::sum);
+                }
+                sleep(10);
+            });
+            return null;
+        });
+    }
+
+    private void assertEachShardRenderedOnce() {
+        synchronized (rendered) {
+            assertThat(rendered.size(), is(SHARDS));
+            for (int count : rendered.values()) {
+                assertThat(count, is(1));
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.io.response.TimeOutput;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.DataCollection;
+import org.n52.io.response.dataset.DatasetMetadata;
+import org.n52.io.response.dataset.quantity.QuantityValue;
+import org.n52.series.spi.srv.DataService;
+import org.n52.series.spi.srv.RawDataService;
+
+public class PrefetchedDataServiceTest {
+
+    private static final DateTime START = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    private final QuantityValue before = createValue(-1);
+
+    private final QuantityValue after = createValue(11);
+
+    private final RecordingDataService composed = new RecordingDataService();
+
+    @Test
+    public void when_timespanWithinPrefetched_then_valuesAreSlicedWithInclusiveBounds() {
+        PrefetchedDataService<QuantityValue> service = createPrefetched("a");
+
+        Data<QuantityValue> slice = service.getData(createQuery(START.plusHours(2), START.plusHours(5), "a"))
+                                           .getSeries("a");
+
+        assertThat(composed.requests.size(), is(1));
+        assertThat(getHours(slice), contains(2, 3, 4, 5));
+    }
+
+    @Test
+    public void when_slicing_then_valueBeforeIsHandedOverFromPrefetchedValues() {
+        PrefetchedDataService<QuantityValue> service = createPrefetched("a");
+
+        Data<QuantityValue> slice = service.getData(createQuery(START.plusHours(2), START.plusHours(5), "a"))
+                                           .getSeries("a");
+
+        assertThat(getHour(slice.getMetadata()
+                                .getValueBeforeTimespan()),
+                   is(1));
+        assertThat(getHour(slice.getMetadata()
+                                .getValueAfterTimespan()),
+                   is(6));
+    }
+
+    @Test
+    public void when_sliceHasSamePrefetchedBounds_then_boundaryValuesOfPrefetchAreKept() {
+        PrefetchedDataService<QuantityValue> service = createPrefetched("a");
+
+        Data<QuantityValue> slice = service.getData(createQuery(START, START.plusHours(10), "a"))
+                                           .getSeries("a");
+
+        assertThat(slice.getValues()
+                        .size(),
+                   is(11));
+        assertThat(slice.getMetadata()
+                        .getValueBeforeTimespan(),
+                   is(sameInstance(before)));
+        assertThat(slice.getMetadata()
+                        .getValueAfterTimespan(),
+                   is(sameInstance(after)));
+    }
+
+    @Test
+    public void when_referenceValuesPrefetched_then_theyAreSlicedAsWell() {
+        PrefetchedDataService<QuantityValue> service = createPrefetched("a");
+
+        Data<QuantityValue> slice = service.getData(createQuery(START.plusHours(8), START.plusHours(10), "a"))
+                                           .getSeries("a");
+
+        Data<QuantityValue> reference = slice.getMetadata()
+                                             .getReferenceValues()
+                                             .get("ref");
+        assertThat(getHours(reference), contains(8, 10));
+        assertThat(getHour(reference.getMetadata()
+                                    .getValueBeforeTimespan()),
+                   is(6));
+    }
+
+    @Test
+    public void when_timespanOutsidePrefetched_then_requestIsDelegated() {
+        PrefetchedDataService<QuantityValue> service = createPrefetched("a");
+        IoParameters query = createQuery(START.minusHours(1), START.plusHours(5), "a");
+
+        DataCollection<Data<QuantityValue>> data = service.getData(query);
+
+        assertThat(composed.requests.size(), is(2));
+        assertThat(composed.requests.get(1), is(sameInstance(query)));
+        assertThat(data.getSeries("a")
+                       .getValues()
+                       .isEmpty(),
+                   is(true));
+    }
+
+    @Test
+    public void when_datasetNotPrefetched_then_requestIsDelegated() {
+        PrefetchedDataService<QuantityValue> service = createPrefetched("a");
+
+        service.getData(createQuery(START.plusHours(2), START.plusHours(5), "a", "b"));
+
+        assertThat(composed.requests.size(), is(2));
+    }
+
+    @Test
+    public void when_nothingPrefetched_then_requestIsDelegated() {
+        PrefetchedDataService<QuantityValue> service = new PrefetchedDataService<>(composed);
+
+        service.getData(createQuery(START, START.plusHours(5), "a"));
+
+        assertThat(composed.requests.size(), is(1));
+    }
+
+    @Test
+    public void when_noMetadataPrefetched_then_sliceHasNoMetadata() {
+        composed.data = createData(0, 10);
+        PrefetchedDataService<QuantityValue> service = new PrefetchedDataService<>(composed);
+        service.prefetch(createQuery(START, START.plusHours(10), "a"));
+
+        Data<QuantityValue> slice = service.getData(createQuery(START.plusHours(2), START.plusHours(3), "a"))
+                                           .getSeries("a");
+
+        assertThat(getHours(slice), contains(2, 3));
+        assertThat(slice.getMetadata(), is(nullValue()));
+    }
+
+    private PrefetchedDataService<QuantityValue> createPrefetched(String datasetId) {
+        Data<QuantityValue> data = createData(0, 10);
+        DatasetMetadata<QuantityValue> metadata = new DatasetMetadata<>();
+        metadata.setValueBeforeTimespan(before);
+        metadata.setValueAfterTimespan(after);
+        Data<QuantityValue> reference = new Data<>();
+        for (int hour = 0; hour <= 10; hour += 2) {
+            reference.addNewValue(createValue(hour));
+        }
+        reference.setMetadata(new DatasetMetadata<>());
+        metadata.setReferenceValues(Collections.singletonMap("ref", reference));
+        data.setMetadata(metadata);
+        composed.data = data;
+
+        PrefetchedDataService<QuantityValue> service = new PrefetchedDataService<>(composed);
+        service.prefetch(createQuery(START, START.plusHours(10), datasetId));
+        return service;
+    }
+
+    private static IoParameters createQuery(DateTime start, DateTime end, String... datasets) {
+        return IoParameters.createDefaults()
+                           .extendWith(Parameters.TIMESPAN, start + "/" + end)
+                           .extendWith(Parameters.DATASETS, datasets);
+    }
+
+    private static Data<QuantityValue> createData(int firstHour, int lastHour) {
+        Data<QuantityValue> data = new Data<>();
+        for (int hour = firstHour; hour <= lastHour; hour++) {
+            data.addNewValue(createValue(hour));
+        }
+        return data;
+    }
+
+    private static QuantityValue createValue(int hour) {
+        QuantityValue value = new QuantityValue();
+        value.setTimestamp(new TimeOutput(START.plusHours(hour)));
+        value.setValue(BigDecimal.valueOf(hour));
+        return value;
+    }
+
+    private static List<Integer> getHours(Data<QuantityValue> data) {
+        List<Integer> hours = new ArrayList<>();
+        for (QuantityValue value : data.getValues()) {
+            hours.add(getHour(value));
+        }
+        return hours;
+    }
+
+    private static int getHour(QuantityValue value) {
+        return value.getValue()
+                    .intValue();
+    }
+
+    private static final class RecordingDataService implements DataService<Data<QuantityValue>> {
+
+        private final List<IoParameters> requests = new ArrayList<>();
+
+        private Data<QuantityValue> data = new Data<>();
+
+        @Override
+        public DataCollection<Data<QuantityValue>> getData(IoParameters parameters) {
+            requests.add(parameters);
+            DataCollection<Data<QuantityValue>> collection = new DataCollection<>();
+            for (String datasetId : parameters.getDatasets()) {
+                collection.addNewSeries(datasetId, requests.size() == 1
+                        ? data
+                        : new Data<>());
+            }
+            return collection;
+        }
+
+        @Override
+        public boolean supportsRawData() {
+            return false;
+        }
+
+        @Override
+        public RawDataService getRawDataService() {
+            return null;
+        }
+    }
+
+}
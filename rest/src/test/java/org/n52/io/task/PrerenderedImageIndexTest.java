@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class PrerenderedImageIndexTest {
+
+    @TempDir
+    public Path directory;
+
+    @Test
+    public void when_opened_then_existingImagesAreIndexed() throws IOException {
+        Files.write(directory.resolve("ts_2.png"), bytes("image"));
+        Files.write(directory.resolve("ts_1_lastDay.png"), bytes("image"));
+        Files.write(directory.resolve("ts_1_lastWeek.png"), bytes("image"));
+        Files.write(directory.resolve(".ts_1.png123.tmp"), bytes("partial"));
+        Files.write(directory.resolve("notes.txt"), bytes("text"));
+
+        PrerenderedImageIndex store = createStore();
+
+        assertThat(store.getNames(""), contains("ts_1_lastDay.png", "ts_1_lastWeek.png", "ts_2.png"));
+        assertThat(store.getNames("ts_1"), contains("ts_1_lastDay.png", "ts_1_lastWeek.png"));
+        assertThat(store.contains("notes.txt"), is(false));
+    }
+
+    @Test
+    public void when_imageIsStored_then_indexIsUpdated() throws IOException {
+        PrerenderedImageIndex store = createStore();
+        assertThat(store.contains("ts_1.png"), is(false));
+
+        store.store("ts_1.png", out -> out.write(bytes("former")));
+        String formerEtag = writeToResponse(store, "ts_1.png").getHeader(HttpHeaders.ETAG);
+        store.store("ts_1.png", out -> out.write(bytes("replaced")));
+        MockHttpServletResponse response = writeToResponse(store, "ts_1.png");
+
+        assertThat(store.getNames(""), contains("ts_1.png"));
+        assertThat(response.getContentAsString(), is("replaced"));
+        assertThat(response.getHeader(HttpHeaders.ETAG), is(not(formerEtag)));
+        assertThat(response.getHeader(HttpHeaders.LAST_MODIFIED), is(notNullValue()));
+    }
+
+    @Test
+    public void when_fileDisappears_then_imageIsRemovedFromIndex() throws IOException {
+        PrerenderedImageIndex store = createStore();
+        store.store("ts_1.png", out -> out.write(bytes("image")));
+        store.store("ts_2.png", out -> out.write(bytes("image")));
+        Files.delete(directory.resolve("ts_1.png"));
+        Files.delete(directory.resolve("ts_2.png"));
+
+        assertThat(store.copy("ts_1.png", new ByteArrayOutputStream()), is(false));
+        assertThat(store.write("ts_2.png",
+                               new MockHttpServletRequest("GET", "/ts_2.png"),
+                               new MockHttpServletResponse()),
+                   is(false));
+
+        assertThat(store.contains("ts_1.png"), is(false));
+        assertThat(store.contains("ts_2.png"), is(false));
+    }
+
+    @Test
+    public void when_refreshIsDue_then_changesOfOtherNodesAreIndexed() throws Exception {
+        PrerenderedImageIndex store = new PrerenderedImageIndex(1);
+        store.open(directory);
+        store.store("ts_1.png", out -> out.write(bytes("image")));
+        Files.write(directory.resolve("ts_2.png"), bytes("image"));
+        Files.delete(directory.resolve("ts_1.png"));
+
+        Thread.sleep(10);
+        store.open(directory);
+
+        assertThat(store.getNames(""), contains("ts_2.png"));
+    }
+
+    @Test
+    public void when_notRefreshing_then_folderIsScannedOnce() throws IOException {
+        PrerenderedImageIndex store = createStore();
+        Files.write(directory.resolve("ts_1.png"), bytes("image"));
+
+        store.open(directory);
+
+        assertThat(store.contains("ts_1.png"), is(false));
+    }
+
+    @Test
+    public void when_imageIsReplaced_then_readersSeeFormerImageUntilStored() throws IOException {
+        PrerenderedImageIndex store = createStore();
+        store.store("ts_1.png", out -> out.write(bytes("former")));
+
+        store.store("ts_1.png", out -> {
+            out.write(bytes("new"));
+            out.flush();
+            // still writing
+            assertThat(read(store, "ts_1.png"), is("former"));
+            // a scan does not pick up the unfinished image
+            assertThat(createStore().getNames(""), contains("ts_1.png"));
+        });
+
+        assertThat(read(store, "ts_1.png"), is("new"));
+    }
+
+    @Test
+    public void when_writingFails_then_formerImageIsKept() throws IOException {
+        PrerenderedImageIndex store = createStore();
+        store.store("ts_1.png", out -> out.write(bytes("former")));
+
+        assertThrows(IOException.class, () -> store.store("ts_1.png", out -> {
+            out.write(bytes("partial"));
+            throw new IOException("rendering failed");
+        }));
+
+        assertThat(read(store, "ts_1.png"), is("former"));
+        assertThat(listFiles(), is("ts_1.png"));
+    }
+
+    @Test
+    public void when_writingNewImageFails_then_noImageIsStored() throws IOException {
+        PrerenderedImageIndex store = createStore();
+
+        assertThrows(IOException.class, () -> store.store("ts_1.png", out -> {
+            throw new IOException("rendering failed");
+        }));
+
+        assertThat(store.contains("ts_1.png"), is(false));
+        assertThat(listFiles(), is(""));
+    }
+
+    private PrerenderedImageIndex createStore() {
+        PrerenderedImageIndex store = new PrerenderedImageIndex();
+        store.open(directory);
+        return store;
+    }
+
+    private String listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName()
+                                         .toString())
+                        .sorted()
+                        .collect(Collectors.joining(","));
+        }
+    }
+
+    private static MockHttpServletResponse writeToResponse(PrerenderedImageStore store, String name)
+            throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(store.write(name, new MockHttpServletRequest("GET", "/" + name), response), is(true));
+        return response;
+    }
+
+    private static String read(PrerenderedImageStore store, String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(store.copy(name, out), is(true));
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+
+public class RenderedImageStatesTest {
+
+    private static final String IMAGE = "ts_1_lastDay.png";
+
+    @Test
+    public void when_sameLastValueAndConfig_then_imageIsRendered() {
+        RenderedImageStates states = new RenderedImageStates(Collections.emptyMap());
+        states.setRendered(IMAGE, RenderedImageStates.createState(1000L, createConfig("800", "red")));
+
+        assertThat(states.isRendered(IMAGE, RenderedImageStates.createState(1000L, createConfig("800", "red"))),
+                   is(true));
+    }
+
+    @Test
+    public void when_newLastValue_then_imageIsNotRendered() {
+        RenderedImageStates states = new RenderedImageStates(Collections.emptyMap());
+        states.setRendered(IMAGE, RenderedImageStates.createState(1000L, createConfig("800", "red")));
+
+        assertThat(states.isRendered(IMAGE, RenderedImageStates.createState(2000L, createConfig("800", "red"))),
+                   is(false));
+    }
+
+    @Test
+    public void when_configChanged_then_imageIsNotRendered() {
+        RenderedImageStates states = new RenderedImageStates(Collections.emptyMap());
+        states.setRendered(IMAGE, RenderedImageStates.createState(1000L, createConfig("800", "red")));
+
+        assertThat(states.isRendered(IMAGE, RenderedImageStates.createState(1000L, createConfig("1024", "red"))),
+                   is(false));
+        assertThat(states.isRendered(IMAGE, RenderedImageStates.createState(1000L, createConfig("800", "blue"))),
+                   is(false));
+    }
+
+    @Test
+    public void when_stateIsUnknown_then_imageIsNotRendered() {
+        RenderedImageStates states = new RenderedImageStates(Collections.emptyMap());
+        states.setRendered(IMAGE, null);
+
+        assertThat(states.isRendered(IMAGE, null), is(false));
+        assertThat(states.isRendered("other.png",
+                                     RenderedImageStates.createState(1000L, createConfig("800", "red"))),
+                   is(false));
+    }
+
+    @Test
+    public void when_statesOfFormerRunGiven_then_theyAreKept() {
+        String state = RenderedImageStates.createState(1000L, createConfig("800", "red"));
+        RenderedImageStates states = new RenderedImageStates(Collections.singletonMap(IMAGE, state));
+
+        assertThat(states.isRendered(IMAGE, state), is(true));
+        assertThat(states.toMap(), is(Collections.singletonMap(IMAGE, state)));
+    }
+
+    @Test
+    public void when_parameterOrderDiffers_then_stateIsEqual() {
+        IoParameters first = IoParameters.createDefaults()
+                                         .extendWith(Parameters.WIDTH, "800")
+                                         .extendWith(Parameters.TIMESPAN, "lastDay");
+        IoParameters second = IoParameters.createDefaults()
+                                          .extendWith(Parameters.TIMESPAN, "lastDay")
+                                          .extendWith(Parameters.WIDTH, "800");
+
+        assertThat(RenderedImageStates.createState(1000L, first),
+                   is(RenderedImageStates.createState(1000L, second)));
+        assertThat(RenderedImageStates.createState(1000L, first),
+                   is(not(RenderedImageStates.createState(1001L, second))));
+    }
+
+    private static IoParameters createConfig(String width, String color) {
+        return IoParameters.createDefaults()
+                           .extendWith(Parameters.DATASETS, "ts_1")
+                           .extendWith(Parameters.TIMESPAN, "lastDay")
+                           .extendWith(Parameters.WIDTH, width)
+                           .extendWith(Parameters.STYLE, "{\"properties\":{\"color\":\"" + color + "\"}}");
+    }
+
+}
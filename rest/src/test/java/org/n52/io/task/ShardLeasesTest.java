@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.task;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTimeUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ShardLeasesTest {
+
+    private static final long LEASE_DURATION = 60_000;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    public void resetTime() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void when_shardClaimedByOtherNode_then_notClaimable() throws IOException {
+        ShardLeases node1 = new ShardLeases(directory, "node1", LEASE_DURATION);
+        ShardLeases node2 = new ShardLeases(directory, "node2", LEASE_DURATION);
+        assertThat(node1.tryClaim(0), is(true));
+        assertThat(node2.tryClaim(0), is(false));
+        assertThat(node2.tryClaim(1), is(true));
+    }
+
+    @Test
+    public void when_leaseReleased_then_claimableByOtherNode() throws IOException {
+        ShardLeases node1 = new ShardLeases(directory, "node1", LEASE_DURATION);
+        ShardLeases node2 = new ShardLeases(directory, "node2", LEASE_DURATION);
+        node1.tryClaim(0);
+        node1.release(0);
+        assertThat(node2.tryClaim(0), is(true));
+    }
+
+    @Test
+    public void when_leaseExpired_then_claimableByOtherNode() throws IOException {
+        DateTimeUtils.setCurrentMillisFixed(1_000_000);
+        ShardLeases deadNode = new ShardLeases(directory, "node1", LEASE_DURATION);
+        ShardLeases node2 = new ShardLeases(directory, "node2", LEASE_DURATION);
+        deadNode.tryClaim(0);
+
+        DateTimeUtils.setCurrentMillisFixed(1_000_000 + LEASE_DURATION / 2);
+        assertThat(node2.tryClaim(0), is(false));
+
+        DateTimeUtils.setCurrentMillisFixed(1_000_000 + LEASE_DURATION + 1);
+        assertThat(node2.tryClaim(0), is(true));
+        assertThat(deadNode.renew(0), is(false));
+    }
+
+    @Test
+    public void when_leaseRenewed_then_notExpired() throws IOException {
+        DateTimeUtils.setCurrentMillisFixed(1_000_000);
+        ShardLeases node1 = new ShardLeases(directory, "node1", LEASE_DURATION);
+        ShardLeases node2 = new ShardLeases(directory, "node2", LEASE_DURATION);
+        node1.tryClaim(0);
+
+        DateTimeUtils.setCurrentMillisFixed(1_000_000 + LEASE_DURATION / 2);
+        assertThat(node1.renew(0), is(true));
+
+        DateTimeUtils.setCurrentMillisFixed(1_000_000 + LEASE_DURATION + 1);
+        assertThat(node2.tryClaim(0), is(false));
+    }
+
+    @Test
+    public void when_shardMarkedDone_then_doneForSameRunOnly() throws IOException {
+        ShardLeases node1 = new ShardLeases(directory, "node1", LEASE_DURATION);
+        ShardLeases node2 = new ShardLeases(directory, "node2", LEASE_DURATION);
+        node1.markDone(3, "run1");
+        assertThat(node2.isDone(3, "run1"), is(true));
+        assertThat(node2.isDone(3, "run2"), is(false));
+        assertThat(node2.isDone(4, "run1"), is(false));
+    }
+
+    @Test
+    public void when_nodesCompeteConcurrently_then_eachShardClaimedOnce() throws Exception {
+        int nodes = 4;
+        int shards = 32;
+        ConcurrentHashMap<Integer, String> owners = new ConcurrentHashMap<>();
+        List<String> duplicates = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(nodes);
+        try {
+            List<Future< ? >> tasks = new ArrayList<>();
+            for (int i = 0; i < nodes; i++) {
+                ShardLeases node = new ShardLeases(directory, "node" + i, LEASE_DURATION);
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    for (int shard = 0; shard < shards; shard++) {
+                        if (node.tryClaim(shard) && owners.putIfAbsent(shard, node.getOwner()) != null) {
+                            synchronized (duplicates) {
+                                duplicates.add(node.getOwner() + ":" + shard);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future< ? > task : tasks) {
+                task.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(duplicates.isEmpty(), is(true));
+        assertThat(owners.size(), is(shards));
+    }
+
+}
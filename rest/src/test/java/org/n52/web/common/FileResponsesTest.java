@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.common;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class FileResponsesTest {
+
+    private static final String CONTENT = "0123456789";
+
+    private static final String ETAG = "\"abc\"";
+
+    private static final long LAST_MODIFIED = 1_577_836_800_750L;
+
+    @TempDir
+    public Path tempDir;
+
+    private File file;
+
+    private MockHttpServletRequest request;
+
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = Files.write(tempDir.resolve("content.bin"), CONTENT.getBytes(StandardCharsets.UTF_8))
+                    .toFile();
+        request = new MockHttpServletRequest("GET", "/content");
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    public void when_noConditionalHeaders_then_fullContentIsWritten() throws IOException {
+        FileResponses.write(file, ETAG, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_OK));
+        assertThat(response.getHeader(HttpHeaders.ETAG), is(ETAG));
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES), is("bytes"));
+        assertThat(response.getContentLengthLong(), is(10L));
+        assertThat(response.getContentAsString(), is(CONTENT));
+    }
+
+    @Test
+    public void when_ifNoneMatchMatches_then_notModifiedWithoutContent() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", " + ETAG);
+
+        FileResponses.write(file, ETAG, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_NOT_MODIFIED));
+        assertThat(response.getHeader(HttpHeaders.ETAG), is(ETAG));
+        assertThat(response.getContentAsByteArray().length, is(0));
+    }
+
+    @Test
+    public void when_ifNoneMatchIsWeakOrWildcard_then_notModified() throws IOException {
+        assertThat(isNotModified("W/" + ETAG), is(true));
+        assertThat(isNotModified("*"), is(true));
+        assertThat(isNotModified("\"other\""), is(false));
+    }
+
+    @Test
+    public void when_ifNoneMatchDiffers_then_fullContentIsWritten() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+
+        FileResponses.write(file, ETAG, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_OK));
+        assertThat(response.getContentAsString(), is(CONTENT));
+    }
+
+    @Test
+    public void when_notModifiedSince_then_notModifiedWithLastModified() throws IOException {
+        // HTTP dates have no milliseconds
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, new Date(LAST_MODIFIED - 500));
+
+        FileResponses.write(file, ETAG, LAST_MODIFIED, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_NOT_MODIFIED));
+        assertThat(response.getDateHeader(HttpHeaders.LAST_MODIFIED), is(LAST_MODIFIED / 1000 * 1000));
+        assertThat(response.getContentAsByteArray().length, is(0));
+    }
+
+    @Test
+    public void when_modifiedSince_then_fullContentIsWritten() throws IOException {
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, new Date(LAST_MODIFIED - 1000));
+
+        FileResponses.write(file, ETAG, LAST_MODIFIED, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_OK));
+        assertThat(response.getContentAsString(), is(CONTENT));
+    }
+
+    @Test
+    public void when_ifNoneMatchDiffers_then_ifModifiedSinceIsIgnored() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, new Date(LAST_MODIFIED + 60_000));
+
+        FileResponses.write(file, ETAG, LAST_MODIFIED, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_OK));
+        assertThat(response.getContentAsString(), is(CONTENT));
+    }
+
+    @Test
+    public void when_ifNoneMatchMatches_then_notModifiedRegardlessOfModificationTime() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, ETAG);
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, new Date(LAST_MODIFIED - 60_000));
+
+        FileResponses.write(file, ETAG, LAST_MODIFIED, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_NOT_MODIFIED));
+    }
+
+    @Test
+    public void when_ifModifiedSinceIsInvalidOrTimeUnknown_then_fullContentIsWritten() throws IOException {
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, "yesterday");
+        FileResponses.write(file, ETAG, LAST_MODIFIED, request, response);
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_OK));
+
+        MockHttpServletRequest unknownTime = new MockHttpServletRequest("GET", "/content");
+        unknownTime.addHeader(HttpHeaders.IF_MODIFIED_SINCE, new Date(LAST_MODIFIED));
+        MockHttpServletResponse unknownTimeResponse = new MockHttpServletResponse();
+        FileResponses.write(file, ETAG, -1L, unknownTime, unknownTimeResponse);
+        assertThat(unknownTimeResponse.getStatus(), is(HttpServletResponse.SC_OK));
+        assertThat(unknownTimeResponse.getHeader(HttpHeaders.LAST_MODIFIED), is(nullValue()));
+    }
+
+    @Test
+    public void when_singleRange_then_partialContentIsWritten() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        FileResponses.write(file, ETAG, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_PARTIAL_CONTENT));
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE), is("bytes 2-5/10"));
+        assertThat(response.getContentLengthLong(), is(4L));
+        assertThat(response.getContentAsString(), is("2345"));
+    }
+
+    @Test
+    public void when_openOrSuffixRange_then_rangeEndsWithContent() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=7-");
+        FileResponses.write(file, ETAG, request, response);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE), is("bytes 7-9/10"));
+        assertThat(response.getContentAsString(), is("789"));
+
+        MockHttpServletRequest suffixRequest = new MockHttpServletRequest("GET", "/content");
+        suffixRequest.addHeader(HttpHeaders.RANGE, "bytes=-3");
+        MockHttpServletResponse suffixResponse = new MockHttpServletResponse();
+        FileResponses.write(file, ETAG, suffixRequest, suffixResponse);
+        assertThat(suffixResponse.getHeader(HttpHeaders.CONTENT_RANGE), is("bytes 7-9/10"));
+        assertThat(suffixResponse.getContentAsString(), is("789"));
+    }
+
+    @Test
+    public void when_rangeBeyondContent_then_rangeNotSatisfiable() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-20");
+
+        FileResponses.write(file, ETAG, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE));
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE), is("bytes */10"));
+    }
+
+    @Test
+    public void when_ifRangeDoesNotMatch_then_fullContentIsWritten() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"outdated\"");
+
+        FileResponses.write(file, ETAG, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_OK));
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE), is(nullValue()));
+        assertThat(response.getContentAsString(), is(CONTENT));
+    }
+
+    @Test
+    public void when_ifRangeMatches_then_partialContentIsWritten() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+
+        FileResponses.write(file, ETAG, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_PARTIAL_CONTENT));
+        assertThat(response.getContentAsString(), is("2345"));
+    }
+
+    @Test
+    public void when_multipleOrInvalidRanges_then_fullContentIsWritten() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1,4-5");
+        FileResponses.write(file, ETAG, request, response);
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_OK));
+        assertThat(response.getContentAsString(), is(CONTENT));
+
+        MockHttpServletRequest invalidRequest = new MockHttpServletRequest("GET", "/content");
+        invalidRequest.addHeader(HttpHeaders.RANGE, "lines=1-2");
+        MockHttpServletResponse invalidResponse = new MockHttpServletResponse();
+        FileResponses.write(file, ETAG, invalidRequest, invalidResponse);
+        assertThat(invalidResponse.getStatus(), is(HttpServletResponse.SC_OK));
+        assertThat(invalidResponse.getContentAsString(), is(CONTENT));
+    }
+
+    @Test
+    public void when_writingBufferRange_then_bufferIsNotChanged() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(("xx" + CONTENT).getBytes(StandardCharsets.UTF_8));
+        buffer.position(2);
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        FileResponses.write(buffer, ETAG, -1L, request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_PARTIAL_CONTENT));
+        assertThat(response.getContentAsString(), is("2345"));
+        assertThat(buffer.position(), is(2));
+        assertThat(buffer.remaining(), is(10));
+    }
+
+    private boolean isNotModified(String ifNoneMatch) {
+        MockHttpServletRequest conditional = new MockHttpServletRequest("GET", "/content");
+        conditional.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        return FileResponses.isNotModified(conditional, ETAG);
+    }
+
+}
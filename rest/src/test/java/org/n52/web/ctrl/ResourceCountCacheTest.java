@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+
+public class ResourceCountCacheTest {
+
+    private final ResourceCountCache cache = new ResourceCountCache("PT0.05S", "PT1S", 2);
+
+    @AfterEach
+    public void shutdown() {
+        cache.destroy();
+    }
+
+    @Test
+    public void when_countedTwiceWithinTtl_then_countedOnce() {
+        AtomicInteger calls = new AtomicInteger();
+
+        ResourceCountCache longLived = new ResourceCountCache("PT1H", "PT1S", 2);
+        try {
+            longLived.getCount("a", IoParameters.createDefaults(), p -> calls.incrementAndGet())
+                     .join();
+            Integer count = longLived.getCount("a", IoParameters.createDefaults(), p -> calls.incrementAndGet())
+                                     .join();
+
+            assertThat(count, is(1));
+            assertThat(calls.get(), is(1));
+        } finally {
+            longLived.destroy();
+        }
+    }
+
+    @Test
+    public void when_expired_then_staleCountIsReturnedWhileRefreshing() throws Exception {
+        assertThat(cache.getCount("a", IoParameters.createDefaults(), p -> 1L)
+                        .join(),
+                   is(1L));
+        Thread.sleep(100);
+
+        CountDownLatch refreshing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger refreshes = new AtomicInteger();
+        CompletableFuture<Long> stale = cache.getCount("a", IoParameters.createDefaults(), p -> {
+            refreshes.incrementAndGet();
+            refreshing.countDown();
+            await(release);
+            return 2L;
+        });
+        assertThat(stale.isDone(), is(true));
+        assertThat(stale.join(), is(1L));
+
+        assertThat(refreshing.await(1, TimeUnit.SECONDS), is(true));
+        CompletableFuture<Long> duringRefresh = cache.getCount("a", IoParameters.createDefaults(), p -> {
+            refreshes.incrementAndGet();
+            return 3L;
+        });
+        assertThat(duringRefresh.join(), is(1L));
+        assertThat(refreshes.get(), is(1));
+
+        release.countDown();
+        assertThat(awaitCount(cache, "a", 2L), is(true));
+    }
+
+    @Test
+    public void when_countFails_then_nextRequestCountsAgain() throws Exception {
+        CompletableFuture<Long> failed = cache.getCount("a", IoParameters.createDefaults(), p -> {
+            throw new IllegalStateException("backend not available");
+        });
+        try {
+            failed.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+        assertThat(failed.isCompletedExceptionally(), is(true));
+
+        CompletableFuture<Long> retried = cache.getCount("a", IoParameters.createDefaults(), p -> 1L);
+        assertThat(retried.get(1, TimeUnit.SECONDS), is(1L));
+    }
+
+    @Test
+    public void when_executorRejects_then_callerCounts() {
+        cache.destroy();
+
+        Thread caller = Thread.currentThread();
+        CompletableFuture<Boolean> countedByCaller = cache.getCount("a",
+                                                                    IoParameters.createDefaults(),
+                                                                    p -> Thread.currentThread() == caller);
+
+        assertThat(countedByCaller.isDone(), is(true));
+        assertThat(countedByCaller.join(), is(true));
+    }
+
+    @Test
+    public void when_executorRejectsRefresh_then_staleCountIsReturned() throws Exception {
+        cache.getCount("a", IoParameters.createDefaults(), p -> 1L)
+             .join();
+        Thread.sleep(100);
+        cache.destroy();
+
+        AtomicInteger refreshes = new AtomicInteger();
+        assertThat(cache.getCount("a", IoParameters.createDefaults(), p -> (long) refreshes.incrementAndGet())
+                        .join(),
+                   is(1L));
+        assertThat(cache.getCount("a", IoParameters.createDefaults(), p -> (long) refreshes.incrementAndGet())
+                        .join(),
+                   is(1L));
+        assertThat(refreshes.get(), is(0));
+    }
+
+    @Test
+    public void when_filterParametersDiffer_then_countsAreCachedSeparately() {
+        ResourceCountCache longLived = new ResourceCountCache("PT1H", "PT1S", 2);
+        try {
+            IoParameters defaults = IoParameters.createDefaults();
+            longLived.getCount("a", defaults, p -> 1L)
+                     .join();
+
+            assertThat(longLived.getCount("a", defaults.extendWith("locale", "de"), p -> 2L)
+                                .join(),
+                       is(1L));
+            assertThat(longLived.getCount("a", defaults.extendWith("platforms", "p"), p -> 3L)
+                                .join(),
+                       is(3L));
+            assertThat(longLived.getCount("b", defaults, p -> 4L)
+                                .join(),
+                       is(4L));
+        } finally {
+            longLived.destroy();
+        }
+    }
+
+    private static boolean awaitCount(ResourceCountCache cache, String resource, long expected)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < deadline) {
+            Long count = cache.getCount(resource, IoParameters.createDefaults(), p -> expected)
+                              .join();
+            if (count == expected) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+}
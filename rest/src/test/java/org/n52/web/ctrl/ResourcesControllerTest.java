@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.series.spi.srv.CountingMetadataService;
+import org.n52.series.spi.srv.CountingMetadataService.CountedType;
+import org.n52.web.ctrl.ResourcesController.ResourceCollection;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.servlet.ModelAndView;
+
+public class ResourcesControllerTest {
+
+    @Test
+    public void when_countTakesLongerThanMaxWait_then_sizeIsOmitted() {
+        ResourceCountCache cache = new ResourceCountCache("PT1H", "PT0.1S", 4);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            ResourcesController controller = new ResourcesController(new FixedCountingService(release));
+            controller.setResourceCountCache(cache);
+
+            Map<String, Long> sizes = getSizes(controller);
+
+            assertThat(sizes.get("services"), is(nullValue()));
+            assertThat(sizes.get("phenomena"), is(42L));
+            assertThat(sizes.get("timeseries"), is(42L));
+        } finally {
+            release.countDown();
+            cache.destroy();
+        }
+    }
+
+    @Test
+    public void when_slowCountCompletedMeanwhile_then_laterRequestsGetItsSize() throws InterruptedException {
+        ResourceCountCache cache = new ResourceCountCache("PT1H", "PT0.1S", 4);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            ResourcesController controller = new ResourcesController(new FixedCountingService(release));
+            controller.setResourceCountCache(cache);
+            assertThat(getSizes(controller).get("services"), is(nullValue()));
+
+            release.countDown();
+            Thread.sleep(100);
+
+            assertThat(getSizes(controller).get("services"), is(42L));
+        } finally {
+            cache.destroy();
+        }
+    }
+
+    @Test
+    public void when_noCountCache_then_allSizesAreCountedSynchronously() {
+        CountDownLatch released = new CountDownLatch(0);
+        ResourcesController controller = new ResourcesController(new FixedCountingService(released));
+
+        Map<String, Long> sizes = getSizes(controller);
+
+        assertThat(sizes.get("services"), is(42L));
+        assertThat(sizes.get("datasets"), is(42L));
+    }
+
+    @Test
+    public void when_countingGrouped_then_typesAreCountedAtOnce() {
+        ResourceCountCache cache = new ResourceCountCache("PT1H", "PT1S", 4);
+        try {
+            GroupedCountingService service = new GroupedCountingService();
+            ResourcesController controller = new ResourcesController(service);
+            controller.setResourceCountCache(cache);
+
+            Map<String, Long> sizes = getSizes(controller);
+
+            assertThat(service.countedTypes.size(), is(1));
+            assertThat(service.countedTypes.get(0)
+                                           .size(),
+                       is(8));
+            assertThat(sizes.get("services"), is(42L));
+            assertThat(sizes.get("platforms"), is(42L));
+        } finally {
+            cache.destroy();
+        }
+    }
+
+    @Test
+    public void when_countingNotGrouped_then_typesAreCountedOneByOne() {
+        ResourceCountCache cache = new ResourceCountCache("PT1H", "PT1S", 4);
+        try {
+            UngroupedCountingService service = new UngroupedCountingService();
+            ResourcesController controller = new ResourcesController(service);
+            controller.setResourceCountCache(cache);
+
+            Map<String, Long> sizes = getSizes(controller);
+
+            assertThat(service.countedTypes.size(), is(8));
+            assertThat(sizes.get("services"), is(42L));
+        } finally {
+            cache.destroy();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> getSizes(ResourcesController controller) {
+        MultiValueMap<String, String> query = new LinkedMultiValueMap<>();
+        query.add(Parameters.EXPANDED, "true");
+        ModelAndView result = controller.getResources(new MockHttpServletResponse(), query);
+        List<ResourceCollection> resources = (List<ResourceCollection>) result.getModel()
+                                                                              .values()
+                                                                              .iterator()
+                                                                              .next();
+        Map<String, Long> sizes = new HashMap<>();
+        for (ResourceCollection resource : resources) {
+            sizes.put(resource.getId(), resource.getSize());
+        }
+        return sizes;
+    }
+
+    private static final class GroupedCountingService extends UngroupedCountingService {
+
+        @Override
+        public boolean isCountingGrouped() {
+            return true;
+        }
+    }
+
+    private static class UngroupedCountingService extends FixedCountingService {
+
+        protected final List<Set<CountedType>> countedTypes = new CopyOnWriteArrayList<>();
+
+        UngroupedCountingService() {
+            super(new CountDownLatch(0));
+        }
+
+        @Override
+        public Map<CountedType, Long> getCounts(Set<CountedType> types, IoParameters parameters) {
+            countedTypes.add(types);
+            return super.getCounts(types, parameters);
+        }
+    }
+
+    private static class FixedCountingService implements CountingMetadataService {
+
+        private final CountDownLatch serviceCountRelease;
+
+        FixedCountingService(CountDownLatch serviceCountRelease) {
+            this.serviceCountRelease = serviceCountRelease;
+        }
+
+        @Override
+        public Long getServiceCount(IoParameters parameters) {
+            try {
+                serviceCountRelease.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread()
+                      .interrupt();
+            }
+            return 42L;
+        }
+
+        @Override
+        public Long getOfferingCount(IoParameters parameters) {
+            return 42L;
+        }
+
+        @Override
+        public Long getCategoryCount(IoParameters parameters) {
+            return 42L;
+        }
+
+        @Override
+        public Long getFeatureCount(IoParameters parameters) {
+            return 42L;
+        }
+
+        @Override
+        public Long getProcedureCount(IoParameters parameters) {
+            return 42L;
+        }
+
+        @Override
+        public Long getPhenomenaCount(IoParameters parameters) {
+            return 42L;
+        }
+
+        @Override
+        public Long getPlatformCount(IoParameters paramters) {
+            return 42L;
+        }
+
+        @Override
+        public Long getDatasetCount(IoParameters parameters) {
+            return 42L;
+        }
+
+        @Override
+        public Long getStationCount() {
+            return 42L;
+        }
+
+        @Override
+        public Long getTimeseriesCount() {
+            return 42L;
+        }
+
+        @Override
+        public Long getSamplingCounter(IoParameters parameters) {
+            return 42L;
+        }
+
+        @Override
+        public Long getMeasuringProgramCounter(IoParameters parameters) {
+            return 42L;
+        }
+    }
+
+}
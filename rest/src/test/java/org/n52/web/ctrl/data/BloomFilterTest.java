@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class BloomFilterTest {
+
+    private static final int IDS = 10_000;
+
+    @Test
+    public void when_containedId_then_mightContain() {
+        BloomFilter filter = BloomFilter.create(createIds("ts_"), 0.01);
+        for (String id : createIds("ts_")) {
+            assertThat(filter.mightContain(id), is(true));
+        }
+    }
+
+    @Test
+    public void when_unknownIds_then_falsePositivesNearConfiguredRate() {
+        BloomFilter filter = BloomFilter.create(createIds("ts_"), 0.01);
+        long falsePositives = createIds("unknown_").stream()
+                                                   .filter(filter::mightContain)
+                                                   .count();
+        assertThat((double) falsePositives / IDS, is(lessThan(0.02)));
+        assertThat(filter.getExpectedFalsePositiveRate(), is(lessThan(0.02)));
+    }
+
+    @Test
+    public void when_empty_then_nothingContained() {
+        BloomFilter filter = BloomFilter.create(Collections.emptyList(), 0.01);
+        assertThat(filter.mightContain("42"), is(false));
+        assertThat(filter.getCount(), is(0));
+    }
+
+    private static List<String> createIds(String prefix) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < IDS; i++) {
+            ids.add(prefix + i);
+        }
+        return ids;
+    }
+
+}
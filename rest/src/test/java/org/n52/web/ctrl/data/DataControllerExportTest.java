@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.n52.io.Constants;
+import org.n52.io.handler.DefaultIoFactory;
+import org.n52.io.handler.IoHandler;
+import org.n52.io.handler.IoHandlerException;
+import org.n52.io.handler.IoHandlerFactory;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.RequestStyledParameterSet;
+import org.n52.io.response.OutputCollection;
+import org.n52.io.response.dataset.AbstractValue;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.DataCollection;
+import org.n52.io.response.dataset.DatasetOutput;
+import org.n52.series.spi.srv.DataService;
+import org.n52.series.spi.srv.ParameterService;
+import org.n52.series.spi.srv.RawDataService;
+import org.n52.web.exception.ConflictException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class DataControllerExportTest {
+
+    private static final String VALUE_TYPE = "test";
+
+    @TempDir
+    public Path directory;
+
+    private ExportJobManager jobManager;
+
+    private DataController controller;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        Path mapping = Files.write(directory.resolve("io-factory.properties"),
+                                   (VALUE_TYPE + "=" + DatasetsIoFactory.class.getName()).getBytes(
+                                           StandardCharsets.UTF_8));
+        DefaultIoFactory<DatasetOutput<AbstractValue< ? >>, AbstractValue< ? >> ioFactory =
+                DefaultIoFactory.create(mapping.toFile());
+        // a single worker, so that jobs wait in the queue
+        jobManager = new ExportJobManager(directory.resolve("exports")
+                                                   .toString(),
+                                          1,
+                                          10,
+                                          "PT1H");
+        controller = new TestDataController(ioFactory);
+        controller.setExportJobManager(jobManager);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jobManager.destroy();
+    }
+
+    @Test
+    public void when_jobsWaitInQueue_then_eachJobExportsItsOwnParameters() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        jobManager.submit("blocking", Constants.TEXT_CSV, out -> awaitLatch(release));
+
+        ExportJob first = createExportJob("a", "b");
+        ExportJob second = createExportJob("c");
+        release.countDown();
+
+        assertThat(first.getId(), is(not(second.getId())));
+        assertThat(readResult(await(first)), is("a,b"));
+        assertThat(readResult(await(second)), is("c"));
+    }
+
+    @Test
+    public void when_resultOfPendingJobIsRequested_then_conflictIsAnswered() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            jobManager.submit("blocking", Constants.TEXT_CSV, out -> awaitLatch(release));
+            ExportJob pending = createExportJob("a");
+
+            assertThrows(ConflictException.class,
+                () -> controller.getExportJobResult(new MockHttpServletRequest(),
+                                                    new MockHttpServletResponse(),
+                                                    pending.getId()));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private ExportJob createExportJob(String... datasets) throws Exception {
+        String body = "{\"timespan\":\"PT6H/2013-08-13TZ\",\"styleOptions\":{" + toStyleOptions(datasets) + "}}";
+        RequestStyledParameterSet parameters = new ObjectMapper().readValue(body, RequestStyledParameterSet.class);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/datasets/observations/exports");
+        return (ExportJob) controller.createExportJob(request,
+                                                      new MockHttpServletResponse(),
+                                                      null,
+                                                      Constants.TEXT_CSV,
+                                                      parameters)
+                                     .getModel()
+                                     .values()
+                                     .iterator()
+                                     .next();
+    }
+
+    private static String toStyleOptions(String... datasets) {
+        List<String> options = new ArrayList<>();
+        for (String dataset : datasets) {
+            options.add("\"" + dataset + "\":{}");
+        }
+        return String.join(",", options);
+    }
+
+    private static String readResult(ExportJob job) throws IOException {
+        assertThat(job.getStatus(), is(ExportJob.Status.FINISHED));
+        return new String(Files.readAllBytes(job.getResult()
+                                                .toPath()),
+                          StandardCharsets.UTF_8);
+    }
+
+    private static ExportJob await(ExportJob job) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!job.isDone() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(5);
+        }
+        return job;
+    }
+
+    private static void awaitLatch(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static final class TestDataController extends DataController {
+
+        TestDataController(DefaultIoFactory<DatasetOutput<AbstractValue< ? >>, AbstractValue< ? >> ioFactory) {
+            super(ioFactory, new AllDatasetsService(), new EmptyDataService());
+        }
+
+        @Override
+        protected String getValueType(IoParameters map, String requestUrl) {
+            return VALUE_TYPE;
+        }
+    }
+
+    /**
+     * Writes the requested dataset ids, read from the factory's parameters when the handler is created.
+     */
+    public static final class DatasetsIoFactory
+            extends IoHandlerFactory<DatasetOutput<AbstractValue< ? >>, AbstractValue< ? >> {
+
+        @Override
+        public IoHandler<Data<AbstractValue< ? >>> createHandler(String outputMimeType) {
+            IoParameters parameters = getParameters();
+            return new IoHandler<Data<AbstractValue< ? >>>(parameters, createProcessChain()) {
+
+                @Override
+                protected void encodeAndWriteTo(DataCollection<Data<AbstractValue< ? >>> data,
+                                                OutputStream stream)
+                        throws IoHandlerException {
+                    String datasets = String.join(",", new TreeSet<>(parameters.getDatasets()));
+                    try {
+                        stream.write(datasets.getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        throw new IoHandlerException("Could not write datasets.", e);
+                    }
+                }
+            };
+        }
+    }
+
+    private static final class EmptyDataService implements DataService<Data<AbstractValue< ? >>> {
+
+        @Override
+        public DataCollection<Data<AbstractValue< ? >>> getData(IoParameters parameters) {
+            return new DataCollection<>();
+        }
+
+        @Override
+        public boolean supportsRawData() {
+            return false;
+        }
+
+        @Override
+        public RawDataService getRawDataService() {
+            return null;
+        }
+    }
+
+    private static final class AllDatasetsService extends ParameterService<DatasetOutput<AbstractValue< ? >>> {
+
+        @Override
+        public OutputCollection<DatasetOutput<AbstractValue< ? >>> getExpandedParameters(IoParameters query) {
+            return new OutputCollection<>(new ArrayList<>());
+        }
+
+        @Override
+        public OutputCollection<DatasetOutput<AbstractValue< ? >>> getCondensedParameters(IoParameters query) {
+            return new OutputCollection<>(new ArrayList<>());
+        }
+
+        @Override
+        public OutputCollection<DatasetOutput<AbstractValue< ? >>> getParameters(String[] items,
+                                                                                 IoParameters query) {
+            return new OutputCollection<>(new ArrayList<>());
+        }
+
+        @Override
+        public DatasetOutput<AbstractValue< ? >> getParameter(String item, IoParameters query) {
+            return null;
+        }
+
+        @Override
+        public boolean exists(String id, IoParameters parameters) {
+            return true;
+        }
+    }
+
+}
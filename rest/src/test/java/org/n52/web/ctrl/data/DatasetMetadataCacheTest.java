@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.io.response.OutputCollection;
+import org.n52.io.response.PhenomenonOutput;
+import org.n52.series.spi.srv.ParameterService;
+
+public class DatasetMetadataCacheTest {
+
+    private final CountingParameterService backend = new CountingParameterService();
+
+    @Test
+    public void when_lookedUpTwice_then_backendIsCalledOnce() {
+        ParameterService<PhenomenonOutput> service = new DatasetMetadataCache("PT1H", 10).decorate(backend);
+
+        service.getParameters(new String[] {"a"}, IoParameters.createDefaults());
+        OutputCollection<PhenomenonOutput> cached = service.getParameters(new String[] {"a"},
+                                                                          IoParameters.createDefaults());
+
+        assertThat(backend.calls, is(1));
+        assertThat(getIds(cached), contains("a"));
+    }
+
+    @Test
+    public void when_entryExpired_then_backendIsCalledAgain() throws InterruptedException {
+        ParameterService<PhenomenonOutput> service = new DatasetMetadataCache("PT0.05S", 10).decorate(backend);
+        service.getParameters(new String[] {"a"}, IoParameters.createDefaults());
+
+        Thread.sleep(100);
+        service.getParameters(new String[] {"a"}, IoParameters.createDefaults());
+
+        assertThat(backend.calls, is(2));
+    }
+
+    @Test
+    public void when_maxEntriesExceeded_then_leastRecentlyUsedEntryIsEvicted() {
+        ParameterService<PhenomenonOutput> service = new DatasetMetadataCache("PT1H", 2).decorate(backend);
+        service.getParameters(new String[] {"a"}, IoParameters.createDefaults());
+        service.getParameters(new String[] {"b"}, IoParameters.createDefaults());
+        service.getParameters(new String[] {"a"}, IoParameters.createDefaults());
+
+        service.getParameters(new String[] {"c"}, IoParameters.createDefaults());
+        assertThat(backend.calls, is(3));
+        service.getParameters(new String[] {"a"}, IoParameters.createDefaults());
+        assertThat(backend.calls, is(3));
+        service.getParameters(new String[] {"b"}, IoParameters.createDefaults());
+        assertThat(backend.calls, is(4));
+    }
+
+    @Test
+    public void when_onlyOutputParametersDiffer_then_keysAreEqual() {
+        IoParameters parameters = IoParameters.createDefaults()
+                                              .extendWith(Parameters.PHENOMENA, "p1");
+        IoParameters output = parameters.extendWith(Parameters.TIMESPAN, "PT1H/2020-01-01")
+                                        .extendWith(Parameters.WIDTH, "400")
+                                        .extendWith(Parameters.CHART_SIZES, "400x300")
+                                        .extendWith(Parameters.ZIP, "true");
+
+        assertThat(DatasetMetadataCache.createKey(1, "items", Arrays.asList("b", "a"), parameters),
+                   is(DatasetMetadataCache.createKey(1, "items", Arrays.asList("a", "b"), output)));
+    }
+
+    @Test
+    public void when_filterParametersDiffer_then_keysDiffer() {
+        IoParameters parameters = IoParameters.createDefaults()
+                                              .extendWith(Parameters.PHENOMENA, "p1");
+        String key = DatasetMetadataCache.createKey(1, "items", Collections.singleton("a"), parameters);
+
+        assertThat(DatasetMetadataCache.createKey(1,
+                                                  "items",
+                                                  Collections.singleton("a"),
+                                                  parameters.replaceWith(Parameters.PHENOMENA, "p2")),
+                   is(not(key)));
+        assertThat(DatasetMetadataCache.createKey(2, "items", Collections.singleton("a"), parameters),
+                   is(not(key)));
+        assertThat(DatasetMetadataCache.createKey(1, "exists", Collections.singleton("a"), parameters),
+                   is(not(key)));
+    }
+
+    @Test
+    public void when_servicesDecoratedSeparately_then_entriesAreNotShared() {
+        DatasetMetadataCache cache = new DatasetMetadataCache("PT1H", 10);
+        CountingParameterService other = new CountingParameterService();
+        ParameterService<PhenomenonOutput> first = cache.decorate(backend);
+        ParameterService<PhenomenonOutput> second = cache.decorate(other);
+
+        first.getParameters(new String[] {"a"}, IoParameters.createDefaults());
+        second.getParameters(new String[] {"a"}, IoParameters.createDefaults());
+
+        assertThat(backend.calls, is(1));
+        assertThat(other.calls, is(1));
+    }
+
+    @Test
+    public void when_existingIdsChecked_then_onlyUnknownOnesAreCheckedAgain() {
+        ParameterService<PhenomenonOutput> service = new DatasetMetadataCache("PT1H", 10).decorate(backend);
+
+        assertThat(service.findMissing(Arrays.asList("a", "missing"), IoParameters.createDefaults()),
+                   contains("missing"));
+        assertThat(service.exists("a", IoParameters.createDefaults()), is(true));
+        assertThat(service.exists("missing", IoParameters.createDefaults()), is(false));
+
+        assertThat(backend.existsCalls, is(Arrays.asList("a", "missing", "missing")));
+    }
+
+    @Test
+    public void when_datasetInvalidated_then_itsEntriesAreRemoved() {
+        DatasetMetadataCache cache = new DatasetMetadataCache("PT1H", 10);
+        ParameterService<PhenomenonOutput> service = cache.decorate(backend);
+        service.getParameters(new String[] {"a"}, IoParameters.createDefaults());
+        service.getParameters(new String[] {"b"}, IoParameters.createDefaults());
+
+        cache.invalidate("a");
+        service.getParameters(new String[] {"a"}, IoParameters.createDefaults());
+        service.getParameters(new String[] {"b"}, IoParameters.createDefaults());
+
+        assertThat(backend.calls, is(3));
+    }
+
+    @Test
+    public void when_disabled_then_serviceIsNotDecorated() {
+        assertThat(new DatasetMetadataCache("PT0S", 10).decorate(backend), is(backend));
+        assertThat(new DatasetMetadataCache("PT1H", 0).decorate(backend), is(backend));
+    }
+
+    private static List<String> getIds(OutputCollection<PhenomenonOutput> outputs) {
+        List<String> ids = new ArrayList<>();
+        for (PhenomenonOutput output : outputs) {
+            ids.add(output.getId());
+        }
+        return ids;
+    }
+
+    private static final class CountingParameterService extends ParameterService<PhenomenonOutput> {
+
+        private final List<String> existsCalls = new ArrayList<>();
+
+        private int calls;
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getExpandedParameters(IoParameters query) {
+            return getParameters(new String[0], query);
+        }
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getCondensedParameters(IoParameters query) {
+            return getParameters(new String[0], query);
+        }
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getParameters(String[] items, IoParameters query) {
+            calls++;
+            List<PhenomenonOutput> outputs = new ArrayList<>();
+            for (String item : items) {
+                outputs.add(getParameter(item, query));
+            }
+            return new OutputCollection<>(outputs);
+        }
+
+        @Override
+        public PhenomenonOutput getParameter(String item, IoParameters query) {
+            PhenomenonOutput output = new PhenomenonOutput();
+            output.setId(item);
+            return output;
+        }
+
+        @Override
+        public boolean exists(String id, IoParameters parameters) {
+            existsCalls.add(id);
+            return !"missing".equals(id);
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.n52.io.Constants;
+import org.n52.web.exception.ServiceUnavailableException;
+
+public class ExportJobManagerTest {
+
+    private static final String JOB_FILE_NAME = "0123456789abcdef0123456789abcdef";
+
+    @TempDir
+    public Path directory;
+
+    private ExportJobManager manager;
+
+    @AfterEach
+    public void tearDown() {
+        if (manager != null) {
+            manager.destroy();
+        }
+    }
+
+    @Test
+    public void when_exportFinished_then_resultIsKeptWithContentEtag() throws Exception {
+        manager = createManager("PT1H");
+
+        ExportJob job = await(manager.submit("key", Constants.TEXT_CSV, out -> out.write(bytes("a;b"))));
+
+        assertThat(job.getStatus(), is(ExportJob.Status.FINISHED));
+        assertThat(job.getResult()
+                      .toPath(),
+                   is(directory.resolve(job.getId() + ".csv")));
+        assertThat(new String(Files.readAllBytes(job.getResult()
+                                                    .toPath()),
+                              StandardCharsets.UTF_8),
+                   is("a;b"));
+        assertThat(job.getEtag()
+                      .matches("\"[0-9a-f]{32}\""),
+                   is(true));
+        assertThat(manager.getJob(job.getId())
+                          .get(),
+                   is(sameInstance(job)));
+    }
+
+    @Test
+    public void when_equalExportIsPending_then_jobIsShared() throws Exception {
+        manager = createManager("PT1H");
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExportJob first = manager.submit("key", Constants.TEXT_CSV, out -> awaitLatch(release));
+        ExportJob second = manager.submit("key", Constants.TEXT_CSV, out -> out.write(bytes("other")));
+        ExportJob otherFormat = manager.submit("key", Constants.APPLICATION_ZIP, out -> out.write(bytes("zip")));
+        release.countDown();
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(otherFormat.getId(), is(not(first.getId())));
+        assertThat(await(first).getStatus(), is(ExportJob.Status.FINISHED));
+    }
+
+    @Test
+    public void when_exportFails_then_partialResultIsDeletedAndJobIsNotReusedButAvailable() throws Exception {
+        manager = createManager("PT1H");
+
+        ExportJob failed = await(manager.submit("key", Constants.TEXT_CSV, out -> {
+            out.write(bytes("partial"));
+            throw new IOException("failed");
+        }));
+
+        assertThat(failed.getStatus(), is(ExportJob.Status.FAILED));
+        assertThat(failed.getError(), is("failed"));
+        assertThat(Files.exists(directory.resolve(failed.getId() + ".part")), is(false));
+        assertThat(manager.getJob(failed.getId())
+                          .get(),
+                   is(sameInstance(failed)));
+
+        ExportJob retried = manager.submit("key", Constants.TEXT_CSV, out -> out.write(bytes("ok")));
+        assertThat(retried, is(not(sameInstance(failed))));
+        assertThat(await(retried).getStatus(), is(ExportJob.Status.FINISHED));
+        assertThat(manager.getJob(failed.getId())
+                          .get(),
+                   is(sameInstance(retried)));
+    }
+
+    @Test
+    public void when_failedJobExpired_then_jobIsNotAvailable() throws Exception {
+        manager = createManager("PT0.001S");
+        ExportJob failed = await(manager.submit("key", Constants.TEXT_CSV, out -> {
+            throw new IOException("failed");
+        }));
+        Thread.sleep(10);
+
+        assertThat(manager.getJob(failed.getId())
+                          .isPresent(),
+                   is(false));
+    }
+
+    @Test
+    public void when_ttlExpired_then_jobAndResultAreRemoved() throws Exception {
+        manager = createManager("PT0.001S");
+        ExportJob job = await(manager.submit("key", Constants.TEXT_CSV, out -> out.write(bytes("a"))));
+        Thread.sleep(10);
+
+        manager.removeExpiredJobs();
+
+        assertThat(manager.getJob(job.getId())
+                          .isPresent(),
+                   is(false));
+        assertThat(job.getResult()
+                      .exists(),
+                   is(false));
+    }
+
+    @Test
+    public void when_expiredJobIsResubmitted_then_etagFollowsNewContent() throws Exception {
+        manager = createManager("PT0.001S");
+        ExportJob first = await(manager.submit("key", Constants.TEXT_CSV, out -> out.write(bytes("old"))));
+        Thread.sleep(10);
+
+        ExportJob second = await(manager.submit("key", Constants.TEXT_CSV, out -> out.write(bytes("new"))));
+
+        assertThat(second.getId(), is(first.getId()));
+        assertThat(second.getEtag(), is(not(first.getEtag())));
+    }
+
+    @Test
+    public void when_tooManyExportsPending_then_submitIsRejected() throws Exception {
+        manager = new ExportJobManager(directory.toString(), 1, 1, "PT1H");
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            manager.submit("running", Constants.TEXT_CSV, out -> {
+                started.countDown();
+                awaitLatch(release);
+            });
+            assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+            manager.submit("queued", Constants.TEXT_CSV, out -> awaitLatch(release));
+
+            assertThrows(ServiceUnavailableException.class,
+                () -> manager.submit("rejected", Constants.TEXT_CSV, out -> awaitLatch(release)));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void when_started_then_onlyStaleResultFilesAreDeleted() throws Exception {
+        Path staleResult = Files.createFile(directory.resolve(JOB_FILE_NAME + ".zip"));
+        Path stalePartial = Files.createFile(directory.resolve(JOB_FILE_NAME + ".part"));
+        Path shortHexName = Files.createFile(directory.resolve("cafe.csv"));
+        Path otherExtension = Files.createFile(directory.resolve(JOB_FILE_NAME + ".zip.bak"));
+        Path longerName = Files.createFile(directory.resolve(JOB_FILE_NAME + "0.pdf"));
+        Path otherFile = Files.createFile(directory.resolve("deadbeef-notes.txt"));
+
+        manager = createManager("PT1H");
+
+        assertThat(Files.exists(staleResult), is(false));
+        assertThat(Files.exists(stalePartial), is(false));
+        assertThat(Files.exists(shortHexName), is(true));
+        assertThat(Files.exists(otherExtension), is(true));
+        assertThat(Files.exists(longerName), is(true));
+        assertThat(Files.exists(otherFile), is(true));
+    }
+
+    private ExportJobManager createManager(String ttl) throws IOException {
+        return new ExportJobManager(directory.toString(), 2, 10, ttl);
+    }
+
+    private static ExportJob await(ExportJob job) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!job.isDone() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(5);
+        }
+        assertThat("job done", job.isDone(), is(true));
+        return job;
+    }
+
+    private static void awaitLatch(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
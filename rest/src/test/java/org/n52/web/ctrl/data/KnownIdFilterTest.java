@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.io.request.RequestSimpleParameterSet;
+import org.n52.io.response.OutputCollection;
+import org.n52.io.response.PhenomenonOutput;
+import org.n52.series.spi.srv.ParameterService;
+import org.n52.web.ctrl.data.KnownIdFilter.KnownIds;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class KnownIdFilterTest {
+
+    // not scheduling rebuilds, filters are rebuilt by the tests
+    private final KnownIdFilter filter = new KnownIdFilter("PT0S", 0.01);
+
+    private final IdsParameterService service = new IdsParameterService("a", "b");
+
+    @Test
+    public void when_notBuiltYet_then_noIdIsUnknown() {
+        KnownIds knownIds = filter.register(service);
+
+        assertThat(knownIds.isUnknown("x", IoParameters.createDefaults()), is(false));
+    }
+
+    @Test
+    public void when_built_then_onlyIdsNotListedAreUnknown() {
+        KnownIds knownIds = filter.register(service);
+        knownIds.rebuild();
+
+        assertThat(knownIds.isUnknown("a", IoParameters.createDefaults()), is(false));
+        assertThat(knownIds.isUnknown("b", IoParameters.createDefaults()), is(false));
+        assertThat(knownIds.isUnknown("x", IoParameters.createDefaults()), is(true));
+        assertThat(filter.getPassedCount(), is(2L));
+        assertThat(filter.getRejectedCount(), is(1L));
+        assertThat(filter.getIdCount(), is(2L));
+    }
+
+    @Test
+    public void when_requestHasNonFilterParameters_then_unknownIdsAreRejected() {
+        KnownIds knownIds = filter.register(service);
+        knownIds.rebuild();
+
+        IoParameters parameters = IoParameters.createDefaults()
+                                              .extendWith(Parameters.LOCALE, "de")
+                                              .extendWith(Parameters.EXPANDED, "true");
+        assertThat(knownIds.isUnknown("x", parameters), is(true));
+    }
+
+    @Test
+    public void when_requestHasFilterParameters_then_idsArePassed() {
+        KnownIds knownIds = filter.register(service);
+        knownIds.rebuild();
+
+        IoParameters datasetTypes = IoParameters.createDefaults()
+                                                .extendWith(Parameters.FILTER_DATASET_TYPES, "profile");
+        IoParameters platforms = IoParameters.createDefaults()
+                                             .extendWith(Parameters.PLATFORMS, "p");
+        assertThat(knownIds.isUnknown("x", datasetTypes), is(false));
+        assertThat(knownIds.isUnknown("x", platforms), is(false));
+        assertThat(filter.getRejectedCount(), is(0L));
+    }
+
+    @Test
+    public void when_datasetIsRequestedViaPath_then_unknownIdIsRejected() {
+        KnownIds knownIds = filter.register(service);
+        knownIds.rebuild();
+
+        // built like BaseController builds parameters of /datasets/{datasetId}/observations
+        Map<String, String> query = Collections.singletonMap(Parameters.EXPANDED, "true");
+        IoParameters parameters = IoParameters.createFromSingleValueMap(query)
+                                              .replaceWith(Parameters.DATASETS, "x");
+        assertThat(knownIds.isUnknown("x", parameters), is(true));
+        assertThat(knownIds.isUnknown("a", parameters), is(false));
+    }
+
+    @Test
+    public void when_datasetsAreRequestedViaBody_then_unknownIdIsRejected() throws Exception {
+        KnownIds knownIds = filter.register(service);
+        knownIds.rebuild();
+
+        // built like BaseController builds parameters of POST /datasets/observations
+        RequestSimpleParameterSet body = new ObjectMapper().readValue("{\"datasets\":[\"a\",\"x\"]}",
+                                                                      RequestSimpleParameterSet.class);
+        IoParameters parameters = body.toParameters();
+        assertThat(knownIds.isUnknown("x", parameters), is(true));
+        assertThat(knownIds.isUnknown("a", parameters), is(false));
+    }
+
+    @Test
+    public void when_matchingDomainIds_then_idsArePassed() {
+        KnownIds knownIds = filter.register(service);
+        knownIds.rebuild();
+
+        IoParameters parameters = IoParameters.createDefaults()
+                                              .extendWith(Parameters.MATCH_DOMAIN_IDS, "true");
+        assertThat(knownIds.isUnknown("x", parameters), is(false));
+    }
+
+    @Test
+    public void when_rebuildFails_then_previousFilterIsKept() {
+        KnownIds knownIds = filter.register(service);
+        knownIds.rebuild();
+
+        service.failing = true;
+        knownIds.rebuild();
+
+        assertThat(knownIds.isUnknown("a", IoParameters.createDefaults()), is(false));
+        assertThat(knownIds.isUnknown("x", IoParameters.createDefaults()), is(true));
+    }
+
+    @Test
+    public void when_sameServiceRegisteredTwice_then_filterIsShared() {
+        KnownIds first = filter.register(service);
+        KnownIds second = filter.register(service);
+
+        assertThat(first == second, is(true));
+        assertThat(filter.getFilterCount(), is(1));
+    }
+
+    private static final class IdsParameterService extends ParameterService<PhenomenonOutput> {
+
+        private final List<String> ids;
+
+        private boolean failing;
+
+        private IdsParameterService(String... ids) {
+            this.ids = Arrays.asList(ids);
+        }
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getExpandedParameters(IoParameters query) {
+            return getCondensedParameters(query);
+        }
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getCondensedParameters(IoParameters query) {
+            if (failing) {
+                throw new IllegalStateException("backend not available");
+            }
+            return getParameters(ids.toArray(new String[0]), query);
+        }
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getParameters(String[] items, IoParameters query) {
+            List<PhenomenonOutput> outputs = new ArrayList<>();
+            for (String item : items) {
+                outputs.add(getParameter(item, query));
+            }
+            return new OutputCollection<>(outputs);
+        }
+
+        @Override
+        public PhenomenonOutput getParameter(String item, IoParameters query) {
+            PhenomenonOutput output = new PhenomenonOutput();
+            output.setId(item);
+            return output;
+        }
+
+        @Override
+        public boolean exists(String id, IoParameters parameters) {
+            return ids.contains(id);
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.ctrl.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.n52.io.Constants;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.web.common.FileResponses;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class RenderedChartCacheTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final String PAST_TIMESPAN = "2020-01-01T00:00:00Z/2020-01-02T00:00:00Z";
+
+    @TempDir
+    public Path directory;
+
+    private ExecutorService executor;
+
+    @AfterEach
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void when_noSizeAndNoDirectoryConfigured_then_cacheIsDisabled() throws IOException {
+        RenderedChartCache cache = new RenderedChartCache(0, "PT1H", "PT1M", true, "");
+
+        assertThat(cache.isCaching(Constants.IMAGE_PNG), is(false));
+        assertThat(cache.isCaching(Constants.APPLICATION_PDF), is(false));
+    }
+
+    @Test
+    public void when_chartWasPut_then_getIsHit() throws IOException {
+        RenderedChartCache cache = createCache(1024, "");
+        String key = cache.createKey("quantity", Constants.IMAGE_PNG, createParameters(PAST_TIMESPAN));
+
+        RenderedChartCache.CachedChart chart = cache.put(key, bytes("chart"), HOUR);
+
+        assertThat(cache.isCaching(Constants.IMAGE_PNG), is(true));
+        assertThat(cache.get(key)
+                        .get(),
+                   is(sameInstance(chart)));
+        assertThat(cache.get("other")
+                        .isPresent(),
+                   is(false));
+    }
+
+    @Test
+    public void when_parametersOnlyDifferInOrder_then_keysAreEqual() throws IOException {
+        RenderedChartCache cache = createCache(1024, "");
+        IoParameters first = createParameters(PAST_TIMESPAN).extendWith(Parameters.WIDTH, "800")
+                                                            .extendWith(Parameters.HEIGHT, "600");
+        IoParameters second = IoParameters.createDefaults()
+                                          .extendWith(Parameters.HEIGHT, "600")
+                                          .extendWith(Parameters.WIDTH, "800")
+                                          .extendWith(Parameters.TIMESPAN, PAST_TIMESPAN);
+
+        assertThat(cache.createKey("quantity", Constants.IMAGE_PNG, first),
+                   is(cache.createKey("quantity", Constants.IMAGE_PNG, second)));
+        assertThat(cache.createKey("quantity", Constants.IMAGE_PNG, first),
+                   is(not(cache.createKey("quantity", Constants.APPLICATION_PDF, first))));
+    }
+
+    @Test
+    public void when_memoryIsFull_then_leastRecentlyUsedChartIsEvicted() throws IOException {
+        RenderedChartCache cache = createCache(10, "");
+        cache.put("a", bytes("aaaa"), HOUR);
+        cache.put("b", bytes("bbbb"), HOUR);
+        cache.get("a");
+
+        cache.put("c", bytes("cccc"), HOUR);
+
+        assertThat(cache.get("a")
+                        .isPresent(),
+                   is(true));
+        assertThat(cache.get("b")
+                        .isPresent(),
+                   is(false));
+        assertThat(cache.get("c")
+                        .isPresent(),
+                   is(true));
+    }
+
+    @Test
+    public void when_chartIsLargerThanMemory_then_itIsNotKeptInMemory() throws IOException {
+        RenderedChartCache cache = createCache(3, "");
+
+        cache.put("a", bytes("aaaa"), HOUR);
+
+        assertThat(cache.get("a")
+                        .isPresent(),
+                   is(false));
+    }
+
+    @Test
+    public void when_evictedFromMemory_then_chartIsReadFromDisk() throws IOException {
+        RenderedChartCache cache = createCache(4, directory.toString());
+        RenderedChartCache.CachedChart chart = cache.put("a", bytes("aaaa"), HOUR);
+        cache.put("b", bytes("bbbb"), HOUR);
+
+        RenderedChartCache.CachedChart read = cache.get("a")
+                                                   .get();
+
+        assertThat(new String(read.getContent(), StandardCharsets.UTF_8), is("aaaa"));
+        assertThat(read.getEtag(), is(chart.getEtag()));
+    }
+
+    @Test
+    public void when_timespanEndsInFuture_then_chartLivesForOneBucketInMemoryOnly() throws Exception {
+        RenderedChartCache cache = new RenderedChartCache(1024, "PT1H", "PT0.05S", false, directory.toString());
+        DateTime now = new DateTime();
+        IoParameters ongoing = createParameters(now.minusDays(1) + "/" + now.plusDays(1));
+        String key = cache.createKey("quantity", Constants.IMAGE_PNG, ongoing);
+
+        assertThat(cache.getTimeToLive(ongoing), is(50L));
+        assertThat(cache.getTimeToLive(createParameters(PAST_TIMESPAN)), is(HOUR));
+        assertThat(key.contains("bucket="), is(true));
+
+        cache.put(key, bytes("chart"), cache.getTimeToLive(ongoing));
+        assertThat(cache.get(key)
+                        .isPresent(),
+                   is(true));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count(), is(0L));
+        }
+
+        Thread.sleep(100);
+        assertThat(cache.get(key)
+                        .isPresent(),
+                   is(false));
+    }
+
+    @Test
+    public void when_timespanIsRelative_then_chartLivesForOneBucket() throws IOException {
+        RenderedChartCache cache = createCache(1024, "");
+
+        assertThat(cache.getTimeToLive(IoParameters.createDefaults()), is(TimeUnit.MINUTES.toMillis(1)));
+        assertThat(cache.getTimeToLive(createParameters("PT1H/now")), is(TimeUnit.MINUTES.toMillis(1)));
+    }
+
+    @Test
+    public void when_equalChartsAreMissedConcurrently_then_chartIsRenderedOnce() throws Exception {
+        RenderedChartCache cache = createCache(1024, "");
+        executor = Executors.newFixedThreadPool(2);
+        AtomicInteger renderings = new AtomicInteger();
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RenderedChartCache.Rendering slow = () -> {
+            renderings.incrementAndGet();
+            rendering.countDown();
+            release.await();
+            return cache.put("key", bytes("chart"), HOUR);
+        };
+
+        Future<RenderedChartCache.CachedChart> first = executor.submit(() -> cache.getOrRender("key", slow));
+        assertThat(rendering.await(5, TimeUnit.SECONDS), is(true));
+        Future<RenderedChartCache.CachedChart> second = executor.submit(() -> cache.getOrRender("key", slow));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertThat(second.get(5, TimeUnit.SECONDS), is(sameInstance(first.get(5, TimeUnit.SECONDS))));
+        assertThat(renderings.get(), is(1));
+        cache.getOrRender("key", slow);
+        assertThat(renderings.get(), is(1));
+    }
+
+    @Test
+    public void when_renderingFails_then_nextCallRendersAgain() throws Exception {
+        RenderedChartCache cache = createCache(1024, "");
+
+        IOException thrown = assertThrows(IOException.class, () -> cache.getOrRender("key", () -> {
+            throw new IOException("failed");
+        }));
+        RenderedChartCache.CachedChart chart = cache.getOrRender("key",
+                                                                 () -> cache.put("key", bytes("chart"), HOUR));
+
+        assertThat(thrown.getMessage(), is("failed"));
+        assertThat(new String(chart.getContent(), StandardCharsets.UTF_8), is("chart"));
+    }
+
+    @Test
+    public void when_etagMatches_then_cachedChartIsNotModified() throws IOException {
+        RenderedChartCache cache = createCache(1024, "");
+        RenderedChartCache.CachedChart chart = cache.put("key", bytes("chart"), HOUR);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/datasets/1/data");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, chart.getEtag());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        FileResponses.write(chart.getContent(), chart.getEtag(), request, response);
+
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_NOT_MODIFIED));
+        assertThat(response.getHeader(HttpHeaders.ETAG), is(chart.getEtag()));
+        assertThat(response.getContentAsByteArray().length, is(0));
+    }
+
+    private static RenderedChartCache createCache(long maxBytes, String directory) throws IOException {
+        return new RenderedChartCache(maxBytes, "PT1H", "PT1M", false, directory);
+    }
+
+    private static IoParameters createParameters(String timespan) {
+        return IoParameters.createDefaults()
+                           .extendWith(Parameters.TIMESPAN, timespan);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.web.exception;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.io.response.OutputCollection;
+import org.n52.io.response.PhenomenonOutput;
+import org.n52.series.spi.srv.ParameterService;
+
+public class SpiAssertionExceptionAdapterTest {
+
+    private final SingleQueryParameterService service = new SingleQueryParameterService("a");
+
+    private final SpiAssertionExceptionAdapter<PhenomenonOutput> adapter = new SpiAssertionExceptionAdapter<>(service);
+
+    @Test
+    public void when_gettingExistingParameter_then_parameterIsLookedUpOnce() {
+        PhenomenonOutput parameter = adapter.getParameter("a", IoParameters.createDefaults());
+
+        assertThat(parameter.getId(), is("a"));
+        assertThat(service.calls, contains("find a"));
+    }
+
+    @Test
+    public void when_gettingUnknownParameter_then_notFound() {
+        assertThrows(ResourceNotFoundException.class,
+            () -> adapter.getParameter("x", IoParameters.createDefaults()));
+        assertThat(service.calls, contains("find x"));
+    }
+
+    @Test
+    public void when_existingParameterIsNull_then_notFound() {
+        RecordingParameterService defaultLookups = new RecordingParameterService("a");
+        defaultLookups.outputs.put("a", null);
+        SpiAssertionExceptionAdapter<PhenomenonOutput> nullReturning = new SpiAssertionExceptionAdapter<>(
+                defaultLookups);
+
+        assertThrows(ResourceNotFoundException.class,
+            () -> nullReturning.getParameter("a", IoParameters.createDefaults()));
+        assertThat(defaultLookups.calls, contains("exists a", "get a"));
+    }
+
+    @Test
+    public void when_findingMissing_then_checkIsDelegated() {
+        Set<String> missing = adapter.findMissing(Arrays.asList("a", "x"), IoParameters.createDefaults());
+
+        assertThat(missing, contains("x"));
+        assertThat(service.calls, contains("findMissing [a, x]"));
+    }
+
+    /**
+     * Relies on the default lookups via exists and getParameter.
+     */
+    private static class RecordingParameterService extends ParameterService<PhenomenonOutput> {
+
+        final Map<String, PhenomenonOutput> outputs = new LinkedHashMap<>();
+
+        final List<String> calls = new ArrayList<>();
+
+        RecordingParameterService(String... ids) {
+            for (String id : ids) {
+                PhenomenonOutput output = new PhenomenonOutput();
+                output.setId(id);
+                outputs.put(id, output);
+            }
+        }
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getExpandedParameters(IoParameters query) {
+            return getCondensedParameters(query);
+        }
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getCondensedParameters(IoParameters query) {
+            return new OutputCollection<>(new ArrayList<>(outputs.values()));
+        }
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getParameters(String[] items, IoParameters query) {
+            List<PhenomenonOutput> result = new ArrayList<>();
+            for (String item : items) {
+                result.add(outputs.get(item));
+            }
+            return new OutputCollection<>(result);
+        }
+
+        @Override
+        public PhenomenonOutput getParameter(String item, IoParameters query) {
+            calls.add("get " + item);
+            return outputs.get(item);
+        }
+
+        @Override
+        public boolean exists(String id, IoParameters parameters) {
+            calls.add("exists " + id);
+            return outputs.containsKey(id);
+        }
+    }
+
+    /**
+     * Overrides the lookups as a backend answering with a single query would do.
+     */
+    private static final class SingleQueryParameterService extends RecordingParameterService {
+
+        SingleQueryParameterService(String... ids) {
+            super(ids);
+        }
+
+        @Override
+        public Optional<PhenomenonOutput> findParameter(String item, IoParameters query) {
+            calls.add("find " + item);
+            return Optional.ofNullable(outputs.get(item));
+        }
+
+        @Override
+        public Set<String> findMissing(Collection<String> ids, IoParameters parameters) {
+            calls.add("findMissing " + ids);
+            Set<String> missing = new LinkedHashSet<>(ids);
+            missing.removeAll(outputs.keySet());
+            return missing;
+        }
+    }
+
+}
@@ -30,6 +30,7 @@ package org.n52.io.request;
 
 import static java.util.stream.Collectors.toSet;
 
+import java.awt.Dimension;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -37,6 +38,7 @@ import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -44,17 +46,22 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Instant;
+import org.joda.time.Period;
 import org.joda.time.format.DateTimeFormatter;
 import org.locationtech.jts.geom.Point;
 import org.n52.io.IntervalWithTimeZone;
@@ -94,6 +101,8 @@ public final class IoParameters implements Parameters {
 
     private static final String SPLIT_REGEX = "\\,";
 
+    private static final Pattern CHART_SIZE_PATTERN = Pattern.compile("(\\d{1,5})x(\\d{1,5})");
+
     private final MultiValueMap<String, JsonNode> query;
 
     private final FilterResolver filterResolver;
@@ -263,6 +272,186 @@ public final class IoParameters implements Parameters {
         return getAsBoolean(LEGEND, DEFAULT_LEGEND);
     }
 
+    /**
+     * @return the deflate level of zipped output or the default {@value #DEFAULT_ZIP_COMPRESSION_LEVEL}.
+     * @throws IoParseException
+     *         if parameter is not an integer between <code>-1</code> and <code>9</code>.
+     */
+    public int getZipCompressionLevel() {
+        return containsParameter(ZIP_COMPRESSION_LEVEL)
+            ? handleSimpleValueParseException(ZIP_COMPRESSION_LEVEL, this::parseCompressionLevel)
+            : DEFAULT_ZIP_COMPRESSION_LEVEL;
+    }
+
+    private int parseCompressionLevel(String parameter) {
+        int level = getAsInteger(parameter);
+        if (level < -1 || level > 9) {
+            throw createIoParseException(parameter).addHint("Value must be between -1 and 9!");
+        }
+        return level;
+    }
+
+    /**
+     * @return <code>true</code> if zip entries shall be stored without compression.
+     * @throws IoParseException
+     *         if parsing parameter fails.
+     */
+    public boolean isZipStored() {
+        return getAsBoolean(ZIP_STORED, DEFAULT_ZIP_STORED);
+    }
+
+    /**
+     * @return <code>true</code> if zip entries shall be encoded and compressed in parallel.
+     * @throws IoParseException
+     *         if parsing parameter fails.
+     */
+    public boolean isZipParallel() {
+        return getAsBoolean(ZIP_PARALLEL, DEFAULT_ZIP_PARALLEL);
+    }
+
+    /**
+     * @return the value of {@value #EXPORT_TIME_SLICE} parameter. If not present, the default
+     *         {@value #DEFAULT_EXPORT_TIME_SLICE} is returned.
+     * @throws IoParseException
+     *         if parsing parameter fails or period is not positive.
+     */
+    public Period getExportTimeSlice() {
+        return containsParameter(EXPORT_TIME_SLICE)
+            ? handleSimpleValueParseException(EXPORT_TIME_SLICE, this::parseExportTimeSlice)
+            : Period.parse(DEFAULT_EXPORT_TIME_SLICE);
+    }
+
+    private Period parseExportTimeSlice(String parameter) {
+        try {
+            Period period = Period.parse(getAsString(parameter));
+            int[] values = period.getValues();
+            if (Arrays.stream(values)
+                      .anyMatch(v -> v < 0)
+                    || Arrays.stream(values)
+                             .allMatch(v -> v == 0)) {
+                throw createIoParseException(parameter).addHint("Period must be positive!");
+            }
+            return period;
+        } catch (IllegalArgumentException e) {
+            throw createIoParseException(parameter, e).addHint("Value must be an ISO8601 period, e.g. 'P1M'.");
+        }
+    }
+
+    /**
+     * @return the value of {@value #PNG_COMPRESSION_LEVEL} parameter. If not present, the default
+     *         {@value #DEFAULT_PNG_COMPRESSION_LEVEL} is returned.
+     * @throws IoParseException
+     *         if parsing parameter fails or level is out of range.
+     */
+    public int getPngCompressionLevel() {
+        return containsParameter(PNG_COMPRESSION_LEVEL)
+            ? handleSimpleValueParseException(PNG_COMPRESSION_LEVEL, this::parseCompressionLevel)
+            : DEFAULT_PNG_COMPRESSION_LEVEL;
+    }
+
+    /**
+     * @return the value of {@value #PNG_FILTER} parameter. If not present, the default
+     *         {@value #DEFAULT_PNG_FILTER} is returned.
+     * @throws IoParseException
+     *         if the filter is unknown.
+     */
+    public PngFilter getPngFilter() {
+        return containsParameter(PNG_FILTER)
+            ? handleSimpleValueParseException(PNG_FILTER, this::parsePngFilter)
+            : PngFilter.fromString(DEFAULT_PNG_FILTER);
+    }
+
+    private PngFilter parsePngFilter(String parameter) {
+        try {
+            return PngFilter.fromString(getAsString(parameter));
+        } catch (IllegalArgumentException e) {
+            throw createIoParseException(parameter, e).addHint("Value must be one of " + PngFilter.getNames());
+        }
+    }
+
+    /**
+     * @return <code>true</code> if PNG images shall be encoded with an indexed colour palette.
+     * @throws IoParseException
+     *         if parsing parameter fails.
+     */
+    public boolean isPngPalette() {
+        return getAsBoolean(PNG_PALETTE, DEFAULT_PNG_PALETTE);
+    }
+
+    /**
+     * @return <code>true</code> if PDF reports shall contain value tables.
+     * @throws IoParseException
+     *         if parsing parameter fails.
+     */
+    public boolean isReportTables() {
+        return getAsBoolean(REPORT_TABLES, DEFAULT_REPORT_TABLES);
+    }
+
+    /**
+     * @return the value of {@value #REPORT_TABLE_ROWS} parameter. If not present, the default
+     *         {@value #DEFAULT_REPORT_TABLE_ROWS} is returned.
+     * @throws IoParseException
+     *         if parsing parameter fails or the value is not positive.
+     */
+    public int getReportTableRows() {
+        return containsParameter(REPORT_TABLE_ROWS)
+            ? handleSimpleValueParseException(REPORT_TABLE_ROWS, this::parseReportTableRows)
+            : DEFAULT_REPORT_TABLE_ROWS;
+    }
+
+    private int parseReportTableRows(String parameter) {
+        int rows = getAsInteger(parameter);
+        if (rows <= 0) {
+            throw createIoParseException(parameter).addHint("Value must be positive!");
+        }
+        return rows;
+    }
+
+    /**
+     * @return the distinct chart sizes of the {@value #CHART_SIZES} parameter in request order, or an empty
+     *         list if not present.
+     * @throws IoParseException
+     *         if parsing parameter fails, or if more than {@value #MAX_CHART_SIZES} sizes or more than
+     *         {@value #MAX_CHART_SIZES_PIXELS} pixels in total are requested.
+     */
+    public List<Dimension> getChartSizes() {
+        return containsParameter(CHART_SIZES)
+            ? handleSimpleValueParseException(CHART_SIZES, this::parseChartSizes)
+            : Collections.emptyList();
+    }
+
+    private List<Dimension> parseChartSizes(String parameter) {
+        List<Dimension> sizes = new ArrayList<>();
+        long pixels = 0;
+        for (String size : getAsString(parameter).split(SPLIT_REGEX)) {
+            Matcher matcher = CHART_SIZE_PATTERN.matcher(size.trim()
+                                                              .toLowerCase(Locale.ROOT));
+            if (!matcher.matches()) {
+                throw createIoParseException(parameter).addHint("Sizes have to be given as '{width}x{height}', "
+                        + "e.g. '400x300,800x600'.");
+            }
+            Dimension dimension = new Dimension(Integer.parseInt(matcher.group(1)),
+                                                Integer.parseInt(matcher.group(2)));
+            if (dimension.width == 0 || dimension.height == 0) {
+                throw createIoParseException(parameter).addHint("Width and height must be positive!");
+            }
+            if (!sizes.contains(dimension)) {
+                sizes.add(dimension);
+                pixels += (long) dimension.width * dimension.height;
+            }
+        }
+        if (sizes.size() > MAX_CHART_SIZES) {
+            throw createIoParseException(parameter).addHint("At most " + MAX_CHART_SIZES
+                    + " sizes are allowed!");
+        }
+        if (pixels > MAX_CHART_SIZES_PIXELS) {
+            throw createIoParseException(parameter).addHint("All sizes together must not exceed "
+                    + MAX_CHART_SIZES_PIXELS
+                    + " pixels!");
+        }
+        return sizes;
+    }
+
     /**
      * @return the value of {@value #LOCALE} parameter. If not present, the default {@value #DEFAULT_LOCALE}
      *         is returned.
@@ -1059,6 +1248,49 @@ public final class IoParameters implements Parameters {
         return parameters;
     }
 
+    /**
+     * Creates a representation of all parameters which does not depend on the order in which parameters
+     * (or properties of JSON valued parameters) were given. Equal canonical strings denote equal requests.
+     *
+     * @return a canonical string of all parameters
+     */
+    public String toCanonicalString() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(query).forEach((key, values) -> {
+            sb.append(key)
+              .append('=');
+            values.forEach(value -> appendCanonical(value, sb.append('[')).append(']'));
+            sb.append('&');
+        });
+        return sb.toString();
+    }
+
+    private static StringBuilder appendCanonical(JsonNode node, StringBuilder sb) {
+        if (node == null) {
+            return sb.append("null");
+        } else if (node.isObject()) {
+            List<String> fieldNames = new ArrayList<>();
+            node.fieldNames()
+                .forEachRemaining(fieldNames::add);
+            Collections.sort(fieldNames);
+            sb.append('{');
+            for (String fieldName : fieldNames) {
+                sb.append('"')
+                  .append(fieldName)
+                  .append("\":");
+                appendCanonical(node.get(fieldName), sb).append(',');
+            }
+            return sb.append('}');
+        } else if (node.isArray()) {
+            sb.append('[');
+            node.elements()
+                .forEachRemaining(element -> appendCanonical(element, sb).append(','));
+            return sb.append(']');
+        } else {
+            return sb.append(node.toString());
+        }
+    }
+
     @Override
     public String toString() {
         return "IoParameters{ behaveBackwardsCompatible: " + behaveBackwardsCompatible + ", query=" + query + '}';
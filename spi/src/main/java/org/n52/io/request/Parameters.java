@@ -224,6 +224,115 @@ public interface Parameters {
      */
     String ZIP = "zip";
 
+    /**
+     * The deflate level (0-9) of zipped output, <code>-1</code> uses the default level.
+     */
+    String ZIP_COMPRESSION_LEVEL = "zipCompressionLevel";
+
+    /**
+     * Default for {@link #ZIP_COMPRESSION_LEVEL}
+     */
+    int DEFAULT_ZIP_COMPRESSION_LEVEL = -1;
+
+    /**
+     * Flag to indicate if zip entries shall be stored without compression.
+     */
+    String ZIP_STORED = "zipStored";
+
+    /**
+     * Default for {@link #ZIP_STORED}
+     */
+    boolean DEFAULT_ZIP_STORED = false;
+
+    /**
+     * Flag to indicate if zip entries shall be encoded and compressed in parallel.
+     */
+    String ZIP_PARALLEL = "zipParallel";
+
+    /**
+     * Default for {@link #ZIP_PARALLEL}
+     */
+    boolean DEFAULT_ZIP_PARALLEL = true;
+
+    /**
+     * Length of the time slices (ISO8601 period) in which large CSV exports are fetched and written, so
+     * that only a bounded amount of data is held in memory.
+     */
+    String EXPORT_TIME_SLICE = "exportTimeSlice";
+
+    /**
+     * Default for {@link #EXPORT_TIME_SLICE}
+     */
+    String DEFAULT_EXPORT_TIME_SLICE = "P1M";
+
+    /**
+     * The deflate level (<code>-1</code> to <code>9</code>) used to encode PNG images.
+     */
+    String PNG_COMPRESSION_LEVEL = "pngCompressionLevel";
+
+    /**
+     * Default for {@link #PNG_COMPRESSION_LEVEL}
+     */
+    int DEFAULT_PNG_COMPRESSION_LEVEL = 6;
+
+    /**
+     * The scanline filter strategy used to encode PNG images. One of <code>none</code>, <code>sub</code>,
+     * <code>up</code>, <code>average</code>, <code>paeth</code> or <code>adaptive</code>.
+     */
+    String PNG_FILTER = "pngFilter";
+
+    /**
+     * Default for {@link #PNG_FILTER}
+     */
+    String DEFAULT_PNG_FILTER = "adaptive";
+
+    /**
+     * Flag to indicate if PNG images shall be encoded with an indexed colour palette.
+     */
+    String PNG_PALETTE = "pngPalette";
+
+    /**
+     * Default for {@link #PNG_PALETTE}
+     */
+    boolean DEFAULT_PNG_PALETTE = false;
+
+    /**
+     * Comma separated list of chart sizes (<code>{width}x{height}</code>) which shall be rendered from a
+     * single data fetch, e.g. <code>400x300,800x600</code>.
+     */
+    String CHART_SIZES = "sizes";
+
+    /**
+     * Maximum number of distinct {@link #CHART_SIZES} per request.
+     */
+    int MAX_CHART_SIZES = 8;
+
+    /**
+     * Maximum number of pixels of all {@link #CHART_SIZES} of a request.
+     */
+    long MAX_CHART_SIZES_PIXELS = 4096L * 4096L;
+
+    /**
+     * Flag to indicate if PDF reports shall contain a table of each dataset's values.
+     */
+    String REPORT_TABLES = "reportTables";
+
+    /**
+     * Default for {@link #REPORT_TABLES}
+     */
+    boolean DEFAULT_REPORT_TABLES = false;
+
+    /**
+     * The maximum number of rows of each dataset's table in PDF reports. Longer series are thinned out
+     * evenly.
+     */
+    String REPORT_TABLE_ROWS = "reportTableRows";
+
+    /**
+     * Default for {@link #REPORT_TABLE_ROWS}
+     */
+    int DEFAULT_REPORT_TABLE_ROWS = 10000;
+
     /**
      * Flag to indicate if CSV encoding shall start with a Byte-Order-Mark
      */
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.request;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Scanline filter strategies to encode PNG images with (see {@link Parameters#PNG_FILTER}). {@link #ADAPTIVE}
+ * chooses the filter with the smallest sum of absolute differences per scanline.
+ */
+public enum PngFilter {
+    NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE;
+
+    /**
+     * @param filter
+     *        the filter name (case insensitive)
+     * @return the filter
+     * @throws IllegalArgumentException
+     *         if no filter has the given name
+     */
+    public static PngFilter fromString(String filter) {
+        return valueOf(filter.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @return the lower case names of all filters
+     */
+    public static List<String> getNames() {
+        return Arrays.stream(values())
+                     .map(PngFilter::getName)
+                     .collect(Collectors.toList());
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -28,6 +28,10 @@
  */
 package org.n52.series.spi.geo;
 
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+
 import org.locationtech.jts.geom.Geometry;
 import org.n52.io.request.IoParameters;
 import org.n52.io.response.GeometryOutput;
@@ -69,11 +73,21 @@ public class TransformingGeometryOutputService extends ParameterService<Geometry
         return transform(composedService.getParameter(item, query), query);
     }
 
+    @Override
+    public Optional<GeometryOutput> findParameter(String item, IoParameters query) {
+        return composedService.findParameter(item, query).map(info -> transform(info, query));
+    }
+
     @Override
     public boolean exists(String id, IoParameters parameters) {
         return composedService.exists(id, parameters);
     }
 
+    @Override
+    public Set<String> findMissing(Collection<String> ids, IoParameters parameters) {
+        return composedService.findMissing(ids, parameters);
+    }
+
     private OutputCollection<GeometryOutput> transform(IoParameters query, OutputCollection<GeometryOutput> infos) {
         if (infos != null) {
             for (GeometryOutput info : infos) {
@@ -28,6 +28,10 @@
  */
 package org.n52.series.spi.geo;
 
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+
 import org.n52.io.geojson.GeoJSONFeature;
 import org.n52.io.request.IoParameters;
 import org.n52.io.response.OutputCollection;
@@ -82,6 +86,13 @@ public class TransformingStationOutputService extends ParameterService<StationOu
         return feature;
     }
 
+    @Override
+    public Optional<StationOutput> findParameter(String item, IoParameters query) {
+        Optional<StationOutput> feature = composedService.findParameter(item, query);
+        feature.ifPresent(f -> transformService.transformInline(f, query));
+        return feature;
+    }
+
     private OutputCollection<StationOutput> transformFeatures(IoParameters query,
             OutputCollection<StationOutput> features) {
         if (features != null) {
@@ -97,6 +108,11 @@ public class TransformingStationOutputService extends ParameterService<StationOu
         return composedService.exists(id, parameters);
     }
 
+    @Override
+    public Set<String> findMissing(Collection<String> ids, IoParameters parameters) {
+        return composedService.findMissing(ids, parameters);
+    }
+
     @Override
     public RawDataService getRawDataService() {
         return composedService.getRawDataService();
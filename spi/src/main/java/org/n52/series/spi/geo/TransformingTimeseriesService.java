@@ -28,6 +28,10 @@
  */
 package org.n52.series.spi.geo;
 
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+
 import org.n52.io.request.IoParameters;
 import org.n52.io.response.OutputCollection;
 import org.n52.io.response.dataset.TimeseriesMetadataOutput;
@@ -81,6 +85,16 @@ public class TransformingTimeseriesService extends ParameterService<TimeseriesMe
         return metadata;
     }
 
+    @Override
+    public Optional<TimeseriesMetadataOutput> findParameter(String timeseriesId,
+            IoParameters query) {
+        Optional<TimeseriesMetadataOutput> metadata = composedService
+                .findParameter(timeseriesId, query);
+        metadata.ifPresent(m -> transformationService.transformInline(m
+                .getStation(), query));
+        return metadata;
+    }
+
     private OutputCollection<TimeseriesMetadataOutput> transformStations(
             IoParameters query,
             OutputCollection<TimeseriesMetadataOutput> metadata) {
@@ -96,6 +110,12 @@ public class TransformingTimeseriesService extends ParameterService<TimeseriesMe
         return composedService.exists(id, parameters);
     }
 
+    @Override
+    public Set<String> findMissing(Collection<String> ids,
+            IoParameters parameters) {
+        return composedService.findMissing(ids, parameters);
+    }
+
     @Override
     public RawDataService getRawDataService() {
         return composedService.getRawDataService();
@@ -28,6 +28,10 @@
  */
 package org.n52.series.spi.srv;
 
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
 import org.n52.io.request.IoParameters;
 
 /**
@@ -59,4 +63,84 @@ public interface CountingMetadataService {
 
     Long getMeasuringProgramCounter(IoParameters parameters);
 
+    /**
+     * Counts multiple entity types at once. The default implementation calls the count method of each
+     * requested type. Backends able to count all types in one pass (e.g. by a grouped query) should override
+     * this method and {@link #isCountingGrouped()}.
+     *
+     * @param types
+     *        the entity types to count
+     * @param parameters
+     *        the filter parameters applied to all counts
+     * @return the count of each requested type
+     * @since 3.4.1
+     */
+    default Map<CountedType, Long> getCounts(Set<CountedType> types, IoParameters parameters) {
+        Map<CountedType, Long> counts = new EnumMap<>(CountedType.class);
+        for (CountedType type : types) {
+            switch (type) {
+                case SERVICES:
+                    counts.put(type, getServiceCount(parameters));
+                    break;
+                case OFFERINGS:
+                    counts.put(type, getOfferingCount(parameters));
+                    break;
+                case CATEGORIES:
+                    counts.put(type, getCategoryCount(parameters));
+                    break;
+                case FEATURES:
+                    counts.put(type, getFeatureCount(parameters));
+                    break;
+                case PROCEDURES:
+                    counts.put(type, getProcedureCount(parameters));
+                    break;
+                case PHENOMENA:
+                    counts.put(type, getPhenomenaCount(parameters));
+                    break;
+                case PLATFORMS:
+                    counts.put(type, getPlatformCount(parameters));
+                    break;
+                case DATASETS:
+                    counts.put(type, getDatasetCount(parameters));
+                    break;
+                case SAMPLINGS:
+                    counts.put(type, getSamplingCounter(parameters));
+                    break;
+                case MEASURING_PROGRAMS:
+                    counts.put(type, getMeasuringProgramCounter(parameters));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown entity type: " + type);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Indicates if {@link #getCounts(Set, IoParameters)} counts all types in one pass. Otherwise callers may
+     * count the types one by one, e.g. concurrently.
+     *
+     * @return <code>true</code> if multiple types are counted at once, <code>false</code> by default
+     * @since 3.4.1
+     */
+    default boolean isCountingGrouped() {
+        return false;
+    }
+
+    /**
+     * The entity types countable via {@link CountingMetadataService#getCounts(Set, IoParameters)}.
+     */
+    enum CountedType {
+        SERVICES,
+        OFFERINGS,
+        CATEGORIES,
+        FEATURES,
+        PROCEDURES,
+        PHENOMENA,
+        PLATFORMS,
+        DATASETS,
+        SAMPLINGS,
+        MEASURING_PROGRAMS
+    }
+
 }
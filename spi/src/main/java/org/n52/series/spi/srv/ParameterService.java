@@ -28,6 +28,11 @@
  */
 package org.n52.series.spi.srv;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+
 import org.n52.io.request.IoParameters;
 import org.n52.io.response.OutputCollection;
 import org.n52.io.response.ParameterOutput;
@@ -96,6 +101,47 @@ public abstract class ParameterService<T extends ParameterOutput> implements Raw
      */
     public abstract boolean exists(String id, IoParameters parameters);
 
+    /**
+     * Checks a set of resources for existence. The default implementation checks each id via
+     * {@link #exists(String, IoParameters)}. Implementations able to check multiple ids at once (e.g. by a
+     * single database query) should override this method.
+     *
+     * @param ids
+     *        the ids of the resources to check.
+     * @param parameters
+     *        the query passed along.
+     * @return the ids which do not exist (in iteration order of the given ids), or an empty set if all exist.
+     * @since 3.4.1
+     */
+    public Set<String> findMissing(Collection<String> ids, IoParameters parameters) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (!exists(id, parameters)) {
+                missing.add(id);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Gets the requested item if it exists. The default implementation checks existence via
+     * {@link #exists(String, IoParameters)} before getting the item via
+     * {@link #getParameter(String, IoParameters)}. Implementations able to do both in one step should
+     * override this method.
+     *
+     * @param item
+     *        the item id of interest.
+     * @param query
+     *        query parameters to control the output.
+     * @return the expanded item, or an empty optional if no such item exists.
+     * @since 3.4.1
+     */
+    public Optional<T> findParameter(String item, IoParameters query) {
+        return exists(item, query)
+                ? Optional.ofNullable(getParameter(item, query))
+                : Optional.empty();
+    }
+
     /**
      * Check if raw data output is supported
      *
@@ -28,7 +28,9 @@
  */
 package org.n52.io.request;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -38,6 +40,7 @@ import static org.n52.io.request.IoParameters.createDefaults;
 import static org.n52.io.request.IoParameters.createFromMultiValueMap;
 import static org.n52.io.request.IoParameters.createFromSingleValueMap;
 
+import java.awt.Dimension;
 import java.io.File;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
@@ -58,6 +61,7 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 import org.n52.io.IntervalWithTimeZone;
+import org.n52.io.IoParseException;
 import org.n52.io.crs.BoundingBox;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
@@ -110,6 +114,43 @@ public class IoParametersTest {
                                 .equals(ur));
     }
 
+    @Test
+    public void when_chartSizes_then_parsedInRequestOrderWithoutDuplicates() {
+        Map<String, String> map = Collections.singletonMap(Parameters.CHART_SIZES, "400x300, 800X600,400x300");
+        IoParameters parameters = createFromSingleValueMap(map);
+        assertThat(parameters.getChartSizes(), contains(new Dimension(400, 300), new Dimension(800, 600)));
+    }
+
+    @Test
+    public void when_invalidChartSizes_then_throwParseException() {
+        Map<String, String> map = Collections.singletonMap(Parameters.CHART_SIZES, "400x0");
+        IoParameters parameters = createFromSingleValueMap(map);
+        assertThrows(IoParseException.class, () -> parameters.getChartSizes());
+    }
+
+    @Test
+    public void when_tooManyChartSizes_then_throwParseException() {
+        Map<String, String> map = Collections.singletonMap(Parameters.CHART_SIZES,
+                                                           "10x10,20x20,30x30,40x40,50x50,60x60,70x70,80x80,90x90");
+        IoParameters parameters = createFromSingleValueMap(map);
+        assertThrows(IoParseException.class, () -> parameters.getChartSizes());
+    }
+
+    @Test
+    public void when_chartSizesExceedPixelLimit_then_throwParseException() {
+        Map<String, String> map = Collections.singletonMap(Parameters.CHART_SIZES, "4096x4096,1x1");
+        IoParameters parameters = createFromSingleValueMap(map);
+        IoParseException e = assertThrows(IoParseException.class, () -> parameters.getChartSizes());
+        assertThat(e.getHints()[0], containsString(Long.toString(Parameters.MAX_CHART_SIZES_PIXELS)));
+    }
+
+    @Test
+    public void when_chartSizesAtPixelLimit_then_parsed() {
+        Map<String, String> map = Collections.singletonMap(Parameters.CHART_SIZES, "4096x4096,4096x4096");
+        IoParameters parameters = createFromSingleValueMap(map);
+        assertThat(parameters.getChartSizes(), contains(new Dimension(4096, 4096)));
+    }
+
     @Test
     public void when_geojsonBboxWithTrimmableValues_then_parsingSpatialFilter() throws ParseException {
         Map<String, String> map = Collections.singletonMap("bbox", "6.7, 51.7,  7.9, 51.9");
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.series.spi.srv;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.series.spi.srv.CountingMetadataService.CountedType;
+
+public class CountingMetadataServiceTest {
+
+    @Test
+    public void when_countingAllTypes_then_eachTypeIsCountedByItsMethod() {
+        RecordingCountingService service = new RecordingCountingService();
+
+        Map<CountedType, Long> counts = service.getCounts(EnumSet.allOf(CountedType.class),
+                                                          IoParameters.createDefaults());
+
+        assertThat(counts.get(CountedType.SERVICES), is(1L));
+        assertThat(counts.get(CountedType.OFFERINGS), is(2L));
+        assertThat(counts.get(CountedType.CATEGORIES), is(3L));
+        assertThat(counts.get(CountedType.FEATURES), is(4L));
+        assertThat(counts.get(CountedType.PROCEDURES), is(5L));
+        assertThat(counts.get(CountedType.PHENOMENA), is(6L));
+        assertThat(counts.get(CountedType.PLATFORMS), is(7L));
+        assertThat(counts.get(CountedType.DATASETS), is(8L));
+        assertThat(counts.get(CountedType.SAMPLINGS), is(9L));
+        assertThat(counts.get(CountedType.MEASURING_PROGRAMS), is(10L));
+        assertThat(counts.size(), is(CountedType.values().length));
+    }
+
+    @Test
+    public void when_countingSomeTypes_then_onlyTheirMethodsAreCalled() {
+        RecordingCountingService service = new RecordingCountingService();
+
+        Map<CountedType, Long> counts = service.getCounts(EnumSet.of(CountedType.PHENOMENA, CountedType.SERVICES),
+                                                          IoParameters.createDefaults());
+
+        assertThat(counts.keySet(), contains(CountedType.SERVICES, CountedType.PHENOMENA));
+        assertThat(service.calls, contains("services", "phenomena"));
+    }
+
+    @Test
+    public void when_countingNoTypes_then_countsAreEmpty() {
+        RecordingCountingService service = new RecordingCountingService();
+
+        Map<CountedType, Long> counts = service.getCounts(EnumSet.noneOf(CountedType.class),
+                                                          IoParameters.createDefaults());
+
+        assertThat(counts.isEmpty(), is(true));
+        assertThat(service.calls.isEmpty(), is(true));
+    }
+
+    @Test
+    public void when_getCountsNotOverridden_then_countingIsNotGrouped() {
+        assertThat(new RecordingCountingService().isCountingGrouped(), is(false));
+    }
+
+    private static final class RecordingCountingService implements CountingMetadataService {
+
+        private final List<String> calls = new ArrayList<>();
+
+        private Long count(String type, long count) {
+            calls.add(type);
+            return count;
+        }
+
+        @Override
+        public Long getServiceCount(IoParameters parameters) {
+            return count("services", 1);
+        }
+
+        @Override
+        public Long getOfferingCount(IoParameters parameters) {
+            return count("offerings", 2);
+        }
+
+        @Override
+        public Long getCategoryCount(IoParameters parameters) {
+            return count("categories", 3);
+        }
+
+        @Override
+        public Long getFeatureCount(IoParameters parameters) {
+            return count("features", 4);
+        }
+
+        @Override
+        public Long getProcedureCount(IoParameters parameters) {
+            return count("procedures", 5);
+        }
+
+        @Override
+        public Long getPhenomenaCount(IoParameters parameters) {
+            return count("phenomena", 6);
+        }
+
+        @Override
+        public Long getPlatformCount(IoParameters paramters) {
+            return count("platforms", 7);
+        }
+
+        @Override
+        public Long getDatasetCount(IoParameters parameters) {
+            return count("datasets", 8);
+        }
+
+        @Override
+        public Long getSamplingCounter(IoParameters parameters) {
+            return count("samplings", 9);
+        }
+
+        @Override
+        public Long getMeasuringProgramCounter(IoParameters parameters) {
+            return count("measuringPrograms", 10);
+        }
+
+        @Override
+        public Long getStationCount() {
+            return count("stations", 11);
+        }
+
+        @Override
+        public Long getTimeseriesCount() {
+            return count("timeseries", 12);
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.series.spi.srv;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.io.response.OutputCollection;
+import org.n52.io.response.PhenomenonOutput;
+
+public class ParameterServiceTest {
+
+    private final RecordingParameterService service = new RecordingParameterService("a", "b");
+
+    @Test
+    public void when_findingMissing_then_unknownIdsAreReturnedInGivenOrder() {
+        assertThat(service.findMissing(Arrays.asList("x", "a", "y", "b"), IoParameters.createDefaults()),
+                   contains("x", "y"));
+        assertThat(service.calls, contains("exists x", "exists a", "exists y", "exists b"));
+    }
+
+    @Test
+    public void when_findingMissingOfKnownIds_then_noIdIsMissing() {
+        assertThat(service.findMissing(Arrays.asList("a", "b"), IoParameters.createDefaults())
+                          .isEmpty(),
+                   is(true));
+    }
+
+    @Test
+    public void when_findingExistingParameter_then_parameterIsReturned() {
+        Optional<PhenomenonOutput> parameter = service.findParameter("a", IoParameters.createDefaults());
+
+        assertThat(parameter.get()
+                            .getId(),
+                   is("a"));
+        assertThat(service.calls, contains("exists a", "get a"));
+    }
+
+    @Test
+    public void when_findingUnknownParameter_then_parameterIsNotRequested() {
+        Optional<PhenomenonOutput> parameter = service.findParameter("x", IoParameters.createDefaults());
+
+        assertThat(parameter.isPresent(), is(false));
+        assertThat(service.calls, contains("exists x"));
+    }
+
+    @Test
+    public void when_existingParameterIsNull_then_emptyIsReturned() {
+        service.outputs.put("a", null);
+
+        assertThat(service.findParameter("a", IoParameters.createDefaults())
+                          .isPresent(),
+                   is(false));
+    }
+
+    private static final class RecordingParameterService extends ParameterService<PhenomenonOutput> {
+
+        private final Map<String, PhenomenonOutput> outputs = new LinkedHashMap<>();
+
+        private final List<String> calls = new ArrayList<>();
+
+        private RecordingParameterService(String... ids) {
+            for (String id : ids) {
+                PhenomenonOutput output = new PhenomenonOutput();
+                output.setId(id);
+                outputs.put(id, output);
+            }
+        }
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getExpandedParameters(IoParameters query) {
+            return getCondensedParameters(query);
+        }
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getCondensedParameters(IoParameters query) {
+            return new OutputCollection<>(new ArrayList<>(outputs.values()));
+        }
+
+        @Override
+        public OutputCollection<PhenomenonOutput> getParameters(String[] items, IoParameters query) {
+            List<PhenomenonOutput> result = new ArrayList<>();
+            for (String item : items) {
+                result.add(outputs.get(item));
+            }
+            return new OutputCollection<>(result);
+        }
+
+        @Override
+        public PhenomenonOutput getParameter(String item, IoParameters query) {
+            calls.add("get " + item);
+            return outputs.get(item);
+        }
+
+        @Override
+        public boolean exists(String id, IoParameters parameters) {
+            calls.add("exists " + id);
+            return outputs.containsKey(id);
+        }
+    }
+
+}